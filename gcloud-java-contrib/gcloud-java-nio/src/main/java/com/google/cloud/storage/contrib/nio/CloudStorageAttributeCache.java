@@ -0,0 +1,123 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage.contrib.nio;
+
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.BlobInfo;
+import com.google.cloud.storage.Storage;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Cache of object metadata for a {@link CloudStorageFileSystem}, so that a sequence of calls like
+ * {@code Files.exists}, {@code Files.size} and {@code Files.newByteChannel} on the same path sends
+ * a single metadata request. Entries are added by lookups and directory listings, expire after
+ * {@link CloudStorageConfiguration#attributeCacheTtlMillis()} and are invalidated by the writes,
+ * deletes, copies and moves made through the file system provider. Changes made by other clients,
+ * or through other file system instances, are only visible once the entries expire.
+ *
+ * <p>Only existing objects are cached. When
+ * {@link CloudStorageConfiguration#attributeCacheMaxEntries()} is {@code 0} the cache is disabled
+ * and every lookup is sent to the service.
+ */
+@ThreadSafe
+final class CloudStorageAttributeCache {
+
+  @Nullable
+  private final Cache<BlobId, BlobInfo> cache;
+
+  @VisibleForTesting
+  CloudStorageAttributeCache(int maxEntries, long ttlMillis, Ticker ticker) {
+    if (maxEntries > 0 && ttlMillis > 0) {
+      cache = CacheBuilder.newBuilder()
+          .maximumSize(maxEntries)
+          .expireAfterWrite(ttlMillis, TimeUnit.MILLISECONDS)
+          .ticker(ticker)
+          .build();
+    } else {
+      cache = null;
+    }
+  }
+
+  static CloudStorageAttributeCache create(CloudStorageConfiguration config) {
+    return new CloudStorageAttributeCache(config.attributeCacheMaxEntries(),
+        config.attributeCacheTtlMillis(), Ticker.systemTicker());
+  }
+
+  /**
+   * Returns {@code true} if metadata is cached.
+   */
+  boolean enabled() {
+    return cache != null;
+  }
+
+  /**
+   * Returns the metadata of an object, from the cache if present or else from the service,
+   * caching it. Returns {@code null} if the object does not exist.
+   */
+  @Nullable
+  BlobInfo get(Storage storage, BlobId blobId) {
+    if (cache == null) {
+      return storage.get(blobId);
+    }
+    BlobInfo blobInfo = cache.getIfPresent(key(blobId));
+    if (blobInfo == null) {
+      blobInfo = storage.get(blobId);
+      put(blobInfo);
+    }
+    return blobInfo;
+  }
+
+  /**
+   * Returns the cached metadata of an object, or {@code null} if it is not cached.
+   */
+  @Nullable
+  BlobInfo getIfPresent(BlobId blobId) {
+    return cache != null ? cache.getIfPresent(key(blobId)) : null;
+  }
+
+  /**
+   * Caches the metadata of an object. Metadata of objects that are not completely written yet
+   * (whose size is not known) and of pseudo-directories returned by listings are ignored.
+   */
+  void put(@Nullable BlobInfo blobInfo) {
+    if (cache != null && blobInfo != null && blobInfo.size() != null
+        && !blobInfo.isDirectory()) {
+      cache.put(key(blobInfo.blobId()), blobInfo);
+    }
+  }
+
+  /**
+   * Removes the metadata of an object from the cache.
+   */
+  void invalidate(BlobId blobId) {
+    if (cache != null) {
+      cache.invalidate(key(blobId));
+    }
+  }
+
+  private static BlobId key(BlobId blobId) {
+    return blobId.generation() == null ? blobId : BlobId.of(blobId.bucket(), blobId.name());
+  }
+}
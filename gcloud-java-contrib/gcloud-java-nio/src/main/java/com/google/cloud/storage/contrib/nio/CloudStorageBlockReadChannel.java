@@ -0,0 +1,246 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage.contrib.nio;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.cloud.storage.PositionalReadChannel;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Cloud Storage read channel that caches blocks of the object's content, for random access
+ * consumers that seek back and forth (zip readers, columnar formats, indexed genomics files).
+ *
+ * <p>The object is read in blocks of {@link CloudStorageConfiguration#blockSize()} bytes, fetched
+ * with positional reads of a single {@link PositionalReadChannel}. The
+ * {@link CloudStorageConfiguration#readCacheBlocks()} most recently used blocks are kept, so that
+ * changing the channel's position does not discard data already read. A read spanning several
+ * missing blocks fetches them concurrently; a read returns at most the blocks that fit in the
+ * cache. When two consecutive blocks are read in order, the following
+ * {@link CloudStorageConfiguration#readAheadBlocks()} blocks are fetched asynchronously.
+ *
+ * @see CloudStorageReadChannel
+ */
+@ThreadSafe
+final class CloudStorageBlockReadChannel implements SeekableByteChannel {
+
+  private final PositionalReadChannel channel;
+  private final long size;
+  private final int blockSize;
+  private final int readAheadBlocks;
+  private final int maxBlocksPerRead;
+  private final LinkedHashMap<Long, Future<ByteBuffer>> blocks;
+  private long position;
+  private long lastBlock = -1;
+  private int sequentialBlocks;
+
+  CloudStorageBlockReadChannel(PositionalReadChannel channel, long size, int blockSize,
+      final int cacheBlocks, int readAheadBlocks) {
+    checkArgument(blockSize > 0, "blockSize must be > 0: %s", blockSize);
+    checkArgument(cacheBlocks > readAheadBlocks,
+        "readCacheBlocks (%s) must be greater than readAheadBlocks (%s)", cacheBlocks,
+        readAheadBlocks);
+    this.channel = channel;
+    this.size = size;
+    this.blockSize = blockSize;
+    this.readAheadBlocks = readAheadBlocks;
+    // leave room in the cache for the blocks read ahead
+    this.maxBlocksPerRead = cacheBlocks - readAheadBlocks;
+    this.blocks = new LinkedHashMap<Long, Future<ByteBuffer>>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Long, Future<ByteBuffer>> eldest) {
+        return size() > cacheBlocks;
+      }
+    };
+  }
+
+  @Override
+  public boolean isOpen() {
+    synchronized (this) {
+      return channel.isOpen();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    synchronized (this) {
+      for (Future<ByteBuffer> block : blocks.values()) {
+        block.cancel(false);
+      }
+      blocks.clear();
+      channel.close();
+    }
+  }
+
+  @Override
+  public int read(ByteBuffer dst) throws IOException {
+    synchronized (this) {
+      checkOpen();
+      if (position >= size) {
+        return -1;
+      }
+      if (!dst.hasRemaining()) {
+        return 0;
+      }
+      long first = position / blockSize;
+      long last = Math.min(first + maxBlocksPerRead - 1,
+          (Math.min(size, position + dst.remaining()) - 1) / blockSize);
+      // request all the missing blocks before waiting for any of them
+      List<Future<ByteBuffer>> needed = new ArrayList<>();
+      for (long index = first; index <= last; index++) {
+        needed.add(block(index));
+      }
+      readAhead(first, last);
+      int total = 0;
+      for (int i = 0; i < needed.size(); i++) {
+        ByteBuffer block = get(first + i, needed.get(i));
+        int offset = (int) (position - (first + i) * blockSize);
+        if (offset >= block.limit()) {
+          // the object is shorter than its expected size
+          break;
+        }
+        block.position(offset);
+        block.limit(Math.min(block.limit(), offset + dst.remaining()));
+        int length = block.remaining();
+        dst.put(block);
+        position += length;
+        total += length;
+      }
+      return total == 0 ? -1 : total;
+    }
+  }
+
+  @Override
+  public long size() throws IOException {
+    synchronized (this) {
+      checkOpen();
+      return size;
+    }
+  }
+
+  @Override
+  public long position() throws IOException {
+    synchronized (this) {
+      checkOpen();
+      return position;
+    }
+  }
+
+  /**
+   * Sets the channel's position. Cached blocks are kept, so that moving back to data already read
+   * does not require another request.
+   */
+  @Override
+  public SeekableByteChannel position(long newPosition) throws IOException {
+    checkArgument(newPosition >= 0);
+    synchronized (this) {
+      checkOpen();
+      position = newPosition;
+      return this;
+    }
+  }
+
+  @Override
+  public int write(ByteBuffer src) throws IOException {
+    throw new NonWritableChannelException();
+  }
+
+  @Override
+  public SeekableByteChannel truncate(long size) throws IOException {
+    throw new NonWritableChannelException();
+  }
+
+  /**
+   * Returns the cached block with the provided index, starting to fetch it if missing.
+   */
+  private Future<ByteBuffer> block(final long index) {
+    Future<ByteBuffer> block = blocks.get(index);
+    if (block == null) {
+      block = CloudStorageUtil.EXECUTOR.submit(new Callable<ByteBuffer>() {
+        @Override
+        public ByteBuffer call() throws IOException {
+          return fetch(index);
+        }
+      });
+      blocks.put(index, block);
+    }
+    return block;
+  }
+
+  /**
+   * Tracks sequential access and, when the blocks are being read in order, starts fetching the
+   * blocks that follow {@code last}.
+   */
+  private void readAhead(long first, long last) {
+    if (first == lastBlock || first == lastBlock + 1) {
+      sequentialBlocks += last - lastBlock;
+    } else {
+      sequentialBlocks = 0;
+    }
+    lastBlock = last;
+    if (sequentialBlocks < 2) {
+      return;
+    }
+    long lastIndex = (size - 1) / blockSize;
+    for (long index = last + 1; index <= Math.min(lastIndex, last + readAheadBlocks); index++) {
+      if (!blocks.containsKey(index)) {
+        block(index);
+      }
+    }
+  }
+
+  private ByteBuffer get(long index, Future<ByteBuffer> block) throws IOException {
+    try {
+      return CloudStorageUtil.await(block).duplicate();
+    } catch (IOException | RuntimeException ex) {
+      // failed blocks are not cached, so that the next read retries them
+      blocks.remove(index);
+      throw ex;
+    }
+  }
+
+  private ByteBuffer fetch(long index) throws IOException {
+    long start = index * blockSize;
+    ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(blockSize, size - start));
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, start + buffer.position()) < 0) {
+        break;
+      }
+    }
+    buffer.flip();
+    return buffer.asReadOnlyBuffer();
+  }
+
+  private void checkOpen() throws ClosedChannelException {
+    if (!channel.isOpen()) {
+      throw new ClosedChannelException();
+    }
+  }
+}
@@ -28,6 +28,14 @@ import java.util.Map;
 @AutoValue
 public abstract class CloudStorageConfiguration {
 
+  public static final long ATTRIBUTE_CACHE_TTL_MILLIS_DEFAULT = 10000;
+  public static final int READ_CACHE_BLOCKS_DEFAULT = 4;
+  public static final int READ_AHEAD_BLOCKS_DEFAULT = 2;
+  public static final int PARALLEL_UPLOAD_THREADS_DEFAULT = 4;
+  public static final int PARALLEL_DOWNLOAD_THREADS_DEFAULT = 4;
+  public static final long WATCH_POLL_INTERVAL_MILLIS_DEFAULT = 5000;
+  public static final long WATCH_MAX_POLL_INTERVAL_MILLIS_DEFAULT = 60000;
+
   public static final CloudStorageConfiguration DEFAULT = builder().build();
 
   /**
@@ -59,6 +67,67 @@ public abstract class CloudStorageConfiguration {
    */
   public abstract int blockSize();
 
+  /**
+   * Returns the maximum number of objects whose metadata is cached by each file system instance.
+   * {@code 0} means metadata is not cached.
+   *
+   * @see Builder#attributeCacheMaxEntries(int)
+   */
+  public abstract int attributeCacheMaxEntries();
+
+  /**
+   * Returns how long, in milliseconds, cached object metadata is used before it is fetched again.
+   */
+  public abstract long attributeCacheTtlMillis();
+
+  /**
+   * Returns the number of {@link #blockSize()} blocks cached by each read channel. {@code 0} means
+   * read channels do not cache blocks.
+   *
+   * @see Builder#readCacheBlocks(int)
+   */
+  public abstract int readCacheBlocks();
+
+  /**
+   * Returns the number of blocks fetched ahead of sequential reads.
+   */
+  public abstract int readAheadBlocks();
+
+  /**
+   * Returns the size (in bytes) of the parts that output streams upload in parallel. {@code 0}
+   * means output streams write through a single upload session.
+   *
+   * @see Builder#parallelUploadPartSize(int)
+   */
+  public abstract int parallelUploadPartSize();
+
+  /**
+   * Returns the maximum number of parts each output stream uploads at once.
+   */
+  public abstract int parallelUploadThreads();
+
+  /**
+   * Returns the maximum number of ranges read at once when downloading an object to a local file,
+   * or by a positional read of a file channel.
+   *
+   * @see Builder#parallelDownloadThreads(int)
+   */
+  public abstract int parallelDownloadThreads();
+
+  /**
+   * Returns how long, in milliseconds, watch services wait between listings of the watched
+   * directories after a change was seen.
+   *
+   * @see Builder#watchPollIntervalMillis(long)
+   */
+  public abstract long watchPollIntervalMillis();
+
+  /**
+   * Returns the longest time, in milliseconds, watch services wait between listings of the watched
+   * directories while nothing changes.
+   */
+  public abstract long watchMaxPollIntervalMillis();
+
   /**
    * Creates a new builder, initialized with the following settings:
    *
@@ -66,6 +135,9 @@ public abstract class CloudStorageConfiguration {
    * <li>Performing I/O on paths with extra slashes, e.g. {@code a//b} will throw an error.
    * <li>The prefix slash on absolute paths will be removed when converting to an object name.
    * <li>Pseudo-directories are enabled, so any path with a trailing slash is a fake directory.
+   * <li>Object metadata is not cached.
+   * <li>Read channels cache 4 blocks and read 2 blocks ahead of sequential reads.
+   * <li>Output streams write through a single upload session.
    * </ul>
    */
   public static Builder builder() {
@@ -82,6 +154,15 @@ public abstract class CloudStorageConfiguration {
     private boolean stripPrefixSlash = true;
     private boolean usePseudoDirectories = true;
     private int blockSize = CloudStorageFileSystem.BLOCK_SIZE_DEFAULT;
+    private int attributeCacheMaxEntries;
+    private long attributeCacheTtlMillis = ATTRIBUTE_CACHE_TTL_MILLIS_DEFAULT;
+    private int readCacheBlocks = READ_CACHE_BLOCKS_DEFAULT;
+    private int readAheadBlocks = READ_AHEAD_BLOCKS_DEFAULT;
+    private int parallelUploadPartSize;
+    private int parallelUploadThreads = PARALLEL_UPLOAD_THREADS_DEFAULT;
+    private int parallelDownloadThreads = PARALLEL_DOWNLOAD_THREADS_DEFAULT;
+    private long watchPollIntervalMillis = WATCH_POLL_INTERVAL_MILLIS_DEFAULT;
+    private long watchMaxPollIntervalMillis = WATCH_MAX_POLL_INTERVAL_MILLIS_DEFAULT;
 
     /**
      * Changes current working directory for new filesystem. This defaults to the root directory.
@@ -134,16 +215,180 @@ public abstract class CloudStorageConfiguration {
       return this;
     }
 
+    /**
+     * Sets the maximum number of objects whose metadata is cached by each file system instance.
+     * Cached metadata serves {@code Files.exists}, {@code Files.size}, attribute reads and the
+     * opening of read channels without a request to the service. The cache is populated by these
+     * calls and by directory listings, and invalidated by writes, deletes, copies and moves made
+     * through the file system; changes made by other clients are only seen when entries expire.
+     *
+     * <p>The default is {@code 0}, metadata is not cached.
+     *
+     * @throws IllegalArgumentException if {@code value} is negative
+     */
+    public Builder attributeCacheMaxEntries(int value) {
+      checkArgument(value >= 0, "attributeCacheMaxEntries must be >= 0: %s", value);
+      attributeCacheMaxEntries = value;
+      return this;
+    }
+
+    /**
+     * Sets how long, in milliseconds, cached object metadata is used before it is fetched again.
+     *
+     * <p>The default is {@value CloudStorageConfiguration#ATTRIBUTE_CACHE_TTL_MILLIS_DEFAULT}.
+     *
+     * @throws IllegalArgumentException if {@code value} is not positive
+     */
+    public Builder attributeCacheTtlMillis(long value) {
+      checkArgument(value > 0, "attributeCacheTtlMillis must be > 0: %s", value);
+      attributeCacheTtlMillis = value;
+      return this;
+    }
+
+    /**
+     * Sets the number of {@link #blockSize(int) blocks} cached by each channel opened for reading.
+     * Cached blocks are kept when the channel's position changes, so that consumers that seek back
+     * and forth, like zip or columnar format readers, do not fetch the same data again. Missing
+     * blocks needed by a read are fetched concurrently. {@code 0} disables the cache: channels
+     * then read the object sequentially and discard buffered data when their position changes.
+     *
+     * <p>The default is {@value CloudStorageConfiguration#READ_CACHE_BLOCKS_DEFAULT}.
+     *
+     * @throws IllegalArgumentException if {@code value} is negative
+     */
+    public Builder readCacheBlocks(int value) {
+      checkArgument(value >= 0, "readCacheBlocks must be >= 0: %s", value);
+      readCacheBlocks = value;
+      return this;
+    }
+
+    /**
+     * Sets the number of blocks that channels opened for reading fetch asynchronously when they
+     * detect sequential reads. Must be smaller than {@link #readCacheBlocks(int)}, unless the
+     * block cache is disabled.
+     *
+     * <p>The default is {@value CloudStorageConfiguration#READ_AHEAD_BLOCKS_DEFAULT}.
+     *
+     * @throws IllegalArgumentException if {@code value} is negative
+     */
+    public Builder readAheadBlocks(int value) {
+      checkArgument(value >= 0, "readAheadBlocks must be >= 0: %s", value);
+      readAheadBlocks = value;
+      return this;
+    }
+
+    /**
+     * Sets the size in bytes of the parts that output streams, including the ones
+     * {@code Files.copy} writes local files to, upload in parallel. Each full part is uploaded as
+     * a temporary object while the stream is being written; closing the stream composes the parts
+     * into the target object and deletes them. Content smaller than a part is uploaded in a single
+     * request. Composite objects have a CRC32C checksum but no MD5 hash. Each stream buffers up
+     * to {@code parallelUploadThreads + 1} parts in memory. {@code 0} disables parallel uploads:
+     * output streams then write through a single upload session, filling a buffer while the
+     * previous one is sent.
+     *
+     * <p>The default is {@code 0}.
+     *
+     * @throws IllegalArgumentException if {@code value} is negative
+     */
+    public Builder parallelUploadPartSize(int value) {
+      checkArgument(value >= 0, "parallelUploadPartSize must be >= 0: %s", value);
+      parallelUploadPartSize = value;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of parts each output stream uploads at once.
+     *
+     * <p>The default is {@value CloudStorageConfiguration#PARALLEL_UPLOAD_THREADS_DEFAULT}.
+     *
+     * @throws IllegalArgumentException if {@code value} is not positive
+     */
+    public Builder parallelUploadThreads(int value) {
+      checkArgument(value > 0, "parallelUploadThreads must be > 0: %s", value);
+      parallelUploadThreads = value;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of {@link #blockSize(int) block} sized ranges read at once when
+     * {@link CloudStorageFileSystemProvider#copy} downloads an object to a path of another file
+     * system, like a local file. Positional reads of a
+     * {@link CloudStorageFileSystemProvider#newFileChannel file channel} fetch as many blocks at
+     * once besides the first one.
+     *
+     * <p>The default is {@value CloudStorageConfiguration#PARALLEL_DOWNLOAD_THREADS_DEFAULT}.
+     *
+     * @throws IllegalArgumentException if {@code value} is not positive
+     */
+    public Builder parallelDownloadThreads(int value) {
+      checkArgument(value > 0, "parallelDownloadThreads must be > 0: %s", value);
+      parallelDownloadThreads = value;
+      return this;
+    }
+
+    /**
+     * Sets how long, in milliseconds, the {@link CloudStorageFileSystem#newWatchService() watch
+     * services} wait between two listings of the watched directories. Each listing that finds no
+     * change doubles the wait, up to {@link #watchMaxPollIntervalMillis(long)}, and the first
+     * change found brings it back to this value. Changes are therefore reported within this
+     * interval while a directory is busy, without listing idle directories that often.
+     *
+     * <p>The default is {@value CloudStorageConfiguration#WATCH_POLL_INTERVAL_MILLIS_DEFAULT}.
+     *
+     * @throws IllegalArgumentException if {@code value} is not positive
+     */
+    public Builder watchPollIntervalMillis(long value) {
+      checkArgument(value > 0, "watchPollIntervalMillis must be > 0: %s", value);
+      watchPollIntervalMillis = value;
+      return this;
+    }
+
+    /**
+     * Sets the longest time, in milliseconds, watch services wait between two listings of the
+     * watched directories while nothing changes. Must not be smaller than
+     * {@link #watchPollIntervalMillis(long)}.
+     *
+     * <p>The default is {@value CloudStorageConfiguration#WATCH_MAX_POLL_INTERVAL_MILLIS_DEFAULT}.
+     *
+     * @throws IllegalArgumentException if {@code value} is not positive
+     */
+    public Builder watchMaxPollIntervalMillis(long value) {
+      checkArgument(value > 0, "watchMaxPollIntervalMillis must be > 0: %s", value);
+      watchMaxPollIntervalMillis = value;
+      return this;
+    }
+
     /**
      * Creates new instance without destroying builder.
+     *
+     * @throws IllegalArgumentException if the read cache is enabled and
+     *     {@link #readAheadBlocks(int)} is not smaller than {@link #readCacheBlocks(int)}, or if
+     *     {@link #watchMaxPollIntervalMillis(long)} is smaller than
+     *     {@link #watchPollIntervalMillis(long)}
      */
     public CloudStorageConfiguration build() {
+      checkArgument(readCacheBlocks == 0 || readAheadBlocks < readCacheBlocks,
+          "readAheadBlocks (%s) must be smaller than readCacheBlocks (%s)", readAheadBlocks,
+          readCacheBlocks);
+      checkArgument(watchMaxPollIntervalMillis >= watchPollIntervalMillis,
+          "watchMaxPollIntervalMillis (%s) must not be smaller than watchPollIntervalMillis (%s)",
+          watchMaxPollIntervalMillis, watchPollIntervalMillis);
       return new AutoValue_CloudStorageConfiguration(
           workingDirectory,
           permitEmptyPathComponents,
           stripPrefixSlash,
           usePseudoDirectories,
-          blockSize);
+          blockSize,
+          attributeCacheMaxEntries,
+          attributeCacheTtlMillis,
+          readCacheBlocks,
+          readAheadBlocks,
+          parallelUploadPartSize,
+          parallelUploadThreads,
+          parallelDownloadThreads,
+          watchPollIntervalMillis,
+          watchMaxPollIntervalMillis);
     }
 
     Builder() {}
@@ -168,6 +413,33 @@ public abstract class CloudStorageConfiguration {
         case "blockSize":
           builder.blockSize((Integer) entry.getValue());
           break;
+        case "attributeCacheMaxEntries":
+          builder.attributeCacheMaxEntries((Integer) entry.getValue());
+          break;
+        case "attributeCacheTtlMillis":
+          builder.attributeCacheTtlMillis(((Number) entry.getValue()).longValue());
+          break;
+        case "readCacheBlocks":
+          builder.readCacheBlocks((Integer) entry.getValue());
+          break;
+        case "readAheadBlocks":
+          builder.readAheadBlocks((Integer) entry.getValue());
+          break;
+        case "parallelUploadPartSize":
+          builder.parallelUploadPartSize((Integer) entry.getValue());
+          break;
+        case "parallelUploadThreads":
+          builder.parallelUploadThreads((Integer) entry.getValue());
+          break;
+        case "parallelDownloadThreads":
+          builder.parallelDownloadThreads((Integer) entry.getValue());
+          break;
+        case "watchPollIntervalMillis":
+          builder.watchPollIntervalMillis(((Number) entry.getValue()).longValue());
+          break;
+        case "watchMaxPollIntervalMillis":
+          builder.watchMaxPollIntervalMillis(((Number) entry.getValue()).longValue());
+          break;
         default:
           throw new IllegalArgumentException(entry.getKey());
       }
@@ -0,0 +1,315 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage.contrib.nio;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.auto.value.AutoValue;
+import com.google.cloud.storage.Blob;
+import com.google.cloud.storage.BucketInfo;
+import com.google.cloud.storage.Storage;
+import com.google.cloud.storage.StorageException;
+
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.FileAttributeView;
+import java.nio.file.attribute.FileStoreAttributeView;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Google Cloud Storage {@link FileStore} implementation, representing the bucket of a
+ * {@link CloudStorageFileSystem}.
+ *
+ * <p>Buckets don't have a capacity, so the total, usable and unallocated space are reported as
+ * {@link Long#MAX_VALUE}. The block size is the file system's
+ * {@link CloudStorageConfiguration#blockSize()}, which libraries that size their buffers from
+ * {@code getBlockSize()} will use instead of a few kilobytes.
+ *
+ * <p>The number of objects and bytes stored in the bucket are computed on demand by
+ * {@link #computeUsage()}, which lists the top-level directories of the bucket concurrently in the
+ * background. The last totals remain available from {@link #cachedUsage()}.
+ */
+@ThreadSafe
+public final class CloudStorageFileStore extends FileStore {
+
+  /**
+   * Maximum number of top-level directories listed at once by {@link #computeUsage()}.
+   */
+  private static final int USAGE_LISTING_THREADS = 8;
+
+  private final CloudStorageFileSystem fileSystem;
+
+  // guarded by this
+  @Nullable private BucketInfo bucketInfo;
+  @Nullable private Future<Usage> usageComputation;
+
+  @Nullable private volatile Usage cachedUsage;
+
+  /**
+   * Number of objects and bytes stored in a bucket.
+   */
+  @AutoValue
+  public abstract static class Usage {
+
+    static Usage create(long objectCount, long totalBytes) {
+      return new AutoValue_CloudStorageFileStore_Usage(objectCount, totalBytes);
+    }
+
+    /**
+     * Returns the number of objects, not counting pseudo-directories.
+     */
+    public abstract long objectCount();
+
+    /**
+     * Returns the sum of the objects' sizes.
+     */
+    public abstract long totalBytes();
+
+    Usage() {}
+  }
+
+  CloudStorageFileStore(CloudStorageFileSystem fileSystem) {
+    this.fileSystem = fileSystem;
+  }
+
+  /**
+   * Returns the bucket name.
+   */
+  @Override
+  public String name() {
+    return fileSystem.bucket();
+  }
+
+  /**
+   * Returns {@value CloudStorageFileSystem#URI_SCHEME}.
+   */
+  @Override
+  public String type() {
+    return CloudStorageFileSystem.URI_SCHEME;
+  }
+
+  /**
+   * Returns {@code false}.
+   */
+  @Override
+  public boolean isReadOnly() {
+    return false;
+  }
+
+  /**
+   * Returns {@link Long#MAX_VALUE}, as buckets don't have a capacity.
+   */
+  @Override
+  public long getTotalSpace() {
+    return Long.MAX_VALUE;
+  }
+
+  /**
+   * Returns {@link Long#MAX_VALUE}, as buckets don't have a capacity.
+   */
+  @Override
+  public long getUsableSpace() {
+    return Long.MAX_VALUE;
+  }
+
+  /**
+   * Returns {@link Long#MAX_VALUE}, as buckets don't have a capacity.
+   */
+  @Override
+  public long getUnallocatedSpace() {
+    return Long.MAX_VALUE;
+  }
+
+  /**
+   * Returns the file system's {@link CloudStorageConfiguration#blockSize()}. This overrides
+   * {@code FileStore.getBlockSize()} on Java 10 and later.
+   */
+  public long getBlockSize() {
+    return fileSystem.config().blockSize();
+  }
+
+  /**
+   * Returns the bucket's metadata, which is fetched once.
+   *
+   * @throws NoSuchFileException if the bucket does not exist
+   */
+  public BucketInfo bucketInfo() throws IOException {
+    synchronized (this) {
+      if (bucketInfo == null) {
+        try {
+          bucketInfo = fileSystem.provider().storage().get(fileSystem.bucket());
+        } catch (StorageException oops) {
+          throw CloudStorageUtil.asIoException(oops);
+        }
+        if (bucketInfo == null) {
+          throw new NoSuchFileException(fileSystem.toString());
+        }
+      }
+      return bucketInfo;
+    }
+  }
+
+  /**
+   * Starts computing the number of objects and bytes in the bucket, unless a computation is
+   * already running, and returns its result. The computation lists each top-level directory
+   * concurrently, which can take a while for large buckets.
+   */
+  public Future<Usage> computeUsage() {
+    synchronized (this) {
+      if (usageComputation == null || usageComputation.isDone()) {
+        usageComputation = CloudStorageUtil.EXECUTOR.submit(new Callable<Usage>() {
+          @Override
+          public Usage call() throws IOException {
+            Usage usage = listUsage();
+            cachedUsage = usage;
+            return usage;
+          }
+        });
+      }
+      return usageComputation;
+    }
+  }
+
+  /**
+   * Returns the totals of the last completed {@link #computeUsage()}, or {@code null} if none has
+   * completed yet.
+   */
+  @Nullable
+  public Usage cachedUsage() {
+    return cachedUsage;
+  }
+
+  private Usage listUsage() throws IOException {
+    final Storage storage = fileSystem.provider().storage();
+    final String bucket = fileSystem.bucket();
+    Deque<Future<Usage>> directories = new ArrayDeque<>();
+    long objectCount = 0;
+    long totalBytes = 0;
+    try {
+      Iterator<Blob> blobs = storage.list(bucket, Storage.BlobListOption.currentDirectory(),
+          Storage.BlobListOption.fields(Storage.BlobField.SIZE)).iterateAll();
+      while (blobs.hasNext()) {
+        Blob blob = blobs.next();
+        if (!blob.isDirectory()) {
+          objectCount++;
+          totalBytes += blob.size() != null ? blob.size() : 0;
+          continue;
+        }
+        if (directories.size() >= USAGE_LISTING_THREADS) {
+          Usage usage = CloudStorageUtil.await(directories.removeFirst());
+          objectCount += usage.objectCount();
+          totalBytes += usage.totalBytes();
+        }
+        final String prefix = blob.name();
+        directories.addLast(CloudStorageUtil.EXECUTOR.submit(new Callable<Usage>() {
+          @Override
+          public Usage call() {
+            return sum(storage.list(bucket, Storage.BlobListOption.prefix(prefix),
+                Storage.BlobListOption.fields(Storage.BlobField.SIZE)).iterateAll());
+          }
+        }));
+      }
+      while (!directories.isEmpty()) {
+        Usage usage = CloudStorageUtil.await(directories.removeFirst());
+        objectCount += usage.objectCount();
+        totalBytes += usage.totalBytes();
+      }
+    } catch (StorageException oops) {
+      throw CloudStorageUtil.asIoException(oops);
+    }
+    return Usage.create(objectCount, totalBytes);
+  }
+
+  private static Usage sum(Iterator<Blob> blobs) {
+    long objectCount = 0;
+    long totalBytes = 0;
+    while (blobs.hasNext()) {
+      Long size = blobs.next().size();
+      objectCount++;
+      totalBytes += size != null ? size : 0;
+    }
+    return Usage.create(objectCount, totalBytes);
+  }
+
+  @Override
+  public boolean supportsFileAttributeView(Class<? extends FileAttributeView> type) {
+    return type == BasicFileAttributeView.class || type == CloudStorageFileAttributeView.class;
+  }
+
+  @Override
+  public boolean supportsFileAttributeView(String name) {
+    return CloudStorageFileSystem.SUPPORTED_VIEWS.contains(name);
+  }
+
+  /**
+   * Returns {@code null}, as no file store attribute view is supported.
+   */
+  @Override
+  @Nullable
+  public <V extends FileStoreAttributeView> V getFileStoreAttributeView(Class<V> type) {
+    checkNotNull(type);
+    return null;
+  }
+
+  /**
+   * Returns the value of {@code totalSpace}, {@code usableSpace}, {@code unallocatedSpace} or
+   * {@code blockSize}.
+   *
+   * @throws UnsupportedOperationException for other attributes
+   */
+  @Override
+  public Object getAttribute(String attribute) {
+    switch (attribute) {
+      case "totalSpace":
+        return getTotalSpace();
+      case "usableSpace":
+        return getUsableSpace();
+      case "unallocatedSpace":
+        return getUnallocatedSpace();
+      case "blockSize":
+        return getBlockSize();
+      default:
+        throw new UnsupportedOperationException(attribute);
+    }
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    return this == other
+        || other instanceof CloudStorageFileStore
+            && fileSystem.equals(((CloudStorageFileStore) other).fileSystem);
+  }
+
+  @Override
+  public int hashCode() {
+    return fileSystem.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return fileSystem.toString();
+  }
+}
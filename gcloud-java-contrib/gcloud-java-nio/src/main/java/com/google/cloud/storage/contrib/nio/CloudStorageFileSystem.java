@@ -34,6 +34,7 @@ import java.nio.file.attribute.FileTime;
 import java.nio.file.attribute.UserPrincipalLookupService;
 import java.util.Objects;
 import java.util.Set;
+import java.util.regex.Pattern;
 
 import javax.annotation.CheckReturnValue;
 import javax.annotation.Nullable;
@@ -60,6 +61,8 @@ public final class CloudStorageFileSystem extends FileSystem {
   private final CloudStorageFileSystemProvider provider;
   private final String bucket;
   private final CloudStorageConfiguration config;
+  private final CloudStorageAttributeCache attributeCache;
+  private final CloudStorageFileStore fileStore;
 
   /**
    * Returns Google Cloud Storage {@link FileSystem} object for {@code bucket}.
@@ -124,6 +127,8 @@ public final class CloudStorageFileSystem extends FileSystem {
     this.provider = provider;
     this.bucket = bucket;
     this.config = config;
+    this.attributeCache = CloudStorageAttributeCache.create(config);
+    this.fileStore = new CloudStorageFileStore(this);
   }
 
   @Override
@@ -145,6 +150,20 @@ public final class CloudStorageFileSystem extends FileSystem {
     return config;
   }
 
+  /**
+   * Returns the cache of object metadata for this file system instance.
+   */
+  CloudStorageAttributeCache attributeCache() {
+    return attributeCache;
+  }
+
+  /**
+   * Returns the file store of the bucket.
+   */
+  CloudStorageFileStore fileStore() {
+    return fileStore;
+  }
+
   /**
    * Converts Cloud Storage object name to a {@link Path} object.
    */
@@ -197,12 +216,11 @@ public final class CloudStorageFileSystem extends FileSystem {
   }
 
   /**
-   * Returns nothing because Google Cloud Storage doesn't have disk partitions of limited size, or
-   * anything similar.
+   * Returns the {@link CloudStorageFileStore} of the bucket.
    */
   @Override
   public Iterable<FileStore> getFileStores() {
-    return ImmutableSet.of();
+    return ImmutableSet.<FileStore>of(fileStore);
   }
 
   @Override
@@ -211,12 +229,29 @@ public final class CloudStorageFileSystem extends FileSystem {
   }
 
   /**
-   * Throws {@link UnsupportedOperationException} because this feature hasn't been implemented yet.
+   * Returns a matcher for the {@code glob} or {@code regex} syntax. Glob matchers are
+   * {@link CloudStoragePathMatcher} instances, which limit the objects listed by the directory
+   * streams they filter.
    */
   @Override
   public PathMatcher getPathMatcher(String syntaxAndPattern) {
-    // TODO(#813): Implement me.
-    throw new UnsupportedOperationException();
+    int colon = syntaxAndPattern.indexOf(':');
+    checkArgument(colon > 0, "Expected syntax:pattern: %s", syntaxAndPattern);
+    String syntax = syntaxAndPattern.substring(0, colon);
+    String pattern = syntaxAndPattern.substring(colon + 1);
+    if (syntax.equalsIgnoreCase("glob")) {
+      return CloudStoragePathMatcher.glob(pattern);
+    }
+    if (syntax.equalsIgnoreCase("regex")) {
+      final Pattern regex = Pattern.compile(pattern);
+      return new PathMatcher() {
+        @Override
+        public boolean matches(Path path) {
+          return regex.matcher(path.toString()).matches();
+        }
+      };
+    }
+    throw new UnsupportedOperationException(syntax);
   }
 
   /**
@@ -229,12 +264,15 @@ public final class CloudStorageFileSystem extends FileSystem {
   }
 
   /**
-   * Throws {@link UnsupportedOperationException} because this feature hasn't been implemented yet.
+   * Returns a new watch service, which reports changes to the registered directories by listing
+   * them periodically. Directories are listed
+   * {@link CloudStorageConfiguration#watchPollIntervalMillis()} apart while they change, and less
+   * often while they don't. Closing the watch service stops the polling.
    */
   @Override
   public WatchService newWatchService() throws IOException {
-    // TODO: Implement me.
-    throw new UnsupportedOperationException();
+    return new CloudStorageWatchService(provider.storage(), config.watchPollIntervalMillis(),
+        config.watchMaxPollIntervalMillis());
   }
 
   @Override
@@ -21,24 +21,27 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Strings.isNullOrEmpty;
 
 import com.google.auto.service.AutoService;
+import com.google.cloud.ReadChannel;
 import com.google.cloud.storage.Acl;
 import com.google.cloud.storage.Blob;
 import com.google.cloud.storage.BlobId;
 import com.google.cloud.storage.BlobInfo;
 import com.google.cloud.storage.CopyWriter;
+import com.google.cloud.storage.PositionalReadChannel;
 import com.google.cloud.storage.Storage;
 import com.google.cloud.storage.StorageException;
 import com.google.cloud.storage.StorageOptions;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.MoreObjects;
-import com.google.common.base.Throwables;
 import com.google.common.collect.AbstractIterator;
 import com.google.common.primitives.Ints;
 
 import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URI;
+import java.nio.channels.FileChannel;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.file.AccessMode;
 import java.nio.file.AtomicMoveNotSupportedException;
@@ -47,7 +50,7 @@ import java.nio.file.DirectoryIteratorException;
 import java.nio.file.DirectoryStream;
 import java.nio.file.DirectoryStream.Filter;
 import java.nio.file.FileAlreadyExistsException;
-import java.nio.file.FileStore;
+import java.nio.file.Files;
 import java.nio.file.LinkOption;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.OpenOption;
@@ -58,10 +61,15 @@ import java.nio.file.attribute.BasicFileAttributeView;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileAttribute;
 import java.nio.file.attribute.FileAttributeView;
+import java.nio.file.attribute.FileTime;
 import java.nio.file.spi.FileSystemProvider;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -94,27 +102,75 @@ public final class CloudStorageFileSystemProvider extends FileSystemProvider {
     private final Iterator<Blob> blobIterator;
     private final Filter<? super Path> filter;
     private final CloudStorageFileSystem fileSystem;
+    // set when listing recursively, to synthesize the pseudo-directories below it
+    @Nullable private final String recursivePrefix;
+    private final Deque<String> pending = new ArrayDeque<>();
+    private String lastDirectory = "";
 
     LazyPathIterator(CloudStorageFileSystem fileSystem, Iterator<Blob> blobIterator,
                      Filter<? super Path> filter) {
+      this(fileSystem, blobIterator, filter, null);
+    }
+
+    LazyPathIterator(CloudStorageFileSystem fileSystem, Iterator<Blob> blobIterator,
+                     Filter<? super Path> filter, @Nullable String recursivePrefix) {
       this.blobIterator = blobIterator;
       this.filter = filter;
       this.fileSystem = fileSystem;
+      this.recursivePrefix = recursivePrefix;
     }
 
     @Override
     protected Path computeNext() {
-      while (blobIterator.hasNext()) {
-        Path path = fileSystem.getPath(blobIterator.next().name());
-        try {
-          if (filter.accept(path)) {
-            return path;
+      while (true) {
+        while (!pending.isEmpty()) {
+          String name = pending.remove();
+          if (filter instanceof CloudStoragePathMatcher
+              && !((CloudStoragePathMatcher) filter).matches(name)) {
+            // skips names that don't match without creating their path
+            continue;
           }
-        } catch (IOException ex) {
-          throw new DirectoryIteratorException(ex);
+          Path path = fileSystem.getPath(name);
+          try {
+            if (filter.accept(path)) {
+              return path;
+            }
+          } catch (IOException ex) {
+            throw new DirectoryIteratorException(ex);
+          }
+        }
+        if (!blobIterator.hasNext()) {
+          return endOfData();
+        }
+        Blob blob = blobIterator.next();
+        fileSystem.attributeCache().put(blob);
+        if (recursivePrefix == null) {
+          pending.add(blob.name());
+        } else {
+          addRecursively(blob.name());
+        }
+      }
+    }
+
+    /**
+     * Adds the pseudo-directories of {@code name} below the listed prefix that were not returned
+     * yet, followed by the object itself unless it is a directory placeholder. Listings are sorted
+     * by name, so the content of a pseudo-directory is contiguous and only the directory of the
+     * previous object needs to be remembered: the directories it starts with were returned.
+     */
+    private void addRecursively(String name) {
+      int end = name.indexOf('/', recursivePrefix.length());
+      while (end >= 0) {
+        String directory = name.substring(0, end + 1);
+        if (!lastDirectory.startsWith(directory)) {
+          pending.add(directory);
         }
+        end = name.indexOf('/', end + 1);
+      }
+      lastDirectory = name.substring(0, name.lastIndexOf('/') + 1);
+      if (!name.endsWith("/")) {
+        pending.add(name);
       }
-      return endOfData();
     }
   }
 
@@ -144,6 +200,10 @@ public final class CloudStorageFileSystemProvider extends FileSystemProvider {
     }
   }
 
+  Storage storage() {
+    return storage;
+  }
+
   @Override
   public String getScheme() {
     return CloudStorageFileSystem.URI_SCHEME;
@@ -208,8 +268,51 @@ public final class CloudStorageFileSystemProvider extends FileSystemProvider {
     }
   }
 
+  /**
+   * Returns a read-only channel whose positional reads fetch blocks concurrently. Writing through a
+   * {@link FileChannel} is not supported.
+   */
+  @Override
+  public FileChannel newFileChannel(
+      Path path, Set<? extends OpenOption> options, FileAttribute<?>... attrs) throws IOException {
+    checkNotNull(path);
+    CloudStorageUtil.checkNotNullArray(attrs);
+    if (options.contains(StandardOpenOption.WRITE)
+        || options.contains(StandardOpenOption.APPEND)) {
+      throw new UnsupportedOperationException("FileChannel only supports reading");
+    }
+    checkReadOptions(options);
+    CloudStoragePath cloudPath = CloudStorageUtil.checkPath(path);
+    BlobInfo blobInfo = getReadableBlob(cloudPath);
+    ReadChannel reader = storage.reader(readableBlobId(blobInfo));
+    if (!(reader instanceof PositionalReadChannel)) {
+      reader.close();
+      throw new UnsupportedOperationException("Positional reads are not supported");
+    }
+    CloudStorageConfiguration config = cloudPath.getFileSystem().config();
+    return new CloudStorageReadFileChannel((PositionalReadChannel) reader, blobInfo.size(),
+        config.blockSize(), config.parallelDownloadThreads());
+  }
+
   private SeekableByteChannel newReadChannel(Path path, Set<? extends OpenOption> options)
       throws IOException {
+    checkReadOptions(options);
+    CloudStoragePath cloudPath = CloudStorageUtil.checkPath(path);
+    BlobInfo blobInfo = getReadableBlob(cloudPath);
+    BlobId file = readableBlobId(blobInfo);
+    CloudStorageConfiguration config = cloudPath.getFileSystem().config();
+    if (config.readCacheBlocks() > 0) {
+      ReadChannel reader = storage.reader(file);
+      if (reader instanceof PositionalReadChannel) {
+        return new CloudStorageBlockReadChannel((PositionalReadChannel) reader, blobInfo.size(),
+            config.blockSize(), config.readCacheBlocks(), config.readAheadBlocks());
+      }
+      reader.close();
+    }
+    return CloudStorageReadChannel.create(storage, file, 0, blobInfo.size());
+  }
+
+  private static void checkReadOptions(Set<? extends OpenOption> options) {
     for (OpenOption option : options) {
       if (option instanceof StandardOpenOption) {
         switch ((StandardOpenOption) option) {
@@ -235,23 +338,109 @@ public final class CloudStorageFileSystemProvider extends FileSystemProvider {
         throw new UnsupportedOperationException(option.toString());
       }
     }
-    CloudStoragePath cloudPath = CloudStorageUtil.checkPath(path);
+  }
+
+  /**
+   * Returns the metadata of the object to read.
+   *
+   * @throws CloudStoragePseudoDirectoryException if the path is a pseudo-directory
+   * @throws NoSuchFileException if the object does not exist
+   */
+  private BlobInfo getReadableBlob(CloudStoragePath cloudPath) throws IOException {
     if (cloudPath.seemsLikeADirectoryAndUsePseudoDirectories()) {
       throw new CloudStoragePseudoDirectoryException(cloudPath);
     }
-    return CloudStorageReadChannel.create(storage, cloudPath.getBlobId(), 0);
+    BlobId file = cloudPath.getBlobId();
+    BlobInfo blobInfo = cloudPath.getFileSystem().attributeCache().get(storage, file);
+    if (blobInfo == null) {
+      throw new NoSuchFileException(String.format("gs://%s/%s", file.bucket(), file.name()));
+    }
+    return blobInfo;
+  }
+
+  /**
+   * Returns the id of the generation described by {@code blobInfo}, so that an object replaced
+   * after its metadata was looked up fails to read instead of returning a different content or
+   * size.
+   */
+  private static BlobId readableBlobId(BlobInfo blobInfo) {
+    return BlobId.of(blobInfo.bucket(), blobInfo.name(), blobInfo.generation());
   }
 
   private SeekableByteChannel newWriteChannel(Path path, Set<? extends OpenOption> options)
       throws IOException {
+    CloudStoragePath cloudPath = CloudStorageUtil.checkPath(path);
+    BlobInfo target = getWriteTarget(cloudPath, options);
+    List<Storage.BlobWriteOption> writeOptions = new ArrayList<>();
+    if (options.contains(StandardOpenOption.CREATE_NEW)) {
+      writeOptions.add(Storage.BlobWriteOption.doesNotExist());
+    }
+    BlobId file = cloudPath.getBlobId();
+    CloudStorageAttributeCache attributeCache = cloudPath.getFileSystem().attributeCache();
+    attributeCache.invalidate(file);
+    try {
+      return new CloudStorageWriteChannel(
+          storage.writer(target,
+              writeOptions.toArray(new Storage.BlobWriteOption[writeOptions.size()])),
+          attributeCache, file);
+    } catch (StorageException oops) {
+      throw CloudStorageUtil.asIoException(oops);
+    }
+  }
 
+  /**
+   * Returns a stream that uploads parts of the content in parallel if
+   * {@link CloudStorageConfiguration#parallelUploadPartSize()} is set. Otherwise the stream writes
+   * through a single upload session, filling a buffer while the previous one is being sent.
+   *
+   * <p>{@code Files.copy} from a local file, or from any other provider, writes through this
+   * stream.
+   */
+  @Override
+  public OutputStream newOutputStream(Path path, OpenOption... options) throws IOException {
     CloudStoragePath cloudPath = CloudStorageUtil.checkPath(path);
+    Set<OpenOption> openOptions = new HashSet<>(Arrays.asList(options));
+    if (openOptions.isEmpty()) {
+      openOptions.add(StandardOpenOption.CREATE);
+      openOptions.add(StandardOpenOption.TRUNCATE_EXISTING);
+    }
+    openOptions.add(StandardOpenOption.WRITE);
+    CloudStorageConfiguration config = cloudPath.getFileSystem().config();
+    if (config.parallelUploadPartSize() == 0) {
+      int blockSize = config.blockSize();
+      for (OpenOption option : options) {
+        if (option instanceof OptionBlockSize) {
+          blockSize = ((OptionBlockSize) option).size();
+        }
+      }
+      return new CloudStoragePipelinedOutputStream(
+          newWriteChannel(cloudPath, openOptions), blockSize);
+    }
+    BlobInfo target = getWriteTarget(cloudPath, openOptions);
+    List<Storage.BlobTargetOption> targetOptions = new ArrayList<>();
+    if (openOptions.contains(StandardOpenOption.CREATE_NEW)) {
+      // fail before uploading anything, the compose request checks again
+      if (storage.get(target.blobId()) != null) {
+        throw new FileAlreadyExistsException(cloudPath.toString());
+      }
+      targetOptions.add(Storage.BlobTargetOption.doesNotExist());
+    }
+    return new CloudStorageParallelUploadStream(storage, target, targetOptions,
+        config.parallelUploadPartSize(), config.parallelUploadThreads(),
+        cloudPath.getFileSystem().attributeCache());
+  }
+
+  /**
+   * Returns the metadata of the object to write, as specified by {@code options}.
+   *
+   * @throws CloudStoragePseudoDirectoryException if the path is a pseudo-directory
+   */
+  private static BlobInfo getWriteTarget(CloudStoragePath cloudPath,
+      Set<? extends OpenOption> options) {
     if (cloudPath.seemsLikeADirectoryAndUsePseudoDirectories()) {
       throw new CloudStoragePseudoDirectoryException(cloudPath);
     }
-    BlobId file = cloudPath.getBlobId();
-    BlobInfo.Builder infoBuilder = BlobInfo.builder(file);
-    List<Storage.BlobWriteOption> writeOptions = new ArrayList<>();
+    BlobInfo.Builder infoBuilder = BlobInfo.builder(cloudPath.getBlobId());
     List<Acl> acls = new ArrayList<>();
 
     HashMap<String, String> metas = new HashMap<>();
@@ -270,7 +459,7 @@ public final class CloudStorageFileSystemProvider extends FileSystemProvider {
       } else if (option instanceof OptionAcl) {
         acls.add(((OptionAcl) option).acl());
       } else if (option instanceof OptionBlockSize) {
-        // TODO: figure out how to plumb in block size.
+        // Only used by output streams.
       } else if (option instanceof StandardOpenOption) {
         switch ((StandardOpenOption) option) {
           case CREATE:
@@ -282,7 +471,7 @@ public final class CloudStorageFileSystemProvider extends FileSystemProvider {
             // Ignored by specification.
             break;
           case CREATE_NEW:
-            writeOptions.add(Storage.BlobWriteOption.doesNotExist());
+            // Checked by the caller.
             break;
           case READ:
             throw new IllegalArgumentException("READ+WRITE not supported yet");
@@ -306,14 +495,7 @@ public final class CloudStorageFileSystemProvider extends FileSystemProvider {
     if (!acls.isEmpty()) {
       infoBuilder.acl(acls);
     }
-
-    try {
-      return new CloudStorageWriteChannel(
-          storage.writer(infoBuilder.build(),
-              writeOptions.toArray(new Storage.BlobWriteOption[writeOptions.size()])));
-    } catch (StorageException oops) {
-      throw asIoException(oops);
-    }
+    return infoBuilder.build();
   }
 
   @Override
@@ -335,7 +517,12 @@ public final class CloudStorageFileSystemProvider extends FileSystemProvider {
     if (cloudPath.seemsLikeADirectoryAndUsePseudoDirectories()) {
       throw new CloudStoragePseudoDirectoryException(cloudPath);
     }
-    return storage.delete(cloudPath.getBlobId());
+    try {
+      return storage.delete(cloudPath.getBlobId());
+    } finally {
+      // invalidated once the delete completed, so that a concurrent lookup can't cache it again
+      cloudPath.getFileSystem().attributeCache().invalidate(cloudPath.getBlobId());
+    }
   }
 
   @Override
@@ -346,6 +533,116 @@ public final class CloudStorageFileSystemProvider extends FileSystemProvider {
     }
   }
 
+  /**
+   * Deletes the objects of {@code paths}, like {@link #deleteIfExists(Path)}, but with batch
+   * requests: deletes are sent 100 per request, and several requests are sent concurrently (see
+   * {@link StorageOptions#batchParallelism()}). Pseudo-directories have no object and are skipped.
+   * {@code paths} is iterated lazily, so a directory tree can be deleted while it's being listed:
+   *
+   * <pre>   {@code
+   * try (DirectoryStream<Path> tree = provider.newRecursiveDirectoryStream(dir, filter)) {
+   *   provider.deleteAll(tree);
+   * }}</pre>
+   *
+   * @return the number of objects deleted, not counting the paths whose object didn't exist
+   */
+  public long deleteAll(final Iterable<? extends Path> paths) throws IOException {
+    checkNotNull(paths);
+    // the paths sent whose result wasn't consumed yet, results are returned in the same order
+    final Deque<CloudStoragePath> sent = new ArrayDeque<>();
+    Iterable<BlobId> blobIds = new Iterable<BlobId>() {
+      @Override
+      public Iterator<BlobId> iterator() {
+        final Iterator<? extends Path> pathIterator = paths.iterator();
+        return new AbstractIterator<BlobId>() {
+          @Override
+          protected BlobId computeNext() {
+            while (pathIterator.hasNext()) {
+              CloudStoragePath cloudPath = CloudStorageUtil.checkPath(pathIterator.next());
+              if (!cloudPath.seemsLikeADirectoryAndUsePseudoDirectories()) {
+                sent.add(cloudPath);
+                return cloudPath.getBlobId();
+              }
+            }
+            return endOfData();
+          }
+        };
+      }
+    };
+    long deleted = 0;
+    try {
+      Iterator<Boolean> results = storage.deleteAll(blobIds);
+      while (results.hasNext()) {
+        boolean result = results.next();
+        // invalidated once the delete completed, so that a concurrent lookup can't cache it again
+        invalidate(sent.remove());
+        if (result) {
+          deleted++;
+        }
+      }
+    } catch (StorageException oops) {
+      throw CloudStorageUtil.asIoException(oops);
+    } finally {
+      // the deletes of a failed batch may or may not have been applied
+      while (!sent.isEmpty()) {
+        invalidate(sent.remove());
+      }
+    }
+    return deleted;
+  }
+
+  private static void invalidate(CloudStoragePath cloudPath) {
+    cloudPath.getFileSystem().attributeCache().invalidate(cloudPath.getBlobId());
+  }
+
+  /**
+   * Returns the attributes of {@code paths}, in the same order, like
+   * {@link #readAttributes(Path, Class, LinkOption...)} but with batch requests: the metadata of
+   * the objects that are not in the {@link CloudStorageConfiguration#attributeCacheMaxEntries()
+   * attribute cache} is fetched 100 objects per request, several requests at a time.
+   *
+   * @return an immutable list of attributes. The attributes of a path whose object does not exist
+   *     are {@code null}.
+   */
+  public List<CloudStorageFileAttributes> readAttributes(Iterable<? extends Path> paths)
+      throws IOException {
+    List<CloudStorageFileAttributes> result = new ArrayList<>();
+    List<Integer> fetchedIndexes = new ArrayList<>();
+    List<CloudStoragePath> fetchedPaths = new ArrayList<>();
+    List<BlobId> fetchedIds = new ArrayList<>();
+    for (Path path : paths) {
+      CloudStoragePath cloudPath = CloudStorageUtil.checkPath(path);
+      if (cloudPath.seemsLikeADirectoryAndUsePseudoDirectories()) {
+        result.add(new CloudStoragePseudoDirectoryAttributes(cloudPath));
+        continue;
+      }
+      BlobInfo cached = cloudPath.getFileSystem().attributeCache().getIfPresent(
+          cloudPath.getBlobId());
+      if (cached != null) {
+        result.add(new CloudStorageObjectAttributes(cached));
+        continue;
+      }
+      fetchedIndexes.add(result.size());
+      fetchedPaths.add(cloudPath);
+      fetchedIds.add(cloudPath.getBlobId());
+      result.add(null);
+    }
+    try {
+      Iterator<Blob> blobs = storage.getAll(fetchedIds);
+      for (int i = 0; blobs.hasNext(); i++) {
+        Blob blob = blobs.next();
+        // null size indicate a file that we haven't closed yet, so GCS treats it as not there yet.
+        if (blob != null && blob.size() != null) {
+          fetchedPaths.get(i).getFileSystem().attributeCache().put(blob);
+          result.set(fetchedIndexes.get(i), new CloudStorageObjectAttributes(blob));
+        }
+      }
+    } catch (StorageException oops) {
+      throw CloudStorageUtil.asIoException(oops);
+    }
+    return Collections.unmodifiableList(result);
+  }
+
   @Override
   public void move(Path source, Path target, CopyOption... options) throws IOException {
     for (CopyOption option : options) {
@@ -360,8 +657,25 @@ public final class CloudStorageFileSystemProvider extends FileSystemProvider {
     delete(source);
   }
 
+  /**
+   * Copies an object within Cloud Storage, or downloads it if {@code target} belongs to another
+   * file system.
+   *
+   * <p>Downloads read {@link CloudStorageConfiguration#blockSize()} ranges of the object
+   * concurrently and write them at their offsets in the target file, then check the CRC32C
+   * checksum of the copy. The JDK only hands {@code Files.copy} to this provider when both paths
+   * belong to it, so downloads should call this method directly:
+   *
+   * <pre>   {@code
+   *   source.getFileSystem().provider().copy(source, Paths.get("/tmp/local"));
+   * }</pre>
+   */
   @Override
   public void copy(Path source, Path target, CopyOption... options) throws IOException {
+    if (source instanceof CloudStoragePath && !(checkNotNull(target) instanceof CloudStoragePath)) {
+      download((CloudStoragePath) source, target, options);
+      return;
+    }
     boolean wantCopyAttributes = false;
     boolean wantReplaceExisting = false;
     boolean setContentType = false;
@@ -441,7 +755,8 @@ public final class CloudStorageFileSystemProvider extends FileSystemProvider {
 
     try {
       if (wantCopyAttributes) {
-        BlobInfo blobInfo = storage.get(fromPath.getBlobId());
+        BlobInfo blobInfo =
+            fromPath.getFileSystem().attributeCache().get(storage, fromPath.getBlobId());
         if (null == blobInfo) {
           throw new NoSuchFileException(fromPath.toString());
         }
@@ -471,8 +786,61 @@ public final class CloudStorageFileSystemProvider extends FileSystemProvider {
       }
       CopyWriter copyWriter = storage.copy(copyReqBuilder.build());
       copyWriter.result();
+      toPath.getFileSystem().attributeCache().invalidate(toPath.getBlobId());
+    } catch (StorageException oops) {
+      throw CloudStorageUtil.asIoException(oops);
+    }
+  }
+
+  private void download(CloudStoragePath source, Path target, CopyOption... options)
+      throws IOException {
+    boolean wantCopyAttributes = false;
+    Set<OpenOption> openOptions = new HashSet<>();
+    openOptions.add(StandardOpenOption.READ);
+    openOptions.add(StandardOpenOption.WRITE);
+    openOptions.add(StandardOpenOption.CREATE_NEW);
+    CloudStorageConfiguration config = source.getFileSystem().config();
+    int blockSize = config.blockSize();
+    for (CopyOption option : options) {
+      if (option == StandardCopyOption.COPY_ATTRIBUTES) {
+        wantCopyAttributes = true;
+      } else if (option == StandardCopyOption.REPLACE_EXISTING) {
+        openOptions.remove(StandardOpenOption.CREATE_NEW);
+        openOptions.add(StandardOpenOption.CREATE);
+        openOptions.add(StandardOpenOption.TRUNCATE_EXISTING);
+      } else if (option instanceof OptionBlockSize) {
+        blockSize = ((OptionBlockSize) option).size();
+      } else {
+        throw new UnsupportedOperationException(option.toString());
+      }
+    }
+
+    BlobInfo blobInfo = getReadableBlob(source);
+    FileChannel channel = FileChannel.open(target, openOptions);
+    boolean complete = false;
+    try (ReadChannel reader = storage.reader(readableBlobId(blobInfo))) {
+      if (!(reader instanceof PositionalReadChannel)) {
+        throw new UnsupportedOperationException("Positional reads are not supported");
+      }
+      CloudStorageParallelDownload.download((PositionalReadChannel) reader, blobInfo.size(),
+          channel, blockSize, config.parallelDownloadThreads());
+      // ranges are read from the generation looked up, the checksum detects a corrupted download
+      if (blobInfo.crc32c() != null
+          && !blobInfo.crc32c().equals(CloudStorageParallelDownload.crc32c(channel))) {
+        throw new IOException(
+            String.format("CRC32C of %s doesn't match the downloaded content", source.toUri()));
+      }
+      complete = true;
     } catch (StorageException oops) {
-      throw asIoException(oops);
+      throw CloudStorageUtil.asIoException(oops);
+    } finally {
+      channel.close();
+      if (!complete) {
+        Files.deleteIfExists(target);
+      }
+    }
+    if (wantCopyAttributes && blobInfo.updateTime() != null) {
+      Files.setLastModifiedTime(target, FileTime.fromMillis(blobInfo.updateTime()));
     }
   }
 
@@ -506,8 +874,12 @@ public final class CloudStorageFileSystemProvider extends FileSystemProvider {
     if (cloudPath.seemsLikeADirectoryAndUsePseudoDirectories()) {
       return;
     }
-    if (storage.get(cloudPath.getBlobId(), Storage.BlobGetOption.fields(Storage.BlobField.ID))
-        == null) {
+    CloudStorageAttributeCache attributeCache = cloudPath.getFileSystem().attributeCache();
+    // with the cache enabled all the fields are fetched, so that they can serve later calls
+    BlobInfo blobInfo = attributeCache.enabled()
+        ? attributeCache.get(storage, cloudPath.getBlobId())
+        : storage.get(cloudPath.getBlobId(), Storage.BlobGetOption.fields(Storage.BlobField.ID));
+    if (blobInfo == null) {
       throw new NoSuchFileException(path.toString());
     }
   }
@@ -526,7 +898,8 @@ public final class CloudStorageFileSystemProvider extends FileSystemProvider {
       A result = (A) new CloudStoragePseudoDirectoryAttributes(cloudPath);
       return result;
     }
-    BlobInfo blobInfo = storage.get(cloudPath.getBlobId());
+    BlobInfo blobInfo =
+        cloudPath.getFileSystem().attributeCache().get(storage, cloudPath.getBlobId());
     // null size indicate a file that we haven't closed yet, so GCS treats it as not there yet.
     if (null == blobInfo || blobInfo.size() == null) {
       throw new NoSuchFileException(
@@ -570,14 +943,17 @@ public final class CloudStorageFileSystemProvider extends FileSystemProvider {
     CloudStorageUtil.checkNotNullArray(attrs);
   }
 
+  /**
+   * Returns a stream over the objects and pseudo-directories in {@code dir}. If {@code filter} is
+   * a {@link CloudStoragePathMatcher}, only the objects starting with its literal prefix are
+   * listed.
+   */
   @Override
   public DirectoryStream<Path> newDirectoryStream(Path dir, final Filter<? super Path> filter) {
     final CloudStoragePath cloudPath = CloudStorageUtil.checkPath(dir);
     checkNotNull(filter);
-    String prefix = cloudPath.toString();
-    final Iterator<Blob> blobIterator = storage.list(cloudPath.bucket(),
-        Storage.BlobListOption.prefix(prefix), Storage.BlobListOption.currentDirectory(),
-        Storage.BlobListOption.fields()).iterateAll();
+    final Iterator<Blob> blobIterator =
+        list(cloudPath, listPrefix(cloudPath, filter), Storage.BlobListOption.currentDirectory());
     return new DirectoryStream<Path>() {
       @Override
       public Iterator<Path> iterator() {
@@ -591,6 +967,71 @@ public final class CloudStorageFileSystemProvider extends FileSystemProvider {
     };
   }
 
+  /**
+   * Returns a stream over the objects below {@code dir}, at any depth, and over the
+   * pseudo-directories that contain them. Each pseudo-directory is returned before its content.
+   *
+   * <p>Unlike {@code Files.walk}, which sends a listing request per directory, the whole tree is
+   * read with a single paginated listing of the objects whose name starts with {@code dir}, and the
+   * pseudo-directories are synthesized from the objects' names. The stream is lazy: it holds at
+   * most one page of the listing in memory. If {@code filter} is a {@link CloudStoragePathMatcher},
+   * only the objects starting with its literal prefix are listed.
+   */
+  public DirectoryStream<Path> newRecursiveDirectoryStream(
+      Path dir, final Filter<? super Path> filter) {
+    final CloudStoragePath cloudPath = CloudStorageUtil.checkPath(dir);
+    checkNotNull(filter);
+    final String prefix = directoryPrefix(cloudPath);
+    final Iterator<Blob> blobIterator = list(cloudPath, listPrefix(cloudPath, filter));
+    return new DirectoryStream<Path>() {
+      @Override
+      public Iterator<Path> iterator() {
+        return new LazyPathIterator(cloudPath.getFileSystem(), blobIterator, filter, prefix);
+      }
+
+      @Override
+      public void close() throws IOException {
+        // Does nothing since there's nothing to close.
+      }
+    };
+  }
+
+  /**
+   * Returns the prefix of the names of the objects in {@code dir}.
+   */
+  static String directoryPrefix(CloudStoragePath dir) {
+    String name = dir.getBlobId().name();
+    return name.isEmpty() || name.endsWith("/") ? name : name + "/";
+  }
+
+  /**
+   * Returns the prefix of the objects to list in {@code dir}: the literal prefix of
+   * {@code filter}'s pattern if {@code filter} is a {@link CloudStoragePathMatcher} and the
+   * pattern is limited to {@code dir}, else the prefix of {@code dir}.
+   */
+  private static String listPrefix(CloudStoragePath dir, Filter<? super Path> filter) {
+    String prefix = directoryPrefix(dir);
+    if (filter instanceof CloudStoragePathMatcher) {
+      String literalPrefix = ((CloudStoragePathMatcher) filter).literalPrefix();
+      if (literalPrefix.startsWith(prefix)) {
+        return literalPrefix;
+      }
+    }
+    return prefix;
+  }
+
+  private Iterator<Blob> list(CloudStoragePath dir, String prefix,
+      Storage.BlobListOption... options) {
+    List<Storage.BlobListOption> listOptions = new ArrayList<>(Arrays.asList(options));
+    listOptions.add(Storage.BlobListOption.prefix(prefix));
+    if (!dir.getFileSystem().attributeCache().enabled()) {
+      // only names are needed, unless the listed objects' metadata can be cached
+      listOptions.add(Storage.BlobListOption.fields());
+    }
+    return storage.list(dir.bucket(),
+        listOptions.toArray(new Storage.BlobListOption[listOptions.size()])).iterateAll();
+  }
+
   /**
    * Throws {@link UnsupportedOperationException} because Cloud Storage objects are immutable.
    */
@@ -600,11 +1041,11 @@ public final class CloudStorageFileSystemProvider extends FileSystemProvider {
   }
 
   /**
-   * Throws {@link UnsupportedOperationException} because this feature hasn't been implemented yet.
+   * Returns the {@link CloudStorageFileStore} of the path's file system.
    */
   @Override
-  public FileStore getFileStore(Path path) {
-    throw new UnsupportedOperationException();
+  public CloudStorageFileStore getFileStore(Path path) {
+    return CloudStorageUtil.checkPath(path).getFileSystem().fileStore();
   }
 
   @Override
@@ -623,25 +1064,4 @@ public final class CloudStorageFileSystemProvider extends FileSystemProvider {
   public String toString() {
     return MoreObjects.toStringHelper(this).add("storage", storage).toString();
   }
-
-  private IOException asIoException(StorageException oops) {
-    // RPC API can only throw StorageException, but CloudStorageFileSystemProvider
-    // can only throw IOException. Square peg, round hole.
-    // TODO(#810): Research if other codes should be translated similarly.
-    if (oops.code() == 404) {
-      return new NoSuchFileException(oops.reason());
-    }
-
-    Throwable cause = oops.getCause();
-    try {
-      if (cause instanceof FileAlreadyExistsException) {
-        throw new FileAlreadyExistsException(((FileAlreadyExistsException) cause).getReason());
-      }
-      // fallback
-      Throwables.propagateIfInstanceOf(oops.getCause(), IOException.class);
-    } catch (IOException okEx) {
-      return okEx;
-    }
-    return new IOException(oops.getMessage(), oops);
-  }
 }
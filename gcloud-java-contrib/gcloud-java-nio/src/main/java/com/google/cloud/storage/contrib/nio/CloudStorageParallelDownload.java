@@ -0,0 +1,121 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage.contrib.nio;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.cloud.storage.PositionalReadChannel;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.BaseEncoding;
+import com.google.common.primitives.Ints;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+/**
+ * Downloads an object into a local file with concurrent ranged reads.
+ *
+ * <p>The object is split in ranges of {@code rangeSize} bytes. Up to {@code threads} ranges are
+ * read at once with positional reads, and each is written at its offset in the file with a
+ * positional write, so ranges don't have to complete in order.
+ */
+final class CloudStorageParallelDownload {
+
+  private static final int CHECKSUM_BUFFER_SIZE = 64 * 1024;
+
+  /**
+   * Copies the first {@code size} bytes read from {@code source} into {@code target}, whose size
+   * is set to {@code size} first.
+   *
+   * @throws EOFException if the object is shorter than {@code size}
+   */
+  static void download(final PositionalReadChannel source, long size, final FileChannel target,
+      final int rangeSize, int threads) throws IOException {
+    checkArgument(rangeSize > 0, "rangeSize must be > 0: %s", rangeSize);
+    checkArgument(threads > 0, "threads must be > 0: %s", threads);
+    if (size > 0) {
+      // allocates the file, so that ranges are written into place
+      target.write(ByteBuffer.allocate(1), size - 1);
+    }
+    Deque<Future<?>> ranges = new ArrayDeque<>();
+    try {
+      for (long position = 0; position < size; position += rangeSize) {
+        while (ranges.size() >= threads) {
+          CloudStorageUtil.await(ranges.removeFirst());
+        }
+        final long start = position;
+        final int length = (int) Math.min(rangeSize, size - position);
+        ranges.addLast(CloudStorageUtil.EXECUTOR.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws IOException {
+            copyRange(source, target, start, length);
+            return null;
+          }
+        }));
+      }
+      while (!ranges.isEmpty()) {
+        CloudStorageUtil.await(ranges.removeFirst());
+      }
+    } finally {
+      for (Future<?> range : ranges) {
+        range.cancel(false);
+      }
+    }
+  }
+
+  private static void copyRange(PositionalReadChannel source, FileChannel target, long start,
+      int length) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+    while (buffer.hasRemaining()) {
+      if (source.read(buffer, start + buffer.position()) < 0) {
+        throw new EOFException(
+            String.format("Object ended at %d, expected %d bytes", start + buffer.position(),
+                start + length));
+      }
+    }
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      target.write(buffer, start + buffer.position());
+    }
+  }
+
+  /**
+   * Returns the base64-encoded big-endian CRC32C checksum of the content of {@code file}, in the
+   * format of {@code BlobInfo#crc32c()}.
+   */
+  static String crc32c(FileChannel file) throws IOException {
+    Hasher hasher = Hashing.crc32c().newHasher();
+    ByteBuffer buffer = ByteBuffer.allocate(CHECKSUM_BUFFER_SIZE);
+    long position = 0;
+    int amt;
+    while ((amt = file.read(buffer, position)) > 0) {
+      hasher.putBytes(buffer.array(), 0, amt);
+      position += amt;
+      buffer.clear();
+    }
+    return BaseEncoding.base64().encode(Ints.toByteArray(hasher.hash().asInt()));
+  }
+
+  private CloudStorageParallelDownload() {}
+}
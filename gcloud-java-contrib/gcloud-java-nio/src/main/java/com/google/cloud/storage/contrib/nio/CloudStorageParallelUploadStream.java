@@ -0,0 +1,224 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage.contrib.nio;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.BlobInfo;
+import com.google.cloud.storage.Storage;
+import com.google.cloud.storage.Storage.BlobTargetOption;
+import com.google.cloud.storage.Storage.ComposeRequest;
+import com.google.cloud.storage.StorageException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Cloud Storage output stream that uploads its content in parallel parts.
+ *
+ * <p>Every {@code partSize} bytes written are uploaded in the background as a temporary object
+ * named after the target, with at most {@code threads} parts in flight. Closing the stream uploads
+ * the last part and composes the parts into the target object, 32 at a time, then deletes them.
+ * Content smaller than a part is uploaded with a single request.
+ *
+ * @see CloudStorageConfiguration#parallelUploadPartSize()
+ */
+@NotThreadSafe
+final class CloudStorageParallelUploadStream extends OutputStream {
+
+  /**
+   * Maximum number of source objects of a compose request.
+   */
+  static final int MAX_COMPOSE_SOURCES = 32;
+
+  private final Storage storage;
+  private final BlobInfo target;
+  private final BlobTargetOption[] targetOptions;
+  private final int partSize;
+  private final int threads;
+  private final CloudStorageAttributeCache attributeCache;
+  private final String partPrefix;
+  private final List<String> parts = new ArrayList<>();
+  private final Deque<Future<?>> uploads = new ArrayDeque<>();
+  private byte[] buffer;
+  private int count;
+  private boolean closed;
+
+  CloudStorageParallelUploadStream(Storage storage, BlobInfo target,
+      List<BlobTargetOption> targetOptions, int partSize, int threads,
+      CloudStorageAttributeCache attributeCache) {
+    checkArgument(partSize > 0, "partSize must be > 0: %s", partSize);
+    checkArgument(threads > 0, "threads must be > 0: %s", threads);
+    this.storage = storage;
+    this.target = target;
+    this.targetOptions = targetOptions.toArray(new BlobTargetOption[targetOptions.size()]);
+    this.partSize = partSize;
+    this.threads = threads;
+    this.attributeCache = attributeCache;
+    this.partPrefix = String.format("%s.part-%s-", target.name(), UUID.randomUUID());
+    this.buffer = new byte[partSize];
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    checkOpen();
+    buffer[count++] = (byte) b;
+    if (count == partSize) {
+      uploadPart();
+    }
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    checkOpen();
+    if (off < 0 || len < 0 || off + len > b.length) {
+      throw new IndexOutOfBoundsException();
+    }
+    while (len > 0) {
+      int amt = Math.min(len, partSize - count);
+      System.arraycopy(b, off, buffer, count, amt);
+      count += amt;
+      off += amt;
+      len -= amt;
+      if (count == partSize) {
+        uploadPart();
+      }
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    attributeCache.invalidate(target.blobId());
+    try {
+      if (parts.isEmpty()) {
+        storage.create(target, Arrays.copyOf(buffer, count), targetOptions);
+      } else {
+        if (count > 0) {
+          uploadPart();
+        }
+        while (!uploads.isEmpty()) {
+          CloudStorageUtil.await(uploads.removeFirst());
+        }
+        compose(new ArrayList<>(parts));
+      }
+    } catch (StorageException oops) {
+      throw CloudStorageUtil.asIoException(oops);
+    } finally {
+      buffer = null;
+      deleteParts();
+      attributeCache.invalidate(target.blobId());
+    }
+  }
+
+  /**
+   * Uploads the buffer as the next part, after waiting for the oldest upload if {@code threads}
+   * parts are in flight.
+   */
+  private void uploadPart() throws IOException {
+    while (uploads.size() >= threads) {
+      CloudStorageUtil.await(uploads.removeFirst());
+    }
+    final BlobInfo part = BlobInfo.builder(target.bucket(), partName(parts.size())).build();
+    final byte[] content = count == partSize ? buffer : Arrays.copyOf(buffer, count);
+    parts.add(part.name());
+    uploads.addLast(CloudStorageUtil.EXECUTOR.submit(new Callable<Void>() {
+      @Override
+      public Void call() {
+        storage.create(part, content);
+        return null;
+      }
+    }));
+    buffer = new byte[partSize];
+    count = 0;
+  }
+
+  /**
+   * Composes {@code sources} into the target, through intermediate temporary objects when there
+   * are more than {@link #MAX_COMPOSE_SOURCES} of them.
+   */
+  private void compose(List<String> sources) {
+    while (sources.size() > MAX_COMPOSE_SOURCES) {
+      List<String> composed = new ArrayList<>();
+      for (int i = 0; i < sources.size(); i += MAX_COMPOSE_SOURCES) {
+        List<String> group =
+            sources.subList(i, Math.min(i + MAX_COMPOSE_SOURCES, sources.size()));
+        if (group.size() == 1) {
+          composed.add(group.get(0));
+          continue;
+        }
+        BlobInfo intermediate = BlobInfo.builder(target.bucket(), partName(parts.size())).build();
+        parts.add(intermediate.name());
+        storage.compose(ComposeRequest.builder().addSource(group).target(intermediate).build());
+        composed.add(intermediate.name());
+      }
+      sources = composed;
+    }
+    storage.compose(ComposeRequest.builder()
+        .addSource(sources)
+        .target(target)
+        .targetOptions(targetOptions)
+        .build());
+  }
+
+  /**
+   * Deletes the temporary objects, once their uploads are done. Deletion is best effort, so that
+   * it doesn't hide the outcome of the upload.
+   */
+  private void deleteParts() {
+    for (Future<?> upload : uploads) {
+      try {
+        CloudStorageUtil.await(upload);
+      } catch (IOException | RuntimeException ignored) {
+        // the first failure was reported already
+      }
+    }
+    uploads.clear();
+    for (String part : parts) {
+      try {
+        storage.delete(BlobId.of(target.bucket(), part));
+      } catch (StorageException ignored) {
+        // the part stays in the bucket
+      }
+    }
+    parts.clear();
+  }
+
+  private String partName(int index) {
+    return partPrefix + index;
+  }
+
+  private void checkOpen() throws IOException {
+    if (closed) {
+      throw new IOException("Stream closed");
+    }
+  }
+}
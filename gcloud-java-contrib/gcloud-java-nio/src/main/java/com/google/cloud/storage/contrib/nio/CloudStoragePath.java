@@ -23,10 +23,12 @@ import com.google.cloud.storage.BlobId;
 import com.google.common.collect.UnmodifiableIterator;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.file.LinkOption;
 import java.nio.file.Path;
+import java.nio.file.ProviderMismatchException;
 import java.nio.file.WatchEvent.Kind;
 import java.nio.file.WatchEvent.Modifier;
 import java.nio.file.WatchKey;
@@ -239,21 +241,34 @@ public final class CloudStoragePath implements Path {
   }
 
   /**
-   * Throws {@link UnsupportedOperationException} because this feature hasn't been implemented yet.
+   * Registers this path as a directory with a watch service returned by
+   * {@link CloudStorageFileSystem#newWatchService()}. The directory is listed once by this call,
+   * and events are reported relative to that listing.
+   *
+   * @throws ProviderMismatchException if {@code watcher} is not a Cloud Storage watch service
+   * @throws UnsupportedOperationException if a modifier or kind of event is not supported
    */
   @Override
-  public WatchKey register(WatchService watcher, Kind<?>[] events, Modifier... modifiers) {
-    // TODO: Implement me.
-    throw new UnsupportedOperationException();
+  public WatchKey register(WatchService watcher, Kind<?>[] events, Modifier... modifiers)
+      throws IOException {
+    if (!(checkNotNull(watcher) instanceof CloudStorageWatchService)) {
+      throw new ProviderMismatchException();
+    }
+    if (modifiers.length > 0) {
+      throw new UnsupportedOperationException(modifiers[0].name());
+    }
+    return ((CloudStorageWatchService) watcher).register(this, events);
   }
 
   /**
-   * Throws {@link UnsupportedOperationException} because this feature hasn't been implemented yet.
+   * Registers this path as a directory with a watch service returned by
+   * {@link CloudStorageFileSystem#newWatchService()}.
+   *
+   * @see #register(WatchService, Kind[], Modifier...)
    */
   @Override
-  public WatchKey register(WatchService watcher, Kind<?>... events) {
-    // TODO: Implement me.
-    throw new UnsupportedOperationException();
+  public WatchKey register(WatchService watcher, Kind<?>... events) throws IOException {
+    return register(watcher, events, new Modifier[0]);
   }
 
   /**
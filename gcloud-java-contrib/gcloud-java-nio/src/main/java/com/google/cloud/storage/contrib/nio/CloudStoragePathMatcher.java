@@ -0,0 +1,320 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage.contrib.nio;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.base.Strings;
+
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.PatternSyntaxException;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Glob {@link PathMatcher} returned by {@link CloudStorageFileSystem#getPathMatcher(String)}. The
+ * syntax is the one described by {@link FileSystem#getPathMatcher(String)}: {@code *} matches
+ * within a path component, {@code **} across components, {@code ?} matches a character,
+ * {@code [...]} a character class and {@code {a,b}} a group of alternatives.
+ *
+ * <p>A matcher is also a directory stream filter. When it is passed to
+ * {@link CloudStorageFileSystemProvider#newDirectoryStream} or
+ * {@link CloudStorageFileSystemProvider#newRecursiveDirectoryStream}, the literal prefix of the
+ * pattern (e.g. {@code logs/2016-10-} for {@code logs/2016-10-??/part-*}) is used to list
+ * only the objects that may match. Listed paths are relative to the bucket's root, so the pattern
+ * must match whole object names:
+ *
+ * <pre>   {@code
+ *   CloudStoragePathMatcher matcher =
+ *       (CloudStoragePathMatcher) fs.getPathMatcher("glob:logs/2016-10-??/part-*");
+ *   try (DirectoryStream<Path> stream =
+ *       fs.provider().newRecursiveDirectoryStream(fs.getPath("logs/"), matcher)) {
+ *     ...
+ *   }}</pre>
+ *
+ * <p>Matching doesn't allocate memory. The trailing slash of pseudo-directories is ignored.
+ */
+@Immutable
+public final class CloudStoragePathMatcher implements PathMatcher, DirectoryStream.Filter<Path> {
+
+  private static final byte LITERAL = 0;
+  private static final byte ANY_CHAR = 1;
+  private static final byte CHAR_CLASS = 2;
+  private static final byte STAR = 3;
+  private static final byte DOUBLE_STAR = 4;
+
+  private final String pattern;
+  private final List<Glob> alternatives;
+  private final String literalPrefix;
+
+  /**
+   * A glob without groups, compiled to a sequence of tokens.
+   */
+  private static final class Glob {
+
+    final byte[] types;
+    final char[] chars;
+    // for each CHAR_CLASS token, pairs of inclusive bounds
+    final char[][] ranges;
+    final boolean[] negated;
+    final int length;
+    final String literalPrefix;
+
+    Glob(String glob, String pattern) {
+      int length = glob.length();
+      types = new byte[length];
+      chars = new char[length];
+      ranges = new char[length][];
+      negated = new boolean[length];
+      int count = 0;
+      int firstWildcard = -1;
+      for (int i = 0; i < length; i++) {
+        char c = glob.charAt(i);
+        switch (c) {
+          case '\\':
+            if (++i == length) {
+              throw new PatternSyntaxException("No character to escape", pattern, i - 1);
+            }
+            types[count] = LITERAL;
+            chars[count] = glob.charAt(i);
+            break;
+          case '*':
+            if (i + 1 < length && glob.charAt(i + 1) == '*') {
+              types[count] = DOUBLE_STAR;
+              i++;
+            } else {
+              types[count] = STAR;
+            }
+            break;
+          case '?':
+            types[count] = ANY_CHAR;
+            break;
+          case '[':
+            i = parseClass(glob, i + 1, count, pattern);
+            types[count] = CHAR_CLASS;
+            break;
+          default:
+            types[count] = LITERAL;
+            chars[count] = c;
+        }
+        if (firstWildcard < 0 && types[count] != LITERAL) {
+          firstWildcard = count;
+        }
+        count++;
+      }
+      this.length = count;
+      this.literalPrefix = new String(chars, 0, firstWildcard < 0 ? count : firstWildcard);
+    }
+
+    private int parseClass(String glob, int start, int token, String pattern) {
+      StringBuilder bounds = new StringBuilder();
+      int i = start;
+      if (i < glob.length() && glob.charAt(i) == '!') {
+        negated[token] = true;
+        i++;
+      }
+      for (; i < glob.length() && glob.charAt(i) != ']'; i++) {
+        char low = glob.charAt(i);
+        char high = low;
+        if (i + 2 < glob.length() && glob.charAt(i + 1) == '-' && glob.charAt(i + 2) != ']') {
+          high = glob.charAt(i + 2);
+          i += 2;
+        }
+        if (low == '/' || high == '/') {
+          throw new PatternSyntaxException("Explicit '/' in class", pattern, i);
+        }
+        bounds.append(low).append(high);
+      }
+      if (i == glob.length()) {
+        throw new PatternSyntaxException("Missing ']'", pattern, start - 1);
+      }
+      ranges[token] = bounds.toString().toCharArray();
+      return i;
+    }
+
+    boolean matches(CharSequence name, int token, int position, int end) {
+      while (token < length) {
+        switch (types[token]) {
+          case LITERAL:
+            if (position == end || name.charAt(position) != chars[token]) {
+              return false;
+            }
+            break;
+          case ANY_CHAR:
+            if (position == end || name.charAt(position) == '/') {
+              return false;
+            }
+            break;
+          case CHAR_CLASS:
+            if (position == end || !inClass(token, name.charAt(position))) {
+              return false;
+            }
+            break;
+          default:
+            boolean crossesComponents = types[token] == DOUBLE_STAR;
+            for (int i = position; i <= end; i++) {
+              if (matches(name, token + 1, i, end)) {
+                return true;
+              }
+              if (i < end && !crossesComponents && name.charAt(i) == '/') {
+                return false;
+              }
+            }
+            return false;
+        }
+        token++;
+        position++;
+      }
+      return position == end;
+    }
+
+    private boolean inClass(int token, char c) {
+      if (c == '/') {
+        return false;
+      }
+      char[] bounds = ranges[token];
+      boolean found = false;
+      for (int i = 0; i < bounds.length && !found; i += 2) {
+        found = bounds[i] <= c && c <= bounds[i + 1];
+      }
+      return found != negated[token];
+    }
+  }
+
+  private CloudStoragePathMatcher(String pattern) {
+    this.pattern = pattern;
+    List<Glob> globs = new ArrayList<>();
+    String prefix = null;
+    for (String glob : expandGroups(pattern, 0)) {
+      Glob compiled = new Glob(glob, pattern);
+      globs.add(compiled);
+      prefix = prefix == null
+          ? compiled.literalPrefix
+          : Strings.commonPrefix(prefix, compiled.literalPrefix);
+    }
+    this.alternatives = Collections.unmodifiableList(globs);
+    this.literalPrefix = prefix;
+  }
+
+  /**
+   * Returns a matcher for a glob pattern.
+   *
+   * @throws PatternSyntaxException if the pattern is invalid
+   */
+  static CloudStoragePathMatcher glob(String pattern) {
+    return new CloudStoragePathMatcher(checkNotNull(pattern));
+  }
+
+  /**
+   * Returns the characters that all the matching names start with.
+   */
+  String literalPrefix() {
+    return literalPrefix;
+  }
+
+  /**
+   * Returns {@code true} if {@code name}, ignoring a trailing slash, matches the pattern.
+   */
+  boolean matches(CharSequence name) {
+    int end = name.length();
+    if (end > 0 && name.charAt(end - 1) == '/') {
+      end--;
+    }
+    for (int i = 0; i < alternatives.size(); i++) {
+      if (alternatives.get(i).matches(name, 0, 0, end)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns {@code true} if the string representation of {@code path} matches the pattern.
+   */
+  @Override
+  public boolean matches(Path path) {
+    return matches(path.toString());
+  }
+
+  @Override
+  public boolean accept(Path entry) {
+    return matches(entry);
+  }
+
+  @Override
+  public String toString() {
+    return "glob:" + pattern;
+  }
+
+  /**
+   * Returns the globs without groups that {@code pattern}, starting at {@code start}, is
+   * equivalent to.
+   */
+  private static List<String> expandGroups(String pattern, int start) {
+    int open = -1;
+    boolean inClass = false;
+    for (int i = start; i < pattern.length() && open < 0; i++) {
+      char c = pattern.charAt(i);
+      if (c == '\\') {
+        i++;
+      } else if (c == '[') {
+        inClass = true;
+      } else if (c == ']') {
+        inClass = false;
+      } else if (c == '{' && !inClass) {
+        open = i;
+      }
+    }
+    if (open < 0) {
+      return Collections.singletonList(pattern.substring(start));
+    }
+    List<String> choices = new ArrayList<>();
+    int choiceStart = open + 1;
+    int close = -1;
+    for (int i = open + 1; i < pattern.length() && close < 0; i++) {
+      char c = pattern.charAt(i);
+      if (c == '\\') {
+        i++;
+      } else if (c == '{') {
+        throw new PatternSyntaxException("Cannot nest groups", pattern, i);
+      } else if (c == ',' || c == '}') {
+        choices.add(pattern.substring(choiceStart, i));
+        choiceStart = i + 1;
+        if (c == '}') {
+          close = i;
+        }
+      }
+    }
+    if (close < 0) {
+      throw new PatternSyntaxException("Missing '}'", pattern, open);
+    }
+    String head = pattern.substring(start, open);
+    List<String> globs = new ArrayList<>();
+    for (String tail : expandGroups(pattern, close + 1)) {
+      for (String choice : choices) {
+        globs.add(head + choice + tail);
+      }
+    }
+    return globs;
+  }
+}
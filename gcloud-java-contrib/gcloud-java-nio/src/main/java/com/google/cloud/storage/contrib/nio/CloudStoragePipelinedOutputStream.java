@@ -0,0 +1,130 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage.contrib.nio;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Output stream that writes full buffers to a channel in the background, so that the caller fills
+ * one buffer while the previous one is being sent.
+ */
+@NotThreadSafe
+final class CloudStoragePipelinedOutputStream extends OutputStream {
+
+  private final WritableByteChannel channel;
+  private ByteBuffer buffer;
+  private ByteBuffer spare;
+  @Nullable private Future<?> pending;
+  private boolean closed;
+
+  CloudStoragePipelinedOutputStream(WritableByteChannel channel, int bufferSize) {
+    checkArgument(bufferSize > 0, "bufferSize must be > 0: %s", bufferSize);
+    this.channel = channel;
+    this.buffer = ByteBuffer.allocate(bufferSize);
+    this.spare = ByteBuffer.allocate(bufferSize);
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    checkOpen();
+    buffer.put((byte) b);
+    if (!buffer.hasRemaining()) {
+      writeInBackground();
+    }
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    checkOpen();
+    if (off < 0 || len < 0 || off + len > b.length) {
+      throw new IndexOutOfBoundsException();
+    }
+    while (len > 0) {
+      int amt = Math.min(len, buffer.remaining());
+      buffer.put(b, off, amt);
+      off += amt;
+      len -= amt;
+      if (!buffer.hasRemaining()) {
+        writeInBackground();
+      }
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      awaitPending();
+      buffer.flip();
+      writeFully(channel, buffer);
+    } finally {
+      channel.close();
+    }
+  }
+
+  /**
+   * Hands the full buffer to a background write, once the previous one is done.
+   */
+  private void writeInBackground() throws IOException {
+    awaitPending();
+    final ByteBuffer full = buffer;
+    full.flip();
+    pending = CloudStorageUtil.EXECUTOR.submit(new Callable<Void>() {
+      @Override
+      public Void call() throws IOException {
+        writeFully(channel, full);
+        return null;
+      }
+    });
+    buffer = spare;
+    spare = full;
+  }
+
+  private void awaitPending() throws IOException {
+    if (pending != null) {
+      Future<?> write = pending;
+      pending = null;
+      CloudStorageUtil.await(write);
+      spare.clear();
+    }
+  }
+
+  private static void writeFully(WritableByteChannel channel, ByteBuffer src) throws IOException {
+    while (src.hasRemaining()) {
+      channel.write(src);
+    }
+  }
+
+  private void checkOpen() throws IOException {
+    if (closed) {
+      throw new IOException("Stream closed");
+    }
+  }
+}
@@ -49,8 +49,17 @@ final class CloudStorageReadChannel implements SeekableByteChannel {
   @SuppressWarnings("resource")
   static CloudStorageReadChannel create(Storage gcsStorage, BlobId file, long position)
       throws IOException {
+    return create(gcsStorage, file, position, fetchSize(gcsStorage, file));
+  }
+
+  /**
+   * Creates a channel for an object whose size is already known, e.g. from cached metadata.
+   */
+  @CheckReturnValue
+  @SuppressWarnings("resource")
+  static CloudStorageReadChannel create(Storage gcsStorage, BlobId file, long position, long size)
+      throws IOException {
     // XXX: Reading size and opening file should be atomic.
-    long size = fetchSize(gcsStorage, file);
     ReadChannel channel = gcsStorage.reader(file);
     if (position > 0) {
       channel.seek((int) position);
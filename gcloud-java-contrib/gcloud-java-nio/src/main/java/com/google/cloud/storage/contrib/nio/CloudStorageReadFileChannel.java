@@ -0,0 +1,356 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage.contrib.nio;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.cloud.storage.PositionalReadChannel;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Read-only {@link FileChannel} for a Cloud Storage object, for libraries that require file
+ * channels (e.g. to read with {@link #read(ByteBuffer, long)} or {@link #transferTo}).
+ *
+ * <p>Positional reads do not use the channel's position and can be issued concurrently by
+ * multiple threads. Reads larger than {@link CloudStorageConfiguration#blockSize()} are split into
+ * blocks, up to {@link CloudStorageConfiguration#parallelDownloadThreads()} of which are fetched
+ * concurrently besides the first one. {@link #transferTo} fetches the next block while writing
+ * the current one to the target channel.
+ *
+ * <p>Objects can't be memory-mapped: {@link #map} copies the requested region, fetching its blocks
+ * concurrently, to a temporary file and maps that file, which is deleted once mapped. The channel
+ * doesn't support writes and file locks.
+ *
+ * @see CloudStorageBlockReadChannel
+ */
+@ThreadSafe
+final class CloudStorageReadFileChannel extends FileChannel {
+
+  private final PositionalReadChannel channel;
+  private final long size;
+  private final int blockSize;
+  private final int parallelReads;
+  private long position;
+
+  CloudStorageReadFileChannel(PositionalReadChannel channel, long size, int blockSize,
+      int parallelReads) {
+    checkArgument(blockSize > 0, "blockSize must be > 0: %s", blockSize);
+    checkArgument(parallelReads > 0, "parallelReads must be > 0: %s", parallelReads);
+    this.channel = channel;
+    this.size = size;
+    this.blockSize = blockSize;
+    this.parallelReads = parallelReads;
+  }
+
+  @Override
+  public int read(ByteBuffer dst) throws IOException {
+    synchronized (this) {
+      int read = read(dst, position);
+      if (read > 0) {
+        position += read;
+      }
+      return read;
+    }
+  }
+
+  @Override
+  public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+    synchronized (this) {
+      long total = 0;
+      for (int i = offset; i < offset + length; i++) {
+        if (!dsts[i].hasRemaining()) {
+          continue;
+        }
+        int read = read(dsts[i]);
+        if (read < 0) {
+          return total == 0 ? -1 : total;
+        }
+        total += read;
+        if (dsts[i].hasRemaining()) {
+          break;
+        }
+      }
+      return total;
+    }
+  }
+
+  /**
+   * Reads bytes starting at {@code position}, without changing the channel's position. Reads of
+   * more than one block fetch the blocks concurrently. The blocks are written directly into
+   * {@code dst}, so all the blocks started are complete when this method returns or throws.
+   */
+  @Override
+  public int read(ByteBuffer dst, long position) throws IOException {
+    checkArgument(position >= 0, "position must be >= 0: %s", position);
+    checkOpen();
+    if (position >= size) {
+      return -1;
+    }
+    int length = (int) Math.min(dst.remaining(), size - position);
+    if (length <= blockSize) {
+      int read = readFully(dst, position, length);
+      dst.position(dst.position() + read);
+      return read == 0 && length > 0 ? -1 : read;
+    }
+    // the first block is read by the calling thread, up to parallelReads others by the executor
+    int blocks = (int) ((length + (long) blockSize - 1) / blockSize);
+    List<Future<Integer>> parts = new ArrayList<>(blocks - 1);
+    try {
+      while (parts.size() < Math.min(blocks - 1, parallelReads)) {
+        parts.add(readBlock(dst, position, parts.size() + 1, length));
+      }
+      int read = readFully(dst, position, blockSize);
+      // only the bytes up to the first short block are returned, no block is started after it
+      for (int i = 0; i < parts.size() && read == (long) (i + 1) * blockSize; i++) {
+        read += CloudStorageUtil.await(parts.get(i));
+        if (parts.size() < blocks - 1 && read == (long) (i + 2) * blockSize) {
+          parts.add(readBlock(dst, position, parts.size() + 1, length));
+        }
+      }
+      dst.position(dst.position() + read);
+      return read == 0 ? -1 : read;
+    } finally {
+      // a running block can't be cancelled, it would keep writing into dst
+      for (Future<Integer> part : parts) {
+        waitFor(part);
+      }
+    }
+  }
+
+  @Override
+  public long position() throws IOException {
+    synchronized (this) {
+      checkOpen();
+      return position;
+    }
+  }
+
+  @Override
+  public FileChannel position(long newPosition) throws IOException {
+    checkArgument(newPosition >= 0);
+    synchronized (this) {
+      checkOpen();
+      position = newPosition;
+      return this;
+    }
+  }
+
+  @Override
+  public long size() throws IOException {
+    checkOpen();
+    return size;
+  }
+
+  /**
+   * Writes the object's bytes starting at {@code position} to {@code target}. Blocks are fetched
+   * one ahead of the block being written.
+   */
+  @Override
+  public long transferTo(long position, long count, WritableByteChannel target)
+      throws IOException {
+    checkArgument(position >= 0, "position must be >= 0: %s", position);
+    checkArgument(count >= 0, "count must be >= 0: %s", count);
+    checkOpen();
+    long end = position + Math.min(count, Math.max(0, size - position));
+    long offset = position;
+    long transferred = 0;
+    Future<ByteBuffer> next = offset < end ? fetch(offset, end) : null;
+    try {
+      while (next != null) {
+        ByteBuffer block = CloudStorageUtil.await(next);
+        offset += block.remaining();
+        next = block.hasRemaining() && offset < end ? fetch(offset, end) : null;
+        while (block.hasRemaining()) {
+          int written = target.write(block);
+          if (written == 0) {
+            // non-blocking target that can't take more bytes
+            return transferred;
+          }
+          transferred += written;
+        }
+      }
+      return transferred;
+    } finally {
+      if (next != null) {
+        next.cancel(false);
+      }
+    }
+  }
+
+  @Override
+  public long transferFrom(ReadableByteChannel src, long position, long count) {
+    throw new NonWritableChannelException();
+  }
+
+  /**
+   * Maps a region of the object, copied to a temporary file. Only
+   * {@link FileChannel.MapMode#READ_ONLY} is supported.
+   *
+   * @throws NonWritableChannelException if {@code mode} isn't {@code READ_ONLY}
+   */
+  @Override
+  public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+    if (mode != MapMode.READ_ONLY) {
+      throw new NonWritableChannelException();
+    }
+    checkArgument(position >= 0, "position must be >= 0: %s", position);
+    checkArgument(size >= 0 && size <= Integer.MAX_VALUE, "invalid size: %s", size);
+    checkOpen();
+    Path copy = Files.createTempFile("gcloud-nio-", ".map");
+    try (FileChannel local = FileChannel.open(copy, StandardOpenOption.READ,
+        StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE)) {
+      MappedByteBuffer region = local.map(MapMode.READ_WRITE, 0, size);
+      while (region.hasRemaining() && read(region, position + region.position()) > 0) {
+        // keep reading until the end of the region or of the object
+      }
+      // the mapping stays valid after the file is closed and deleted
+      return local.map(MapMode.READ_ONLY, 0, region.position());
+    }
+  }
+
+  @Override
+  public int write(ByteBuffer src) {
+    throw new NonWritableChannelException();
+  }
+
+  @Override
+  public long write(ByteBuffer[] srcs, int offset, int length) {
+    throw new NonWritableChannelException();
+  }
+
+  @Override
+  public int write(ByteBuffer src, long position) {
+    throw new NonWritableChannelException();
+  }
+
+  @Override
+  public FileChannel truncate(long size) {
+    throw new NonWritableChannelException();
+  }
+
+  /**
+   * Does nothing, since the channel can't be written.
+   */
+  @Override
+  public void force(boolean metaData) throws IOException {
+    checkOpen();
+  }
+
+  /**
+   * Throws {@link UnsupportedOperationException} because Cloud Storage doesn't support locks.
+   */
+  @Override
+  public FileLock lock(long position, long size, boolean shared) {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Throws {@link UnsupportedOperationException} because Cloud Storage doesn't support locks.
+   */
+  @Override
+  public FileLock tryLock(long position, long size, boolean shared) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  protected void implCloseChannel() throws IOException {
+    channel.close();
+  }
+
+  /**
+   * Reads up to {@code length} bytes to {@code dst}, stopping early only at the end of the
+   * object. Returns the number of bytes read, without changing {@code dst}'s position.
+   */
+  private int readFully(ByteBuffer dst, long position, int length) throws IOException {
+    ByteBuffer buffer = dst.duplicate();
+    buffer.limit(buffer.position() + length);
+    int start = buffer.position();
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position() - start) < 0) {
+        break;
+      }
+    }
+    return buffer.position() - start;
+  }
+
+  /**
+   * Reads the block of index {@code block} of a read of {@code length} bytes at {@code position}
+   * into {@code dst}, in the background.
+   */
+  private Future<Integer> readBlock(ByteBuffer dst, final long position, int block,
+      final int length) {
+    final long offset = (long) block * blockSize;
+    final ByteBuffer part = dst.duplicate();
+    part.position(dst.position() + (int) offset);
+    return CloudStorageUtil.EXECUTOR.submit(new Callable<Integer>() {
+      @Override
+      public Integer call() throws IOException {
+        return readFully(part, position + offset, (int) Math.min(blockSize, length - offset));
+      }
+    });
+  }
+
+  /**
+   * Waits for a block to complete. Its failure, if any, was already thrown by
+   * {@link CloudStorageUtil#await} or is superseded by the failure being thrown.
+   */
+  private static void waitFor(Future<?> part) {
+    try {
+      Uninterruptibles.getUninterruptibly(part);
+    } catch (ExecutionException ex) {
+      // reported by the read, or superseded by the failure it throws
+    }
+  }
+
+  private Future<ByteBuffer> fetch(final long position, long end) {
+    final int length = (int) Math.min(blockSize, end - position);
+    return CloudStorageUtil.EXECUTOR.submit(new Callable<ByteBuffer>() {
+      @Override
+      public ByteBuffer call() throws IOException {
+        ByteBuffer block = ByteBuffer.allocate(length);
+        block.limit(readFully(block, position, length));
+        return block;
+      }
+    });
+  }
+
+  private void checkOpen() throws ClosedChannelException {
+    if (!isOpen()) {
+      throw new ClosedChannelException();
+    }
+  }
+}
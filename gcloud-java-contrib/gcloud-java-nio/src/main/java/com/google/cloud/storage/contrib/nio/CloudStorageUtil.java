@@ -19,14 +19,36 @@ package com.google.cloud.storage.contrib.nio;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import com.google.cloud.storage.StorageException;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.ProviderMismatchException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Pattern;
 
 final class CloudStorageUtil {
 
+  /**
+   * Executor of the background reads and uploads of the channels and streams.
+   */
+  static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(
+      new ThreadFactoryBuilder()
+          .setDaemon(true)
+          .setNameFormat("gcloud-nio-%d")
+          .build());
+
   private static final Pattern BUCKET_PATTERN = Pattern.compile("[a-z0-9][-._a-z0-9]+[a-z0-9]");
 
   static void checkBucket(String bucket) {
@@ -66,6 +88,49 @@ final class CloudStorageUtil {
     }
   }
 
+  /**
+   * Waits for a background operation, rethrowing its {@link IOException} or runtime exception.
+   */
+  static <T> T await(Future<T> future) throws IOException {
+    try {
+      return Uninterruptibles.getUninterruptibly(future);
+    } catch (ExecutionException | CancellationException ex) {
+      Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new IOException(cause);
+    }
+  }
+
+  static IOException asIoException(StorageException oops) {
+    // RPC API can only throw StorageException, but CloudStorageFileSystemProvider
+    // can only throw IOException. Square peg, round hole.
+    // TODO(#810): Research if other codes should be translated similarly.
+    if (oops.code() == 404) {
+      return new NoSuchFileException(oops.reason());
+    }
+    if (oops.code() == 412) {
+      // the only precondition set by the provider is doesNotExist()
+      return new FileAlreadyExistsException(null, null, oops.getMessage());
+    }
+
+    Throwable cause = oops.getCause();
+    try {
+      if (cause instanceof FileAlreadyExistsException) {
+        throw new FileAlreadyExistsException(((FileAlreadyExistsException) cause).getReason());
+      }
+      // fallback
+      Throwables.propagateIfInstanceOf(oops.getCause(), IOException.class);
+    } catch (IOException okEx) {
+      return okEx;
+    }
+    return new IOException(oops.getMessage(), oops);
+  }
+
   /**
    * Makes {@code NullPointerTester} happy.
    */
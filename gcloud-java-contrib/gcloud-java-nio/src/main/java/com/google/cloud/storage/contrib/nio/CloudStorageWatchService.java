@@ -0,0 +1,509 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage.contrib.nio;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import com.google.cloud.storage.Blob;
+import com.google.cloud.storage.Storage;
+import com.google.cloud.storage.StorageException;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Google Cloud Storage {@link WatchService} implementation, which polls the watched directories.
+ *
+ * <p>Buckets don't notify clients of changes, so each registered directory is listed periodically
+ * and the listing is compared with the previous one. A listing is kept as a snapshot of the names,
+ * generations and sizes of the directory's entries in sorted arrays, which costs a few dozen bytes
+ * per entry and is diffed in a single merge pass. An entry that appears is reported as
+ * {@code ENTRY_CREATE}, one that disappears as {@code ENTRY_DELETE}, and one whose generation or
+ * size changes as {@code ENTRY_MODIFY}. Changes made and undone between two listings are not seen.
+ *
+ * <p>Directories are listed {@link CloudStorageConfiguration#watchPollIntervalMillis()} apart after
+ * a change. Each round that finds no change doubles the wait, up to
+ * {@link CloudStorageConfiguration#watchMaxPollIntervalMillis()}, so idle directories don't cost a
+ * listing request every few seconds.
+ */
+@ThreadSafe
+final class CloudStorageWatchService implements WatchService {
+
+  /**
+   * Maximum number of events a key holds until they're retrieved. Further events are replaced by
+   * a single {@code OVERFLOW} event.
+   */
+  static final int MAX_PENDING_EVENTS = 512;
+
+  private final Storage storage;
+  private final long pollIntervalMillis;
+  private final long maxPollIntervalMillis;
+  private final BlockingQueue<Key> signalledKeys = new LinkedBlockingQueue<>();
+  // put in the queue to wake up the threads waiting on a closed service
+  private final Key closedMarker = new Key(null, "", Collections.<WatchEvent.Kind<?>>emptySet());
+  private final Object scanLock = new Object();
+
+  // guarded by this
+  private final Map<String, Key> keys = new HashMap<>();
+  @Nullable private ScheduledExecutorService scheduler;
+
+  // guarded by scanLock
+  private long delayMillis;
+
+  private volatile boolean closed;
+
+  CloudStorageWatchService(Storage storage, long pollIntervalMillis, long maxPollIntervalMillis) {
+    checkArgument(pollIntervalMillis > 0, "pollIntervalMillis must be > 0: %s", pollIntervalMillis);
+    checkArgument(maxPollIntervalMillis >= pollIntervalMillis,
+        "maxPollIntervalMillis (%s) must not be smaller than pollIntervalMillis (%s)",
+        maxPollIntervalMillis, pollIntervalMillis);
+    this.storage = checkNotNull(storage);
+    this.pollIntervalMillis = pollIntervalMillis;
+    this.maxPollIntervalMillis = maxPollIntervalMillis;
+    this.delayMillis = pollIntervalMillis;
+  }
+
+  /**
+   * Lists {@code dir} and returns a key reporting the changes to it. If {@code dir} is already
+   * registered, its key is returned with its kinds of events replaced by {@code kinds}.
+   *
+   * @throws UnsupportedOperationException if a kind of event is not supported
+   * @throws ClosedWatchServiceException if this service is closed
+   */
+  WatchKey register(CloudStoragePath dir, WatchEvent.Kind<?>... kinds) throws IOException {
+    Set<WatchEvent.Kind<?>> kindSet = new HashSet<>();
+    for (WatchEvent.Kind<?> kind : kinds) {
+      if (kind == ENTRY_CREATE || kind == ENTRY_DELETE || kind == ENTRY_MODIFY) {
+        kindSet.add(kind);
+      } else if (kind != OVERFLOW) {
+        throw new UnsupportedOperationException(checkNotNull(kind).name());
+      }
+    }
+    checkOpen();
+    String prefix = CloudStorageFileSystemProvider.directoryPrefix(dir);
+    synchronized (this) {
+      Key key = keys.get(prefix);
+      if (key != null) {
+        key.kinds = Collections.unmodifiableSet(kindSet);
+        return key;
+      }
+    }
+    Snapshot snapshot = list(dir.bucket(), prefix);
+    synchronized (this) {
+      checkOpen();
+      Key key = keys.get(prefix);
+      if (key == null) {
+        key = new Key(dir, prefix, kindSet);
+        key.snapshot = snapshot;
+        keys.put(prefix, key);
+      }
+      if (scheduler == null) {
+        scheduler = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder()
+                .setDaemon(true)
+                .setNameFormat("gcloud-nio-watch-%d")
+                .build());
+        schedule(pollIntervalMillis);
+      }
+      return key;
+    }
+  }
+
+  private synchronized void schedule(long delay) {
+    if (closed) {
+      return;
+    }
+    try {
+      scheduler.schedule(new Runnable() {
+        @Override
+        public void run() {
+          schedule(scan());
+        }
+      }, delay, TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException e) {
+      // the service was closed in the meantime
+    }
+  }
+
+  /**
+   * Lists the registered directories, signals the keys of the ones that changed, and returns how
+   * long to wait before the next round: the poll interval if something changed, else twice the
+   * previous wait, up to the maximum interval.
+   */
+  long scan() {
+    List<Key> current;
+    synchronized (this) {
+      current = new ArrayList<>(keys.values());
+    }
+    synchronized (scanLock) {
+      boolean changed = false;
+      for (Key key : current) {
+        if (!key.isValid()) {
+          continue;
+        }
+        Snapshot next;
+        try {
+          next = list(key.dir.bucket(), key.prefix);
+        } catch (IOException e) {
+          // keeps the previous snapshot, and tries again on the next round
+          continue;
+        }
+        changed |= key.update(next);
+      }
+      delayMillis = changed ? pollIntervalMillis : Math.min(delayMillis * 2, maxPollIntervalMillis);
+      return delayMillis;
+    }
+  }
+
+  private Snapshot list(String bucket, String prefix) throws IOException {
+    Snapshot.Builder builder = new Snapshot.Builder();
+    try {
+      Iterator<Blob> blobs = storage.list(bucket,
+          Storage.BlobListOption.prefix(prefix),
+          Storage.BlobListOption.currentDirectory(),
+          Storage.BlobListOption.fields(Storage.BlobField.GENERATION, Storage.BlobField.SIZE))
+          .iterateAll();
+      while (blobs.hasNext()) {
+        Blob blob = blobs.next();
+        if (blob.name().length() > prefix.length()) {
+          builder.add(blob.name().substring(prefix.length()),
+              blob.generation() != null ? blob.generation() : -1,
+              blob.size() != null ? blob.size() : -1);
+        }
+      }
+    } catch (StorageException oops) {
+      throw CloudStorageUtil.asIoException(oops);
+    }
+    return builder.build();
+  }
+
+  @Override
+  @Nullable
+  public WatchKey poll() {
+    checkOpen();
+    return checkKey(signalledKeys.poll());
+  }
+
+  @Override
+  @Nullable
+  public WatchKey poll(long timeout, TimeUnit unit) throws InterruptedException {
+    checkOpen();
+    return checkKey(signalledKeys.poll(timeout, unit));
+  }
+
+  @Override
+  public WatchKey take() throws InterruptedException {
+    checkOpen();
+    return checkKey(signalledKeys.take());
+  }
+
+  @Nullable
+  private WatchKey checkKey(@Nullable Key key) {
+    if (key == closedMarker) {
+      signalledKeys.add(closedMarker);
+      throw new ClosedWatchServiceException();
+    }
+    return key;
+  }
+
+  private void checkOpen() {
+    if (closed) {
+      throw new ClosedWatchServiceException();
+    }
+  }
+
+  /**
+   * Cancels all keys and stops polling. Threads waiting for a key get a
+   * {@link ClosedWatchServiceException}.
+   */
+  @Override
+  public void close() {
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      if (scheduler != null) {
+        scheduler.shutdownNow();
+      }
+      for (Key key : keys.values()) {
+        key.valid = false;
+      }
+      keys.clear();
+    }
+    signalledKeys.clear();
+    signalledKeys.add(closedMarker);
+  }
+
+  /**
+   * Listing of a directory: names relative to the directory, in {@link String#compareTo} order,
+   * with the generation and size of each entry at the same index. Pseudo-directories have no
+   * generation and size, which are then {@code -1}.
+   */
+  static final class Snapshot {
+
+    private static final Snapshot EMPTY = new Snapshot(new String[0], new long[0], new long[0]);
+
+    final String[] names;
+    final long[] generations;
+    final long[] sizes;
+
+    private Snapshot(String[] names, long[] generations, long[] sizes) {
+      this.names = names;
+      this.generations = generations;
+      this.sizes = sizes;
+    }
+
+    static final class Builder {
+
+      private String[] names = new String[16];
+      private long[] generations = new long[16];
+      private long[] sizes = new long[16];
+      private int count;
+      private boolean sorted = true;
+
+      void add(String name, long generation, long size) {
+        if (count == names.length) {
+          names = Arrays.copyOf(names, count * 2);
+          generations = Arrays.copyOf(generations, count * 2);
+          sizes = Arrays.copyOf(sizes, count * 2);
+        }
+        // listings are sorted by the UTF-8 bytes of the names, which only differs from the
+        // order of Java strings for names with characters outside of the basic plane
+        sorted &= count == 0 || names[count - 1].compareTo(name) < 0;
+        names[count] = name;
+        generations[count] = generation;
+        sizes[count] = size;
+        count++;
+      }
+
+      Snapshot build() {
+        if (count == 0) {
+          return EMPTY;
+        }
+        if (sorted) {
+          return new Snapshot(Arrays.copyOf(names, count), Arrays.copyOf(generations, count),
+              Arrays.copyOf(sizes, count));
+        }
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+          order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+          @Override
+          public int compare(Integer a, Integer b) {
+            return names[a].compareTo(names[b]);
+          }
+        });
+        Snapshot snapshot = new Snapshot(new String[count], new long[count], new long[count]);
+        for (int i = 0; i < count; i++) {
+          snapshot.names[i] = names[order[i]];
+          snapshot.generations[i] = generations[order[i]];
+          snapshot.sizes[i] = sizes[order[i]];
+        }
+        return snapshot;
+      }
+    }
+  }
+
+  /**
+   * Key of a registered directory, holding its last snapshot and the events not yet retrieved.
+   */
+  final class Key implements WatchKey {
+
+    private final CloudStoragePath dir;
+    private final String prefix;
+    private volatile Set<WatchEvent.Kind<?>> kinds;
+    private volatile boolean valid = true;
+
+    // guarded by scanLock
+    private Snapshot snapshot;
+
+    // guarded by this
+    private List<WatchEvent<?>> events = new ArrayList<>();
+    private boolean signalled;
+
+    private Key(CloudStoragePath dir, String prefix, Set<WatchEvent.Kind<?>> kinds) {
+      this.dir = dir;
+      this.prefix = prefix;
+      this.kinds = Collections.unmodifiableSet(kinds);
+    }
+
+    /**
+     * Replaces the snapshot by {@code next}, queueing an event for each entry that changed, and
+     * returns whether any did.
+     */
+    private boolean update(Snapshot next) {
+      Snapshot previous = snapshot;
+      snapshot = next;
+      boolean changed = false;
+      int i = 0;
+      int j = 0;
+      while (i < previous.names.length || j < next.names.length) {
+        int cmp;
+        if (i == previous.names.length) {
+          cmp = 1;
+        } else if (j == next.names.length) {
+          cmp = -1;
+        } else {
+          cmp = previous.names[i].compareTo(next.names[j]);
+        }
+        if (cmp < 0) {
+          add(ENTRY_DELETE, previous.names[i++]);
+          changed = true;
+        } else if (cmp > 0) {
+          add(ENTRY_CREATE, next.names[j++]);
+          changed = true;
+        } else {
+          if (previous.generations[i] != next.generations[j]
+              || previous.sizes[i] != next.sizes[j]) {
+            add(ENTRY_MODIFY, next.names[j]);
+            changed = true;
+          }
+          i++;
+          j++;
+        }
+      }
+      return changed;
+    }
+
+    private void add(WatchEvent.Kind<Path> kind, String name) {
+      if (!kinds.contains(kind)) {
+        return;
+      }
+      synchronized (this) {
+        if (events.size() < MAX_PENDING_EVENTS) {
+          events.add(new Event<Path>(kind, dir.getFileSystem().getPath(name)));
+        } else if (events.get(MAX_PENDING_EVENTS - 1).kind() != OVERFLOW) {
+          events.set(MAX_PENDING_EVENTS - 1, new Event<Object>(OVERFLOW, null));
+        }
+        if (!signalled) {
+          signalled = true;
+          signalledKeys.add(this);
+        }
+      }
+    }
+
+    @Override
+    public boolean isValid() {
+      return valid;
+    }
+
+    @Override
+    public synchronized List<WatchEvent<?>> pollEvents() {
+      List<WatchEvent<?>> result = Collections.unmodifiableList(events);
+      events = new ArrayList<>();
+      return result;
+    }
+
+    @Override
+    public boolean reset() {
+      if (!valid) {
+        return false;
+      }
+      synchronized (this) {
+        if (events.isEmpty()) {
+          signalled = false;
+        } else {
+          signalledKeys.add(this);
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public void cancel() {
+      valid = false;
+      synchronized (CloudStorageWatchService.this) {
+        if (keys.get(prefix) == this) {
+          keys.remove(prefix);
+        }
+      }
+    }
+
+    @Override
+    public CloudStoragePath watchable() {
+      return dir;
+    }
+
+    @Override
+    public String toString() {
+      return "WatchKey{" + dir + "}";
+    }
+  }
+
+  private static final class Event<T> implements WatchEvent<T> {
+
+    private final WatchEvent.Kind<T> kind;
+    @Nullable private final T context;
+
+    Event(WatchEvent.Kind<T> kind, @Nullable T context) {
+      this.kind = kind;
+      this.context = context;
+    }
+
+    @Override
+    public WatchEvent.Kind<T> kind() {
+      return kind;
+    }
+
+    @Override
+    public int count() {
+      return 1;
+    }
+
+    @Override
+    @Nullable
+    public T context() {
+      return context;
+    }
+
+    @Override
+    public String toString() {
+      return kind.name() + ": " + context;
+    }
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage.contrib.nio;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import com.google.cloud.storage.Blob;
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.Storage;
+import com.google.common.base.Ticker;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit tests for {@link CloudStorageAttributeCache}.
+ */
+@RunWith(JUnit4.class)
+public class CloudStorageAttributeCacheTest {
+
+  private static final BlobId FILE = BlobId.of("bucket", "file");
+
+  private final FakeTicker ticker = new FakeTicker();
+  private final Storage storage = mock(Storage.class);
+  private final Blob info = mock(Blob.class);
+  private CloudStorageAttributeCache cache;
+
+  private static class FakeTicker extends Ticker {
+
+    private long nanos;
+
+    @Override
+    public long read() {
+      return nanos;
+    }
+  }
+
+  @Before
+  public void before() {
+    when(info.blobId()).thenReturn(BlobId.of("bucket", "file", 42L));
+    when(info.size()).thenReturn(1234L);
+    cache = new CloudStorageAttributeCache(10, 1000, ticker);
+  }
+
+  @Test
+  public void testGet_cachesMetadata() {
+    when(storage.get(FILE)).thenReturn(null, info);
+    assertThat(cache.get(storage, FILE)).isNull();
+    assertThat(cache.get(storage, FILE)).isSameAs(info);
+    assertThat(cache.get(storage, FILE)).isSameAs(info);
+    verify(storage, times(2)).get(FILE);
+  }
+
+  @Test
+  public void testGet_expires() {
+    when(storage.get(FILE)).thenReturn(info);
+    cache.get(storage, FILE);
+    ticker.nanos = TimeUnit.MILLISECONDS.toNanos(999);
+    cache.get(storage, FILE);
+    verify(storage, times(1)).get(FILE);
+    ticker.nanos = TimeUnit.MILLISECONDS.toNanos(1000);
+    cache.get(storage, FILE);
+    verify(storage, times(2)).get(FILE);
+  }
+
+  @Test
+  public void testPut() {
+    cache.put(info);
+    assertThat(cache.get(storage, FILE)).isSameAs(info);
+    verifyZeroInteractions(storage);
+  }
+
+  @Test
+  public void testPut_ignoresIncompleteObjects() {
+    Blob incomplete = mock(Blob.class);
+    when(incomplete.blobId()).thenReturn(FILE);
+    cache.put(incomplete);
+    cache.get(storage, FILE);
+    verify(storage).get(FILE);
+  }
+
+  @Test
+  public void testInvalidate() {
+    when(storage.get(FILE)).thenReturn(info);
+    cache.put(info);
+    cache.invalidate(FILE);
+    cache.get(storage, FILE);
+    verify(storage).get(FILE);
+  }
+
+  @Test
+  public void testDisabled() {
+    cache = CloudStorageAttributeCache.create(CloudStorageConfiguration.DEFAULT);
+    assertThat(cache.enabled()).isFalse();
+    when(storage.get(FILE)).thenReturn(info);
+    cache.put(info);
+    cache.get(storage, FILE);
+    cache.get(storage, FILE);
+    verify(storage, times(2)).get(FILE);
+  }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage.contrib.nio;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.util.Arrays;
+
+/**
+ * Unit tests for {@link CloudStorageBlockReadChannel}.
+ */
+@RunWith(JUnit4.class)
+public class CloudStorageBlockReadChannelTest {
+
+  private static final int BLOCK_SIZE = 10;
+  private static final byte[] CONTENT = new byte[45];
+
+  static {
+    for (int i = 0; i < CONTENT.length; i++) {
+      CONTENT[i] = (byte) i;
+    }
+  }
+
+  @Rule public final ExpectedException thrown = ExpectedException.none();
+
+  private FakePositionalReadChannel reader;
+  private CloudStorageBlockReadChannel channel;
+
+  @Before
+  public void before() {
+    reader = new FakePositionalReadChannel(CONTENT);
+    channel = new CloudStorageBlockReadChannel(reader, CONTENT.length, BLOCK_SIZE, 4, 2);
+  }
+
+  private byte[] read(int length) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+    while (buffer.hasRemaining() && channel.read(buffer) > 0) {
+      // keep reading
+    }
+    return Arrays.copyOf(buffer.array(), buffer.position());
+  }
+
+  @Test
+  public void testRead() throws IOException {
+    assertThat(read(5)).isEqualTo(Arrays.copyOfRange(CONTENT, 0, 5));
+    assertThat(channel.position()).isEqualTo(5);
+    assertThat(read(100)).isEqualTo(Arrays.copyOfRange(CONTENT, 5, 45));
+    assertThat(channel.position()).isEqualTo(45);
+    assertThat(channel.read(ByteBuffer.allocate(1))).isEqualTo(-1);
+  }
+
+  @Test
+  public void testRead_spanningBlocksFetchesThemOnce() throws IOException, InterruptedException {
+    assertThat(read(25)).isEqualTo(Arrays.copyOfRange(CONTENT, 0, 25));
+    // reading blocks 0 to 2 in order also reads the remaining blocks ahead
+    reader.awaitRequest(30);
+    reader.awaitRequest(40);
+    assertThat(reader.requests()).containsExactly(0L, 10L, 20L, 30L, 40L);
+  }
+
+  @Test
+  public void testSeekBack_servedFromCache() throws IOException {
+    channel.position(20);
+    assertThat(read(5)).isEqualTo(Arrays.copyOfRange(CONTENT, 20, 25));
+    channel.position(2);
+    assertThat(read(5)).isEqualTo(Arrays.copyOfRange(CONTENT, 2, 7));
+    channel.position(21);
+    assertThat(read(3)).isEqualTo(Arrays.copyOfRange(CONTENT, 21, 24));
+    channel.position(3);
+    assertThat(read(3)).isEqualTo(Arrays.copyOfRange(CONTENT, 3, 6));
+    assertThat(reader.requests()).containsExactly(20L, 0L);
+  }
+
+  @Test
+  public void testSequentialRead_readsAhead() throws IOException, InterruptedException {
+    read(10);
+    read(10);
+    reader.awaitRequest(20);
+    reader.awaitRequest(30);
+    assertThat(reader.requests()).containsExactly(0L, 10L, 20L, 30L);
+    assertThat(read(100)).isEqualTo(Arrays.copyOfRange(CONTENT, 20, 45));
+    assertThat(reader.requests()).containsExactly(0L, 10L, 20L, 30L, 40L);
+  }
+
+  @Test
+  public void testRandomRead_doesNotReadAhead() throws IOException {
+    channel.position(30);
+    read(5);
+    channel.position(5);
+    read(5);
+    assertThat(reader.requests()).containsExactly(30L, 0L);
+  }
+
+  @Test
+  public void testSeekBeyondSize_reportsEof() throws IOException {
+    channel.position(100);
+    assertThat(channel.read(ByteBuffer.allocate(1))).isEqualTo(-1);
+    assertThat(channel.size()).isEqualTo(45);
+    assertThat(reader.requests()).isEmpty();
+  }
+
+  @Test
+  public void testFailedBlock_isRetried() throws IOException {
+    reader.failure(new IOException("lol"));
+    try {
+      channel.read(ByteBuffer.allocate(5));
+      throw new AssertionError("IOException expected");
+    } catch (IOException ex) {
+      assertThat(ex.getMessage()).isEqualTo("lol");
+    }
+    reader.failure(null);
+    assertThat(read(5)).isEqualTo(Arrays.copyOfRange(CONTENT, 0, 5));
+  }
+
+  @Test
+  public void testClose() throws IOException {
+    channel.close();
+    assertThat(channel.isOpen()).isFalse();
+    assertThat(reader.isOpen()).isFalse();
+    thrown.expect(ClosedChannelException.class);
+    channel.read(ByteBuffer.allocate(1));
+  }
+
+  @Test
+  public void testWrite_throwsNonWritableChannelException() throws IOException {
+    thrown.expect(NonWritableChannelException.class);
+    channel.write(ByteBuffer.allocate(1));
+  }
+
+  @Test
+  public void testReadAheadBlocksMustFitInCache() {
+    thrown.expect(IllegalArgumentException.class);
+    new CloudStorageBlockReadChannel(reader, CONTENT.length, BLOCK_SIZE, 2, 2);
+  }
+}
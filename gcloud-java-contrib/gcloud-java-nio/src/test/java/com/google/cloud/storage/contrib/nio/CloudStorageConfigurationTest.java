@@ -43,12 +43,30 @@ public class CloudStorageConfigurationTest {
             .stripPrefixSlash(false)
             .usePseudoDirectories(false)
             .blockSize(666)
+            .attributeCacheMaxEntries(100)
+            .attributeCacheTtlMillis(5000)
+            .readCacheBlocks(8)
+            .readAheadBlocks(3)
+            .parallelUploadPartSize(1024)
+            .parallelUploadThreads(8)
+            .parallelDownloadThreads(6)
+            .watchPollIntervalMillis(100)
+            .watchMaxPollIntervalMillis(800)
             .build();
     assertThat(config.workingDirectory()).isEqualTo("/omg");
     assertThat(config.permitEmptyPathComponents()).isTrue();
     assertThat(config.stripPrefixSlash()).isFalse();
     assertThat(config.usePseudoDirectories()).isFalse();
     assertThat(config.blockSize()).isEqualTo(666);
+    assertThat(config.attributeCacheMaxEntries()).isEqualTo(100);
+    assertThat(config.attributeCacheTtlMillis()).isEqualTo(5000L);
+    assertThat(config.readCacheBlocks()).isEqualTo(8);
+    assertThat(config.readAheadBlocks()).isEqualTo(3);
+    assertThat(config.parallelUploadPartSize()).isEqualTo(1024);
+    assertThat(config.parallelUploadThreads()).isEqualTo(8);
+    assertThat(config.parallelDownloadThreads()).isEqualTo(6);
+    assertThat(config.watchPollIntervalMillis()).isEqualTo(100);
+    assertThat(config.watchMaxPollIntervalMillis()).isEqualTo(800);
   }
 
   @Test
@@ -61,12 +79,70 @@ public class CloudStorageConfigurationTest {
                 .put("stripPrefixSlash", false)
                 .put("usePseudoDirectories", false)
                 .put("blockSize", 666)
+                .put("attributeCacheMaxEntries", 100)
+                .put("attributeCacheTtlMillis", 5000L)
+                .put("readCacheBlocks", 8)
+                .put("readAheadBlocks", 3)
+                .put("parallelUploadPartSize", 1024)
+                .put("parallelUploadThreads", 8)
+                .put("parallelDownloadThreads", 6)
+                .put("watchPollIntervalMillis", 100)
+                .put("watchMaxPollIntervalMillis", 800L)
                 .build());
     assertThat(config.workingDirectory()).isEqualTo("/omg");
     assertThat(config.permitEmptyPathComponents()).isTrue();
     assertThat(config.stripPrefixSlash()).isFalse();
     assertThat(config.usePseudoDirectories()).isFalse();
     assertThat(config.blockSize()).isEqualTo(666);
+    assertThat(config.attributeCacheMaxEntries()).isEqualTo(100);
+    assertThat(config.attributeCacheTtlMillis()).isEqualTo(5000L);
+    assertThat(config.readCacheBlocks()).isEqualTo(8);
+    assertThat(config.readAheadBlocks()).isEqualTo(3);
+    assertThat(config.parallelUploadPartSize()).isEqualTo(1024);
+    assertThat(config.parallelUploadThreads()).isEqualTo(8);
+    assertThat(config.parallelDownloadThreads()).isEqualTo(6);
+    assertThat(config.watchPollIntervalMillis()).isEqualTo(100);
+    assertThat(config.watchMaxPollIntervalMillis()).isEqualTo(800);
+  }
+
+  @Test
+  public void testAttributeCacheDisabledByDefault() {
+    assertThat(CloudStorageConfiguration.DEFAULT.attributeCacheMaxEntries()).isEqualTo(0);
+    assertThat(CloudStorageConfiguration.DEFAULT.attributeCacheTtlMillis())
+        .isEqualTo(CloudStorageConfiguration.ATTRIBUTE_CACHE_TTL_MILLIS_DEFAULT);
+  }
+
+  @Test
+  public void testReadAheadBlocks_mustFitInCache() {
+    thrown.expect(IllegalArgumentException.class);
+    CloudStorageConfiguration.builder().readCacheBlocks(2).readAheadBlocks(2).build();
+  }
+
+  @Test
+  public void testReadCacheDisabled_ignoresReadAheadBlocks() {
+    CloudStorageConfiguration config =
+        CloudStorageConfiguration.builder().readCacheBlocks(0).readAheadBlocks(2).build();
+    assertThat(config.readCacheBlocks()).isEqualTo(0);
+  }
+
+  @Test
+  public void testParallelUploadDisabledByDefault() {
+    assertThat(CloudStorageConfiguration.DEFAULT.parallelUploadPartSize()).isEqualTo(0);
+  }
+
+  @Test
+  public void testParallelUploadThreads_mustBePositive() {
+    thrown.expect(IllegalArgumentException.class);
+    CloudStorageConfiguration.builder().parallelUploadThreads(0);
+  }
+
+  @Test
+  public void testWatchMaxPollInterval_mustNotBeSmallerThanPollInterval() {
+    thrown.expect(IllegalArgumentException.class);
+    CloudStorageConfiguration.builder()
+        .watchPollIntervalMillis(1000)
+        .watchMaxPollIntervalMillis(999)
+        .build();
   }
 
   @Test
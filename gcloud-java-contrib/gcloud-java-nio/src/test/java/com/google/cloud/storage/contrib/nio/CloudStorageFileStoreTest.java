@@ -0,0 +1,94 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage.contrib.nio;
+
+import static com.google.cloud.storage.contrib.nio.CloudStorageFileSystem.forBucket;
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Unit tests for {@link CloudStorageFileStore}.
+ */
+@RunWith(JUnit4.class)
+public class CloudStorageFileStoreTest {
+
+  @Rule public final ExpectedException thrown = ExpectedException.none();
+
+  private CloudStorageFileSystem fs;
+  private CloudStorageFileStore store;
+
+  @Before
+  public void before() throws IOException {
+    fs = forBucket("bucket", CloudStorageConfiguration.DEFAULT, LocalStorageHelper.options());
+    store = (CloudStorageFileStore) Files.getFileStore(fs.getPath("dir/file"));
+  }
+
+  @Test
+  public void testGetters() throws IOException {
+    assertThat(store.name()).isEqualTo("bucket");
+    assertThat(store.type()).isEqualTo("gs");
+    assertThat(store.isReadOnly()).isFalse();
+    assertThat(store.getUsableSpace()).isEqualTo(Long.MAX_VALUE);
+    assertThat(store.getBlockSize()).isEqualTo(CloudStorageFileSystem.BLOCK_SIZE_DEFAULT);
+    assertThat(store.getAttribute("blockSize"))
+        .isEqualTo((long) CloudStorageFileSystem.BLOCK_SIZE_DEFAULT);
+    assertThat(store.supportsFileAttributeView("gcs")).isTrue();
+    assertThat(store.supportsFileAttributeView(BasicFileAttributeView.class)).isTrue();
+    assertThat(store.supportsFileAttributeView(PosixFileAttributeView.class)).isFalse();
+    assertThat(store).isSameAs(fs.getFileStores().iterator().next());
+  }
+
+  @Test
+  public void testBucketInfo() throws IOException {
+    assertThat(store.bucketInfo().name()).isEqualTo("bucket");
+    assertThat(store.bucketInfo().location()).isEqualTo("US");
+  }
+
+  @Test
+  public void testComputeUsage() throws IOException, ExecutionException {
+    Files.write(fs.getPath("top"), new byte[3]);
+    Files.write(fs.getPath("a/b"), new byte[5]);
+    Files.write(fs.getPath("a/c/d"), new byte[7]);
+    Files.write(fs.getPath("e/f"), "hello".getBytes(UTF_8));
+    assertThat(store.cachedUsage()).isNull();
+    CloudStorageFileStore.Usage usage = Uninterruptibles.getUninterruptibly(store.computeUsage());
+    assertThat(usage.objectCount()).isEqualTo(4);
+    assertThat(usage.totalBytes()).isEqualTo(20);
+    assertThat(store.cachedUsage()).isEqualTo(usage);
+  }
+
+  @Test
+  public void testGetAttribute_unknown_throwsUnsupportedOperationException() throws IOException {
+    thrown.expect(UnsupportedOperationException.class);
+    store.getAttribute("gcs:lol");
+  }
+}
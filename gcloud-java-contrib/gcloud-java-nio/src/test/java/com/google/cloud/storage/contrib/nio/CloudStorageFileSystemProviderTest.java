@@ -27,6 +27,10 @@ import static java.nio.file.StandardOpenOption.CREATE_NEW;
 import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
 import static java.nio.file.StandardOpenOption.WRITE;
 
+import com.google.cloud.storage.AccessEvent;
+import com.google.cloud.storage.AccessListener;
+import com.google.cloud.storage.BlobInfo;
+import com.google.cloud.storage.StorageOptions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.testing.NullPointerTester;
 
@@ -37,15 +41,19 @@ import org.junit.rules.ExpectedException;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.CopyOption;
+import java.nio.file.DirectoryStream;
 import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
@@ -54,6 +62,7 @@ import java.nio.file.NoSuchFileException;
 import java.nio.file.OpenOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -85,6 +94,14 @@ public class CloudStorageFileSystemProviderTest {
 
   private static final String SINGULARITY = "A string";
 
+  private static final DirectoryStream.Filter<Path> ACCEPT_ALL =
+      new DirectoryStream.Filter<Path>() {
+        @Override
+        public boolean accept(Path path) {
+          return true;
+        }
+      };
+
   @Rule public final ExpectedException thrown = ExpectedException.none();
 
   @Before
@@ -190,6 +207,36 @@ public class CloudStorageFileSystemProviderTest {
     Files.newByteChannel(path);
   }
 
+  @Test
+  public void testNewFileChannel() throws IOException {
+    Path path = Paths.get(URI.create("gs://lol/cat"));
+    Files.write(path, "helloworld".getBytes(UTF_8));
+    try (FileChannel input = FileChannel.open(path)) {
+      assertThat(input.size()).isEqualTo(10);
+      ByteBuffer buffer = ByteBuffer.allocate(5);
+      assertThat(input.read(buffer, 5)).isEqualTo(5);
+      assertThat(new String(buffer.array(), UTF_8)).isEqualTo("world");
+      assertThat(input.position()).isEqualTo(0);
+      ByteArrayOutputStream output = new ByteArrayOutputStream();
+      assertThat(input.transferTo(0, 5, Channels.newChannel(output))).isEqualTo(5);
+      assertThat(new String(output.toByteArray(), UTF_8)).isEqualTo("hello");
+    }
+  }
+
+  @Test
+  public void testNewFileChannel_write_throwsUnsupportedOperationException() throws IOException {
+    Path path = Paths.get(URI.create("gs://lol/cat"));
+    thrown.expect(UnsupportedOperationException.class);
+    FileChannel.open(path, WRITE);
+  }
+
+  @Test
+  public void testNewFileChannel_notFound() throws IOException {
+    Path path = Paths.get(URI.create("gs://bucket/wednesday"));
+    thrown.expect(NoSuchFileException.class);
+    FileChannel.open(path);
+  }
+
   @Test
   public void testNewByteChannelWrite() throws IOException {
     Path path = Paths.get(URI.create("gs://bucket/tests"));
@@ -290,6 +337,56 @@ public class CloudStorageFileSystemProviderTest {
     Files.newOutputStream(path, CREATE_NEW);
   }
 
+  @Test
+  public void testCopy_fromLocalFile_uploadsInParallelParts() throws IOException {
+    byte[] content = new byte[1000];
+    for (int i = 0; i < content.length; i++) {
+      content[i] = (byte) i;
+    }
+    Path source = Files.createTempFile("local", ".bin");
+    try (CloudStorageFileSystem fs = forBucket("bucket",
+        CloudStorageConfiguration.builder().parallelUploadPartSize(64).build())) {
+      Files.write(source, content);
+      Path target = fs.getPath("dir/copied");
+      Files.copy(source, target);
+      assertThat(Files.readAllBytes(target)).isEqualTo(content);
+      List<Path> listed = new ArrayList<>();
+      try (DirectoryStream<Path> stream = Files.newDirectoryStream(fs.getPath("dir/"))) {
+        for (Path path : stream) {
+          listed.add(path);
+        }
+      }
+      assertThat(listed).containsExactly(target);
+      thrown.expect(FileAlreadyExistsException.class);
+      Files.copy(source, target);
+    } finally {
+      Files.delete(source);
+    }
+  }
+
+  @Test
+  public void testCopy_toLocalFile_downloadsInParallelRanges() throws IOException {
+    byte[] content = new byte[1000];
+    for (int i = 0; i < content.length; i++) {
+      content[i] = (byte) i;
+    }
+    StorageOptions options = LocalStorageHelper.options();
+    // created in one request, so that the object has a CRC32C checksum
+    options.service().create(BlobInfo.builder("bucket", "remote").build(), content);
+    Path target = Files.createTempFile("local", ".bin");
+    try (CloudStorageFileSystem fs = forBucket("bucket",
+        CloudStorageConfiguration.builder().blockSize(64).build(), options)) {
+      Path source = fs.getPath("remote");
+      fs.provider().copy(source, target, REPLACE_EXISTING);
+      assertThat(Files.readAllBytes(target)).isEqualTo(content);
+      thrown.expect(FileAlreadyExistsException.class);
+      fs.provider().copy(source, target);
+    } finally {
+      assertThat(Files.size(target)).isEqualTo(content.length);
+      Files.delete(target);
+    }
+  }
+
   @Test
   public void testWrite_objectNameWithExtraSlashes_throwsIae() throws IOException {
     Path path = Paths.get(URI.create("gs://double/slash//yep"));
@@ -444,6 +541,70 @@ public class CloudStorageFileSystemProviderTest {
     Files.deleteIfExists(Paths.get(URI.create("gs://love/passion/")));
   }
 
+  @Test
+  public void testDeleteAll_deletesTreeInBatches() throws IOException {
+    try (CloudStorageFileSystem fs = forBucket("bucket")) {
+      for (int i = 0; i < 250; i++) {
+        Files.write(fs.getPath("dir/sub" + (i % 3) + "/file" + i), FILE_CONTENTS, UTF_8);
+      }
+      Files.write(fs.getPath("dirx/other"), FILE_CONTENTS, UTF_8);
+      try (DirectoryStream<Path> tree =
+          fs.provider().newRecursiveDirectoryStream(fs.getPath("dir/"), ACCEPT_ALL)) {
+        assertThat(fs.provider().deleteAll(tree)).isEqualTo(250);
+      }
+      assertThat(Files.exists(fs.getPath("dir/sub0/file0"))).isFalse();
+      assertThat(Files.exists(fs.getPath("dir/sub2/file248"))).isFalse();
+      assertThat(Files.exists(fs.getPath("dirx/other"))).isTrue();
+    }
+  }
+
+  @Test
+  public void testDeleteAll_notFound_notCounted() throws IOException {
+    try (CloudStorageFileSystem fs = forBucket("bucket")) {
+      Files.write(fs.getPath("a"), FILE_CONTENTS, UTF_8);
+      assertThat(fs.provider().deleteAll(ImmutableList.of(fs.getPath("a"), fs.getPath("b"))))
+          .isEqualTo(1);
+      assertThat(Files.exists(fs.getPath("a"))).isFalse();
+    }
+  }
+
+  @Test
+  public void testDeleteAll_invalidatesAttributeCache() throws IOException {
+    CloudStorageConfiguration config = CloudStorageConfiguration.builder()
+        .attributeCacheMaxEntries(100)
+        .build();
+    try (CloudStorageFileSystem fs = forBucket("bucket", config)) {
+      Files.write(fs.getPath("a"), FILE_CONTENTS, UTF_8);
+      // caches the attributes of "a"
+      Files.size(fs.getPath("a"));
+      assertThat(fs.provider().deleteAll(ImmutableList.of(fs.getPath("a")))).isEqualTo(1);
+      assertThat(fs.attributeCache().getIfPresent(fs.getPath("a").getBlobId())).isNull();
+      assertThat(Files.exists(fs.getPath("a"))).isFalse();
+    }
+  }
+
+  @Test
+  public void testReadAttributes_batch() throws IOException {
+    CloudStorageConfiguration config = CloudStorageConfiguration.builder()
+        .attributeCacheMaxEntries(100)
+        .build();
+    try (CloudStorageFileSystem fs = forBucket("bucket", config)) {
+      Files.write(fs.getPath("a"), new byte[1]);
+      Files.write(fs.getPath("b"), new byte[2]);
+      // caches the attributes of "a"
+      Files.size(fs.getPath("a"));
+      List<CloudStorageFileAttributes> attributes = fs.provider().readAttributes(
+          ImmutableList.of(fs.getPath("a"), fs.getPath("missing"), fs.getPath("dir/"),
+              fs.getPath("b")));
+      assertThat(attributes).hasSize(4);
+      assertThat(attributes.get(0).size()).isEqualTo(1);
+      assertThat(attributes.get(1)).isNull();
+      assertThat(attributes.get(2).isDirectory()).isTrue();
+      assertThat(attributes.get(3).size()).isEqualTo(2);
+      assertThat(fs.attributeCache().getIfPresent(fs.getPath("b").getBlobId())).isNotNull();
+    }
+  }
+
   @Test
   public void testCopy() throws IOException {
     Path source = Paths.get(URI.create("gs://military/fashion.show"));
@@ -635,6 +796,166 @@ public class CloudStorageFileSystemProviderTest {
     }
   }
 
+  @Test
+  public void testAttributeCache_invalidatedByWritesAndDeletes() throws IOException {
+    CloudStorageConfiguration config = CloudStorageConfiguration.builder()
+        .attributeCacheMaxEntries(100)
+        .build();
+    try (CloudStorageFileSystem fs = forBucket("bucket", config)) {
+      Path path = fs.getPath("cached");
+      Files.write(path, SINGULARITY.getBytes(UTF_8));
+      assertThat(Files.exists(path)).isTrue();
+      assertThat(Files.size(path)).isEqualTo(SINGULARITY.length());
+      Files.write(path, "longer content".getBytes(UTF_8));
+      assertThat(Files.size(path)).isEqualTo("longer content".length());
+      Path copy = fs.getPath("copy");
+      Files.write(copy, "x".getBytes(UTF_8));
+      assertThat(Files.size(copy)).isEqualTo(1);
+      Files.copy(path, copy, REPLACE_EXISTING);
+      assertThat(Files.size(copy)).isEqualTo("longer content".length());
+      Files.delete(path);
+      assertThat(Files.exists(path)).isFalse();
+    }
+  }
+
+  @Test
+  public void testAttributeCache_populatedByListing() throws IOException {
+    CloudStorageConfiguration config = CloudStorageConfiguration.builder()
+        .attributeCacheMaxEntries(100)
+        .build();
+    try (CloudStorageFileSystem fs = forBucket("bucket", config)) {
+      Files.write(fs.getPath("dir/listed"), SINGULARITY.getBytes(UTF_8));
+      try (DirectoryStream<Path> stream = Files.newDirectoryStream(fs.getPath("dir/"))) {
+        for (Path path : stream) {
+          assertThat(Files.size(path)).isEqualTo(SINGULARITY.length());
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testNewRecursiveDirectoryStream() throws IOException {
+    // without pseudo-directories, to create the "dir/dir4/" placeholder object
+    try (CloudStorageFileSystem fs = forBucket("bucket", usePseudoDirectories(false))) {
+      for (String name : new String[] {"dir/angel", "dir/alone", "dir/a-b",
+          "dir/dir2/another_angel", "dir/dir2/dir3/deep", "dir/dir4/", "dirx/other", "atroot"}) {
+        Files.write(fs.getPath(name), SINGULARITY.getBytes(UTF_8));
+      }
+      List<Path> got = new ArrayList<>();
+      try (DirectoryStream<Path> stream =
+          fs.provider().newRecursiveDirectoryStream(fs.getPath("/dir"), ACCEPT_ALL)) {
+        for (Path path : stream) {
+          got.add(path);
+        }
+      }
+      assertThat(got)
+          .containsExactly(
+              fs.getPath("dir/a-b"),
+              fs.getPath("dir/alone"),
+              fs.getPath("dir/angel"),
+              fs.getPath("dir/dir2/"),
+              fs.getPath("dir/dir2/another_angel"),
+              fs.getPath("dir/dir2/dir3/"),
+              fs.getPath("dir/dir2/dir3/deep"),
+              fs.getPath("dir/dir4/"))
+          .inOrder();
+    }
+  }
+
+  @Test
+  public void testNewRecursiveDirectoryStream_sameNestedDirectory() throws IOException {
+    try (CloudStorageFileSystem fs = forBucket("bucket")) {
+      for (String name : new String[] {"dir/x/y/a", "dir/x/y/b", "dir/x/z"}) {
+        Files.write(fs.getPath(name), SINGULARITY.getBytes(UTF_8));
+      }
+      List<Path> got = new ArrayList<>();
+      try (DirectoryStream<Path> stream =
+          fs.provider().newRecursiveDirectoryStream(fs.getPath("dir/"), ACCEPT_ALL)) {
+        for (Path path : stream) {
+          got.add(path);
+        }
+      }
+      assertThat(got)
+          .containsExactly(
+              fs.getPath("dir/x/"),
+              fs.getPath("dir/x/y/"),
+              fs.getPath("dir/x/y/a"),
+              fs.getPath("dir/x/y/b"),
+              fs.getPath("dir/x/z"))
+          .inOrder();
+    }
+  }
+
+  @Test
+  public void testNewRecursiveDirectoryStream_filter() throws IOException {
+    try (CloudStorageFileSystem fs = forBucket("bucket")) {
+      Files.write(fs.getPath("dir/a/b/file"), SINGULARITY.getBytes(UTF_8));
+      Files.write(fs.getPath("dir/a/c"), SINGULARITY.getBytes(UTF_8));
+      List<Path> got = new ArrayList<>();
+      DirectoryStream.Filter<Path> directories = new DirectoryStream.Filter<Path>() {
+        @Override
+        public boolean accept(Path path) {
+          return path.toString().endsWith("/");
+        }
+      };
+      try (DirectoryStream<Path> stream =
+          fs.provider().newRecursiveDirectoryStream(fs.getPath("dir/"), directories)) {
+        for (Path path : stream) {
+          got.add(path);
+        }
+      }
+      assertThat(got).containsExactly(fs.getPath("dir/a/"), fs.getPath("dir/a/b/")).inOrder();
+    }
+  }
+
+  @Test
+  public void testNewDirectoryStream_pathMatcherPushesDownPrefix() throws IOException {
+    final List<String> listed = new ArrayList<>();
+    StorageOptions options = LocalStorageHelper.options().toBuilder()
+        .accessListener(new AccessListener() {
+          @Override
+          public void accessed(AccessEvent event) {
+            if (event.operation() == AccessEvent.Operation.LIST) {
+              listed.add(event.name());
+            }
+          }
+        })
+        .build();
+    try (CloudStorageFileSystem fs =
+        forBucket("bucket", CloudStorageConfiguration.DEFAULT, options)) {
+      for (String name : new String[] {"logs/2016-09-30/part-0", "logs/2016-10-01/part-0",
+          "logs/2016-10-01/part-1", "logs/2016-10-01/_SUCCESS", "logs/2016-10-02/part-0"}) {
+        Files.write(fs.getPath(name), SINGULARITY.getBytes(UTF_8));
+      }
+      CloudStoragePathMatcher matcher =
+          (CloudStoragePathMatcher) fs.getPathMatcher("glob:logs/2016-10-*/part-*");
+      List<Path> got = new ArrayList<>();
+      try (DirectoryStream<Path> stream =
+          fs.provider().newRecursiveDirectoryStream(fs.getPath("logs/"), matcher)) {
+        for (Path path : stream) {
+          got.add(path);
+        }
+      }
+      assertThat(got)
+          .containsExactly(
+              fs.getPath("logs/2016-10-01/part-0"),
+              fs.getPath("logs/2016-10-01/part-1"),
+              fs.getPath("logs/2016-10-02/part-0"))
+          .inOrder();
+      got.clear();
+      matcher = (CloudStoragePathMatcher) fs.getPathMatcher("glob:logs/2016-10-*");
+      try (DirectoryStream<Path> stream =
+          fs.provider().newDirectoryStream(fs.getPath("logs/"), matcher)) {
+        for (Path path : stream) {
+          got.add(path);
+        }
+      }
+      assertThat(got)
+          .containsExactly(fs.getPath("logs/2016-10-01/"), fs.getPath("logs/2016-10-02/"));
+      assertThat(listed).containsExactly("logs/2016-10-", "logs/2016-10-").inOrder();
+    }
+  }
+
   @Test
   public void testProviderEquals() {
     Path path1 = Paths.get(URI.create("gs://bucket/tuesday"));
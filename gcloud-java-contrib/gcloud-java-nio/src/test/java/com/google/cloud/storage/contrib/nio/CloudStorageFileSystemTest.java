@@ -24,7 +24,9 @@ import com.google.common.testing.EqualsTester;
 import com.google.common.testing.NullPointerTester;
 
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.ExpectedException;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
@@ -34,6 +36,7 @@ import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.PathMatcher;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
@@ -54,6 +57,8 @@ public class CloudStorageFileSystemTest {
           + "The Heart-ache, and the thousand Natural shocks\n"
           + "That Flesh is heir to? 'Tis a consummation\n";
 
+  @Rule public final ExpectedException thrown = ExpectedException.none();
+
   @Before
   public void before() {
     CloudStorageFileSystemProvider.setGCloudOptions(LocalStorageHelper.options());
@@ -105,7 +110,8 @@ public class CloudStorageFileSystemTest {
       assertThat(fs.isOpen()).isTrue();
       assertThat(fs.isReadOnly()).isFalse();
       assertThat(fs.getRootDirectories()).containsExactly(fs.getPath("/"));
-      assertThat(fs.getFileStores()).isEmpty();
+      assertThat(fs.getFileStores())
+          .containsExactly(fs.provider().getFileStore(fs.getPath("/")));
       assertThat(fs.getSeparator()).isEqualTo("/");
       assertThat(fs.supportedFileAttributeViews()).containsExactly("basic", "gcs");
     }
@@ -137,6 +143,27 @@ public class CloudStorageFileSystemTest {
     }
   }
 
+  @Test
+  public void testGetPathMatcher() throws IOException {
+    try (FileSystem fs = CloudStorageFileSystem.forBucket("bucket")) {
+      PathMatcher glob = fs.getPathMatcher("glob:dir/*.txt");
+      assertThat(glob).isInstanceOf(CloudStoragePathMatcher.class);
+      assertThat(glob.matches(fs.getPath("dir/a.txt"))).isTrue();
+      assertThat(glob.matches(fs.getPath("dir/b/a.txt"))).isFalse();
+      PathMatcher regex = fs.getPathMatcher("regex:dir/.*\\.txt");
+      assertThat(regex.matches(fs.getPath("dir/b/a.txt"))).isTrue();
+      assertThat(regex.matches(fs.getPath("dir/a.csv"))).isFalse();
+    }
+  }
+
+  @Test
+  public void testGetPathMatcher_unknownSyntax() throws IOException {
+    try (FileSystem fs = CloudStorageFileSystem.forBucket("bucket")) {
+      thrown.expect(UnsupportedOperationException.class);
+      fs.getPathMatcher("lol:cat");
+    }
+  }
+
   @Test
   public void testListFiles() throws IOException {
     try (FileSystem fs = CloudStorageFileSystem.forBucket("bucket")) {
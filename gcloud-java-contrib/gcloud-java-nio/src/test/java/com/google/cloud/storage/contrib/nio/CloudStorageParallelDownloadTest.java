@@ -0,0 +1,105 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage.contrib.nio;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Unit tests for {@link CloudStorageParallelDownload}.
+ */
+@RunWith(JUnit4.class)
+public class CloudStorageParallelDownloadTest {
+
+  private static final byte[] CONTENT = new byte[45];
+
+  static {
+    for (int i = 0; i < CONTENT.length; i++) {
+      CONTENT[i] = (byte) i;
+    }
+  }
+
+  @Rule public final ExpectedException thrown = ExpectedException.none();
+
+  private Path file;
+  private FileChannel channel;
+
+  @Before
+  public void before() throws IOException {
+    file = Files.createTempFile("download", ".bin");
+    channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+  }
+
+  @After
+  public void after() throws IOException {
+    channel.close();
+    Files.delete(file);
+  }
+
+  @Test
+  public void testDownload_readsRangesIntoPlace() throws IOException {
+    FakePositionalReadChannel reader = new FakePositionalReadChannel(CONTENT);
+    CloudStorageParallelDownload.download(reader, CONTENT.length, channel, 10, 2);
+    assertThat(Files.readAllBytes(file)).isEqualTo(CONTENT);
+    assertThat(reader.requests()).containsExactly(0L, 10L, 20L, 30L, 40L);
+  }
+
+  @Test
+  public void testDownload_empty() throws IOException {
+    FakePositionalReadChannel reader = new FakePositionalReadChannel(new byte[0]);
+    CloudStorageParallelDownload.download(reader, 0, channel, 10, 2);
+    assertThat(Files.size(file)).isEqualTo(0);
+    assertThat(reader.requests()).isEmpty();
+  }
+
+  @Test
+  public void testDownload_objectShorterThanSize_throwsEofException() throws IOException {
+    thrown.expect(EOFException.class);
+    CloudStorageParallelDownload.download(
+        new FakePositionalReadChannel(CONTENT), 50, channel, 10, 2);
+  }
+
+  @Test
+  public void testDownload_failure() throws IOException {
+    FakePositionalReadChannel reader = new FakePositionalReadChannel(CONTENT);
+    reader.failure(new IOException("lol"));
+    thrown.expect(IOException.class);
+    thrown.expectMessage("lol");
+    CloudStorageParallelDownload.download(reader, CONTENT.length, channel, 10, 2);
+  }
+
+  @Test
+  public void testCrc32c() throws IOException {
+    Files.write(file, "123456789".getBytes(UTF_8));
+    assertThat(CloudStorageParallelDownload.crc32c(channel)).isEqualTo("4waSgw==");
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage.contrib.nio;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.cloud.storage.Blob;
+import com.google.cloud.storage.BlobInfo;
+import com.google.cloud.storage.Storage;
+import com.google.cloud.storage.Storage.BlobTargetOption;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Unit tests for {@link CloudStorageParallelUploadStream}.
+ */
+@RunWith(JUnit4.class)
+public class CloudStorageParallelUploadStreamTest {
+
+  private static final BlobInfo TARGET = BlobInfo.builder("bucket", "big").build();
+  private static final byte[] CONTENT = new byte[100];
+
+  static {
+    for (int i = 0; i < CONTENT.length; i++) {
+      CONTENT[i] = (byte) i;
+    }
+  }
+
+  @Rule public final ExpectedException thrown = ExpectedException.none();
+
+  private Storage storage;
+  private CloudStorageAttributeCache attributeCache;
+
+  @Before
+  public void before() {
+    storage = LocalStorageHelper.options().service();
+    attributeCache = CloudStorageAttributeCache.create(CloudStorageConfiguration.DEFAULT);
+  }
+
+  private OutputStream newStream(int partSize, BlobTargetOption... targetOptions) {
+    List<BlobTargetOption> options = new ArrayList<>();
+    Collections.addAll(options, targetOptions);
+    return new CloudStorageParallelUploadStream(
+        storage, TARGET, options, partSize, 2, attributeCache);
+  }
+
+  private List<String> objectNames() {
+    List<String> names = new ArrayList<>();
+    Iterator<Blob> blobs = storage.list("bucket").iterateAll();
+    while (blobs.hasNext()) {
+      names.add(blobs.next().name());
+    }
+    return names;
+  }
+
+  @Test
+  public void testSmallContent_uploadedAtOnce() throws IOException {
+    try (OutputStream output = newStream(1000)) {
+      output.write(CONTENT);
+    }
+    assertThat(storage.readAllBytes(TARGET.blobId())).isEqualTo(CONTENT);
+    assertThat(objectNames()).containsExactly("big");
+  }
+
+  @Test
+  public void testParts_composedAndDeleted() throws IOException {
+    try (OutputStream output = newStream(30)) {
+      output.write(CONTENT, 0, 45);
+      output.write(CONTENT[45]);
+      output.write(CONTENT, 46, 54);
+    }
+    assertThat(storage.readAllBytes(TARGET.blobId())).isEqualTo(CONTENT);
+    assertThat(objectNames()).containsExactly("big");
+  }
+
+  @Test
+  public void testManyParts_composedInGroups() throws IOException {
+    try (OutputStream output = newStream(1)) {
+      output.write(CONTENT);
+    }
+    assertThat(storage.readAllBytes(TARGET.blobId())).isEqualTo(CONTENT);
+    assertThat(objectNames()).containsExactly("big");
+  }
+
+  @Test
+  public void testDoesNotExist_targetExists_throwsAndDeletesParts() throws IOException {
+    storage.create(TARGET, new byte[] {42});
+    OutputStream output = newStream(10, BlobTargetOption.doesNotExist());
+    output.write(CONTENT);
+    try {
+      output.close();
+      throw new AssertionError("FileAlreadyExistsException expected");
+    } catch (FileAlreadyExistsException expected) {
+      assertThat(objectNames()).containsExactly("big");
+      assertThat(storage.readAllBytes(TARGET.blobId())).isEqualTo(new byte[] {42});
+    }
+  }
+
+  @Test
+  public void testWrite_afterClose_throwsIoException() throws IOException {
+    OutputStream output = newStream(10);
+    output.close();
+    thrown.expect(IOException.class);
+    output.write(1);
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage.contrib.nio;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Unit tests for {@link CloudStoragePathMatcher}.
+ */
+@RunWith(JUnit4.class)
+public class CloudStoragePathMatcherTest {
+
+  @Rule public final ExpectedException thrown = ExpectedException.none();
+
+  private static boolean matches(String glob, String name) {
+    return CloudStoragePathMatcher.glob(glob).matches(name);
+  }
+
+  @Test
+  public void testLiteral() {
+    assertThat(matches("logs/a.txt", "logs/a.txt")).isTrue();
+    assertThat(matches("logs/a.txt", "logs/a.txt2")).isFalse();
+    assertThat(matches("logs/a.txt", "logs/a")).isFalse();
+  }
+
+  @Test
+  public void testStar_doesNotCrossComponents() {
+    assertThat(matches("logs/*.txt", "logs/a.txt")).isTrue();
+    assertThat(matches("logs/*.txt", "logs/.txt")).isTrue();
+    assertThat(matches("logs/*.txt", "logs/x/a.txt")).isFalse();
+    assertThat(matches("logs/2016-10-*/part-*", "logs/2016-10-01/part-0001")).isTrue();
+    assertThat(matches("logs/2016-10-*/part-*", "logs/2016-10-01/x/part-0001")).isFalse();
+    assertThat(matches("logs/2016-10-*/part-*", "logs/2016-11-01/part-0001")).isFalse();
+  }
+
+  @Test
+  public void testDoubleStar_crossesComponents() {
+    assertThat(matches("logs/**.txt", "logs/x/y/a.txt")).isTrue();
+    assertThat(matches("**", "anything/at/all")).isTrue();
+    assertThat(matches("logs/**", "other/a")).isFalse();
+  }
+
+  @Test
+  public void testQuestionMark() {
+    assertThat(matches("a?c", "abc")).isTrue();
+    assertThat(matches("a?c", "ac")).isFalse();
+    assertThat(matches("a?c", "a/c")).isFalse();
+  }
+
+  @Test
+  public void testCharacterClass() {
+    assertThat(matches("part-[0-9][0-9]", "part-42")).isTrue();
+    assertThat(matches("part-[0-9][0-9]", "part-4x")).isFalse();
+    assertThat(matches("[!a-c]x", "dx")).isTrue();
+    assertThat(matches("[!a-c]x", "bx")).isFalse();
+    assertThat(matches("[ab-]", "-")).isTrue();
+  }
+
+  @Test
+  public void testGroups() {
+    assertThat(matches("logs/{a,b}/*.{txt,csv}", "logs/a/x.txt")).isTrue();
+    assertThat(matches("logs/{a,b}/*.{txt,csv}", "logs/b/x.csv")).isTrue();
+    assertThat(matches("logs/{a,b}/*.{txt,csv}", "logs/c/x.csv")).isFalse();
+  }
+
+  @Test
+  public void testEscape() {
+    assertThat(matches("a\\*", "a*")).isTrue();
+    assertThat(matches("a\\*", "ab")).isFalse();
+  }
+
+  @Test
+  public void testTrailingSlashIgnored() {
+    assertThat(matches("logs/2016-*", "logs/2016-10-01/")).isTrue();
+  }
+
+  @Test
+  public void testLiteralPrefix() {
+    assertThat(CloudStoragePathMatcher.glob("logs/2016-10-*/part-*").literalPrefix())
+        .isEqualTo("logs/2016-10-");
+    assertThat(CloudStoragePathMatcher.glob("logs/a\\*b*").literalPrefix())
+        .isEqualTo("logs/a*b");
+    assertThat(CloudStoragePathMatcher.glob("logs/{2015,2016}/*").literalPrefix())
+        .isEqualTo("logs/201");
+    assertThat(CloudStoragePathMatcher.glob("logs/a.txt").literalPrefix())
+        .isEqualTo("logs/a.txt");
+    assertThat(CloudStoragePathMatcher.glob("*").literalPrefix()).isEmpty();
+  }
+
+  @Test
+  public void testToString() {
+    assertThat(CloudStoragePathMatcher.glob("logs/*").toString()).isEqualTo("glob:logs/*");
+  }
+
+  @Test
+  public void testNestedGroups_throwsPatternSyntaxException() {
+    thrown.expect(PatternSyntaxException.class);
+    CloudStoragePathMatcher.glob("{a,{b,c}}");
+  }
+
+  @Test
+  public void testUnclosedClass_throwsPatternSyntaxException() {
+    thrown.expect(PatternSyntaxException.class);
+    CloudStoragePathMatcher.glob("a[bc");
+  }
+
+  @Test
+  public void testSlashInClass_throwsPatternSyntaxException() {
+    thrown.expect(PatternSyntaxException.class);
+    CloudStoragePathMatcher.glob("a[/]");
+  }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage.contrib.nio;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.NonWritableChannelException;
+import java.util.Arrays;
+
+/**
+ * Unit tests for {@link CloudStorageReadFileChannel}.
+ */
+@RunWith(JUnit4.class)
+public class CloudStorageReadFileChannelTest {
+
+  private static final int BLOCK_SIZE = 10;
+  private static final int PARALLEL_READS = 2;
+  private static final byte[] CONTENT = new byte[45];
+
+  static {
+    for (int i = 0; i < CONTENT.length; i++) {
+      CONTENT[i] = (byte) i;
+    }
+  }
+
+  @Rule public final ExpectedException thrown = ExpectedException.none();
+
+  private FakePositionalReadChannel reader;
+  private CloudStorageReadFileChannel channel;
+
+  @Before
+  public void before() {
+    reader = new FakePositionalReadChannel(CONTENT);
+    channel = new CloudStorageReadFileChannel(reader, CONTENT.length, BLOCK_SIZE, PARALLEL_READS);
+  }
+
+  @Test
+  public void testPositionalRead_fetchesBlocksConcurrently() throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(100);
+    buffer.position(3);
+    assertThat(channel.read(buffer, 2)).isEqualTo(43);
+    assertThat(buffer.position()).isEqualTo(46);
+    assertThat(buffer.limit()).isEqualTo(100);
+    assertThat(Arrays.copyOfRange(buffer.array(), 3, 46))
+        .isEqualTo(Arrays.copyOfRange(CONTENT, 2, 45));
+    assertThat(reader.requests()).containsExactly(2L, 12L, 22L, 32L, 42L);
+    assertThat(channel.position()).isEqualTo(0);
+  }
+
+  @Test
+  public void testPositionalRead_boundsConcurrentBlocks() throws IOException {
+    reader.delay(20);
+    ByteBuffer buffer = ByteBuffer.allocate(CONTENT.length);
+    assertThat(channel.read(buffer, 0)).isEqualTo(CONTENT.length);
+    assertThat(buffer.array()).isEqualTo(CONTENT);
+    // the calling thread reads the first block, the executor at most PARALLEL_READS others
+    assertThat(reader.maxReadsInProgress()).isAtMost(PARALLEL_READS + 1);
+    assertThat(reader.requests()).containsExactly(0L, 10L, 20L, 30L, 40L);
+  }
+
+  @Test
+  public void testPositionalRead_beyondSize_reportsEof() throws IOException {
+    assertThat(channel.read(ByteBuffer.allocate(5), 45)).isEqualTo(-1);
+    assertThat(reader.requests()).isEmpty();
+  }
+
+  @Test
+  public void testPositionalRead_failure() throws IOException {
+    reader.failure(new IOException("lol"));
+    thrown.expect(IOException.class);
+    thrown.expectMessage("lol");
+    channel.read(ByteBuffer.allocate(30), 0);
+  }
+
+  @Test
+  public void testPositionalRead_failure_waitsForRunningBlocks() throws IOException {
+    reader.delay(20);
+    reader.failure(new IOException("lol"));
+    try {
+      channel.read(ByteBuffer.allocate(CONTENT.length), 0);
+      Assert.fail();
+    } catch (IOException ex) {
+      // the other blocks must not write into the buffer once the read failed
+      assertThat(reader.readsInProgress()).isEqualTo(0);
+    }
+  }
+
+  @Test
+  public void testRead_advancesPosition() throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(5);
+    channel.position(40);
+    assertThat(channel.read(buffer)).isEqualTo(5);
+    assertThat(channel.position()).isEqualTo(45);
+    assertThat(buffer.array()).isEqualTo(Arrays.copyOfRange(CONTENT, 40, 45));
+    buffer.clear();
+    assertThat(channel.read(buffer)).isEqualTo(-1);
+  }
+
+  @Test
+  public void testTransferTo() throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    assertThat(channel.transferTo(5, 33, Channels.newChannel(output))).isEqualTo(33);
+    assertThat(output.toByteArray()).isEqualTo(Arrays.copyOfRange(CONTENT, 5, 38));
+    output.reset();
+    assertThat(channel.transferTo(30, 100, Channels.newChannel(output))).isEqualTo(15);
+    assertThat(output.toByteArray()).isEqualTo(Arrays.copyOfRange(CONTENT, 30, 45));
+    assertThat(channel.transferTo(50, 100, Channels.newChannel(output))).isEqualTo(0);
+  }
+
+  @Test
+  public void testMap() throws IOException {
+    MappedByteBuffer mapped = channel.map(MapMode.READ_ONLY, 5, 25);
+    assertThat(mapped.isReadOnly()).isTrue();
+    byte[] data = new byte[mapped.remaining()];
+    mapped.get(data);
+    assertThat(data).isEqualTo(Arrays.copyOfRange(CONTENT, 5, 30));
+  }
+
+  @Test
+  public void testMap_readWrite_throwsNonWritableChannelException() throws IOException {
+    thrown.expect(NonWritableChannelException.class);
+    channel.map(MapMode.READ_WRITE, 0, 10);
+  }
+
+  @Test
+  public void testWrite_throwsNonWritableChannelException() throws IOException {
+    thrown.expect(NonWritableChannelException.class);
+    channel.write(ByteBuffer.allocate(1), 0);
+  }
+
+  @Test
+  public void testLock_throwsUnsupportedOperationException() throws IOException {
+    thrown.expect(UnsupportedOperationException.class);
+    channel.lock(0, 10, true);
+  }
+
+  @Test
+  public void testClose() throws IOException {
+    channel.close();
+    assertThat(reader.isOpen()).isFalse();
+    thrown.expect(ClosedChannelException.class);
+    channel.read(ByteBuffer.allocate(1), 0);
+  }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage.contrib.nio;
+
+import static com.google.cloud.storage.contrib.nio.CloudStorageFileSystem.forBucket;
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit tests for {@link CloudStorageWatchService}.
+ */
+@RunWith(JUnit4.class)
+public class CloudStorageWatchServiceTest {
+
+  // long enough for the background polling never to run during a test
+  private static final long POLL_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+  @Rule public final ExpectedException thrown = ExpectedException.none();
+
+  private CloudStorageFileSystem fs;
+  private CloudStorageWatchService watcher;
+  private Path dir;
+
+  @Before
+  public void before() throws IOException {
+    CloudStorageConfiguration config = CloudStorageConfiguration.builder()
+        .watchPollIntervalMillis(POLL_INTERVAL_MILLIS)
+        .watchMaxPollIntervalMillis(4 * POLL_INTERVAL_MILLIS)
+        .build();
+    fs = forBucket("bucket", config, LocalStorageHelper.options());
+    watcher = (CloudStorageWatchService) fs.newWatchService();
+    dir = fs.getPath("dir/");
+  }
+
+  @After
+  public void after() {
+    watcher.close();
+  }
+
+  private static List<String> events(WatchKey key) {
+    List<String> events = new ArrayList<>();
+    for (WatchEvent<?> event : key.pollEvents()) {
+      events.add(event.kind().name() + " " + event.context());
+    }
+    return events;
+  }
+
+  @Test
+  public void testScan_reportsChangesSinceRegistration() throws IOException {
+    Files.write(fs.getPath("dir/a"), new byte[1]);
+    Files.write(fs.getPath("dir/b"), new byte[1]);
+    Files.write(fs.getPath("other"), new byte[1]);
+    WatchKey key = dir.register(watcher, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+    assertThat(key.watchable()).isEqualTo(dir);
+    watcher.scan();
+    assertThat(watcher.poll()).isNull();
+
+    Files.write(fs.getPath("dir/a"), new byte[2]);
+    Files.delete(fs.getPath("dir/b"));
+    Files.write(fs.getPath("dir/c"), new byte[1]);
+    Files.write(fs.getPath("dir/sub/d"), new byte[1]);
+    Files.write(fs.getPath("other"), new byte[2]);
+    watcher.scan();
+    assertThat(watcher.poll()).isSameAs(key);
+    assertThat(events(key))
+        .containsExactly("ENTRY_MODIFY a", "ENTRY_DELETE b", "ENTRY_CREATE c", "ENTRY_CREATE sub/")
+        .inOrder();
+    assertThat(key.reset()).isTrue();
+    assertThat(watcher.poll()).isNull();
+  }
+
+  @Test
+  public void testScan_onlyReportsRegisteredKinds() throws IOException {
+    Files.write(fs.getPath("dir/a"), new byte[1]);
+    WatchKey key = dir.register(watcher, ENTRY_CREATE);
+    Files.delete(fs.getPath("dir/a"));
+    Files.write(fs.getPath("dir/b"), new byte[1]);
+    watcher.scan();
+    assertThat(events(watcher.poll())).containsExactly("ENTRY_CREATE b");
+    assertThat(key.reset()).isTrue();
+  }
+
+  @Test
+  public void testSignalledKey_queuedOnceUntilReset() throws IOException {
+    WatchKey key = dir.register(watcher, ENTRY_CREATE);
+    Files.write(fs.getPath("dir/a"), new byte[1]);
+    watcher.scan();
+    Files.write(fs.getPath("dir/b"), new byte[1]);
+    watcher.scan();
+    assertThat(watcher.poll()).isSameAs(key);
+    assertThat(watcher.poll()).isNull();
+    Files.write(fs.getPath("dir/c"), new byte[1]);
+    watcher.scan();
+    assertThat(key.reset()).isTrue();
+    assertThat(watcher.poll()).isSameAs(key);
+    assertThat(events(key)).containsExactly("ENTRY_CREATE a", "ENTRY_CREATE b", "ENTRY_CREATE c")
+        .inOrder();
+  }
+
+  @Test
+  public void testScan_backsOffWhileNothingChanges() throws IOException {
+    dir.register(watcher, ENTRY_CREATE);
+    assertThat(watcher.scan()).isEqualTo(2 * POLL_INTERVAL_MILLIS);
+    assertThat(watcher.scan()).isEqualTo(4 * POLL_INTERVAL_MILLIS);
+    assertThat(watcher.scan()).isEqualTo(4 * POLL_INTERVAL_MILLIS);
+    Files.write(fs.getPath("dir/a"), new byte[1]);
+    assertThat(watcher.scan()).isEqualTo(POLL_INTERVAL_MILLIS);
+  }
+
+  @Test
+  public void testRegister_twice_returnsSameKey() throws IOException {
+    WatchKey key = dir.register(watcher, ENTRY_CREATE);
+    assertThat(fs.getPath("dir").register(watcher, ENTRY_DELETE)).isSameAs(key);
+  }
+
+  @Test
+  public void testCancel_stopsReporting() throws IOException {
+    WatchKey key = dir.register(watcher, ENTRY_CREATE);
+    key.cancel();
+    assertThat(key.isValid()).isFalse();
+    assertThat(key.reset()).isFalse();
+    Files.write(fs.getPath("dir/a"), new byte[1]);
+    watcher.scan();
+    assertThat(watcher.poll()).isNull();
+  }
+
+  @Test
+  public void testClose_invalidatesKeys() throws IOException {
+    WatchKey key = dir.register(watcher, ENTRY_CREATE);
+    watcher.close();
+    assertThat(key.isValid()).isFalse();
+    thrown.expect(ClosedWatchServiceException.class);
+    watcher.poll();
+  }
+
+  @Test
+  public void testTake_closedWhileWaiting_throwsClosedWatchServiceException() throws Exception {
+    Thread closer = new Thread() {
+      @Override
+      public void run() {
+        watcher.close();
+      }
+    };
+    closer.start();
+    thrown.expect(ClosedWatchServiceException.class);
+    try {
+      watcher.take();
+    } finally {
+      closer.join();
+    }
+  }
+
+  @Test
+  public void testRegister_unsupportedKind_throwsUnsupportedOperationException()
+      throws IOException {
+    WatchEvent.Kind<Path> kind = new WatchEvent.Kind<Path>() {
+      @Override
+      public String name() {
+        return "ENTRY_LOL";
+      }
+
+      @Override
+      public Class<Path> type() {
+        return Path.class;
+      }
+    };
+    thrown.expect(UnsupportedOperationException.class);
+    dir.register(watcher, kind);
+  }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage.contrib.nio;
+
+import com.google.cloud.ReadChannel;
+import com.google.cloud.RestorableState;
+import com.google.cloud.storage.PositionalReadChannel;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Positional read channel over an array that records the position of each request and the number
+ * of reads in progress.
+ */
+class FakePositionalReadChannel implements PositionalReadChannel {
+
+  private final byte[] content;
+  private final List<Long> requests = Collections.synchronizedList(new ArrayList<Long>());
+  private volatile boolean open = true;
+  private volatile IOException failure;
+  private volatile long delayMillis;
+  private final AtomicInteger readsInProgress = new AtomicInteger();
+  private final AtomicInteger maxReadsInProgress = new AtomicInteger();
+
+  FakePositionalReadChannel(byte[] content) {
+    this.content = content;
+  }
+
+  @Override
+  public int read(ByteBuffer dst, long position) throws IOException {
+    if (!open) {
+      throw new ClosedChannelException();
+    }
+    requests.add(position);
+    int reads = readsInProgress.incrementAndGet();
+    try {
+      while (true) {
+        int max = maxReadsInProgress.get();
+        if (reads <= max || maxReadsInProgress.compareAndSet(max, reads)) {
+          break;
+        }
+      }
+      if (delayMillis > 0) {
+        Uninterruptibles.sleepUninterruptibly(delayMillis, TimeUnit.MILLISECONDS);
+      }
+      if (failure != null) {
+        throw failure;
+      }
+      if (position >= content.length) {
+        return -1;
+      }
+      int length = (int) Math.min(dst.remaining(), content.length - position);
+      dst.put(content, (int) position, length);
+      return length;
+    } finally {
+      readsInProgress.decrementAndGet();
+    }
+  }
+
+  @Override
+  public int read(ByteBuffer dst) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public boolean isOpen() {
+    return open;
+  }
+
+  @Override
+  public void close() {
+    open = false;
+  }
+
+  @Override
+  public void seek(long position) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void chunkSize(int chunkSize) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public RestorableState<ReadChannel> capture() {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Makes the following reads fail with {@code failure}, or succeed if {@code null}.
+   */
+  void failure(IOException failure) {
+    this.failure = failure;
+  }
+
+  /**
+   * Makes each following read take {@code delayMillis} before it completes.
+   */
+  void delay(long delayMillis) {
+    this.delayMillis = delayMillis;
+  }
+
+  int readsInProgress() {
+    return readsInProgress.get();
+  }
+
+  int maxReadsInProgress() {
+    return maxReadsInProgress.get();
+  }
+
+  List<Long> requests() {
+    synchronized (requests) {
+      return new ArrayList<>(requests);
+    }
+  }
+
+  /**
+   * Waits up to 5 seconds for a read starting at {@code position}.
+   */
+  void awaitRequest(long position) throws InterruptedException {
+    for (int i = 0; i < 500 && !requests.contains(position); i++) {
+      Thread.sleep(10);
+    }
+  }
+}
@@ -16,51 +16,26 @@
 
 package com.google.cloud.storage.contrib.nio;
 
-import com.google.cloud.spi.ServiceRpcFactory;
-import com.google.cloud.storage.spi.StorageRpc;
 import com.google.cloud.storage.StorageOptions;
 
 /**
  * Utility to create an in-memory storage configuration for testing. Storage options can be
- * obtained via the {@link #options()} method. Returned options will point to FakeStorageRpc.
+ * obtained via the {@link #options()} method. Returned options are backed by a shared
+ * {@link com.google.cloud.storage.testing.InMemoryStorageRpc} that creates buckets when they are
+ * first accessed.
  */
 class LocalStorageHelper {
 
-  // used for testing. Will throw if you pass it an option.
-  private static final FakeStorageRpc instance = new FakeStorageRpc(true);
+  // shared, as file system providers may keep the options they were first configured with
+  private static final com.google.cloud.storage.testing.LocalStorageHelper instance =
+      com.google.cloud.storage.testing.LocalStorageHelper.createWithImplicitBuckets();
 
   /**
-   * Returns a {@link StorageOptions} that use the static FakeStorageRpc instance, and resets it
-   * first so you start from a clean slate. That instance will throw if you pass it any option.
+   * Returns a {@link StorageOptions} that use the shared in-memory storage, and resets it first so
+   * you start from a clean slate.
    */
   public static StorageOptions options() {
     instance.reset();
-    return StorageOptions.builder()
-      .projectId("dummy-project-for-testing")
-      .serviceRpcFactory(
-        new ServiceRpcFactory<StorageRpc, StorageOptions>() {
-          @Override
-          public StorageRpc create(StorageOptions options) {
-            return instance;
-          }
-        })
-      .build();
-  }
-
-  /**
-   * Returns a {@link StorageOptions} that creates a new FakeStorageRpc instance with the given
-   * option.
-   */
-  public static StorageOptions customOptions(final boolean throwIfOptions) {
-    return StorageOptions.builder()
-      .projectId("dummy-project-for-testing")
-      .serviceRpcFactory(
-         new ServiceRpcFactory<StorageRpc, StorageOptions>() {
-           @Override
-           public StorageRpc create(StorageOptions options) {
-             return new FakeStorageRpc(throwIfOptions);
-           }
-         })
-      .build();
+    return instance.options();
   }
 }
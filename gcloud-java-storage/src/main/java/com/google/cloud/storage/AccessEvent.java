@@ -0,0 +1,154 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.storage;
+
+import com.google.common.base.MoreObjects;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An access made to Google Cloud Storage, as reported to an {@link AccessListener}. An event
+ * covers all the attempts made for a request, its latency includes the time spent waiting between
+ * retries.
+ */
+public final class AccessEvent {
+
+  private final Operation operation;
+  private final String bucket;
+  private final String name;
+  private final long bytes;
+  private final long latencyNanos;
+  private final int retries;
+  private final boolean failed;
+
+  /**
+   * The type of an access.
+   */
+  public enum Operation {
+    /**
+     * A blob was created or uploaded, or a bucket was created.
+     */
+    CREATE,
+    /**
+     * Metadata of a blob or of a bucket were read.
+     */
+    GET,
+    /**
+     * Blobs in a bucket, or buckets, were listed.
+     */
+    LIST,
+    /**
+     * Metadata of a blob or of a bucket were updated.
+     */
+    UPDATE,
+    /**
+     * A blob or a bucket was deleted.
+     */
+    DELETE,
+    /**
+     * Blobs were composed into a new blob.
+     */
+    COMPOSE,
+    /**
+     * A blob was copied, the event is reported for the target blob. Large copies are reported in
+     * several events, one for each chunk.
+     */
+    COPY,
+    /**
+     * Blob content was read.
+     */
+    READ,
+    /**
+     * Blob content was written by a write channel, one event is reported for each chunk.
+     */
+    WRITE
+  }
+
+  AccessEvent(Operation operation, String bucket, String name, long bytes, long latencyNanos,
+      int retries, boolean failed) {
+    this.operation = operation;
+    this.bucket = bucket;
+    this.name = name;
+    this.bytes = bytes;
+    this.latencyNanos = latencyNanos;
+    this.retries = retries;
+    this.failed = failed;
+  }
+
+  /**
+   * Returns the type of the access.
+   */
+  public Operation operation() {
+    return operation;
+  }
+
+  /**
+   * Returns the bucket accessed, {@code null} for lists of buckets.
+   */
+  public String bucket() {
+    return bucket;
+  }
+
+  /**
+   * Returns the name of the blob accessed, {@code null} for accesses to buckets. For lists, the
+   * prefix of the listed blobs, if any.
+   */
+  public String name() {
+    return name;
+  }
+
+  /**
+   * Returns the number of bytes of blob content transferred or, for copies, rewritten. Metadata
+   * are not counted.
+   */
+  public long bytes() {
+    return bytes;
+  }
+
+  /**
+   * Returns the time taken by the access, including retries, in the requested unit.
+   */
+  public long latency(TimeUnit unit) {
+    return unit.convert(latencyNanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Returns the number of times the request was retried.
+   */
+  public int retries() {
+    return retries;
+  }
+
+  /**
+   * Returns {@code true} if the access failed.
+   */
+  public boolean failed() {
+    return failed;
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this)
+        .add("operation", operation)
+        .add("bucket", bucket)
+        .add("name", name)
+        .add("bytes", bytes)
+        .add("latencyNanos", latencyNanos)
+        .add("retries", retries)
+        .add("failed", failed)
+        .toString();
+  }
+}
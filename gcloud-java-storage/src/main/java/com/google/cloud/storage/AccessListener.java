@@ -0,0 +1,33 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.storage;
+
+/**
+ * A listener for the accesses made by a {@link Storage} service and by its read and write
+ * channels. A listener is registered with {@link StorageOptions.Builder#accessListener}. Listeners
+ * are notified synchronously, from the threads that perform the accesses: implementations must be
+ * thread-safe and should return quickly. Exceptions thrown by listeners are logged and otherwise
+ * ignored.
+ *
+ * @see PrefixAccessAggregator
+ */
+public interface AccessListener {
+
+  /**
+   * Called when an access completes, successfully or not.
+   */
+  void accessed(AccessEvent event);
+}
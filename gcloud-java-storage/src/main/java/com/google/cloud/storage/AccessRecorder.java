@@ -0,0 +1,110 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage;
+
+import com.google.cloud.storage.AccessEvent.Operation;
+import com.google.common.base.Throwables;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Measures an access and reports it to the {@link StorageOptions#accessListener() access
+ * listener}, if any. A recorder is started before a request is sent, the request's callable is
+ * wrapped with {@link #count(Callable)} to count retries, and the recorder is completed with
+ * {@link #succeeded(long)} or {@link #failed()}. When no listener is registered a shared recorder
+ * that does nothing is used.
+ */
+final class AccessRecorder {
+
+  private static final Logger log = Logger.getLogger(AccessRecorder.class.getName());
+  private static final AccessRecorder DISABLED = new AccessRecorder(null, null, null, null);
+
+  private final AccessListener listener;
+  private final Operation operation;
+  private final String bucket;
+  private final String name;
+  private final long startNanos;
+  private final AtomicInteger retries = new AtomicInteger();
+
+  private AccessRecorder(AccessListener listener, Operation operation, String bucket,
+      String name) {
+    this.listener = listener;
+    this.operation = operation;
+    this.bucket = bucket;
+    this.name = name;
+    this.startNanos = listener != null ? System.nanoTime() : 0;
+  }
+
+  static AccessRecorder start(StorageOptions options, Operation operation, String bucket,
+      String name) {
+    AccessListener listener = options.accessListener();
+    return listener != null ? new AccessRecorder(listener, operation, bucket, name) : DISABLED;
+  }
+
+  /**
+   * Returns a callable that counts the retries of {@code callable}, i.e. its calls after the first
+   * one. A recorder can wrap several callables, if an access requires several requests. The
+   * returned callable declares no exception, as the retry handler rejects callables that declare
+   * exceptions it does not handle: {@code callable} is expected to throw unchecked exceptions only.
+   */
+  <T> Callable<T> count(final Callable<T> callable) {
+    if (listener == null) {
+      return callable;
+    }
+    return new Callable<T>() {
+
+      private boolean called;
+
+      @Override
+      public T call() {
+        if (called) {
+          retries.incrementAndGet();
+        }
+        called = true;
+        try {
+          return callable.call();
+        } catch (Exception ex) {
+          throw Throwables.propagate(ex);
+        }
+      }
+    };
+  }
+
+  void succeeded(long bytes) {
+    report(bytes, false);
+  }
+
+  void failed() {
+    report(0, true);
+  }
+
+  private void report(long bytes, boolean failed) {
+    if (listener == null) {
+      return;
+    }
+    AccessEvent event = new AccessEvent(operation, bucket, name, bytes,
+        System.nanoTime() - startNanos, retries.get(), failed);
+    try {
+      listener.accessed(event);
+    } catch (RuntimeException ex) {
+      log.log(Level.WARNING, "Access listener failed for " + event, ex);
+    }
+  }
+}
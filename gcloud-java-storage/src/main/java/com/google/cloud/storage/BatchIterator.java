@@ -0,0 +1,127 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage;
+
+import com.google.cloud.BatchResult;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * An iterator over the results of batch operations on a stream of inputs. Inputs are consumed in
+ * chunks of at most {@link #BATCH_SIZE} operations, each sent as a {@link StorageBatch}, and up to
+ * {@code maxInFlight} batches are submitted ahead of the results being consumed. Results are
+ * returned in the order of the inputs. Only the results of the batches in flight and of the batch
+ * being consumed are kept in memory, so that arbitrarily many inputs can be processed.
+ *
+ * <p>If a batch request fails as a whole, the {@link StorageException} that caused the failure is
+ * thrown by {@link #hasNext()} or {@link #next()}.
+ *
+ * @param <T> the type of the inputs
+ * @param <R> the type of the results
+ */
+abstract class BatchIterator<T, R> extends AbstractIterator<R> {
+
+  static final int BATCH_SIZE = 100;
+
+  private final Storage storage;
+  private final Iterator<? extends T> inputs;
+  private final int maxInFlight;
+  private final Deque<Chunk> inFlight = new ArrayDeque<>();
+  private Iterator<R> current = Collections.emptyIterator();
+
+  private final class Chunk {
+
+    // written by callbacks before the batch's future completes, read after it completes
+    private final List<R> results;
+    private final Future<Void> future;
+
+    Chunk(List<R> results, Future<Void> future) {
+      this.results = results;
+      this.future = future;
+    }
+  }
+
+  BatchIterator(Storage storage, Iterator<? extends T> inputs, int maxInFlight) {
+    this.storage = storage;
+    this.inputs = inputs;
+    this.maxInFlight = maxInFlight;
+  }
+
+  /**
+   * Adds the operation for {@code input} to {@code batch}.
+   */
+  abstract StorageBatchResult<R> add(StorageBatch batch, T input);
+
+  /**
+   * Returns the result for an operation that failed with {@code exception}.
+   */
+  abstract R failed(StorageException exception);
+
+  @Override
+  protected R computeNext() {
+    while (!current.hasNext()) {
+      submit();
+      Chunk chunk = inFlight.poll();
+      if (chunk == null) {
+        return endOfData();
+      }
+      try {
+        Uninterruptibles.getUninterruptibly(chunk.future);
+      } catch (ExecutionException ex) {
+        inFlight.clear();
+        throw ex.getCause() instanceof StorageException
+            ? (StorageException) ex.getCause()
+            : new StorageException(StorageException.UNKNOWN_CODE, ex.getMessage(), ex.getCause());
+      }
+      current = chunk.results.iterator();
+      submit();
+    }
+    return current.next();
+  }
+
+  private void submit() {
+    while (inFlight.size() < maxInFlight && inputs.hasNext()) {
+      StorageBatch batch = storage.batch();
+      final List<R> results = new ArrayList<>(BATCH_SIZE);
+      for (int i = 0; i < BATCH_SIZE && inputs.hasNext(); i++) {
+        final int index = results.size();
+        results.add(null);
+        add(batch, inputs.next()).notify(new BatchResult.Callback<R, StorageException>() {
+          @Override
+          public void success(R result) {
+            results.set(index, result);
+          }
+
+          @Override
+          public void error(StorageException exception) {
+            results.set(index, failed(exception));
+          }
+        });
+      }
+      inFlight.add(new Chunk(results, batch.submitAsync()));
+    }
+  }
+}
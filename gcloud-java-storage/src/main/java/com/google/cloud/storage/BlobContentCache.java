@@ -0,0 +1,295 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A local disk cache for the content of generation-pinned blobs. The data of a blob generation can
+ * not change, so blocks of {@link #BLOCK_SIZE} bytes downloaded for a {@link BlobId} with a
+ * generation are stored in a local directory and served from there by subsequent reads, also
+ * across process restarts. Blocks are memory-mapped for reads and their CRC32C checksum, recorded
+ * when the block is written, is verified the first time a block is used by a process. When the
+ * total size of the cached blocks exceeds the configured budget the least recently used blocks are
+ * deleted. This class is thread-safe.
+ *
+ * <p>The cache is configured with {@link StorageOptions.Builder#contentCache(String, long)}. All
+ * the services that use the same cache directory in a process share the same cache instance, whose
+ * budget is the one of the first service that opened the directory. The budget is enforced per
+ * process: an instance only knows the blocks that were in the directory when it was opened and the
+ * ones it wrote since, so processes that use the same directory at the same time don't see each
+ * other's blocks and can together exceed the budget.
+ */
+final class BlobContentCache {
+
+  static final int BLOCK_SIZE = 2 * 1024 * 1024;
+
+  private static final Logger log = Logger.getLogger(BlobContentCache.class.getName());
+  private static final String BLOCK_SUFFIX = ".block";
+  private static final Pattern BLOCK_PATTERN =
+      Pattern.compile("([0-9a-f]{64})-([0-9]+)-([0-9a-f]{8})\\.block");
+  private static final int VERIFY_BUFFER_SIZE = 64 * 1024;
+  private static final ConcurrentMap<String, BlobContentCache> INSTANCES =
+      new ConcurrentHashMap<>();
+
+  private final Path directory;
+  private final long maxBytes;
+  private final LinkedHashMap<String, Block> blocks = new LinkedHashMap<>(16, 0.75f, true);
+  private long totalBytes;
+
+  private static final class Block {
+
+    private final Path file;
+    private final int length;
+    private final int crc32c;
+    private MappedByteBuffer mapped;
+
+    Block(Path file, int length, int crc32c) {
+      this.file = file;
+      this.length = length;
+      this.crc32c = crc32c;
+    }
+  }
+
+  @VisibleForTesting
+  BlobContentCache(Path directory, long maxBytes) throws IOException {
+    checkArgument(maxBytes > 0, "Content cache size must be > 0");
+    this.directory = directory;
+    this.maxBytes = maxBytes;
+    Files.createDirectories(directory);
+    load();
+  }
+
+  /**
+   * Returns the cache instance for the provided directory, creating it if needed. If the cache
+   * directory can not be created {@code null} is returned and reads are not cached.
+   */
+  static BlobContentCache forDirectory(String directory, long maxBytes) {
+    BlobContentCache cache = INSTANCES.get(directory);
+    if (cache == null) {
+      try {
+        cache = new BlobContentCache(Paths.get(directory), maxBytes);
+      } catch (IOException ex) {
+        log.log(Level.WARNING, "Could not open content cache directory " + directory, ex);
+        return null;
+      }
+      BlobContentCache previous = INSTANCES.putIfAbsent(directory, cache);
+      cache = previous != null ? previous : cache;
+    }
+    return cache;
+  }
+
+  /**
+   * Returns {@code true} if the content of the provided blob can be cached, i.e. if
+   * {@code blobId} identifies a specific generation.
+   */
+  static boolean isCacheable(BlobId blobId) {
+    return blobId.generation() != null;
+  }
+
+  /**
+   * Returns a read-only buffer with the content of the requested block, or {@code null} if the
+   * block is not cached or failed checksum validation. The returned buffer is positioned at
+   * {@code 0} and its limit is the length of the block.
+   */
+  ByteBuffer get(BlobId blobId, long blockIndex) {
+    String key = blockKey(blobId, blockIndex);
+    Block block;
+    synchronized (this) {
+      block = blocks.get(key);
+    }
+    if (block == null) {
+      return null;
+    }
+    MappedByteBuffer mapped;
+    synchronized (block) {
+      if (block.mapped == null) {
+        try {
+          mapped = map(block.file);
+        } catch (IOException ex) {
+          remove(key, block);
+          return null;
+        }
+        if (mapped.limit() != block.length || crc32c(mapped) != block.crc32c) {
+          log.log(Level.WARNING, "Discarding corrupted cache block " + block.file);
+          remove(key, block);
+          return null;
+        }
+        block.mapped = mapped;
+      }
+      mapped = block.mapped;
+    }
+    return mapped.asReadOnlyBuffer();
+  }
+
+  /**
+   * Stores the first {@code length} bytes of {@code content} as the requested block. Failures to
+   * write the block are logged and otherwise ignored, as the cache is only an optimization.
+   */
+  void put(BlobId blobId, long blockIndex, byte[] content, int length) {
+    checkArgument(length > 0 && length <= BLOCK_SIZE, "Invalid block length %s", length);
+    String key = blockKey(blobId, blockIndex);
+    synchronized (this) {
+      if (blocks.containsKey(key)) {
+        return;
+      }
+    }
+    int crc32c = Hashing.crc32c().hashBytes(content, 0, length).asInt();
+    Path file = directory.resolve(key + '-' + String.format("%08x", crc32c) + BLOCK_SUFFIX);
+    try {
+      Path temp = Files.createTempFile(directory, key, ".tmp");
+      try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+        ByteBuffer buffer = ByteBuffer.wrap(content, 0, length);
+        while (buffer.hasRemaining()) {
+          channel.write(buffer);
+        }
+      }
+      Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException ex) {
+      log.log(Level.WARNING, "Could not write cache block " + file, ex);
+      return;
+    }
+    add(key, new Block(file, length, crc32c));
+  }
+
+  /**
+   * Returns the total size, in bytes, of the cached blocks.
+   */
+  synchronized long size() {
+    return totalBytes;
+  }
+
+  private synchronized void add(String key, Block block) {
+    Block previous = blocks.put(key, block);
+    if (previous != null) {
+      totalBytes -= previous.length;
+    }
+    totalBytes += block.length;
+    Iterator<Map.Entry<String, Block>> iterator = blocks.entrySet().iterator();
+    while (totalBytes > maxBytes && iterator.hasNext()) {
+      Block eldest = iterator.next().getValue();
+      iterator.remove();
+      totalBytes -= eldest.length;
+      deleteQuietly(eldest.file);
+    }
+  }
+
+  private synchronized void remove(String key, Block block) {
+    if (blocks.get(key) == block) {
+      blocks.remove(key);
+      totalBytes -= block.length;
+    }
+    deleteQuietly(block.file);
+  }
+
+  private void load() throws IOException {
+    List<Path> files = new ArrayList<>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+      for (Path file : stream) {
+        String fileName = file.getFileName().toString();
+        if (fileName.endsWith(".tmp")) {
+          deleteQuietly(file);
+        } else if (BLOCK_PATTERN.matcher(fileName).matches()) {
+          files.add(file);
+        }
+      }
+    }
+    // oldest blocks first, so that they are the first to be evicted
+    final Map<Path, Long> lastModified = new LinkedHashMap<>();
+    for (Path file : files) {
+      lastModified.put(file, Files.getLastModifiedTime(file).toMillis());
+    }
+    Collections.sort(files, new Comparator<Path>() {
+      @Override
+      public int compare(Path first, Path second) {
+        return Long.compare(lastModified.get(first), lastModified.get(second));
+      }
+    });
+    for (Path file : files) {
+      Matcher matcher = BLOCK_PATTERN.matcher(file.getFileName().toString());
+      matcher.matches();
+      long length = Files.size(file);
+      if (length == 0 || length > BLOCK_SIZE) {
+        deleteQuietly(file);
+        continue;
+      }
+      String key = matcher.group(1) + '-' + matcher.group(2);
+      add(key, new Block(file, (int) length, (int) Long.parseLong(matcher.group(3), 16)));
+    }
+  }
+
+  private static MappedByteBuffer map(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+  }
+
+  private static int crc32c(ByteBuffer buffer) {
+    ByteBuffer source = buffer.duplicate();
+    Hasher hasher = Hashing.crc32c().newHasher();
+    byte[] chunk = new byte[Math.min(VERIFY_BUFFER_SIZE, Math.max(source.remaining(), 1))];
+    while (source.hasRemaining()) {
+      int length = Math.min(chunk.length, source.remaining());
+      source.get(chunk, 0, length);
+      hasher.putBytes(chunk, 0, length);
+    }
+    return hasher.hash().asInt();
+  }
+
+  private static String blockKey(BlobId blobId, long blockIndex) {
+    checkArgument(isCacheable(blobId), "Only blobs with a generation can be cached");
+    String id = blobId.bucket() + '/' + blobId.name() + '#' + blobId.generation();
+    return Hashing.sha256().hashString(id, UTF_8).toString() + '-' + blockIndex;
+  }
+
+  private static void deleteQuietly(Path file) {
+    try {
+      Files.deleteIfExists(file);
+    } catch (IOException ex) {
+      log.log(Level.FINE, "Could not delete cache file " + file, ex);
+    }
+  }
+}
@@ -16,12 +16,13 @@
 
 package com.google.cloud.storage;
 
-import static com.google.cloud.RetryHelper.runWithRetries;
+import static com.google.common.base.Preconditions.checkArgument;
 
 import com.google.api.services.storage.model.StorageObject;
 import com.google.cloud.ReadChannel;
 import com.google.cloud.RestorableState;
 import com.google.cloud.RetryHelper;
+import com.google.cloud.storage.AccessEvent.Operation;
 import com.google.cloud.storage.spi.StorageRpc;
 import com.google.cloud.storage.spi.StorageRpc.Tuple;
 import com.google.common.base.MoreObjects;
@@ -33,20 +34,21 @@ import java.nio.channels.ClosedChannelException;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Default implementation for ReadChannel.
  */
-class BlobReadChannel implements ReadChannel {
+class BlobReadChannel implements PositionalReadChannel {
 
   private static final int DEFAULT_CHUNK_SIZE = 2 * 1024 * 1024;
 
   private final StorageOptions serviceOptions;
   private final BlobId blob;
   private final Map<StorageRpc.Option, ?> requestOptions;
-  private String lastEtag;
+  private final AtomicReference<String> lastEtag = new AtomicReference<>();
   private long position;
-  private boolean isOpen;
+  private volatile boolean isOpen;
   private boolean endOfStream;
   private int chunkSize = DEFAULT_CHUNK_SIZE;
 
@@ -54,6 +56,9 @@ class BlobReadChannel implements ReadChannel {
   private final StorageObject storageObject;
   private int bufferPos;
   private byte[] buffer;
+  private final BlobContentCache contentCache;
+  private long cachedBlockIndex = -1;
+  private ByteBuffer cachedBlock;
 
   BlobReadChannel(StorageOptions serviceOptions, BlobId blob,
       Map<StorageRpc.Option, ?> requestOptions) {
@@ -63,6 +68,25 @@ class BlobReadChannel implements ReadChannel {
     isOpen = true;
     storageRpc = serviceOptions.rpc();
     storageObject = blob.toPb();
+    contentCache = isCacheable(blob, requestOptions) ? serviceOptions.contentCache() : null;
+  }
+
+  /**
+   * Returns {@code true} if reads for the provided blob and options can be served by the local
+   * content cache: the blob must be generation-pinned and the only option allowed is a generation
+   * precondition for the same generation, which cached content satisfies by construction.
+   */
+  private static boolean isCacheable(BlobId blob, Map<StorageRpc.Option, ?> requestOptions) {
+    if (!BlobContentCache.isCacheable(blob)) {
+      return false;
+    }
+    for (Map.Entry<StorageRpc.Option, ?> entry : requestOptions.entrySet()) {
+      if (entry.getKey() != StorageRpc.Option.IF_GENERATION_MATCH
+          || !Objects.equals(entry.getValue(), blob.generation())) {
+        return false;
+      }
+    }
+    return true;
   }
 
   @Override
@@ -88,6 +112,7 @@ class BlobReadChannel implements ReadChannel {
   public void close() {
     if (isOpen) {
       buffer = null;
+      cachedBlock = null;
       isOpen = false;
     }
   }
@@ -115,28 +140,15 @@ class BlobReadChannel implements ReadChannel {
   @Override
   public int read(ByteBuffer byteBuffer) throws IOException {
     validateOpen();
+    if (contentCache != null) {
+      return readCached(byteBuffer);
+    }
     if (buffer == null) {
       if (endOfStream) {
         return -1;
       }
-      final int toRead = Math.max(byteBuffer.remaining(), chunkSize);
-      try {
-        Tuple<String, byte[]> result = runWithRetries(new Callable<Tuple<String, byte[]>>() {
-          @Override
-          public Tuple<String, byte[]> call() {
-            return storageRpc.read(storageObject, requestOptions, position, toRead);
-          }
-        }, serviceOptions.retryParams(), StorageImpl.EXCEPTION_HANDLER, serviceOptions.clock());
-        if (result.y().length > 0 && lastEtag != null && !Objects.equals(result.x(), lastEtag)) {
-          StringBuilder messageBuilder = new StringBuilder();
-          messageBuilder.append("Blob ").append(blob).append(" was updated while reading");
-          throw new StorageException(0, messageBuilder.toString());
-        }
-        lastEtag = result.x();
-        buffer = result.y();
-      } catch (RetryHelper.RetryHelperException e) {
-        throw StorageException.translateAndThrow(e);
-      }
+      int toRead = Math.max(byteBuffer.remaining(), chunkSize);
+      buffer = fetch(position, toRead);
       if (toRead > buffer.length) {
         endOfStream = true;
         if (buffer.length == 0) {
@@ -156,6 +168,121 @@ class BlobReadChannel implements ReadChannel {
     return toWrite;
   }
 
+  /**
+   * Reads from the local content cache, fetching and caching aligned blocks of
+   * {@link BlobContentCache#BLOCK_SIZE} bytes that are missing. The chunk size is not used in
+   * this mode.
+   */
+  private int readCached(ByteBuffer byteBuffer) throws IOException {
+    if (endOfStream) {
+      return -1;
+    }
+    long blockIndex = position / BlobContentCache.BLOCK_SIZE;
+    if (cachedBlock == null || cachedBlockIndex != blockIndex) {
+      cachedBlock = loadBlock(blockIndex);
+      cachedBlockIndex = blockIndex;
+    }
+    int toWrite = copyFromBlock(cachedBlock, position, byteBuffer);
+    if (toWrite < 0) {
+      endOfStream = true;
+      return -1;
+    }
+    position += toWrite;
+    return toWrite;
+  }
+
+  /**
+   * Returns the content of an aligned block, from the local content cache or fetching and caching
+   * it if missing.
+   */
+  private ByteBuffer loadBlock(long blockIndex) {
+    ByteBuffer block = contentCache.get(blob, blockIndex);
+    if (block == null) {
+      byte[] content = fetch(blockIndex * BlobContentCache.BLOCK_SIZE,
+          BlobContentCache.BLOCK_SIZE);
+      if (content.length > 0) {
+        contentCache.put(blob, blockIndex, content, content.length);
+      }
+      block = ByteBuffer.wrap(content);
+    }
+    return block;
+  }
+
+  /**
+   * Copies the bytes of {@code block} from blob offset {@code position} into {@code byteBuffer},
+   * returning the number of bytes copied or {@code -1} if the block has no byte at that offset.
+   */
+  private static int copyFromBlock(ByteBuffer block, long position, ByteBuffer byteBuffer) {
+    int offset = (int) (position % BlobContentCache.BLOCK_SIZE);
+    int available = block.limit() - offset;
+    if (available <= 0) {
+      return -1;
+    }
+    int toWrite = Math.min(available, byteBuffer.remaining());
+    ByteBuffer slice = block.duplicate();
+    slice.position(offset);
+    slice.limit(offset + toWrite);
+    byteBuffer.put(slice);
+    return toWrite;
+  }
+
+  @Override
+  public int read(ByteBuffer byteBuffer, long position) throws IOException {
+    checkArgument(position >= 0, "Position should be non-negative, is %s", position);
+    validateOpen();
+    if (!byteBuffer.hasRemaining()) {
+      return 0;
+    }
+    if (contentCache == null) {
+      byte[] content = fetch(position, byteBuffer.remaining());
+      if (content.length == 0) {
+        return -1;
+      }
+      byteBuffer.put(content);
+      return content.length;
+    }
+    int total = 0;
+    while (byteBuffer.hasRemaining()) {
+      ByteBuffer block = loadBlock(position / BlobContentCache.BLOCK_SIZE);
+      int toWrite = copyFromBlock(block, position, byteBuffer);
+      if (toWrite < 0) {
+        break;
+      }
+      position += toWrite;
+      total += toWrite;
+      if (block.limit() < BlobContentCache.BLOCK_SIZE) {
+        // last block of the blob
+        break;
+      }
+    }
+    return total == 0 ? -1 : total;
+  }
+
+  private byte[] fetch(final long from, final int length) {
+    AccessRecorder recorder =
+        AccessRecorder.start(serviceOptions, Operation.READ, blob.bucket(), blob.name());
+    try {
+      Tuple<String, byte[]> result = StorageImpl.run(serviceOptions, recorder,
+          new Callable<Tuple<String, byte[]>>() {
+            @Override
+            public Tuple<String, byte[]> call() {
+              return storageRpc.read(storageObject, requestOptions, from, length);
+            }
+          });
+      recorder.succeeded(result.y().length);
+      // the first non-empty read sets the etag that all subsequent reads must match
+      if (result.y().length > 0 && !lastEtag.compareAndSet(null, result.x())
+          && !Objects.equals(result.x(), lastEtag.get())) {
+        StringBuilder messageBuilder = new StringBuilder();
+        messageBuilder.append("Blob ").append(blob).append(" was updated while reading");
+        throw new StorageException(0, messageBuilder.toString());
+      }
+      return result.y();
+    } catch (RetryHelper.RetryHelperException e) {
+      throw StorageException.translateAndThrow(e);
+    }
+  }
+
   static class StateImpl implements RestorableState<ReadChannel>, Serializable {
 
     private static final long serialVersionUID = 3889420316004453706L;
@@ -234,7 +361,7 @@ class BlobReadChannel implements ReadChannel {
     @Override
     public ReadChannel restore() {
       BlobReadChannel channel = new BlobReadChannel(serviceOptions, blob, requestOptions);
-      channel.lastEtag = lastEtag;
+      channel.lastEtag.set(lastEtag);
       channel.position = position;
       channel.isOpen = isOpen;
       channel.endOfStream = endOfStream;
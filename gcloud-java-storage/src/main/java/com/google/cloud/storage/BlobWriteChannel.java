@@ -16,13 +16,13 @@
 
 package com.google.cloud.storage;
 
-import static com.google.cloud.RetryHelper.runWithRetries;
 import static java.util.concurrent.Executors.callable;
 
 import com.google.cloud.BaseWriteChannel;
 import com.google.cloud.RestorableState;
 import com.google.cloud.RetryHelper;
 import com.google.cloud.WriteChannel;
+import com.google.cloud.storage.AccessEvent.Operation;
 import com.google.cloud.storage.spi.StorageRpc;
 
 import java.util.Map;
@@ -32,25 +32,46 @@ import java.util.Map;
  */
 class BlobWriteChannel extends BaseWriteChannel<StorageOptions, BlobInfo> {
 
+  // invalidated when the upload completes, null for restored channels
+  private final MetadataCache metadataCache;
+
   BlobWriteChannel(StorageOptions options, BlobInfo blob, Map<StorageRpc.Option, ?> optionsMap) {
-    this(options, blob, options.rpc().open(blob.toPb(), optionsMap));
+    this(options, blob, optionsMap, null);
+  }
+
+  BlobWriteChannel(StorageOptions options, BlobInfo blob, Map<StorageRpc.Option, ?> optionsMap,
+      MetadataCache metadataCache) {
+    this(options, blob, options.rpc().open(blob.toPb(), optionsMap), metadataCache);
   }
 
   BlobWriteChannel(StorageOptions options, BlobInfo blobInfo, String uploadId) {
+    this(options, blobInfo, uploadId, null);
+  }
+
+  private BlobWriteChannel(StorageOptions options, BlobInfo blobInfo, String uploadId,
+      MetadataCache metadataCache) {
     super(options, blobInfo, uploadId);
+    this.metadataCache = metadataCache;
   }
 
   @Override
   protected void flushBuffer(final int length, final boolean last) {
+    AccessRecorder recorder =
+        AccessRecorder.start(options(), Operation.WRITE, entity().bucket(), entity().name());
     try {
-      runWithRetries(callable(new Runnable() {
+      StorageImpl.run(options(), recorder, callable(new Runnable() {
         @Override
         public void run() {
           options().rpc().write(uploadId(), buffer(), 0, position(), length, last);
         }
-      }), options().retryParams(), StorageImpl.EXCEPTION_HANDLER, options().clock());
+      }));
+      recorder.succeeded(length);
     } catch (RetryHelper.RetryHelperException e) {
       throw StorageException.translateAndThrow(e);
+    } finally {
+      if (last && metadataCache != null) {
+        metadataCache.invalidate(entity().blobId());
+      }
     }
   }
 
@@ -0,0 +1,697 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.net.HttpURLConnection.HTTP_NOT_FOUND;
+
+import com.google.cloud.BatchResult;
+import com.google.cloud.RetryHelper.RetryInterruptedException;
+import com.google.cloud.storage.Storage.BlobListOption;
+import com.google.cloud.storage.Storage.CopyRequest;
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * An engine for operations on all the blobs under a prefix: deleting them or copying them to
+ * another bucket or prefix. Listing is pipelined with the operations: deletes are sent in
+ * {@link StorageBatch} requests and copies are driven with {@link CopyWriter}, with up to
+ * {@link Builder#parallelism(int)} batches or copies in flight at once. The rate of requests can
+ * be limited with {@link Builder#maxOpsPerSecond(double)}.
+ *
+ * <p>Progress is reported to a {@link CheckpointListener} as {@link Checkpoint} objects, that can
+ * be persisted and passed to {@link #resume(Checkpoint)} to continue an interrupted operation. A
+ * checkpoint records the name of the last blob such that it and all the blobs listed before it
+ * were processed, and the names of the blobs whose processing failed, that are retried when the
+ * operation is resumed.
+ *
+ * <p>Example of deleting all the blobs under a prefix, at most 500 per second:
+ * <pre> {@code
+ * BulkOperations bulk = BulkOperations.builder(storage)
+ *     .maxOpsPerSecond(500)
+ *     .build();
+ * BulkOperations.Result result = bulk.deletePrefix("bucket", "tmp/");
+ * System.out.printf("Deleted %d blobs, %d failures%n", result.succeededCount(),
+ *     result.failedCount());
+ * }</pre>
+ */
+public final class BulkOperations {
+
+  private static final int DEFAULT_PARALLELISM = 8;
+  private static final int MAX_BATCH_SIZE = 100;
+  private static final long DEFAULT_CHECKPOINT_INTERVAL = 1000;
+  private static final int MAX_REPORTED_FAILURES = 1000;
+
+  private final Storage storage;
+  private final int parallelism;
+  private final int batchSize;
+  private final double maxOpsPerSecond;
+  private final CheckpointListener checkpointListener;
+  private final long checkpointInterval;
+
+  /**
+   * The type of a bulk operation.
+   */
+  public enum OperationType {
+    DELETE, COPY
+  }
+
+  /**
+   * A listener for the progress of bulk operations. Checkpoints are delivered one at a time, from
+   * the threads that execute the operations.
+   */
+  public interface CheckpointListener {
+
+    /**
+     * Called when the operation has made progress and when it completes.
+     */
+    void checkpoint(Checkpoint checkpoint);
+  }
+
+  /**
+   * The progress of a bulk operation. A checkpoint can be used to resume the operation with
+   * {@link BulkOperations#resume(Checkpoint)}.
+   */
+  public static final class Checkpoint implements Serializable {
+
+    private static final long serialVersionUID = 5184290741638012567L;
+
+    private final OperationType type;
+    private final String bucket;
+    private final String prefix;
+    private final String targetBucket;
+    private final String targetPrefix;
+    private final String lastProcessedName;
+    private final long succeededCount;
+    private final long failedCount;
+    private final Set<String> failedNames;
+
+    Checkpoint(OperationType type, String bucket, String prefix, String targetBucket,
+        String targetPrefix, String lastProcessedName, long succeededCount, long failedCount,
+        Set<String> failedNames) {
+      this.type = type;
+      this.bucket = bucket;
+      this.prefix = prefix;
+      this.targetBucket = targetBucket;
+      this.targetPrefix = targetPrefix;
+      this.lastProcessedName = lastProcessedName;
+      this.succeededCount = succeededCount;
+      this.failedCount = failedCount;
+      this.failedNames = ImmutableSet.copyOf(failedNames);
+    }
+
+    Checkpoint progress(String lastProcessedName, long succeededCount, long failedCount,
+        Set<String> failedNames) {
+      return new Checkpoint(type, bucket, prefix, targetBucket, targetPrefix, lastProcessedName,
+          succeededCount, failedCount, failedNames);
+    }
+
+    /**
+     * Returns the type of the operation.
+     */
+    public OperationType type() {
+      return type;
+    }
+
+    /**
+     * Returns the bucket of the blobs the operation applies to.
+     */
+    public String bucket() {
+      return bucket;
+    }
+
+    /**
+     * Returns the prefix of the blobs the operation applies to.
+     */
+    public String prefix() {
+      return prefix;
+    }
+
+    /**
+     * Returns the target bucket of a copy operation, {@code null} for deletes.
+     */
+    public String targetBucket() {
+      return targetBucket;
+    }
+
+    /**
+     * Returns the prefix that replaces {@link #prefix()} in the names of copied blobs,
+     * {@code null} for deletes.
+     */
+    public String targetPrefix() {
+      return targetPrefix;
+    }
+
+    /**
+     * Returns the name of the last blob such that it and all the blobs listed before it were
+     * processed, {@code null} if no blob was processed yet.
+     */
+    public String lastProcessedName() {
+      return lastProcessedName;
+    }
+
+    /**
+     * Returns the number of blobs processed successfully.
+     */
+    public long succeededCount() {
+      return succeededCount;
+    }
+
+    /**
+     * Returns the number of blobs whose processing failed.
+     */
+    public long failedCount() {
+      return failedCount;
+    }
+
+    /**
+     * Returns the names of the blobs whose processing failed. These blobs are processed again
+     * when the operation is resumed, even if they were listed before
+     * {@link #lastProcessedName()}.
+     */
+    public Set<String> failedNames() {
+      return failedNames;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(type, bucket, prefix, targetBucket, targetPrefix, lastProcessedName,
+          succeededCount, failedCount, failedNames);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (obj == this) {
+        return true;
+      }
+      if (!(obj instanceof Checkpoint)) {
+        return false;
+      }
+      Checkpoint other = (Checkpoint) obj;
+      return type == other.type
+          && Objects.equals(bucket, other.bucket)
+          && Objects.equals(prefix, other.prefix)
+          && Objects.equals(targetBucket, other.targetBucket)
+          && Objects.equals(targetPrefix, other.targetPrefix)
+          && Objects.equals(lastProcessedName, other.lastProcessedName)
+          && succeededCount == other.succeededCount
+          && failedCount == other.failedCount
+          && Objects.equals(failedNames, other.failedNames);
+    }
+
+    @Override
+    public String toString() {
+      return MoreObjects.toStringHelper(this)
+          .add("type", type)
+          .add("bucket", bucket)
+          .add("prefix", prefix)
+          .add("targetBucket", targetBucket)
+          .add("targetPrefix", targetPrefix)
+          .add("lastProcessedName", lastProcessedName)
+          .add("succeededCount", succeededCount)
+          .add("failedCount", failedCount)
+          .toString();
+    }
+  }
+
+  /**
+   * The outcome of a bulk operation. Counts include the blobs processed before the operation was
+   * resumed, elapsed time and throughput only refer to the last run.
+   */
+  public static final class Result implements Serializable {
+
+    private static final long serialVersionUID = -3328467914291374862L;
+
+    private final Checkpoint checkpoint;
+    private final long processedCount;
+    private final long elapsedMillis;
+    private final Map<BlobId, StorageException> failures;
+
+    Result(Checkpoint checkpoint, long processedCount, long elapsedMillis,
+        Map<BlobId, StorageException> failures) {
+      this.checkpoint = checkpoint;
+      this.processedCount = processedCount;
+      this.elapsedMillis = elapsedMillis;
+      this.failures = ImmutableMap.copyOf(failures);
+    }
+
+    /**
+     * Returns the final checkpoint of the operation.
+     */
+    public Checkpoint checkpoint() {
+      return checkpoint;
+    }
+
+    /**
+     * Returns the number of blobs processed successfully.
+     */
+    public long succeededCount() {
+      return checkpoint.succeededCount();
+    }
+
+    /**
+     * Returns the number of blobs whose processing failed.
+     */
+    public long failedCount() {
+      return checkpoint.failedCount();
+    }
+
+    /**
+     * Returns the time taken by the last run of the operation, in milliseconds.
+     */
+    public long elapsedMillis() {
+      return elapsedMillis;
+    }
+
+    /**
+     * Returns the number of blobs processed per second in the last run of the operation.
+     */
+    public double opsPerSecond() {
+      return elapsedMillis == 0 ? 0 : processedCount * 1000.0 / elapsedMillis;
+    }
+
+    /**
+     * Returns the errors for the blobs whose processing failed in the last run. At most 1000
+     * failures are reported.
+     */
+    public Map<BlobId, StorageException> failures() {
+      return failures;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(checkpoint, processedCount, elapsedMillis, failures);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (obj == this) {
+        return true;
+      }
+      if (!(obj instanceof Result)) {
+        return false;
+      }
+      Result other = (Result) obj;
+      return Objects.equals(checkpoint, other.checkpoint)
+          && processedCount == other.processedCount
+          && elapsedMillis == other.elapsedMillis
+          && Objects.equals(failures, other.failures);
+    }
+
+    @Override
+    public String toString() {
+      return MoreObjects.toStringHelper(this)
+          .add("succeededCount", succeededCount())
+          .add("failedCount", failedCount())
+          .add("elapsedMillis", elapsedMillis)
+          .add("opsPerSecond", opsPerSecond())
+          .toString();
+    }
+  }
+
+  /**
+   * Builder for {@code BulkOperations}.
+   */
+  public static final class Builder {
+
+    private final Storage storage;
+    private int parallelism = DEFAULT_PARALLELISM;
+    private int batchSize = MAX_BATCH_SIZE;
+    private double maxOpsPerSecond;
+    private CheckpointListener checkpointListener;
+    private long checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+
+    private Builder(Storage storage) {
+      this.storage = checkNotNull(storage);
+    }
+
+    /**
+     * Sets the maximum number of delete batches or copies in flight. Default value is 8.
+     *
+     * @return the builder
+     * @throws IllegalArgumentException if {@code parallelism} is not positive
+     */
+    public Builder parallelism(int parallelism) {
+      checkArgument(parallelism > 0, "Parallelism must be > 0");
+      this.parallelism = parallelism;
+      return this;
+    }
+
+    /**
+     * Sets the number of deletes sent in each batch request. Default value is 100, the maximum.
+     *
+     * @return the builder
+     * @throws IllegalArgumentException if {@code batchSize} is not in the range [1, 100]
+     */
+    public Builder batchSize(int batchSize) {
+      checkArgument(batchSize > 0 && batchSize <= MAX_BATCH_SIZE,
+          "Batch size must be in the range [1, %s]", MAX_BATCH_SIZE);
+      this.batchSize = batchSize;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of operations per second: deletes, or rewrite requests for copies.
+     * By default the rate is not limited.
+     *
+     * @return the builder
+     * @throws IllegalArgumentException if {@code maxOpsPerSecond} is not positive
+     */
+    public Builder maxOpsPerSecond(double maxOpsPerSecond) {
+      checkArgument(maxOpsPerSecond > 0, "Maximum operations per second must be > 0");
+      this.maxOpsPerSecond = maxOpsPerSecond;
+      return this;
+    }
+
+    /**
+     * Sets the listener notified of the progress of operations.
+     *
+     * @return the builder
+     */
+    public Builder checkpointListener(CheckpointListener checkpointListener) {
+      this.checkpointListener = checkpointListener;
+      return this;
+    }
+
+    /**
+     * Sets the number of processed blobs after which a new checkpoint is delivered to the
+     * {@link CheckpointListener}. Default value is 1000.
+     *
+     * @return the builder
+     * @throws IllegalArgumentException if {@code checkpointInterval} is not positive
+     */
+    public Builder checkpointInterval(long checkpointInterval) {
+      checkArgument(checkpointInterval > 0, "Checkpoint interval must be > 0");
+      this.checkpointInterval = checkpointInterval;
+      return this;
+    }
+
+    /**
+     * Creates a {@code BulkOperations} object.
+     */
+    public BulkOperations build() {
+      return new BulkOperations(this);
+    }
+  }
+
+  private BulkOperations(Builder builder) {
+    this.storage = builder.storage;
+    this.parallelism = builder.parallelism;
+    this.batchSize = builder.batchSize;
+    this.maxOpsPerSecond = builder.maxOpsPerSecond;
+    this.checkpointListener = builder.checkpointListener;
+    this.checkpointInterval = builder.checkpointInterval;
+  }
+
+  /**
+   * Returns a builder for {@code BulkOperations} that use the provided service.
+   */
+  public static Builder builder(Storage storage) {
+    return new Builder(storage);
+  }
+
+  /**
+   * Deletes the latest generation of all the blobs in {@code bucket} whose name starts with
+   * {@code prefix}. Blobs that no longer exist are counted as deleted. This method blocks until
+   * all the blobs are processed.
+   *
+   * @throws StorageException upon failure to list the blobs
+   */
+  public Result deletePrefix(String bucket, String prefix) {
+    return run(new Checkpoint(OperationType.DELETE, checkNotNull(bucket), checkNotNull(prefix),
+        null, null, null, 0, 0, ImmutableSet.<String>of()));
+  }
+
+  /**
+   * Copies all the blobs in {@code sourceBucket} whose name starts with {@code sourcePrefix} to
+   * {@code targetBucket}, replacing {@code sourcePrefix} with {@code targetPrefix} in their names.
+   * This method blocks until all the blobs are processed.
+   *
+   * @throws StorageException upon failure to list the blobs
+   */
+  public Result copyPrefix(String sourceBucket, String sourcePrefix, String targetBucket,
+      String targetPrefix) {
+    return run(new Checkpoint(OperationType.COPY, checkNotNull(sourceBucket),
+        checkNotNull(sourcePrefix), checkNotNull(targetBucket), checkNotNull(targetPrefix), null,
+        0, 0, ImmutableSet.<String>of()));
+  }
+
+  /**
+   * Resumes an operation from a checkpoint. Blobs listed up to and including
+   * {@link Checkpoint#lastProcessedName()} are skipped, except for the ones in
+   * {@link Checkpoint#failedNames()} that are processed again.
+   *
+   * @throws StorageException upon failure to list the blobs
+   */
+  public Result resume(Checkpoint checkpoint) {
+    return run(checkNotNull(checkpoint));
+  }
+
+  private Result run(Checkpoint start) {
+    Execution execution = new Execution(start);
+    try {
+      return execution.run();
+    } finally {
+      execution.executor.shutdownNow();
+    }
+  }
+
+  /**
+   * The state of a running operation.
+   */
+  private final class Execution {
+
+    private final long startMillis = System.currentTimeMillis();
+    private final Checkpoint start;
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final RateLimiter rateLimiter;
+    // blobs listed but not yet below the low-water mark, in listing order
+    private final Deque<Item> window = new ArrayDeque<>();
+    private final Map<BlobId, StorageException> failures = new LinkedHashMap<>();
+    private final Set<String> failedNames;
+    private String lastProcessedName;
+    private long succeededCount;
+    private long failedCount;
+    private long processedCount;
+    private long sinceCheckpoint;
+
+    Execution(Checkpoint start) {
+      this.start = start;
+      this.failedNames = new HashSet<>(start.failedNames());
+      this.lastProcessedName = start.lastProcessedName();
+      this.succeededCount = start.succeededCount();
+      this.failedCount = start.failedCount();
+      this.executor = Executors.newFixedThreadPool(parallelism, new ThreadFactoryBuilder()
+          .setDaemon(true)
+          .setNameFormat("gcloud-storage-bulk-%d")
+          .build());
+      this.permits = new Semaphore(parallelism);
+      this.rateLimiter = maxOpsPerSecond > 0 ? RateLimiter.create(maxOpsPerSecond) : null;
+    }
+
+    Result run() {
+      Iterator<Blob> blobs = storage.list(start.bucket(),
+          BlobListOption.prefix(start.prefix()), BlobListOption.fields()).iterateAll();
+      List<Item> batch = new ArrayList<>(batchSize);
+      while (blobs.hasNext()) {
+        Blob blob = blobs.next();
+        if (start.lastProcessedName() != null
+            && ParallelBlobLister.compareNames(blob.name(), start.lastProcessedName()) <= 0
+            && !start.failedNames().contains(blob.name())) {
+          continue;
+        }
+        Item item = add(BlobId.of(blob.bucket(), blob.name()));
+        if (start.type() == OperationType.COPY) {
+          submitCopy(item);
+        } else {
+          batch.add(item);
+          if (batch.size() == batchSize) {
+            submitDeletes(batch);
+            batch = new ArrayList<>(batchSize);
+          }
+        }
+      }
+      if (!batch.isEmpty()) {
+        submitDeletes(batch);
+      }
+      acquire(parallelism);
+      synchronized (this) {
+        Checkpoint checkpoint = checkpoint();
+        if (checkpointListener != null && sinceCheckpoint > 0) {
+          checkpointListener.checkpoint(checkpoint);
+        }
+        return new Result(checkpoint, processedCount,
+            System.currentTimeMillis() - startMillis, failures);
+      }
+    }
+
+    private void submitDeletes(final List<Item> items) {
+      acquire(1);
+      if (rateLimiter != null) {
+        rateLimiter.acquire(items.size());
+      }
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            StorageBatch batch = storage.batch();
+            for (final Item item : items) {
+              BatchResult<Boolean, StorageException> result = batch.delete(item.blobId);
+              result.notify(new BatchResult.Callback<Boolean, StorageException>() {
+                @Override
+                public void success(Boolean result) {
+                  complete(item, null);
+                }
+
+                @Override
+                public void error(StorageException exception) {
+                  complete(item, exception);
+                }
+              });
+            }
+            batch.submit();
+          } catch (StorageException ex) {
+            for (Item item : items) {
+              complete(item, ex);
+            }
+          } finally {
+            permits.release();
+          }
+        }
+      });
+    }
+
+    private void submitCopy(final Item item) {
+      acquire(1);
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            String name = item.blobId.name();
+            BlobId target = BlobId.of(start.targetBucket(),
+                start.targetPrefix() + name.substring(start.prefix().length()));
+            if (rateLimiter != null) {
+              rateLimiter.acquire();
+            }
+            CopyWriter writer = storage.copy(CopyRequest.of(item.blobId, target));
+            while (!writer.isDone()) {
+              if (rateLimiter != null) {
+                rateLimiter.acquire();
+              }
+              writer.copyChunk();
+            }
+            complete(item, null);
+          } catch (StorageException ex) {
+            complete(item, ex);
+          } finally {
+            permits.release();
+          }
+        }
+      });
+    }
+
+    private synchronized Item add(BlobId blobId) {
+      Item item = new Item(blobId);
+      window.add(item);
+      return item;
+    }
+
+    /**
+     * Records the outcome for a blob, advancing the low-water mark over the blobs that completed
+     * in listing order.
+     */
+    private synchronized void complete(Item item, StorageException exception) {
+      if (item.done) {
+        // the batch failed after some results were delivered
+        return;
+      }
+      item.done = true;
+      processedCount++;
+      sinceCheckpoint++;
+      String name = item.blobId.name();
+      if (exception == null || start.type() == OperationType.DELETE
+          && exception.code() == HTTP_NOT_FOUND) {
+        succeededCount++;
+        if (failedNames.remove(name)) {
+          // a failure retried after resuming
+          failedCount--;
+        }
+      } else {
+        if (failedNames.add(name)) {
+          failedCount++;
+        }
+        if (failures.size() < MAX_REPORTED_FAILURES) {
+          failures.put(item.blobId, exception);
+        }
+      }
+      while (!window.isEmpty() && window.peek().done) {
+        String polled = window.poll().blobId.name();
+        // failures retried after resuming are listed before the checkpoint
+        if (lastProcessedName == null
+            || ParallelBlobLister.compareNames(polled, lastProcessedName) > 0) {
+          lastProcessedName = polled;
+        }
+      }
+      if (checkpointListener != null && sinceCheckpoint >= checkpointInterval) {
+        sinceCheckpoint = 0;
+        checkpointListener.checkpoint(checkpoint());
+      }
+    }
+
+    private Checkpoint checkpoint() {
+      return start.progress(lastProcessedName, succeededCount, failedCount, failedNames);
+    }
+
+    private void acquire(int count) {
+      try {
+        permits.acquire(count);
+      } catch (InterruptedException ex) {
+        RetryInterruptedException.propagate();
+      }
+    }
+  }
+
+  private static final class Item {
+
+    private final BlobId blobId;
+    private boolean done;
+
+    Item(BlobId blobId) {
+      this.blobId = blobId;
+    }
+  }
+}
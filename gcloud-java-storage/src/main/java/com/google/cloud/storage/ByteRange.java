@@ -0,0 +1,97 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.storage;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.base.MoreObjects;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * A range of bytes in a blob's content, identified by its offset and length. Used by
+ * {@link Storage#readRanges(BlobId, java.util.List, Storage.BlobSourceOption...)}.
+ */
+public final class ByteRange implements Serializable {
+
+  private static final long serialVersionUID = 3624311457427816932L;
+
+  private final long offset;
+  private final int length;
+
+  private ByteRange(long offset, int length) {
+    this.offset = offset;
+    this.length = length;
+  }
+
+  /**
+   * Returns the offset of the first byte of the range.
+   */
+  public long offset() {
+    return offset;
+  }
+
+  /**
+   * Returns the number of bytes in the range.
+   */
+  public int length() {
+    return length;
+  }
+
+  /**
+   * Returns the offset following the last byte of the range.
+   */
+  public long end() {
+    return offset + length;
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this)
+        .add("offset", offset)
+        .add("length", length)
+        .toString();
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(offset, length);
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (obj == this) {
+      return true;
+    }
+    if (!(obj instanceof ByteRange)) {
+      return false;
+    }
+    ByteRange other = (ByteRange) obj;
+    return offset == other.offset && length == other.length;
+  }
+
+  /**
+   * Returns a range of {@code length} bytes starting at {@code offset}.
+   *
+   * @throws IllegalArgumentException if {@code offset} or {@code length} are negative
+   */
+  public static ByteRange of(long offset, int length) {
+    checkArgument(offset >= 0, "Offset must be >= 0");
+    checkArgument(length >= 0, "Length must be >= 0");
+    return new ByteRange(offset, length);
+  }
+}
@@ -0,0 +1,327 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.cloud.RestorableState;
+import com.google.cloud.storage.Storage.CopyRequest;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A manager that drives many copies concurrently on a bounded number of threads. Each copy is
+ * advanced one {@link CopyWriter#copyChunk() chunk} at a time and chunks of different copies are
+ * interleaved, so that large cross-location copies do not hold back the others. At most
+ * {@link Builder#parallelism(int)} rewrite requests are in flight at any time.
+ *
+ * <p>The state of a copy is {@link CopyOperation#capture() captured} after every chunk. Captured
+ * states can be persisted and passed to {@link #resume(RestorableState, ProgressListener)} to
+ * complete a copy that was interrupted, for instance by a process restart.
+ *
+ * <p>Example of copying several blobs, reporting progress:
+ * <pre> {@code
+ * try (CopyManager manager = CopyManager.builder(storage).parallelism(16).build()) {
+ *   List<CopyManager.CopyOperation> operations = new ArrayList<>();
+ *   for (CopyRequest request : requests) {
+ *     operations.add(manager.copy(request, new CopyManager.ProgressListener() {
+ *       public void progress(CopyManager.CopyOperation operation) {
+ *         System.out.printf("%s: %d/%d%n", operation.source(), operation.totalBytesCopied(),
+ *             operation.blobSize());
+ *       }
+ *     }));
+ *   }
+ *   for (CopyManager.CopyOperation operation : operations) {
+ *     Blob copied = operation.get();
+ *   }
+ * }}</pre>
+ */
+public final class CopyManager implements AutoCloseable {
+
+  private static final int DEFAULT_PARALLELISM = 8;
+
+  private final Storage storage;
+  private final Long megabytesCopiedPerChunk;
+  private final ExecutorService executor;
+
+  /**
+   * A listener for the progress of copies. The listener is called, from one of the manager's
+   * threads, after each chunk is copied and when a copy completes or fails. The last call for a
+   * copy happens before its result is set, so that the listener has seen the copy's final progress
+   * when {@link CopyOperation#get()} returns.
+   */
+  public interface ProgressListener {
+
+    void progress(CopyOperation operation);
+  }
+
+  /**
+   * A copy driven by a {@link CopyManager}. The copy's result can be retrieved with the
+   * {@link Future} methods, which throw {@link ExecutionException} caused by a
+   * {@link StorageException} if the copy failed.
+   */
+  public final class CopyOperation implements Future<Blob> {
+
+    private final BlobId source;
+    private final ProgressListener listener;
+    private final SettableFuture<Blob> future = SettableFuture.create();
+    private CopyRequest request;
+    private CopyWriter writer;
+    private volatile RestorableState<CopyWriter> state;
+    private volatile long totalBytesCopied;
+    private volatile long blobSize;
+
+    private CopyOperation(BlobId source, ProgressListener listener) {
+      this.source = source;
+      this.listener = listener;
+    }
+
+    /**
+     * Returns the identity of the blob being copied.
+     */
+    public BlobId source() {
+      return source;
+    }
+
+    /**
+     * Returns the number of bytes copied so far.
+     */
+    public long totalBytesCopied() {
+      return totalBytesCopied;
+    }
+
+    /**
+     * Returns the size of the blob being copied, {@code 0} until the first chunk is copied.
+     */
+    public long blobSize() {
+      return blobSize;
+    }
+
+    /**
+     * Returns the state of the copy after the last chunk copied, {@code null} until the first
+     * chunk is copied. The state can be passed to {@link CopyManager#resume(RestorableState,
+     * ProgressListener)} to complete the copy later.
+     */
+    public RestorableState<CopyWriter> capture() {
+      return state;
+    }
+
+    /**
+     * Stops the copy after the chunk in progress, if any.
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+      return future.cancel(false);
+    }
+
+    @Override
+    public boolean isCancelled() {
+      return future.isCancelled();
+    }
+
+    @Override
+    public boolean isDone() {
+      return future.isDone();
+    }
+
+    @Override
+    public Blob get() throws InterruptedException, ExecutionException {
+      return future.get();
+    }
+
+    @Override
+    public Blob get(long timeout, TimeUnit unit)
+        throws InterruptedException, ExecutionException, TimeoutException {
+      return future.get(timeout, unit);
+    }
+
+    private void schedule() {
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          step();
+        }
+      });
+    }
+
+    /**
+     * Copies one chunk and schedules the next one at the end of the executor's queue.
+     */
+    private void step() {
+      if (future.isDone()) {
+        return;
+      }
+      Blob result = null;
+      RuntimeException failure = null;
+      try {
+        if (writer == null) {
+          writer = storage.copy(request);
+          request = null;
+        } else {
+          writer.copyChunk();
+        }
+        totalBytesCopied = writer.totalBytesCopied();
+        blobSize = writer.blobSize();
+        state = writer.capture();
+        if (writer.isDone()) {
+          result = writer.result();
+        }
+      } catch (RuntimeException ex) {
+        failure = ex;
+      }
+      notifyListener();
+      if (failure != null) {
+        future.setException(failure);
+      } else if (result != null) {
+        future.set(result);
+      } else {
+        schedule();
+      }
+    }
+
+    private void notifyListener() {
+      if (listener != null) {
+        listener.progress(this);
+      }
+    }
+  }
+
+  /**
+   * Builder for {@code CopyManager}.
+   */
+  public static final class Builder {
+
+    private final Storage storage;
+    private int parallelism = DEFAULT_PARALLELISM;
+    private Long megabytesCopiedPerChunk;
+
+    private Builder(Storage storage) {
+      this.storage = checkNotNull(storage);
+    }
+
+    /**
+     * Sets the maximum number of rewrite requests in flight. Default value is 8.
+     *
+     * @return the builder
+     * @throws IllegalArgumentException if {@code parallelism} is not positive
+     */
+    public Builder parallelism(int parallelism) {
+      checkArgument(parallelism > 0, "Parallelism must be > 0");
+      this.parallelism = parallelism;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of megabytes copied by each rewrite request, for copy requests that
+     * do not set {@link CopyRequest#megabytesCopiedPerChunk()}. Smaller chunks give more frequent
+     * progress updates and checkpoints and fairer sharing of threads between copies, larger chunks
+     * require fewer requests. By default the service chooses the chunk size.
+     *
+     * @return the builder
+     * @throws IllegalArgumentException if {@code megabytesCopiedPerChunk} is not positive
+     */
+    public Builder megabytesCopiedPerChunk(long megabytesCopiedPerChunk) {
+      checkArgument(megabytesCopiedPerChunk > 0, "Megabytes copied per chunk must be > 0");
+      this.megabytesCopiedPerChunk = megabytesCopiedPerChunk;
+      return this;
+    }
+
+    /**
+     * Creates a {@code CopyManager} object.
+     */
+    public CopyManager build() {
+      return new CopyManager(this);
+    }
+  }
+
+  private CopyManager(Builder builder) {
+    this.storage = builder.storage;
+    this.megabytesCopiedPerChunk = builder.megabytesCopiedPerChunk;
+    this.executor = Executors.newFixedThreadPool(builder.parallelism, new ThreadFactoryBuilder()
+        .setDaemon(true)
+        .setNameFormat("gcloud-storage-copy-%d")
+        .build());
+  }
+
+  /**
+   * Returns a builder for a {@code CopyManager} that uses the provided service.
+   */
+  public static Builder builder(Storage storage) {
+    return new Builder(storage);
+  }
+
+  /**
+   * Starts a copy.
+   */
+  public CopyOperation copy(CopyRequest request) {
+    return copy(request, null);
+  }
+
+  /**
+   * Starts a copy, notifying {@code listener} of its progress.
+   */
+  public CopyOperation copy(CopyRequest request, ProgressListener listener) {
+    CopyOperation operation = new CopyOperation(request.source(), listener);
+    if (request.megabytesCopiedPerChunk() == null && megabytesCopiedPerChunk != null) {
+      CopyRequest.Builder builder = CopyRequest.builder()
+          .source(request.source())
+          .sourceOptions(request.sourceOptions())
+          .megabytesCopiedPerChunk(megabytesCopiedPerChunk);
+      if (request.overrideInfo()) {
+        builder.target(request.target(), request.targetOptions());
+      } else {
+        builder.target(request.target().blobId()).targetOptions(request.targetOptions());
+      }
+      request = builder.build();
+    }
+    operation.request = request;
+    operation.schedule();
+    return operation;
+  }
+
+  /**
+   * Resumes a copy from a state returned by {@link CopyOperation#capture()} or
+   * {@link CopyWriter#capture()}, notifying {@code listener} of its progress.
+   */
+  public CopyOperation resume(RestorableState<CopyWriter> state, ProgressListener listener) {
+    CopyWriter writer = state.restore();
+    CopyOperation operation = new CopyOperation(writer.source(), listener);
+    operation.writer = writer;
+    operation.state = state;
+    operation.totalBytesCopied = writer.totalBytesCopied();
+    operation.blobSize = writer.blobSize();
+    operation.schedule();
+    return operation;
+  }
+
+  /**
+   * Stops the manager's threads. Copies that are not complete are abandoned and their futures
+   * never complete; their last captured state can be used to resume them.
+   */
+  @Override
+  public void close() {
+    executor.shutdownNow();
+  }
+}
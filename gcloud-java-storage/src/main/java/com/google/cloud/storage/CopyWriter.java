@@ -16,11 +16,11 @@
 
 package com.google.cloud.storage;
 
-import static com.google.cloud.RetryHelper.runWithRetries;
-
+import com.google.api.services.storage.model.StorageObject;
 import com.google.cloud.Restorable;
 import com.google.cloud.RestorableState;
 import com.google.cloud.RetryHelper;
+import com.google.cloud.storage.AccessEvent.Operation;
 import com.google.cloud.storage.spi.StorageRpc;
 import com.google.cloud.storage.spi.StorageRpc.RewriteRequest;
 import com.google.cloud.storage.spi.StorageRpc.RewriteResponse;
@@ -50,12 +50,20 @@ public class CopyWriter implements Restorable<CopyWriter> {
 
   private final StorageOptions serviceOptions;
   private final StorageRpc storageRpc;
+  // invalidated after each chunk is copied, null for restored writers
+  private final MetadataCache metadataCache;
   private RewriteResponse rewriteResponse;
 
   CopyWriter(StorageOptions serviceOptions, RewriteResponse rewriteResponse) {
+    this(serviceOptions, rewriteResponse, null);
+  }
+
+  CopyWriter(StorageOptions serviceOptions, RewriteResponse rewriteResponse,
+      MetadataCache metadataCache) {
     this.serviceOptions = serviceOptions;
     this.rewriteResponse = rewriteResponse;
     this.storageRpc = serviceOptions.rpc();
+    this.metadataCache = metadataCache;
   }
 
   /**
@@ -92,6 +100,13 @@ public class CopyWriter implements Restorable<CopyWriter> {
     return rewriteResponse.isDone;
   }
 
+  /**
+   * Returns the identity of the blob being copied.
+   */
+  BlobId source() {
+    return BlobId.fromPb(rewriteResponse.rewriteRequest.source);
+  }
+
   /**
    * Returns the number of bytes copied.
    */
@@ -107,15 +122,25 @@ public class CopyWriter implements Restorable<CopyWriter> {
    */
   public void copyChunk() {
     if (!isDone()) {
+      StorageObject target = rewriteResponse.rewriteRequest.target;
+      AccessRecorder recorder = AccessRecorder.start(serviceOptions, Operation.COPY,
+          target.getBucket(), target.getName());
       try {
-        this.rewriteResponse = runWithRetries(new Callable<RewriteResponse>() {
-          @Override
-          public RewriteResponse call() {
-            return storageRpc.continueRewrite(rewriteResponse);
-          }
-        }, serviceOptions.retryParams(), StorageImpl.EXCEPTION_HANDLER, serviceOptions.clock());
+        long previouslyRewritten = rewriteResponse.totalBytesRewritten;
+        this.rewriteResponse = StorageImpl.run(serviceOptions, recorder,
+            new Callable<RewriteResponse>() {
+              @Override
+              public RewriteResponse call() {
+                return storageRpc.continueRewrite(rewriteResponse);
+              }
+            });
+        recorder.succeeded(rewriteResponse.totalBytesRewritten - previouslyRewritten);
       } catch (RetryHelper.RetryHelperException e) {
         throw StorageException.translateAndThrow(e);
+      } finally {
+        if (metadataCache != null) {
+          metadataCache.invalidate(BlobId.fromPb(target));
+        }
       }
     }
   }
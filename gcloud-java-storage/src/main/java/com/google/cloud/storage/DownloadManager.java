@@ -0,0 +1,440 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.cloud.ReadChannel;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Strings;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.BaseEncoding;
+import com.google.common.primitives.Ints;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A manager for downloads of large blobs to local files that survive process restarts. The blob
+ * is downloaded in ranges of {@link Builder#rangeSize(int)} bytes; after each range is written and
+ * flushed to the target file its offset, length and CRC32C checksum are appended to a state file
+ * next to the target, together with the generation and etag of the blob being downloaded. If a
+ * download is interrupted, calling {@link #download(BlobId, Path)} again verifies the ranges
+ * recorded in the state file against the content of the target file and resumes from the end of
+ * the last verified range, as long as the blob's generation and etag did not change; otherwise
+ * the download starts over. Once the download completes the checksum of the whole file, combined
+ * from the checksums of the ranges, is checked against {@link BlobInfo#crc32c()} and the state
+ * file is deleted.
+ *
+ * <p>Example of downloading a blob, resuming a previous attempt if any:
+ * <pre> {@code
+ * DownloadManager manager = DownloadManager.builder(storage).build();
+ * Blob blob = manager.download(BlobId.of("bucket", "large_blob"), Paths.get("large_blob"));
+ * }</pre>
+ */
+public final class DownloadManager {
+
+  static final String STATE_SUFFIX = ".download-state";
+
+  private static final Logger log = Logger.getLogger(DownloadManager.class.getName());
+  private static final int DEFAULT_RANGE_SIZE = 16 * 1024 * 1024;
+  private static final int VERIFY_BUFFER_SIZE = 1024 * 1024;
+  private static final int CRC32C_POLYNOMIAL = 0x82F63B78;
+  private static final String HEADER = "# gcloud-java-storage download state";
+  private static final String GENERATION = "generation=";
+  private static final String ETAG = "etag=";
+  private static final String SIZE = "size=";
+  private static final String RANGE = "range=";
+
+  private final Storage storage;
+  private final int rangeSize;
+
+  /**
+   * Builder for {@code DownloadManager}.
+   */
+  public static final class Builder {
+
+    private final Storage storage;
+    private int rangeSize = DEFAULT_RANGE_SIZE;
+
+    private Builder(Storage storage) {
+      this.storage = checkNotNull(storage);
+    }
+
+    /**
+     * Sets the size of the ranges the blob is downloaded and checkpointed in. An interrupted
+     * download loses at most the range in progress, smaller ranges checkpoint more often at the
+     * cost of more requests and a larger state file. Default value is 16 MiB.
+     *
+     * @return the builder
+     * @throws IllegalArgumentException if {@code rangeSize} is not positive
+     */
+    public Builder rangeSize(int rangeSize) {
+      checkArgument(rangeSize > 0, "Range size must be > 0");
+      this.rangeSize = rangeSize;
+      return this;
+    }
+
+    /**
+     * Creates a {@code DownloadManager} object.
+     */
+    public DownloadManager build() {
+      return new DownloadManager(this);
+    }
+  }
+
+  /**
+   * A range of the target file whose content was downloaded and flushed.
+   */
+  @VisibleForTesting
+  static final class Range {
+
+    final long offset;
+    final int length;
+    final int crc32c;
+
+    Range(long offset, int length, int crc32c) {
+      this.offset = offset;
+      this.length = length;
+      this.crc32c = crc32c;
+    }
+
+    long end() {
+      return offset + length;
+    }
+  }
+
+  /**
+   * The persisted state of a download. The state file starts with the identity of the blob
+   * generation being downloaded, followed by one line per verified range. Ranges are appended and
+   * flushed as they are downloaded, a partially written last line is ignored when loading.
+   */
+  @VisibleForTesting
+  static final class State {
+
+    final long generation;
+    final String etag;
+    final long size;
+    final List<Range> ranges;
+
+    State(long generation, String etag, long size, List<Range> ranges) {
+      this.generation = generation;
+      this.etag = Strings.nullToEmpty(etag);
+      this.size = size;
+      this.ranges = ranges;
+    }
+
+    long position() {
+      return ranges.isEmpty() ? 0 : ranges.get(ranges.size() - 1).end();
+    }
+
+    /**
+     * Atomically replaces the state file with this state.
+     */
+    void write(Path file) throws IOException {
+      StringBuilder builder = new StringBuilder();
+      builder.append(HEADER).append('\n');
+      builder.append(GENERATION).append(generation).append('\n');
+      builder.append(ETAG).append(etag).append('\n');
+      builder.append(SIZE).append(size).append('\n');
+      for (Range range : ranges) {
+        builder.append(line(range));
+      }
+      Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+      try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+          StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+        writeFully(channel, ByteBuffer.wrap(builder.toString().getBytes(UTF_8)));
+        channel.force(false);
+      }
+      Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Adds a range to this state and appends it to the state file.
+     */
+    void append(FileChannel channel, Range range) throws IOException {
+      writeFully(channel, ByteBuffer.wrap(line(range).getBytes(UTF_8)));
+      channel.force(false);
+      ranges.add(range);
+    }
+
+    /**
+     * Loads the state from a state file, returning {@code null} if the file does not exist or is
+     * not a valid state file. Ranges that do not follow the previous one are ignored.
+     */
+    static State read(Path file) throws IOException {
+      if (!Files.exists(file)) {
+        return null;
+      }
+      String content = new String(Files.readAllBytes(file), UTF_8);
+      // a last line with no terminator was not completely written
+      String[] lines = content.substring(0, content.lastIndexOf('\n') + 1).split("\n");
+      if (lines.length < 4 || !HEADER.equals(lines[0]) || !lines[1].startsWith(GENERATION)
+          || !lines[2].startsWith(ETAG) || !lines[3].startsWith(SIZE)) {
+        return null;
+      }
+      State state;
+      try {
+        state = new State(Long.parseLong(lines[1].substring(GENERATION.length())),
+            lines[2].substring(ETAG.length()), Long.parseLong(lines[3].substring(SIZE.length())),
+            new ArrayList<Range>());
+        for (int i = 4; i < lines.length && lines[i].startsWith(RANGE); i++) {
+          String[] fields = lines[i].substring(RANGE.length()).split(":");
+          Range range = new Range(Long.parseLong(fields[0]), Integer.parseInt(fields[1]),
+              (int) Long.parseLong(fields[2], 16));
+          if (range.offset != state.position() || range.length <= 0) {
+            break;
+          }
+          state.ranges.add(range);
+        }
+      } catch (NumberFormatException | ArrayIndexOutOfBoundsException ex) {
+        return null;
+      }
+      return state;
+    }
+
+    private static String line(Range range) {
+      return RANGE + range.offset + ':' + range.length + ':' + String.format("%08x", range.crc32c)
+          + '\n';
+    }
+  }
+
+  private DownloadManager(Builder builder) {
+    this.storage = builder.storage;
+    this.rangeSize = builder.rangeSize;
+  }
+
+  /**
+   * Returns a builder for a {@code DownloadManager} that uses the provided service.
+   */
+  public static Builder builder(Storage storage) {
+    return new Builder(storage);
+  }
+
+  /**
+   * Returns the path of the state file used to resume downloads to {@code target}.
+   */
+  public static Path statePath(Path target) {
+    return target.resolveSibling(target.getFileName() + STATE_SUFFIX);
+  }
+
+  /**
+   * Downloads the content of a blob to a local file, resuming a previous download to the same
+   * file if its state file exists and the blob's generation and etag did not change. If
+   * {@code source} does not specify a generation the latest generation of the blob is downloaded.
+   *
+   * @return the downloaded blob
+   * @throws StorageException if the blob does not exist, if the checksum of the downloaded content
+   *     does not match the blob's checksum or upon failure
+   * @throws IOException if the target file or the state file can not be written
+   */
+  public Blob download(BlobId source, Path target) throws IOException {
+    Blob blob = storage.get(source);
+    if (blob == null) {
+      throw new StorageException(404, "Blob " + source + " not found");
+    }
+    Path stateFile = statePath(target);
+    try (FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE,
+        StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      State state = State.read(stateFile);
+      if (state == null || state.generation != blob.generation() || state.size != blob.size()
+          || !state.etag.equals(Strings.nullToEmpty(blob.etag()))) {
+        // the blob was replaced or modified since the state was saved, start over
+        state = new State(blob.generation(), blob.etag(), blob.size(), new ArrayList<Range>());
+        state.write(stateFile);
+      } else if (!verify(channel, state)) {
+        // drop the ranges that could not be verified
+        state.write(stateFile);
+      } else {
+        log.log(Level.FINE, "Resuming download of {0} at {1}",
+            new Object[] {blob.blobId(), state.position()});
+      }
+      channel.truncate(state.position());
+      transfer(blob, channel, state, stateFile);
+      int crc32c = 0;
+      for (Range range : state.ranges) {
+        crc32c = crc32cCombine(crc32c, range.crc32c, range.length);
+      }
+      String encoded = BaseEncoding.base64().encode(Ints.toByteArray(crc32c));
+      if (blob.crc32c() != null && !blob.crc32c().equals(encoded)) {
+        Files.deleteIfExists(stateFile);
+        throw new StorageException(StorageException.UNKNOWN_CODE, "Downloaded content of "
+            + blob.blobId() + " has CRC32C " + encoded + " but " + blob.crc32c() + " was expected");
+      }
+      channel.force(true);
+    }
+    Files.deleteIfExists(stateFile);
+    return blob;
+  }
+
+  /**
+   * Downloads the content of the blob following the last range of {@code state}, one range at a
+   * time, checkpointing each range after it is flushed to the target file.
+   */
+  private void transfer(Blob blob, FileChannel channel, State state, Path stateFile)
+      throws IOException {
+    long position = state.position();
+    if (position >= blob.size()) {
+      return;
+    }
+    BlobId pinned = BlobId.of(blob.bucket(), blob.name(), blob.generation());
+    ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(rangeSize, blob.size() - position));
+    try (ReadChannel reader = storage.reader(pinned);
+        FileChannel stateChannel = FileChannel.open(stateFile, StandardOpenOption.APPEND)) {
+      reader.chunkSize(buffer.capacity());
+      reader.seek(position);
+      while (position < blob.size()) {
+        buffer.clear();
+        buffer.limit((int) Math.min(buffer.capacity(), blob.size() - position));
+        while (buffer.hasRemaining() && reader.read(buffer) >= 0) {
+          // keep reading until the range is complete
+        }
+        buffer.flip();
+        if (!buffer.hasRemaining()) {
+          throw new StorageException(StorageException.UNKNOWN_CODE, "Blob " + blob.blobId()
+              + " ended at " + position + " but its size is " + blob.size());
+        }
+        int length = buffer.remaining();
+        int crc32c = Hashing.crc32c()
+            .hashBytes(buffer.array(), buffer.arrayOffset(), length).asInt();
+        long offset = position;
+        while (buffer.hasRemaining()) {
+          offset += channel.write(buffer, offset);
+        }
+        channel.force(false);
+        state.append(stateChannel, new Range(position, length, crc32c));
+        position += length;
+      }
+    }
+  }
+
+  /**
+   * Verifies the ranges of {@code state} against the content of the target file, dropping the
+   * first range that does not match and the ones that follow it. Returns {@code true} if all the
+   * ranges were verified.
+   */
+  private static boolean verify(FileChannel channel, State state) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(VERIFY_BUFFER_SIZE);
+    for (int index = 0; index < state.ranges.size(); index++) {
+      Range range = state.ranges.get(index);
+      if (checksum(channel, range, buffer) != range.crc32c) {
+        log.log(Level.WARNING, "Range at {0} of the target file does not match its checksum",
+            range.offset);
+        state.ranges.subList(index, state.ranges.size()).clear();
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int checksum(FileChannel channel, Range range, ByteBuffer buffer)
+      throws IOException {
+    Hasher hasher = Hashing.crc32c().newHasher();
+    long position = range.offset;
+    while (position < range.end()) {
+      buffer.clear();
+      buffer.limit((int) Math.min(buffer.capacity(), range.end() - position));
+      int read = channel.read(buffer, position);
+      if (read < 0) {
+        // the target file is shorter than the range
+        return ~range.crc32c;
+      }
+      hasher.putBytes(buffer.array(), 0, read);
+      position += read;
+    }
+    return hasher.hash().asInt();
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  /**
+   * Returns the CRC32C checksum of the concatenation of two sequences of bytes given their
+   * checksums and the length of the second one, without reading the data again. This is zlib's
+   * {@code crc32_combine} for the Castagnoli polynomial: the checksum of the first sequence is
+   * shifted by {@code secondLength} zero bytes, using a matrix multiplication over GF(2) that is
+   * squared for each bit of the length.
+   */
+  @VisibleForTesting
+  static int crc32cCombine(int first, int second, long secondLength) {
+    if (secondLength <= 0) {
+      return first;
+    }
+    int[] even = new int[32];
+    int[] odd = new int[32];
+    // the operator for one zero bit
+    odd[0] = CRC32C_POLYNOMIAL;
+    int row = 1;
+    for (int n = 1; n < 32; n++) {
+      odd[n] = row;
+      row <<= 1;
+    }
+    // the operators for two and four zero bits
+    square(even, odd);
+    square(odd, even);
+    int crc = first;
+    long length = secondLength;
+    // apply the operator for each bit of the length, starting from one zero byte
+    do {
+      square(even, odd);
+      if ((length & 1) != 0) {
+        crc = times(even, crc);
+      }
+      length >>>= 1;
+      if (length == 0) {
+        break;
+      }
+      square(odd, even);
+      if ((length & 1) != 0) {
+        crc = times(odd, crc);
+      }
+      length >>>= 1;
+    } while (length != 0);
+    return crc ^ second;
+  }
+
+  private static int times(int[] matrix, int vector) {
+    int sum = 0;
+    for (int i = 0; vector != 0; i++, vector >>>= 1) {
+      if ((vector & 1) != 0) {
+        sum ^= matrix[i];
+      }
+    }
+    return sum;
+  }
+
+  private static void square(int[] square, int[] matrix) {
+    for (int n = 0; n < 32; n++) {
+      square[n] = times(matrix, matrix[n]);
+    }
+  }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage;
+
+import com.google.api.services.storage.model.StorageObject;
+import com.google.cloud.ReadChannel;
+import com.google.cloud.RestorableState;
+import com.google.cloud.RetryHelper;
+import com.google.cloud.storage.AccessEvent.Operation;
+import com.google.cloud.storage.spi.StorageRpc;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * A read channel over the decompressed content of a blob stored with gzip content encoding. Gzip
+ * data can only be decompressed in order, so the blob is read with a single request opened by
+ * {@link StorageRpc#openDecompressed(StorageObject, Map)} rather than with ranged requests.
+ * Positions passed to {@link #seek(long)} refer to the decompressed data: seeking forward skips
+ * decompressed data, seeking backward reopens the blob from the beginning. The state of the
+ * stream can not be captured, so {@link #capture()} is not supported.
+ */
+class GzipReadChannel implements ReadChannel {
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final StorageOptions serviceOptions;
+  private final BlobId blob;
+  private final Map<StorageRpc.Option, ?> requestOptions;
+  private final StorageRpc storageRpc;
+  private final StorageObject storageObject;
+  private InputStream stream;
+  private AccessRecorder recorder;
+  private byte[] buffer;
+  private long position;
+  private long streamPosition;
+  private boolean isOpen;
+  private boolean endOfStream;
+
+  GzipReadChannel(StorageOptions serviceOptions, BlobId blob,
+      Map<StorageRpc.Option, ?> requestOptions) {
+    this.serviceOptions = serviceOptions;
+    this.blob = blob;
+    this.requestOptions = requestOptions;
+    isOpen = true;
+    storageRpc = serviceOptions.rpc();
+    storageObject = blob.toPb();
+  }
+
+  @Override
+  public int read(ByteBuffer dst) throws IOException {
+    validateOpen();
+    if (endOfStream) {
+      return -1;
+    }
+    if (stream == null) {
+      openStream();
+    }
+    int read;
+    try {
+      if (dst.hasArray()) {
+        read = stream.read(dst.array(), dst.arrayOffset() + dst.position(), dst.remaining());
+        if (read > 0) {
+          dst.position(dst.position() + read);
+        }
+      } else {
+        // streams only write to arrays, direct buffers are filled through a copy
+        if (buffer == null) {
+          buffer = new byte[BUFFER_SIZE];
+        }
+        read = stream.read(buffer, 0, Math.min(buffer.length, dst.remaining()));
+        if (read > 0) {
+          dst.put(buffer, 0, read);
+        }
+      }
+    } catch (IOException ex) {
+      recorder.failed();
+      recorder = null;
+      closeStream();
+      throw ex;
+    }
+    if (read < 0) {
+      endOfStream = true;
+      closeStream();
+      return -1;
+    }
+    position += read;
+    streamPosition += read;
+    return read;
+  }
+
+  private void openStream() {
+    recorder = AccessRecorder.start(serviceOptions, Operation.READ, blob.bucket(), blob.name());
+    try {
+      stream = StorageImpl.run(serviceOptions, recorder, new Callable<InputStream>() {
+        @Override
+        public InputStream call() {
+          return storageRpc.openDecompressed(storageObject, requestOptions);
+        }
+      });
+      streamPosition = 0;
+    } catch (RetryHelper.RetryHelperException e) {
+      recorder = null;
+      throw StorageException.translateAndThrow(e);
+    }
+  }
+
+  /**
+   * Closes the current stream, if any, reporting the bytes it returned.
+   */
+  private void closeStream() {
+    if (recorder != null) {
+      recorder.succeeded(streamPosition);
+      recorder = null;
+    }
+    if (stream != null) {
+      try {
+        stream.close();
+      } catch (IOException ex) {
+        // the content was consumed or is no longer needed
+      }
+      stream = null;
+    }
+  }
+
+  private void validateOpen() throws ClosedChannelException {
+    if (!isOpen) {
+      throw new ClosedChannelException();
+    }
+  }
+
+  @Override
+  public boolean isOpen() {
+    return isOpen;
+  }
+
+  @Override
+  public void close() {
+    if (isOpen) {
+      closeStream();
+      isOpen = false;
+    }
+  }
+
+  @Override
+  public void seek(long position) throws IOException {
+    validateOpen();
+    if (position < this.position) {
+      closeStream();
+      this.position = 0;
+      endOfStream = false;
+    }
+    ByteBuffer skipBuffer = null;
+    while (this.position < position) {
+      if (skipBuffer == null) {
+        skipBuffer = ByteBuffer.allocate((int) Math.min(BUFFER_SIZE, position - this.position));
+      }
+      skipBuffer.clear();
+      skipBuffer.limit((int) Math.min(skipBuffer.capacity(), position - this.position));
+      if (read(skipBuffer) < 0) {
+        break;
+      }
+    }
+  }
+
+  /**
+   * Ignored, the blob is read with a single request.
+   */
+  @Override
+  public void chunkSize(int chunkSize) {}
+
+  /**
+   * Not supported, the state of the stream can not be captured.
+   *
+   * @throws UnsupportedOperationException always
+   */
+  @Override
+  public RestorableState<ReadChannel> capture() {
+    throw new UnsupportedOperationException("Decompressing channels can not be captured");
+  }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage;
+
+import com.google.cloud.RestorableState;
+import com.google.cloud.WriteChannel;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * A write channel that gzip-compresses the written data before passing it to another channel,
+ * typically a {@link BlobWriteChannel}. Compressed data is buffered and uploaded in chunks by the
+ * underlying channel as usual. The state of the compressor can not be captured, so
+ * {@link #capture()} is not supported.
+ */
+class GzipWriteChannel implements WriteChannel {
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0,
+      (byte) 0xff};
+
+  private final WriteChannel channel;
+  private final CRC32 crc = new CRC32();
+  private final byte[] output = new byte[BUFFER_SIZE];
+  private Deflater deflater;
+  private byte[] input;
+  private long uncompressedSize;
+  private boolean headerWritten;
+
+  GzipWriteChannel(WriteChannel channel) {
+    this.channel = channel;
+    this.deflater = GzipCodecPool.deflater();
+  }
+
+  @Override
+  public int write(ByteBuffer src) throws IOException {
+    validateOpen();
+    if (!headerWritten) {
+      writeFully(ByteBuffer.wrap(HEADER));
+      headerWritten = true;
+    }
+    int written = src.remaining();
+    while (src.hasRemaining()) {
+      int length;
+      if (src.hasArray()) {
+        // heap buffers are compressed in place
+        length = src.remaining();
+        deflate(src.array(), src.arrayOffset() + src.position(), length);
+      } else {
+        // direct buffers are copied, Deflater only accepts arrays
+        if (input == null) {
+          input = new byte[BUFFER_SIZE];
+        }
+        length = Math.min(input.length, src.remaining());
+        src.duplicate().get(input, 0, length);
+        deflate(input, 0, length);
+      }
+      src.position(src.position() + length);
+    }
+    return written;
+  }
+
+  private void deflate(byte[] bytes, int offset, int length) throws IOException {
+    crc.update(bytes, offset, length);
+    uncompressedSize += length;
+    deflater.setInput(bytes, offset, length);
+    while (!deflater.needsInput()) {
+      drain();
+    }
+  }
+
+  private void drain() throws IOException {
+    int length = deflater.deflate(output, 0, output.length, Deflater.NO_FLUSH);
+    if (length > 0) {
+      writeFully(ByteBuffer.wrap(output, 0, length));
+    }
+  }
+
+  private void writeFully(ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  private void validateOpen() throws ClosedChannelException {
+    if (deflater == null) {
+      throw new ClosedChannelException();
+    }
+  }
+
+  @Override
+  public boolean isOpen() {
+    return deflater != null;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (deflater == null) {
+      return;
+    }
+    try {
+      if (!headerWritten) {
+        writeFully(ByteBuffer.wrap(HEADER));
+      }
+      deflater.finish();
+      while (!deflater.finished()) {
+        drain();
+      }
+      ByteBuffer trailer = ByteBuffer.allocate(8);
+      writeIntLittleEndian(trailer, 0, (int) crc.getValue());
+      writeIntLittleEndian(trailer, 4, (int) uncompressedSize);
+      writeFully(trailer);
+      channel.close();
+    } finally {
+      GzipCodecPool.release(deflater);
+      deflater = null;
+    }
+  }
+
+  private static void writeIntLittleEndian(ByteBuffer buffer, int index, int value) {
+    for (int i = 0; i < 4; i++) {
+      buffer.put(index + i, (byte) (value >>> (8 * i)));
+    }
+  }
+
+  @Override
+  public void chunkSize(int chunkSize) {
+    channel.chunkSize(chunkSize);
+  }
+
+  /**
+   * Not supported, the state of the compressor can not be captured.
+   *
+   * @throws UnsupportedOperationException always
+   */
+  @Override
+  public RestorableState<WriteChannel> capture() {
+    throw new UnsupportedOperationException("Compressing channels can not be captured");
+  }
+}
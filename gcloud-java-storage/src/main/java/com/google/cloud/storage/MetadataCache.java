@@ -0,0 +1,246 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage;
+
+import static com.google.cloud.storage.spi.StorageRpc.Option.FIELDS;
+import static com.google.cloud.storage.spi.StorageRpc.Option.IF_GENERATION_MATCH;
+import static com.google.cloud.storage.spi.StorageRpc.Option.IF_GENERATION_NOT_MATCH;
+import static com.google.cloud.storage.spi.StorageRpc.Option.IF_METAGENERATION_MATCH;
+import static com.google.cloud.storage.spi.StorageRpc.Option.IF_METAGENERATION_NOT_MATCH;
+
+import com.google.cloud.Clock;
+import com.google.cloud.storage.spi.StorageRpc;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bounded client-side cache of blob and bucket metadata. Entries for blob identifiers that refer
+ * to the latest generation and entries for buckets expire after a configurable time-to-live.
+ * Entries for generation-pinned blob identifiers never expire, as the data of a blob generation
+ * can not change, and are only evicted when the cache is full or when invalidated by a write issued
+ * through the same client. This class is thread-safe.
+ *
+ * <p>A lookup that races with a write could return the metadata the write replaces after the write
+ * invalidated it. To prevent caching such a response, callers take a {@link #stamp} of the
+ * invalidations of the blob or bucket before sending the request and pass it to {@code put}, which
+ * ignores the response if the blob or bucket was invalidated since. Stamps are kept for a fixed
+ * number of stripes of names, so that an invalidation of a name may also prevent caching the
+ * response for another name of the same stripe.
+ */
+final class MetadataCache {
+
+  private static final int STAMP_STRIPES = 1024;
+
+  private final Cache<BlobId, Blob> latestBlobs;
+  private final Cache<BlobId, Blob> pinnedBlobs;
+  private final Cache<String, Bucket> buckets;
+  private final AtomicLongArray stamps = new AtomicLongArray(STAMP_STRIPES);
+  // hits and misses are counted here, as a cached value may not satisfy the request's preconditions
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+
+  MetadataCache(long maxEntries, long ttlMillis, final Clock clock) {
+    Ticker ticker = new Ticker() {
+      @Override
+      public long read() {
+        return TimeUnit.MILLISECONDS.toNanos(clock.millis());
+      }
+    };
+    latestBlobs = CacheBuilder.newBuilder()
+        .maximumSize(maxEntries)
+        .expireAfterWrite(ttlMillis, TimeUnit.MILLISECONDS)
+        .ticker(ticker)
+        .recordStats()
+        .build();
+    pinnedBlobs = CacheBuilder.newBuilder()
+        .maximumSize(maxEntries)
+        .recordStats()
+        .build();
+    buckets = CacheBuilder.newBuilder()
+        .maximumSize(maxEntries)
+        .expireAfterWrite(ttlMillis, TimeUnit.MILLISECONDS)
+        .ticker(ticker)
+        .recordStats()
+        .build();
+  }
+
+  /**
+   * Returns the cached blob for the provided identifier, or {@code null} if the blob is not cached
+   * or if the cached value does not satisfy the preconditions in {@code options}. In the latter
+   * case the caller is expected to issue the request to the service, which is the only one that
+   * can authoritatively reject it.
+   */
+  Blob get(BlobId blobId, Map<StorageRpc.Option, ?> options) {
+    if (!isCacheable(options)) {
+      return null;
+    }
+    // Map.get doesn't record statistics
+    Blob blob = cacheFor(blobId).asMap().get(blobId);
+    return count(blob != null && matches(blob.generation(), blob.metageneration(), options))
+        ? blob : null;
+  }
+
+  /**
+   * Returns the stamp of the invalidations of a blob, to be passed to
+   * {@link #put(BlobId, Map, Blob, long)} with the response of a request sent after this call.
+   */
+  long stamp(BlobId blobId) {
+    return stamps.get(stripe(blobId.bucket(), blobId.name()));
+  }
+
+  /**
+   * Caches the blob returned for a request with the provided identifier and options, unless the
+   * blob was invalidated since {@code stamp} was taken. Blobs returned by requests that select a
+   * subset of fields are not cached.
+   */
+  void put(BlobId blobId, Map<StorageRpc.Option, ?> options, Blob blob, long stamp) {
+    if (blob == null || !isCacheable(options) || stamp(blobId) != stamp) {
+      return;
+    }
+    BlobId pinned = blobId.generation() == null && blob.generation() != null
+        ? BlobId.of(blobId.bucket(), blobId.name(), blob.generation()) : null;
+    cacheFor(blobId).put(blobId, blob);
+    if (pinned != null) {
+      pinnedBlobs.put(pinned, blob);
+    }
+    if (stamp(blobId) != stamp) {
+      // invalidated while the blob was being cached
+      cacheFor(blobId).asMap().remove(blobId, blob);
+      if (pinned != null) {
+        pinnedBlobs.asMap().remove(pinned, blob);
+      }
+    }
+  }
+
+  /**
+   * Invalidates all the cached entries that may refer to the provided blob: the latest generation
+   * entry, the entry for {@code blobId.generation()} if set, and the entry for the generation that
+   * was cached as latest.
+   */
+  void invalidate(BlobId blobId) {
+    stamps.incrementAndGet(stripe(blobId.bucket(), blobId.name()));
+    BlobId latest = BlobId.of(blobId.bucket(), blobId.name());
+    Blob cached = latestBlobs.getIfPresent(latest);
+    latestBlobs.invalidate(latest);
+    if (cached != null && cached.generation() != null) {
+      pinnedBlobs.invalidate(BlobId.of(blobId.bucket(), blobId.name(), cached.generation()));
+    }
+    if (blobId.generation() != null) {
+      pinnedBlobs.invalidate(blobId);
+    }
+  }
+
+  /**
+   * Returns the cached bucket with the provided name, or {@code null} if the bucket is not cached
+   * or if the cached value does not satisfy the preconditions in {@code options}.
+   */
+  Bucket get(String bucket, Map<StorageRpc.Option, ?> options) {
+    if (!isCacheable(options)) {
+      return null;
+    }
+    Bucket cached = buckets.asMap().get(bucket);
+    return count(cached != null && matches(null, cached.metageneration(), options))
+        ? cached : null;
+  }
+
+  /**
+   * Returns the stamp of the invalidations of a bucket, to be passed to
+   * {@link #put(String, Map, Bucket, long)} with the response of a request sent after this call.
+   */
+  long stamp(String bucket) {
+    return stamps.get(stripe(bucket, null));
+  }
+
+  /**
+   * Caches the bucket returned for a request with the provided options, unless the bucket was
+   * invalidated since {@code stamp} was taken. Buckets returned by requests that select a subset
+   * of fields are not cached.
+   */
+  void put(String bucketName, Map<StorageRpc.Option, ?> options, Bucket bucket, long stamp) {
+    if (bucket == null || !isCacheable(options) || stamp(bucketName) != stamp) {
+      return;
+    }
+    buckets.put(bucketName, bucket);
+    if (stamp(bucketName) != stamp) {
+      // invalidated while the bucket was being cached
+      buckets.asMap().remove(bucketName, bucket);
+    }
+  }
+
+  /**
+   * Invalidates the cached entry for the provided bucket.
+   */
+  void invalidate(String bucket) {
+    stamps.incrementAndGet(stripe(bucket, null));
+    buckets.invalidate(bucket);
+  }
+
+  /**
+   * Returns statistics on the usage of this cache. A cached value that does not satisfy the
+   * preconditions of a lookup is counted as a miss.
+   */
+  MetadataCacheStats stats() {
+    CacheStats stats = latestBlobs.stats().plus(pinnedBlobs.stats()).plus(buckets.stats());
+    return new MetadataCacheStats(hitCount.get(), missCount.get(), stats.evictionCount(),
+        latestBlobs.size() + pinnedBlobs.size() + buckets.size());
+  }
+
+  private boolean count(boolean hit) {
+    (hit ? hitCount : missCount).incrementAndGet();
+    return hit;
+  }
+
+  private static int stripe(String bucket, String name) {
+    int hash = Objects.hash(bucket, name);
+    // spreads the hash like HashMap, so that names differing in their last characters don't collide
+    return ((hash ^ (hash >>> 16)) & Integer.MAX_VALUE) % STAMP_STRIPES;
+  }
+
+  private Cache<BlobId, Blob> cacheFor(BlobId blobId) {
+    return blobId.generation() != null ? pinnedBlobs : latestBlobs;
+  }
+
+  private static boolean isCacheable(Map<StorageRpc.Option, ?> options) {
+    return !options.containsKey(FIELDS);
+  }
+
+  private static boolean matches(Long generation, Long metageneration,
+      Map<StorageRpc.Option, ?> options) {
+    Object value = options.get(IF_GENERATION_MATCH);
+    if (value != null && !Objects.equals(value, generation)) {
+      return false;
+    }
+    value = options.get(IF_GENERATION_NOT_MATCH);
+    if (value != null && Objects.equals(value, generation)) {
+      return false;
+    }
+    value = options.get(IF_METAGENERATION_MATCH);
+    if (value != null && !Objects.equals(value, metageneration)) {
+      return false;
+    }
+    value = options.get(IF_METAGENERATION_NOT_MATCH);
+    return value == null || !Objects.equals(value, metageneration);
+  }
+}
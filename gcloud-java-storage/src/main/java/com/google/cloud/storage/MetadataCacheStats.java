@@ -0,0 +1,112 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage;
+
+import com.google.common.base.MoreObjects;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * Statistics on the usage of the client-side metadata cache of a {@link Storage} service. Metadata
+ * caching is enabled by setting {@link StorageOptions.Builder#metadataCacheSize(long)}.
+ *
+ * @see Storage#metadataCacheStats()
+ */
+public final class MetadataCacheStats implements Serializable {
+
+  private static final long serialVersionUID = -2360386418339385216L;
+
+  private final long hitCount;
+  private final long missCount;
+  private final long evictionCount;
+  private final long size;
+
+  MetadataCacheStats(long hitCount, long missCount, long evictionCount, long size) {
+    this.hitCount = hitCount;
+    this.missCount = missCount;
+    this.evictionCount = evictionCount;
+    this.size = size;
+  }
+
+  /**
+   * Returns the number of lookups that were served by the cache.
+   */
+  public long hitCount() {
+    return hitCount;
+  }
+
+  /**
+   * Returns the number of lookups that were not served by the cache and required an RPC.
+   */
+  public long missCount() {
+    return missCount;
+  }
+
+  /**
+   * Returns the number of entries evicted because the cache was full or entries expired.
+   */
+  public long evictionCount() {
+    return evictionCount;
+  }
+
+  /**
+   * Returns the approximate number of entries in the cache.
+   */
+  public long size() {
+    return size;
+  }
+
+  /**
+   * Returns the ratio of lookups that were served by the cache, or {@code 1.0} if no lookup was
+   * performed.
+   */
+  public double hitRate() {
+    long requestCount = hitCount + missCount;
+    return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(hitCount, missCount, evictionCount, size);
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (obj == this) {
+      return true;
+    }
+    if (!(obj instanceof MetadataCacheStats)) {
+      return false;
+    }
+    MetadataCacheStats other = (MetadataCacheStats) obj;
+    return hitCount == other.hitCount
+        && missCount == other.missCount
+        && evictionCount == other.evictionCount
+        && size == other.size;
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this)
+        .add("hitCount", hitCount)
+        .add("missCount", missCount)
+        .add("evictionCount", evictionCount)
+        .add("size", size)
+        .toString();
+  }
+}
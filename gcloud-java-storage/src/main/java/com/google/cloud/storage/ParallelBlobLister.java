@@ -0,0 +1,512 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.cloud.Page;
+import com.google.cloud.storage.Storage.BlobListOption;
+import com.google.cloud.storage.spi.StorageRpc;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A lister that enumerates the blobs of a bucket by listing several partitions of the bucket's
+ * namespace concurrently. Partitions are discovered with the '/' delimiter: listing a prefix
+ * returns the blobs directly under it and its sub-prefixes, each of which is then listed as an
+ * independent partition. Buckets that use a hierarchical naming scheme are therefore enumerated
+ * with up to {@link Builder#parallelism(int)} list requests in flight at once.
+ *
+ * <p>Blobs can be returned in the same lexicographic order as {@link Storage#list(String,
+ * BlobListOption...)} or, if {@link Builder#ordered(boolean)} is {@code false} (the default), in
+ * the order pages are received, which gives the best throughput. In both modes memory usage is
+ * bounded: at most about {@code parallelism} pages of results are buffered at any time.
+ *
+ * <p>Example of listing all the blobs in a bucket under a prefix:
+ * <pre> {@code
+ * ParallelBlobLister lister = ParallelBlobLister.builder(storage, "bucket")
+ *     .prefix("logs/")
+ *     .parallelism(16)
+ *     .build();
+ * try (ParallelBlobLister.Listing blobs = lister.list()) {
+ *   while (blobs.hasNext()) {
+ *     Blob blob = blobs.next();
+ *     // do something with the blob
+ *   }
+ * }}</pre>
+ *
+ * <p>A listing uses its own threads, that are released when the listing is exhausted, fails or is
+ * {@link Listing#close() closed}. Listings that are not fully consumed should always be closed.
+ */
+public final class ParallelBlobLister {
+
+  private static final int DEFAULT_PARALLELISM = 8;
+
+  private final Storage storage;
+  private final String bucket;
+  private final String prefix;
+  private final List<BlobListOption> options;
+  private final int parallelism;
+  private final boolean ordered;
+
+  /**
+   * Builder for {@code ParallelBlobLister}.
+   */
+  public static final class Builder {
+
+    private final Storage storage;
+    private final String bucket;
+    private String prefix = "";
+    private List<BlobListOption> options = ImmutableList.of();
+    private int parallelism = DEFAULT_PARALLELISM;
+    private boolean ordered;
+
+    private Builder(Storage storage, String bucket) {
+      this.storage = checkNotNull(storage);
+      this.bucket = checkNotNull(bucket);
+    }
+
+    /**
+     * Sets the prefix of the blobs to list. By default all the blobs in the bucket are listed.
+     *
+     * @return the builder
+     */
+    public Builder prefix(String prefix) {
+      this.prefix = checkNotNull(prefix);
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of list requests in flight. Default value is 8.
+     *
+     * @return the builder
+     * @throws IllegalArgumentException if {@code parallelism} is not positive
+     */
+    public Builder parallelism(int parallelism) {
+      checkArgument(parallelism > 0, "Parallelism must be > 0");
+      this.parallelism = parallelism;
+      return this;
+    }
+
+    /**
+     * Sets whether blobs should be returned in lexicographic order of their names, as
+     * {@link Storage#list(String, BlobListOption...)} does. Default value is {@code false}.
+     *
+     * @return the builder
+     */
+    public Builder ordered(boolean ordered) {
+      this.ordered = ordered;
+      return this;
+    }
+
+    /**
+     * Sets additional options for the list requests. {@link BlobListOption#pageSize(long)},
+     * {@link BlobListOption#versions(boolean)} and {@link BlobListOption#fields(
+     * Storage.BlobField...)} are supported.
+     *
+     * @return the builder
+     * @throws IllegalArgumentException if a prefix, page token or current directory option is
+     *     provided
+     */
+    public Builder options(BlobListOption... options) {
+      for (BlobListOption option : options) {
+        StorageRpc.Option rpcOption = option.rpcOption();
+        checkArgument(rpcOption != StorageRpc.Option.PREFIX
+            && rpcOption != StorageRpc.Option.PAGE_TOKEN
+            && rpcOption != StorageRpc.Option.DELIMITER,
+            "Option %s is not supported by parallel listing", rpcOption.value());
+      }
+      this.options = ImmutableList.copyOf(options);
+      return this;
+    }
+
+    /**
+     * Creates a {@code ParallelBlobLister} object.
+     */
+    public ParallelBlobLister build() {
+      return new ParallelBlobLister(this);
+    }
+  }
+
+  /**
+   * An iterator over the blobs returned by a parallel listing. Iterator methods throw
+   * {@link StorageException} if a list request fails.
+   */
+  public abstract static class Listing extends AbstractIterator<Blob> implements AutoCloseable {
+
+    private final ParallelBlobLister lister;
+    private final ExecutorService executor;
+    private final Queue<PageFetch> waiting;
+    private int inFlight;
+    private boolean closed;
+
+    private Listing(ParallelBlobLister lister, Queue<PageFetch> waiting) {
+      this.lister = lister;
+      this.waiting = waiting;
+      this.executor = Executors.newFixedThreadPool(lister.parallelism, new ThreadFactoryBuilder()
+          .setDaemon(true)
+          .setNameFormat("gcloud-storage-list-%d")
+          .build());
+    }
+
+    /**
+     * Stops the listing, cancelling the list requests in flight.
+     */
+    @Override
+    public void close() {
+      if (!closed) {
+        closed = true;
+        waiting.clear();
+        executor.shutdownNow();
+      }
+    }
+
+    boolean closed() {
+      return closed;
+    }
+
+    abstract Future<ListedPage> submit(Callable<ListedPage> callable);
+
+    /**
+     * Returns a fetch for a page of the partition with the provided prefix. The fetch is started
+     * when fewer than {@code parallelism} pages are in flight or buffered, or when it is needed.
+     */
+    PageFetch fetch(String partition, String pageToken, String skipPrefix, String sortKey) {
+      PageFetch fetch = new PageFetch(partition, pageToken, skipPrefix, sortKey);
+      waiting.add(fetch);
+      schedule();
+      return fetch;
+    }
+
+    void schedule() {
+      while (!closed && inFlight < lister.parallelism && !waiting.isEmpty()) {
+        PageFetch fetch = waiting.poll();
+        if (fetch.future == null) {
+          start(fetch);
+        }
+      }
+    }
+
+    boolean hasPendingFetches() {
+      return inFlight > 0 || !waiting.isEmpty();
+    }
+
+    private void start(final PageFetch fetch) {
+      inFlight++;
+      fetch.future = submit(new Callable<ListedPage>() {
+        @Override
+        public ListedPage call() {
+          return lister.listPage(fetch);
+        }
+      });
+    }
+
+    /**
+     * Waits for the provided fetch, starting it first if it was not started yet.
+     */
+    ListedPage get(PageFetch fetch) {
+      if (fetch.future == null) {
+        start(fetch);
+      }
+      return get(fetch.future);
+    }
+
+    ListedPage get(Future<ListedPage> future) {
+      try {
+        return future.get();
+      } catch (ExecutionException ex) {
+        close();
+        if (ex.getCause() instanceof RuntimeException) {
+          throw (RuntimeException) ex.getCause();
+        }
+        throw new StorageException(StorageException.UNKNOWN_CODE, ex.getMessage(), ex.getCause());
+      } catch (InterruptedException ex) {
+        close();
+        throw interrupted(ex);
+      } finally {
+        inFlight--;
+        schedule();
+      }
+    }
+
+    StorageException interrupted(InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      return new StorageException(StorageException.UNKNOWN_CODE, "Listing was interrupted", ex);
+    }
+
+    Blob done() {
+      close();
+      return endOfData();
+    }
+  }
+
+  /**
+   * A request for a page of a partition. {@code sortKey} is used in ordered listings to start
+   * fetches in the order their results are consumed.
+   */
+  private static final class PageFetch {
+
+    private final String partition;
+    private final String pageToken;
+    private final String skipPrefix;
+    private final String sortKey;
+    private Future<ListedPage> future;
+
+    PageFetch(String partition, String pageToken, String skipPrefix, String sortKey) {
+      this.partition = partition;
+      this.pageToken = pageToken;
+      this.skipPrefix = skipPrefix;
+      this.sortKey = sortKey;
+    }
+  }
+
+  /**
+   * A page of a partition: the blobs and sub-prefixes in the page and the token for the next
+   * page, {@code null} if this is the last page of the partition.
+   */
+  private static final class ListedPage {
+
+    private final String partition;
+    private final List<Blob> entries;
+    private final String nextPageToken;
+    private final String lastPrefix;
+
+    ListedPage(String partition, List<Blob> entries, String nextPageToken, String lastPrefix) {
+      this.partition = partition;
+      this.entries = entries;
+      this.nextPageToken = nextPageToken;
+      this.lastPrefix = lastPrefix;
+    }
+  }
+
+  private static final class UnorderedListing extends Listing {
+
+    private final CompletionService<ListedPage> completionService;
+    private Iterator<Blob> current = Collections.emptyIterator();
+
+    UnorderedListing(ParallelBlobLister lister) {
+      super(lister, new ArrayDeque<PageFetch>());
+      completionService = new ExecutorCompletionService<>(super.executor);
+      fetch(lister.prefix, null, null, null);
+    }
+
+    @Override
+    Future<ListedPage> submit(Callable<ListedPage> callable) {
+      return completionService.submit(callable);
+    }
+
+    @Override
+    protected Blob computeNext() {
+      while (!current.hasNext()) {
+        if (closed() || !hasPendingFetches()) {
+          return done();
+        }
+        ListedPage page;
+        try {
+          page = get(completionService.take());
+        } catch (InterruptedException ex) {
+          close();
+          throw interrupted(ex);
+        }
+        List<Blob> blobs = new ArrayList<>(page.entries.size());
+        for (Blob blob : page.entries) {
+          if (blob.isDirectory()) {
+            fetch(blob.name(), null, null, null);
+          } else {
+            blobs.add(blob);
+          }
+        }
+        if (page.nextPageToken != null) {
+          fetch(page.partition, page.nextPageToken, page.lastPrefix, null);
+        }
+        current = blobs.iterator();
+      }
+      return current.next();
+    }
+  }
+
+  private static final class OrderedListing extends Listing {
+
+    private static final Comparator<PageFetch> FETCH_COMPARATOR = new Comparator<PageFetch>() {
+      @Override
+      public int compare(PageFetch first, PageFetch second) {
+        return compareNames(first.sortKey, second.sortKey);
+      }
+    };
+
+    private final Deque<Node> stack = new ArrayDeque<>();
+
+    /**
+     * The position of the listing in a partition.
+     */
+    private static final class Node {
+
+      private PageFetch pending;
+      private List<Blob> entries = ImmutableList.of();
+      private List<PageFetch> children = ImmutableList.of();
+      private int index;
+
+      Node(PageFetch pending) {
+        this.pending = pending;
+      }
+    }
+
+    OrderedListing(ParallelBlobLister lister) {
+      super(lister, new PriorityQueue<>(16, FETCH_COMPARATOR));
+      stack.push(new Node(fetch(lister.prefix, null, null, lister.prefix)));
+    }
+
+    @Override
+    Future<ListedPage> submit(Callable<ListedPage> callable) {
+      return super.executor.submit(callable);
+    }
+
+    @Override
+    protected Blob computeNext() {
+      while (!closed() && !stack.isEmpty()) {
+        Node node = stack.peek();
+        if (node.index < node.entries.size()) {
+          Blob blob = node.entries.get(node.index);
+          PageFetch child = node.children.get(node.index);
+          node.index++;
+          if (child == null) {
+            return blob;
+          }
+          stack.push(new Node(child));
+        } else if (node.pending != null) {
+          load(node);
+        } else {
+          stack.pop();
+        }
+      }
+      return done();
+    }
+
+    private void load(Node node) {
+      ListedPage page = get(node.pending);
+      List<PageFetch> children = new ArrayList<>(page.entries.size());
+      for (Blob blob : page.entries) {
+        children.add(blob.isDirectory() ? fetch(blob.name(), null, null, blob.name()) : null);
+      }
+      node.entries = page.entries;
+      node.children = children;
+      node.index = 0;
+      node.pending = null;
+      if (page.nextPageToken != null) {
+        // the next page follows all the names under the last entry of this page
+        String sortKey = page.entries.isEmpty() ? page.partition
+            : page.entries.get(page.entries.size() - 1).name() + Character.MAX_VALUE;
+        node.pending = fetch(page.partition, page.nextPageToken, page.lastPrefix, sortKey);
+      }
+    }
+  }
+
+  private ParallelBlobLister(Builder builder) {
+    this.storage = builder.storage;
+    this.bucket = builder.bucket;
+    this.prefix = builder.prefix;
+    this.options = builder.options;
+    this.parallelism = builder.parallelism;
+    this.ordered = builder.ordered;
+  }
+
+  /**
+   * Returns a builder for a {@code ParallelBlobLister} that lists blobs in {@code bucket}.
+   */
+  public static Builder builder(Storage storage, String bucket) {
+    return new Builder(storage, bucket);
+  }
+
+  /**
+   * Starts listing the blobs. Directory blobs are never returned.
+   */
+  public Listing list() {
+    return ordered ? new OrderedListing(this) : new UnorderedListing(this);
+  }
+
+  private ListedPage listPage(PageFetch fetch) {
+    List<BlobListOption> listOptions = new ArrayList<>(options.size() + 3);
+    listOptions.add(BlobListOption.currentDirectory());
+    if (!fetch.partition.isEmpty()) {
+      listOptions.add(BlobListOption.prefix(fetch.partition));
+    }
+    if (fetch.pageToken != null) {
+      listOptions.add(BlobListOption.pageToken(fetch.pageToken));
+    }
+    listOptions.addAll(options);
+    Page<Blob> page = storage.list(bucket,
+        listOptions.toArray(new BlobListOption[listOptions.size()]));
+    List<Blob> entries = new ArrayList<>();
+    String lastPrefix = fetch.skipPrefix;
+    for (Blob blob : page.values()) {
+      if (blob.isDirectory()) {
+        // prefixes may be repeated across pages
+        if (Objects.equals(blob.name(), fetch.skipPrefix)) {
+          continue;
+        }
+        lastPrefix = blob.name();
+      }
+      entries.add(blob);
+    }
+    if (ordered) {
+      // blobs and prefixes are returned separately in a page
+      Collections.sort(entries, new Comparator<Blob>() {
+        @Override
+        public int compare(Blob first, Blob second) {
+          return compareNames(first.name(), second.name());
+        }
+      });
+    }
+    return new ListedPage(fetch.partition, entries, page.nextPageCursor(), lastPrefix);
+  }
+
+  /**
+   * Compares names by code point, which is the order of their UTF-8 encoding used by the service.
+   */
+  static int compareNames(String first, String second) {
+    int length = Math.min(first.length(), second.length());
+    for (int i = 0; i < length; ) {
+      int firstCodePoint = first.codePointAt(i);
+      int secondCodePoint = second.codePointAt(i);
+      if (firstCodePoint != secondCodePoint) {
+        return Integer.compare(firstCodePoint, secondCodePoint);
+      }
+      i += Character.charCount(firstCodePoint);
+    }
+    return Integer.compare(first.length(), second.length());
+  }
+}
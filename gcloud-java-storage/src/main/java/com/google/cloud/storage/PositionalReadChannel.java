@@ -0,0 +1,61 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.storage;
+
+import com.google.cloud.ReadChannel;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link ReadChannel} that also supports positional reads. A positional read neither uses nor
+ * modifies the channel's position and buffer, so that a single channel can be shared by multiple
+ * threads reading different parts of a blob. All the reads of a channel, positional or not, check
+ * that the blob's content did not change since the first read (i.e. {@link BlobInfo#etag()} is
+ * the same).
+ *
+ * <p>The channels returned by {@link Storage#reader(BlobId, Storage.BlobSourceOption...)} and
+ * {@link Storage#reader(String, String, Storage.BlobSourceOption...)} implement this interface,
+ * unless {@link Storage.BlobSourceOption#decompress()} is used.
+ *
+ * <p>Example of reading two parts of a blob concurrently:
+ * <pre> {@code
+ * final PositionalReadChannel reader = (PositionalReadChannel) storage.reader(blobId);
+ * Future<Integer> first = executor.submit(new Callable<Integer>() {
+ *   public Integer call() throws IOException {
+ *     return reader.read(ByteBuffer.allocate(1024), 0);
+ *   }
+ * });
+ * int read = reader.read(ByteBuffer.allocate(1024), 1024 * 1024);
+ * }</pre>
+ */
+public interface PositionalReadChannel extends ReadChannel {
+
+  /**
+   * Reads a sequence of bytes from the blob into {@code dst}, starting at {@code position}. This
+   * method is thread-safe: it can be called concurrently by multiple threads and while another
+   * thread reads through the channel's stateful methods. The number of bytes read is at most
+   * {@code dst.remaining()} and is smaller only if the end of the blob is reached. Each call
+   * issues a request, unless data is served from the content cache (see
+   * {@link StorageOptions.Builder#contentCache(String, long)}).
+   *
+   * @return the number of bytes read, or {@code -1} if {@code position} is greater than or equal
+   *     to the blob's size
+   * @throws java.nio.channels.ClosedChannelException if the channel is closed
+   * @throws StorageException upon failure or if the blob was updated since the first read
+   */
+  int read(ByteBuffer dst, long position) throws IOException;
+}
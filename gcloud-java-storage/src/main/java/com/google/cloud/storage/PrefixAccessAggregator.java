@@ -0,0 +1,423 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.cloud.Clock;
+import com.google.common.base.MoreObjects;
+import com.google.common.math.IntMath;
+
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * An {@link AccessListener} that aggregates accesses by bucket and blob name prefix over a sliding
+ * time window, and reports the prefixes with the most operations or bytes transferred. The prefix
+ * of a blob is made of the first {@link Builder#prefixDepth(int)} segments of its name; accesses
+ * to buckets are aggregated under the empty prefix.
+ *
+ * <p>The window is divided in {@link Builder#windowSlots(int)} slots, the oldest slot is dropped
+ * as time advances. Counters are striped by thread, each stripe in its own cache line, so that
+ * threads recording accesses concurrently do not contend.
+ *
+ * <p>Example of reporting the 10 prefixes with the most bytes transferred in the last 5 minutes:
+ * <pre> {@code
+ * PrefixAccessAggregator aggregator = PrefixAccessAggregator.builder()
+ *     .prefixDepth(2)
+ *     .window(5, TimeUnit.MINUTES)
+ *     .build();
+ * Storage storage = StorageOptions.builder().accessListener(aggregator).build().service();
+ * // use storage
+ * for (PrefixAccessAggregator.PrefixStats stats :
+ *     aggregator.top(10, PrefixAccessAggregator.Metric.BYTES)) {
+ *   System.out.printf("%s/%s: %d bytes%n", stats.bucket(), stats.prefix(), stats.bytes());
+ * }
+ * }</pre>
+ */
+public final class PrefixAccessAggregator implements AccessListener {
+
+  private static final int DEFAULT_PREFIX_DEPTH = 1;
+  private static final long DEFAULT_WINDOW_MILLIS = TimeUnit.MINUTES.toMillis(5);
+  private static final int DEFAULT_WINDOW_SLOTS = 10;
+  private static final int MAX_STRIPES = 16;
+  // each stripe spans a 64 bytes cache line
+  private static final int STRIPE_WIDTH = 8;
+  private static final int OPERATIONS = 0;
+  private static final int BYTES = 1;
+  private static final int LATENCY = 2;
+  private static final int RETRIES = 3;
+  private static final int FAILURES = 4;
+  private static final int FIELDS = 5;
+  private static final int STRIPES = Math.min(MAX_STRIPES, IntMath.pow(2,
+      IntMath.log2(Runtime.getRuntime().availableProcessors(), RoundingMode.CEILING)));
+
+  private final String delimiter;
+  private final int prefixDepth;
+  private final long slotMillis;
+  private final Clock clock;
+  private final AtomicReferenceArray<Slot> slots;
+
+  /**
+   * The metrics prefixes can be ranked by.
+   */
+  public enum Metric {
+    OPERATIONS, BYTES
+  }
+
+  /**
+   * Aggregated accesses to the blobs under a prefix.
+   */
+  public static final class PrefixStats {
+
+    private final String bucket;
+    private final String prefix;
+    private final long operations;
+    private final long bytes;
+    private final long latencyNanos;
+    private final long retries;
+    private final long failures;
+
+    PrefixStats(String bucket, String prefix, long[] totals) {
+      this.bucket = bucket;
+      this.prefix = prefix;
+      this.operations = totals[OPERATIONS];
+      this.bytes = totals[BYTES];
+      this.latencyNanos = totals[LATENCY];
+      this.retries = totals[RETRIES];
+      this.failures = totals[FAILURES];
+    }
+
+    /**
+     * Returns the bucket.
+     */
+    public String bucket() {
+      return bucket;
+    }
+
+    /**
+     * Returns the prefix, including the trailing delimiter. The empty prefix aggregates accesses
+     * to buckets and to blobs whose name has no delimiter.
+     */
+    public String prefix() {
+      return prefix;
+    }
+
+    /**
+     * Returns the number of operations.
+     */
+    public long operations() {
+      return operations;
+    }
+
+    /**
+     * Returns the number of bytes transferred.
+     */
+    public long bytes() {
+      return bytes;
+    }
+
+    /**
+     * Returns the mean latency of the operations, in the requested unit.
+     */
+    public long meanLatency(TimeUnit unit) {
+      return operations == 0 ? 0 : unit.convert(latencyNanos / operations, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the number of retries.
+     */
+    public long retries() {
+      return retries;
+    }
+
+    /**
+     * Returns the number of failed operations.
+     */
+    public long failures() {
+      return failures;
+    }
+
+    long metric(Metric metric) {
+      return metric == Metric.BYTES ? bytes : operations;
+    }
+
+    @Override
+    public String toString() {
+      return MoreObjects.toStringHelper(this)
+          .add("bucket", bucket)
+          .add("prefix", prefix)
+          .add("operations", operations)
+          .add("bytes", bytes)
+          .add("meanLatencyMillis", meanLatency(TimeUnit.MILLISECONDS))
+          .add("retries", retries)
+          .add("failures", failures)
+          .toString();
+    }
+  }
+
+  /**
+   * Builder for {@code PrefixAccessAggregator}.
+   */
+  public static final class Builder {
+
+    private String delimiter = "/";
+    private int prefixDepth = DEFAULT_PREFIX_DEPTH;
+    private long windowMillis = DEFAULT_WINDOW_MILLIS;
+    private int windowSlots = DEFAULT_WINDOW_SLOTS;
+    private Clock clock = Clock.defaultClock();
+
+    private Builder() {}
+
+    /**
+     * Sets the delimiter that separates the segments of blob names. Default value is {@code "/"}.
+     *
+     * @return the builder
+     */
+    public Builder delimiter(String delimiter) {
+      checkArgument(!checkNotNull(delimiter).isEmpty(), "Delimiter must not be empty");
+      this.delimiter = delimiter;
+      return this;
+    }
+
+    /**
+     * Sets the number of leading segments of blob names that make up their prefix. Default value
+     * is 1.
+     *
+     * @return the builder
+     * @throws IllegalArgumentException if {@code prefixDepth} is not positive
+     */
+    public Builder prefixDepth(int prefixDepth) {
+      checkArgument(prefixDepth > 0, "Prefix depth must be > 0");
+      this.prefixDepth = prefixDepth;
+      return this;
+    }
+
+    /**
+     * Sets the length of the sliding window accesses are aggregated over. Default value is 5
+     * minutes.
+     *
+     * @return the builder
+     * @throws IllegalArgumentException if {@code duration} is not positive
+     */
+    public Builder window(long duration, TimeUnit unit) {
+      checkArgument(duration > 0, "Window duration must be > 0");
+      this.windowMillis = unit.toMillis(duration);
+      return this;
+    }
+
+    /**
+     * Sets the number of slots the window is divided in. The window slides by one slot at a time,
+     * more slots give a smoother window at the cost of memory. Default value is 10.
+     *
+     * @return the builder
+     * @throws IllegalArgumentException if {@code windowSlots} is not positive
+     */
+    public Builder windowSlots(int windowSlots) {
+      checkArgument(windowSlots > 0, "Window slots must be > 0");
+      this.windowSlots = windowSlots;
+      return this;
+    }
+
+    Builder clock(Clock clock) {
+      this.clock = clock;
+      return this;
+    }
+
+    /**
+     * Creates a {@code PrefixAccessAggregator} object.
+     */
+    public PrefixAccessAggregator build() {
+      checkArgument(windowMillis >= windowSlots, "Window must be at least 1 ms per slot");
+      return new PrefixAccessAggregator(this);
+    }
+  }
+
+  private static final class Key {
+
+    private final String bucket;
+    private final String prefix;
+
+    Key(String bucket, String prefix) {
+      this.bucket = bucket;
+      this.prefix = prefix;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(bucket, prefix);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) obj;
+      return Objects.equals(bucket, other.bucket) && prefix.equals(other.prefix);
+    }
+  }
+
+  /**
+   * Counters striped by thread. Each thread updates the stripe selected by its id, stripes are
+   * only summed when reporting.
+   */
+  private static final class StripedCounters {
+
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * STRIPE_WIDTH);
+
+    void add(AccessEvent event) {
+      int base = ((int) Thread.currentThread().getId() & (STRIPES - 1)) * STRIPE_WIDTH;
+      cells.getAndIncrement(base + OPERATIONS);
+      cells.getAndAdd(base + BYTES, event.bytes());
+      cells.getAndAdd(base + LATENCY, event.latency(TimeUnit.NANOSECONDS));
+      if (event.retries() > 0) {
+        cells.getAndAdd(base + RETRIES, event.retries());
+      }
+      if (event.failed()) {
+        cells.getAndIncrement(base + FAILURES);
+      }
+    }
+
+    void sumTo(long[] totals) {
+      for (int stripe = 0; stripe < STRIPES; stripe++) {
+        for (int field = 0; field < FIELDS; field++) {
+          totals[field] += cells.get(stripe * STRIPE_WIDTH + field);
+        }
+      }
+    }
+  }
+
+  private static final class Slot {
+
+    private final long epoch;
+    private final ConcurrentMap<Key, StripedCounters> counters = new ConcurrentHashMap<>();
+
+    Slot(long epoch) {
+      this.epoch = epoch;
+    }
+  }
+
+  private PrefixAccessAggregator(Builder builder) {
+    this.delimiter = builder.delimiter;
+    this.prefixDepth = builder.prefixDepth;
+    this.slotMillis = builder.windowMillis / builder.windowSlots;
+    this.clock = builder.clock;
+    this.slots = new AtomicReferenceArray<>(builder.windowSlots);
+  }
+
+  /**
+   * Returns a builder for a {@code PrefixAccessAggregator}.
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  @Override
+  public void accessed(AccessEvent event) {
+    Key key = new Key(event.bucket(), prefix(event.name()));
+    Slot slot = currentSlot();
+    StripedCounters counters = slot.counters.get(key);
+    if (counters == null) {
+      StripedCounters created = new StripedCounters();
+      counters = slot.counters.putIfAbsent(key, created);
+      counters = counters != null ? counters : created;
+    }
+    counters.add(event);
+  }
+
+  /**
+   * Returns the statistics of the {@code count} prefixes with the highest value of
+   * {@code metric} in the current window, in decreasing order of {@code metric}.
+   */
+  public List<PrefixStats> top(int count, final Metric metric) {
+    checkArgument(count > 0, "Count must be > 0");
+    long epoch = clock.millis() / slotMillis;
+    Map<Key, long[]> totals = new HashMap<>();
+    for (int i = 0; i < slots.length(); i++) {
+      Slot slot = slots.get(i);
+      if (slot == null || slot.epoch <= epoch - slots.length()) {
+        continue;
+      }
+      for (Map.Entry<Key, StripedCounters> entry : slot.counters.entrySet()) {
+        long[] keyTotals = totals.get(entry.getKey());
+        if (keyTotals == null) {
+          keyTotals = new long[FIELDS];
+          totals.put(entry.getKey(), keyTotals);
+        }
+        entry.getValue().sumTo(keyTotals);
+      }
+    }
+    List<PrefixStats> stats = new ArrayList<>(totals.size());
+    for (Map.Entry<Key, long[]> entry : totals.entrySet()) {
+      stats.add(new PrefixStats(entry.getKey().bucket, entry.getKey().prefix, entry.getValue()));
+    }
+    Collections.sort(stats, new Comparator<PrefixStats>() {
+      @Override
+      public int compare(PrefixStats first, PrefixStats second) {
+        return Long.compare(second.metric(metric), first.metric(metric));
+      }
+    });
+    return Collections.unmodifiableList(stats.subList(0, Math.min(count, stats.size())));
+  }
+
+  /**
+   * Returns the slot for the current time, replacing the expired slot that occupied its position.
+   */
+  private Slot currentSlot() {
+    long epoch = clock.millis() / slotMillis;
+    int index = (int) (epoch % slots.length());
+    while (true) {
+      Slot slot = slots.get(index);
+      // a slot newer than the current time is used as is, in case the clock went backwards
+      if (slot != null && slot.epoch >= epoch) {
+        return slot;
+      }
+      Slot created = new Slot(epoch);
+      if (slots.compareAndSet(index, slot, created)) {
+        return created;
+      }
+    }
+  }
+
+  String prefix(String name) {
+    if (name == null) {
+      return "";
+    }
+    int end = 0;
+    for (int depth = 0; depth < prefixDepth; depth++) {
+      int index = name.indexOf(delimiter, end);
+      if (index < 0) {
+        break;
+      }
+      end = index + delimiter.length();
+    }
+    return name.substring(0, end);
+  }
+}
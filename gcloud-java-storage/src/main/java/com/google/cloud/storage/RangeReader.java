@@ -0,0 +1,209 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.storage;
+
+import com.google.api.services.storage.model.StorageObject;
+import com.google.cloud.RetryHelper;
+import com.google.cloud.storage.AccessEvent.Operation;
+import com.google.cloud.storage.spi.StorageRpc;
+import com.google.cloud.storage.spi.StorageRpc.Tuple;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Reads several ranges of a blob's content. Ranges that overlap or are separated by less than
+ * {@link #MAX_GAP} bytes are coalesced into a single request of at most
+ * {@link #MAX_REQUEST_SIZE} bytes, and up to {@link #MAX_CONCURRENT_REQUESTS} requests are sent
+ * concurrently. All the responses must have the same etag, so that the returned ranges come from
+ * the same content of the blob.
+ */
+final class RangeReader {
+
+  static final int MAX_GAP = 64 * 1024;
+  static final int MAX_REQUEST_SIZE = 16 * 1024 * 1024;
+  static final int MAX_CONCURRENT_REQUESTS = 16;
+
+  private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(
+      new ThreadFactoryBuilder()
+          .setDaemon(true)
+          .setNameFormat("gcloud-storage-range-%d")
+          .build());
+  private static final ByteBuffer EMPTY_BUFFER = ByteBuffer.allocate(0);
+
+  private final StorageOptions serviceOptions;
+  private final BlobId blob;
+  private final StorageObject storageObject;
+  private final Map<StorageRpc.Option, ?> requestOptions;
+  private final AtomicReference<String> etag = new AtomicReference<>();
+
+  /**
+   * A request covering one or more ranges.
+   */
+  @VisibleForTesting
+  static final class Request {
+
+    final long offset;
+    final List<Integer> rangeIndexes = new ArrayList<>();
+    long end;
+
+    Request(long offset) {
+      this.offset = offset;
+      this.end = offset;
+    }
+
+    int length() {
+      return (int) (end - offset);
+    }
+  }
+
+  RangeReader(StorageOptions serviceOptions, BlobId blob,
+      Map<StorageRpc.Option, ?> requestOptions) {
+    this.serviceOptions = serviceOptions;
+    this.blob = blob;
+    this.storageObject = blob.toPb();
+    this.requestOptions = requestOptions;
+  }
+
+  /**
+   * Groups the provided ranges into requests, sorted by offset.
+   */
+  @VisibleForTesting
+  static List<Request> coalesce(final List<ByteRange> ranges) {
+    List<Integer> indexes = new ArrayList<>(ranges.size());
+    for (int i = 0; i < ranges.size(); i++) {
+      if (ranges.get(i).length() > 0) {
+        indexes.add(i);
+      }
+    }
+    Collections.sort(indexes, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer first, Integer second) {
+        return Long.compare(ranges.get(first).offset(), ranges.get(second).offset());
+      }
+    });
+    List<Request> requests = new ArrayList<>();
+    Request current = null;
+    for (int index : indexes) {
+      ByteRange range = ranges.get(index);
+      if (current == null || range.offset() > current.end + MAX_GAP
+          || Math.max(current.end, range.end()) - current.offset > MAX_REQUEST_SIZE) {
+        current = new Request(range.offset());
+        requests.add(current);
+      }
+      current.rangeIndexes.add(index);
+      current.end = Math.max(current.end, range.end());
+    }
+    return requests;
+  }
+
+  /**
+   * Returns the content of the provided ranges, in the same order. Each buffer is positioned at
+   * {@code 0} and its limit is the number of bytes read, that is smaller than the range's length
+   * if the range goes beyond the end of the blob.
+   *
+   * @throws StorageException upon failure or if the blob was updated while reading
+   */
+  List<ByteBuffer> read(final List<ByteRange> ranges) {
+    final ByteBuffer[] buffers = new ByteBuffer[ranges.size()];
+    Arrays.fill(buffers, EMPTY_BUFFER);
+    List<Request> requests = coalesce(ranges);
+    final Queue<Request> queue = new ConcurrentLinkedQueue<>(requests);
+    final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+    Runnable worker = new Runnable() {
+      @Override
+      public void run() {
+        Request request;
+        while (failure.get() == null && (request = queue.poll()) != null) {
+          try {
+            fetch(request, ranges, buffers);
+          } catch (RuntimeException ex) {
+            failure.compareAndSet(null, ex);
+          }
+        }
+      }
+    };
+    int workers = Math.min(requests.size(), MAX_CONCURRENT_REQUESTS);
+    List<Future<?>> futures = new ArrayList<>(workers);
+    for (int i = 1; i < workers; i++) {
+      futures.add(EXECUTOR.submit(worker));
+    }
+    worker.run();
+    for (Future<?> future : futures) {
+      try {
+        Uninterruptibles.getUninterruptibly(future);
+      } catch (ExecutionException ex) {
+        failure.compareAndSet(null, new StorageException(StorageException.UNKNOWN_CODE,
+            ex.getMessage(), ex.getCause()));
+      }
+    }
+    if (failure.get() != null) {
+      throw failure.get();
+    }
+    return Collections.unmodifiableList(Arrays.asList(buffers));
+  }
+
+  private void fetch(final Request request, List<ByteRange> ranges, ByteBuffer[] buffers) {
+    Tuple<String, byte[]> result;
+    AccessRecorder recorder =
+        AccessRecorder.start(serviceOptions, Operation.READ, blob.bucket(), blob.name());
+    try {
+      result = StorageImpl.run(serviceOptions, recorder, new Callable<Tuple<String, byte[]>>() {
+        @Override
+        public Tuple<String, byte[]> call() {
+          return serviceOptions.rpc().read(storageObject, requestOptions, request.offset,
+              request.length());
+        }
+      });
+      recorder.succeeded(result.y().length);
+    } catch (RetryHelper.RetryHelperException e) {
+      throw StorageException.translateAndThrow(e);
+    }
+    byte[] content = result.y();
+    if (content.length > 0) {
+      etag.compareAndSet(null, result.x());
+      if (!Objects.equals(etag.get(), result.x())) {
+        throw new StorageException(StorageException.UNKNOWN_CODE,
+            "Blob " + blob + " was updated while reading");
+      }
+    }
+    for (int index : request.rangeIndexes) {
+      ByteRange range = ranges.get(index);
+      int start = (int) (range.offset() - request.offset);
+      if (start < content.length) {
+        int length = Math.min(range.length(), content.length - start);
+        buffers[index] = ByteBuffer.wrap(content, start, length).slice();
+      }
+    }
+  }
+}
@@ -36,11 +36,15 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.Serializable;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -327,19 +331,29 @@ public interface Storage extends Service<StorageOptions> {
     static Tuple<BlobInfo, BlobTargetOption[]> convert(BlobInfo info, BlobWriteOption... options) {
       BlobInfo.Builder infoBuilder = info.toBuilder().crc32c(null).md5(null);
       List<BlobTargetOption> targetOptions = Lists.newArrayListWithCapacity(options.length);
+      boolean gzip = false;
+      boolean hashMatch = false;
       for (BlobWriteOption option : options) {
         switch (option.option) {
           case IF_CRC32C_MATCH:
             infoBuilder.crc32c(info.crc32c());
+            hashMatch = true;
             break;
           case IF_MD5_MATCH:
             infoBuilder.md5(info.md5());
+            hashMatch = true;
+            break;
+          case GZIP:
+            infoBuilder.contentEncoding("gzip");
+            gzip = true;
             break;
           default:
             targetOptions.add(option.toTargetOption());
             break;
         }
       }
+      checkArgument(!gzip || !hashMatch,
+          "Hash match options can not be used with gzip, hashes refer to the compressed data");
       return Tuple.of(infoBuilder.build(),
           targetOptions.toArray(new BlobTargetOption[targetOptions.size()]));
     }
@@ -357,7 +371,7 @@ public interface Storage extends Service<StorageOptions> {
 
     enum Option {
       PREDEFINED_ACL, IF_GENERATION_MATCH, IF_GENERATION_NOT_MATCH, IF_METAGENERATION_MATCH,
-      IF_METAGENERATION_NOT_MATCH, IF_MD5_MATCH, IF_CRC32C_MATCH;
+      IF_METAGENERATION_NOT_MATCH, IF_MD5_MATCH, IF_CRC32C_MATCH, GZIP;
 
       StorageRpc.Option toRpcOption() {
         return StorageRpc.Option.valueOf(this.name());
@@ -455,6 +469,27 @@ public interface Storage extends Service<StorageOptions> {
     public static BlobWriteOption crc32cMatch() {
       return new BlobWriteOption(Option.IF_CRC32C_MATCH, true);
     }
+
+    /**
+     * Returns an option to gzip-compress the blob's data as it is written. The blob's
+     * {@link BlobInfo#contentEncoding()} is set to {@code gzip}. This option is only supported by
+     * {@link Storage#writer(BlobInfo, BlobWriteOption...)}, whose channel can then not be
+     * {@link WriteChannel#capture() captured}. It can not be used together with
+     * {@link #md5Match()} or {@link #crc32cMatch()}. Use {@link BlobSourceOption#decompress()} to
+     * read the original data.
+     */
+    public static BlobWriteOption gzip() {
+      return new BlobWriteOption(Option.GZIP, true);
+    }
+
+    static boolean isGzip(BlobWriteOption... options) {
+      for (BlobWriteOption option : options) {
+        if (option.option == Option.GZIP) {
+          return true;
+        }
+      }
+      return false;
+    }
   }
 
   /**
@@ -521,6 +556,19 @@ public interface Storage extends Service<StorageOptions> {
     public static BlobSourceOption metagenerationNotMatch(long metageneration) {
       return new BlobSourceOption(StorageRpc.Option.IF_METAGENERATION_NOT_MATCH, metageneration);
     }
+
+    /**
+     * Returns an option to decompress gzip data while reading it, for blobs stored with gzip
+     * {@link BlobInfo#contentEncoding() content encoding}, such as the ones written with
+     * {@link BlobWriteOption#gzip()}. The blob is read in order with a single request and
+     * positions passed to {@link ReadChannel#seek(long)} refer to the decompressed data. This
+     * option is only supported by {@link Storage#reader(BlobId, BlobSourceOption...)} and
+     * {@link Storage#reader(String, String, BlobSourceOption...)}, whose channel can then not be
+     * {@link ReadChannel#capture() captured}; other methods reject it.
+     */
+    public static BlobSourceOption decompress() {
+      return new BlobSourceOption(StorageRpc.Option.DECOMPRESS, null);
+    }
   }
 
   /**
@@ -1047,6 +1095,26 @@ public interface Storage extends Service<StorageOptions> {
         return this;
       }
 
+      /**
+       * Sets the copy target options.
+       *
+       * @return the builder
+       */
+      public Builder targetOptions(BlobTargetOption... options) {
+        Collections.addAll(targetOptions, options);
+        return this;
+      }
+
+      /**
+       * Sets the copy target options.
+       *
+       * @return the builder
+       */
+      public Builder targetOptions(Iterable<BlobTargetOption> options) {
+        Iterables.addAll(targetOptions, options);
+        return this;
+      }
+
       /**
        * Sets the maximum number of megabytes to copy for each RPC call. This parameter is ignored
        * if source and target blob share the same location and storage class as copy is made with
@@ -1249,6 +1317,28 @@ public interface Storage extends Service<StorageOptions> {
    */
   Blob create(BlobInfo blobInfo, InputStream content, BlobWriteOption... options);
 
+  /**
+   * Uploads the content of a file to a new blob, using resumable upload. The file is
+   * memory-mapped and uploaded in chunks that are sent directly from the mapped regions, so that
+   * the heap usage of the upload does not depend on the size of the file. Chunks that fail are
+   * retried by sending the same region again. The file should not be modified while it is
+   * uploaded. By default any md5 and crc32c values in the given {@code blobInfo} are ignored
+   * unless requested via the {@code BlobWriteOption.md5Match} and
+   * {@code BlobWriteOption.crc32cMatch} options. The {@code BlobWriteOption.gzip} option is not
+   * supported.
+   *
+   * <p>Example of uploading a file:
+   * <pre> {@code
+   * BlobInfo blobInfo = BlobInfo.builder("bucket", "blob").contentType("video/mp4").build();
+   * Blob blob = storage.upload(blobInfo, Paths.get("/data/video.mp4"));
+   * }</pre>
+   *
+   * @return a {@code Blob} with complete information
+   * @throws IOException if the file can not be read
+   * @throws StorageException upon failure
+   */
+  Blob upload(BlobInfo blobInfo, Path path, BlobWriteOption... options) throws IOException;
+
   /**
    * Returns the requested bucket or {@code null} if not found.
    *
@@ -1424,6 +1514,29 @@ public interface Storage extends Service<StorageOptions> {
    */
   byte[] readAllBytes(BlobId blob, BlobSourceOption... options);
 
+  /**
+   * Reads several ranges of a blob's content. Ranges that overlap or are close to each other are
+   * read with a single request and the remaining requests are sent concurrently, which makes this
+   * method suitable to read many small parts of a blob, such as the footer and index blocks of a
+   * columnar file. All the ranges are read from the same content of the blob: if the blob changes
+   * while reading (i.e. {@link BlobInfo#etag()} changes) a {@link StorageException} is thrown. If
+   * {@code blob.generation()} is set data corresponding to that generation is read.
+   *
+   * <p>Example of reading the last 8 bytes and two other ranges of a blob:
+   * <pre> {@code
+   * List<ByteBuffer> buffers = storage.readRanges(blobId, ImmutableList.of(
+   *     ByteRange.of(size - 8, 8), ByteRange.of(4, 100), ByteRange.of(1000, 200)));
+   * }</pre>
+   *
+   * @param ranges the ranges to read, possibly overlapping
+   * @return a buffer for each range, in the same order as {@code ranges}. Each buffer is
+   *     positioned at {@code 0} and its limit is the number of bytes read, that is smaller than the
+   *     range's length if the range goes beyond the end of the blob. Buffers of overlapping ranges
+   *     may share their content.
+   * @throws StorageException upon failure
+   */
+  List<ByteBuffer> readRanges(BlobId blob, List<ByteRange> ranges, BlobSourceOption... options);
+
   /**
    * Creates a new empty batch for grouping multiple service calls in one underlying RPC call.
    *
@@ -1458,6 +1571,9 @@ public interface Storage extends Service<StorageOptions> {
    * {@code blobReadChannel.read(ByteBuffer)} calls will throw {@link StorageException} if blob`s
    * generation differs from the expected one.
    *
+   * <p>Unless {@link BlobSourceOption#decompress()} is used, the returned channel implements
+   * {@link PositionalReadChannel}, whose positional reads can be shared by multiple threads.
+   *
    * @throws StorageException upon failure
    */
   ReadChannel reader(String bucket, String blob, BlobSourceOption... options);
@@ -1474,6 +1590,9 @@ public interface Storage extends Service<StorageOptions> {
    * {@code blobReadChannel.read(ByteBuffer)} calls will throw {@link StorageException} if the
    * blob`s generation differs from the expected one.
    *
+   * <p>Unless {@link BlobSourceOption#decompress()} is used, the returned channel implements
+   * {@link PositionalReadChannel}, whose positional reads can be shared by multiple threads.
+   *
    * @throws StorageException upon failure
    */
   ReadChannel reader(BlobId blob, BlobSourceOption... options);
@@ -1610,4 +1729,65 @@ public interface Storage extends Service<StorageOptions> {
    * @throws StorageException upon failure
    */
   List<Boolean> delete(Iterable<BlobId> blobIds);
+
+  /**
+   * Gets the requested blobs, returning the results as they become available. Requests are sent
+   * in batches of 100 and up to {@link StorageOptions#batchParallelism()} batches are sent ahead
+   * of the results being consumed, so that large numbers of blobs can be processed with bounded
+   * memory. {@code blobIds} is iterated lazily.
+   *
+   * <p>Example of getting many blobs:
+   * <pre> {@code
+   * Iterator<Blob> blobs = storage.getAll(blobIds);
+   * while (blobs.hasNext()) {
+   *   Blob blob = blobs.next();
+   *   // do something with the blob, null if it does not exist
+   * }
+   * }</pre>
+   *
+   * @param blobIds blobs to get
+   * @return an iterator over {@code Blob} objects, in the order of {@code blobIds}. If a blob does
+   *     not exist or access to it has been denied the corresponding item is {@code null}.
+   * @throws StorageException upon failure of a batch request, when iterating
+   */
+  Iterator<Blob> getAll(Iterable<BlobId> blobIds);
+
+  /**
+   * Updates the requested blobs, returning the results as they become available. Requests are
+   * sent in batches of 100 and up to {@link StorageOptions#batchParallelism()} batches are sent
+   * ahead of the results being consumed. {@code blobInfos} is iterated lazily. Metadata are
+   * merged as in {@link #update(Iterable)}.
+   *
+   * @param blobInfos blobs to update
+   * @return an iterator over {@code Blob} objects, in the order of {@code blobInfos}. If a blob
+   *     does not exist or access to it has been denied the corresponding item is {@code null}.
+   * @throws StorageException upon failure of a batch request, when iterating
+   */
+  Iterator<Blob> updateAll(Iterable<BlobInfo> blobInfos);
+
+  /**
+   * Deletes the requested blobs, returning the results as they become available. Requests are
+   * sent in batches of 100 and up to {@link StorageOptions#batchParallelism()} batches are sent
+   * ahead of the results being consumed. {@code blobIds} is iterated lazily.
+   *
+   * @param blobIds blobs to delete
+   * @return an iterator over booleans, in the order of {@code blobIds}. If a blob has been
+   *     deleted the corresponding item is {@code true}. If a blob was not found, deletion failed
+   *     or access to the resource was denied the corresponding item is {@code false}.
+   * @throws StorageException upon failure of a batch request, when iterating
+   */
+  Iterator<Boolean> deleteAll(Iterable<BlobId> blobIds);
+
+  /**
+   * Returns statistics on the usage of the client-side metadata cache used by
+   * {@link #get(BlobId, BlobGetOption...)} and {@link #get(String, BucketGetOption...)}, or
+   * {@code null} if metadata caching is not enabled. Metadata caching can be enabled by setting
+   * {@link StorageOptions.Builder#metadataCacheSize(long)}.
+   *
+   * <p>Cached entries are invalidated by writes (create, update, delete, compose and copy) issued
+   * through this service. Writes issued by other clients are only observed once the cached entry
+   * expires (see {@link StorageOptions.Builder#metadataCacheTtl(long, TimeUnit)}). Entries for
+   * blob identifiers that specify a generation never expire.
+   */
+  MetadataCacheStats metadataCacheStats();
 }
@@ -20,14 +20,20 @@ import static java.net.HttpURLConnection.HTTP_NOT_FOUND;
 
 import com.google.api.client.googleapis.json.GoogleJsonError;
 import com.google.api.services.storage.model.StorageObject;
+import com.google.cloud.storage.AccessEvent.Operation;
 import com.google.cloud.storage.Storage.BlobGetOption;
 import com.google.cloud.storage.Storage.BlobSourceOption;
 import com.google.cloud.storage.Storage.BlobTargetOption;
 import com.google.cloud.storage.spi.RpcBatch;
 import com.google.cloud.storage.spi.StorageRpc;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * A batch of operations to be submitted to Google Cloud Storage using a single RPC request.
@@ -54,14 +60,26 @@ import java.util.Map;
  */
 public class StorageBatch {
 
+  private static final ExecutorService ASYNC_EXECUTOR = Executors.newCachedThreadPool(
+      new ThreadFactoryBuilder()
+          .setDaemon(true)
+          .setNameFormat("gcloud-storage-batch-submit-%d")
+          .build());
+
   private final RpcBatch batch;
   private final StorageRpc storageRpc;
   private final StorageOptions options;
+  private final MetadataCache metadataCache;
 
   StorageBatch(StorageOptions options) {
+    this(options, null);
+  }
+
+  StorageBatch(StorageOptions options, MetadataCache metadataCache) {
     this.options = options;
     this.storageRpc = options.rpc();
     this.batch = storageRpc.createBatch();
+    this.metadataCache = metadataCache;
   }
 
   @VisibleForTesting
@@ -98,7 +116,9 @@ public class StorageBatch {
    */
   public StorageBatchResult<Boolean> delete(BlobId blob, BlobSourceOption... options) {
     StorageBatchResult<Boolean> result = new StorageBatchResult<>();
-    RpcBatch.Callback<Void> callback = createDeleteCallback(result);
+    AccessRecorder recorder =
+        AccessRecorder.start(this.options, Operation.DELETE, blob.bucket(), blob.name());
+    RpcBatch.Callback<Void> callback = createDeleteCallback(blob, recorder, result);
     Map<StorageRpc.Option, ?> optionMap = StorageImpl.optionMap(blob, options);
     batch.addDelete(blob.toPb(), callback, optionMap);
     return result;
@@ -112,7 +132,10 @@ public class StorageBatch {
    */
   public StorageBatchResult<Blob> update(BlobInfo blobInfo, BlobTargetOption... options) {
     StorageBatchResult<Blob> result = new StorageBatchResult<>();
-    RpcBatch.Callback<StorageObject> callback = createUpdateCallback(this.options, result);
+    AccessRecorder recorder = AccessRecorder.start(this.options, Operation.UPDATE,
+        blobInfo.bucket(), blobInfo.name());
+    RpcBatch.Callback<StorageObject> callback =
+        createUpdateCallback(this.options, blobInfo.blobId(), recorder, result);
     Map<StorageRpc.Option, ?> optionMap = StorageImpl.optionMap(blobInfo, options);
     batch.addPatch(blobInfo.toPb(), callback, optionMap);
     return result;
@@ -138,32 +161,72 @@ public class StorageBatch {
    */
   public StorageBatchResult<Blob> get(BlobId blob, BlobGetOption... options) {
     StorageBatchResult<Blob> result = new StorageBatchResult<>();
-    RpcBatch.Callback<StorageObject> callback = createGetCallback(this.options, result);
+    AccessRecorder recorder =
+        AccessRecorder.start(this.options, Operation.GET, blob.bucket(), blob.name());
+    RpcBatch.Callback<StorageObject> callback = createGetCallback(this.options, recorder, result);
     Map<StorageRpc.Option, ?> optionMap = StorageImpl.optionMap(blob, options);
     batch.addGet(blob.toPb(), callback, optionMap);
     return result;
   }
 
   /**
-   * Submits this batch for processing using a single RPC request.
+   * Submits this batch for processing using a single RPC request. Requests are sent in
+   * sub-batches of at most 100 requests; up to {@link StorageOptions#batchParallelism()}
+   * sub-batches are executed concurrently. Results are delivered to callbacks one at a time, but
+   * possibly from different threads. Each operation is reported to the
+   * {@link StorageOptions#accessListener() access listener} when its result is delivered, with
+   * the time elapsed since it was added to the batch; retries of sub-batches are not counted.
    */
   public void submit() {
     batch.submit();
   }
 
-  private RpcBatch.Callback<Void> createDeleteCallback(final StorageBatchResult<Boolean> result) {
+  /**
+   * Submits this batch for processing in a background thread. The returned future completes when
+   * all the results have been delivered, or fails with the {@link StorageException} that caused
+   * the batch to fail.
+   *
+   * @see #submit()
+   */
+  public Future<Void> submitAsync() {
+    return ASYNC_EXECUTOR.submit(new Callable<Void>() {
+      @Override
+      public Void call() {
+        batch.submit();
+        return null;
+      }
+    });
+  }
+
+  /**
+   * Invalidates the cached metadata of a blob written by this batch. This is done once the result
+   * of the write is known, so that a concurrent get can't cache the metadata the write replaces.
+   */
+  private void invalidate(BlobId blob) {
+    if (metadataCache != null) {
+      metadataCache.invalidate(blob);
+    }
+  }
+
+  private RpcBatch.Callback<Void> createDeleteCallback(final BlobId blob,
+      final AccessRecorder recorder, final StorageBatchResult<Boolean> result) {
     return new RpcBatch.Callback<Void>() {
       @Override
       public void onSuccess(Void response) {
+        invalidate(blob);
+        recorder.succeeded(0);
         result.success(true);
       }
 
       @Override
       public void onFailure(GoogleJsonError googleJsonError) {
+        invalidate(blob);
         StorageException serviceException = new StorageException(googleJsonError);
         if (serviceException.code() == HTTP_NOT_FOUND) {
+          recorder.succeeded(0);
           result.success(false);
         } else {
+          recorder.failed();
           result.error(serviceException);
         }
       }
@@ -171,10 +234,11 @@ public class StorageBatch {
   }
 
   private RpcBatch.Callback<StorageObject> createGetCallback(final StorageOptions serviceOptions,
-      final StorageBatchResult<Blob> result) {
+      final AccessRecorder recorder, final StorageBatchResult<Blob> result) {
     return new RpcBatch.Callback<StorageObject>() {
       @Override
       public void onSuccess(StorageObject response) {
+        recorder.succeeded(0);
         result.success(response == null ? null : Blob.fromPb(serviceOptions.service(), response));
       }
 
@@ -182,8 +246,10 @@ public class StorageBatch {
       public void onFailure(GoogleJsonError googleJsonError) {
         StorageException serviceException = new StorageException(googleJsonError);
         if (serviceException.code() == HTTP_NOT_FOUND) {
+          recorder.succeeded(0);
           result.success(null);
         } else {
+          recorder.failed();
           result.error(serviceException);
         }
       }
@@ -191,15 +257,19 @@ public class StorageBatch {
   }
 
   private RpcBatch.Callback<StorageObject> createUpdateCallback(final StorageOptions serviceOptions,
-      final StorageBatchResult<Blob> result) {
+      final BlobId blob, final AccessRecorder recorder, final StorageBatchResult<Blob> result) {
     return new RpcBatch.Callback<StorageObject>() {
       @Override
       public void onSuccess(StorageObject response) {
+        invalidate(blob);
+        recorder.succeeded(0);
         result.success(response == null ? null : Blob.fromPb(serviceOptions.service(), response));
       }
 
       @Override
       public void onFailure(GoogleJsonError googleJsonError) {
+        invalidate(blob);
+        recorder.failed();
         result.error(new StorageException(googleJsonError));
       }
     };
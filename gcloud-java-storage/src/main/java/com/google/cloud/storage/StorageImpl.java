@@ -17,6 +17,7 @@
 package com.google.cloud.storage;
 
 import static com.google.cloud.RetryHelper.runWithRetries;
+import static com.google.cloud.storage.spi.StorageRpc.Option.DECOMPRESS;
 import static com.google.cloud.storage.spi.StorageRpc.Option.DELIMITER;
 import static com.google.cloud.storage.spi.StorageRpc.Option.IF_GENERATION_MATCH;
 import static com.google.cloud.storage.spi.StorageRpc.Option.IF_GENERATION_NOT_MATCH;
@@ -40,6 +41,8 @@ import com.google.cloud.PageImpl.NextPageFetcher;
 import com.google.cloud.ReadChannel;
 import com.google.cloud.RetryHelper.RetryHelperException;
 import com.google.cloud.ServiceAccountSigner;
+import com.google.cloud.WriteChannel;
+import com.google.cloud.storage.AccessEvent.Operation;
 import com.google.cloud.storage.spi.StorageRpc;
 import com.google.cloud.storage.spi.StorageRpc.RewriteResponse;
 import com.google.cloud.storage.spi.StorageRpc.Tuple;
@@ -54,14 +57,21 @@ import com.google.common.io.BaseEncoding;
 import com.google.common.primitives.Ints;
 
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.EnumMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
@@ -73,6 +83,8 @@ final class StorageImpl extends BaseService<StorageOptions> implements Storage {
   private static final String EMPTY_BYTE_ARRAY_MD5 = "1B2M2Y8AsgTpgAmY7PhCfg==";
   private static final String EMPTY_BYTE_ARRAY_CRC32C = "AAAAAA==";
   private static final String PATH_DELIMITER = "/";
+  // a multiple of 256 KiB, as required for all the chunks of a resumable upload but the last
+  private static final long UPLOAD_CHUNK_SIZE = 32L * 1024 * 1024;
 
   private static final Function<Tuple<Storage, Boolean>, Boolean> DELETE_FUNCTION =
       new Function<Tuple<Storage, Boolean>, Boolean>() {
@@ -83,26 +95,37 @@ final class StorageImpl extends BaseService<StorageOptions> implements Storage {
       };
 
   private final StorageRpc storageRpc;
+  private final MetadataCache metadataCache;
 
   StorageImpl(StorageOptions options) {
     super(options);
     storageRpc = options.rpc();
+    metadataCache = options.metadataCacheSize() > 0
+        ? new MetadataCache(options.metadataCacheSize(), options.metadataCacheTtlMillis(),
+            options.clock())
+        : null;
   }
 
   @Override
   public Bucket create(BucketInfo bucketInfo, BucketTargetOption... options) {
     final com.google.api.services.storage.model.Bucket bucketPb = bucketInfo.toPb();
     final Map<StorageRpc.Option, ?> optionsMap = optionMap(bucketInfo, options);
+    AccessRecorder recorder =
+        AccessRecorder.start(options(), Operation.CREATE, bucketInfo.name(), null);
     try {
-      return Bucket.fromPb(this, runWithRetries(
+      com.google.api.services.storage.model.Bucket created = run(options(), recorder,
         new Callable<com.google.api.services.storage.model.Bucket>() {
           @Override
           public com.google.api.services.storage.model.Bucket call() {
             return storageRpc.create(bucketPb, optionsMap);
           }
-        }, options().retryParams(), EXCEPTION_HANDLER, options().clock()));
+        });
+      recorder.succeeded(0);
+      return Bucket.fromPb(this, created);
     } catch (RetryHelperException e) {
       throw StorageException.translateAndThrow(e);
+    } finally {
+      invalidate(bucketInfo.name());
     }
   }
 
@@ -128,23 +151,70 @@ final class StorageImpl extends BaseService<StorageOptions> implements Storage {
 
   @Override
   public Blob create(BlobInfo blobInfo, InputStream content, BlobWriteOption... options) {
+    checkArgument(!BlobWriteOption.isGzip(options), "The gzip option is only supported by writer");
     Tuple<BlobInfo, BlobTargetOption[]> targetOptions = BlobTargetOption.convert(blobInfo, options);
     return create(targetOptions.x(), content, targetOptions.y());
   }
 
+  @Override
+  public Blob upload(BlobInfo blobInfo, Path path, BlobWriteOption... options) throws IOException {
+    checkArgument(!BlobWriteOption.isGzip(options), "The gzip option is only supported by writer");
+    Tuple<BlobInfo, BlobTargetOption[]> targetOptions = BlobTargetOption.convert(blobInfo, options);
+    final StorageObject blobPb = targetOptions.x().toPb();
+    final Map<StorageRpc.Option, ?> optionsMap = optionMap(targetOptions.x(), targetOptions.y());
+    AccessRecorder recorder =
+        AccessRecorder.start(options(), Operation.CREATE, blobInfo.bucket(), blobInfo.name());
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      long size = channel.size();
+      final String uploadId = run(options(), recorder, new Callable<String>() {
+        @Override
+        public String call() {
+          return storageRpc.open(blobPb, optionsMap);
+        }
+      });
+      StorageObject result;
+      long position = 0;
+      do {
+        final long offset = position;
+        final boolean last = size - position <= UPLOAD_CHUNK_SIZE;
+        final MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, position,
+            Math.min(UPLOAD_CHUNK_SIZE, size - position));
+        result = run(options(), recorder, new Callable<StorageObject>() {
+          @Override
+          public StorageObject call() {
+            return storageRpc.write(uploadId, chunk, offset, last);
+          }
+        });
+        position += chunk.capacity();
+      } while (position < size);
+      recorder.succeeded(size);
+      return Blob.fromPb(this, result);
+    } catch (RetryHelperException e) {
+      throw StorageException.translateAndThrow(e);
+    } finally {
+      invalidate(blobInfo.blobId());
+    }
+  }
+
   private Blob create(BlobInfo info, final InputStream content, BlobTargetOption... options) {
     final StorageObject blobPb = info.toPb();
     final Map<StorageRpc.Option, ?> optionsMap = optionMap(info, options);
+    AccessRecorder recorder =
+        AccessRecorder.start(options(), Operation.CREATE, info.bucket(), info.name());
     try {
-      return Blob.fromPb(this, runWithRetries(new Callable<StorageObject>() {
+      StorageObject created = run(options(), recorder, new Callable<StorageObject>() {
         @Override
         public StorageObject call() {
           return storageRpc.create(blobPb,
               firstNonNull(content, new ByteArrayInputStream(EMPTY_BYTE_ARRAY)), optionsMap);
         }
-      }, options().retryParams(), EXCEPTION_HANDLER, options().clock()));
+      });
+      recorder.succeeded(created.getSize() != null ? created.getSize().longValue() : 0);
+      return Blob.fromPb(this, created);
     } catch (RetryHelperException e) {
       throw StorageException.translateAndThrow(e);
+    } finally {
+      invalidate(info.blobId());
     }
   }
 
@@ -152,15 +222,28 @@ final class StorageImpl extends BaseService<StorageOptions> implements Storage {
   public Bucket get(String bucket, BucketGetOption... options) {
     final com.google.api.services.storage.model.Bucket bucketPb = BucketInfo.of(bucket).toPb();
     final Map<StorageRpc.Option, ?> optionsMap = optionMap(options);
+    if (metadataCache != null) {
+      Bucket cached = metadataCache.get(bucket, optionsMap);
+      if (cached != null) {
+        return cached;
+      }
+    }
+    long stamp = metadataCache != null ? metadataCache.stamp(bucket) : 0;
+    AccessRecorder recorder = AccessRecorder.start(options(), Operation.GET, bucket, null);
     try {
-      com.google.api.services.storage.model.Bucket answer = runWithRetries(
+      com.google.api.services.storage.model.Bucket answer = run(options(), recorder,
           new Callable<com.google.api.services.storage.model.Bucket>() {
             @Override
             public com.google.api.services.storage.model.Bucket call() {
               return storageRpc.get(bucketPb, optionsMap);
             }
-          }, options().retryParams(), EXCEPTION_HANDLER, options().clock());
-      return answer == null ? null : Bucket.fromPb(this, answer);
+          });
+      recorder.succeeded(0);
+      Bucket result = answer == null ? null : Bucket.fromPb(this, answer);
+      if (metadataCache != null) {
+        metadataCache.put(bucket, optionsMap, result, stamp);
+      }
+      return result;
     } catch (RetryHelperException e) {
       throw StorageException.translateAndThrow(e);
     }
@@ -175,14 +258,28 @@ final class StorageImpl extends BaseService<StorageOptions> implements Storage {
   public Blob get(BlobId blob, BlobGetOption... options) {
     final StorageObject storedObject = blob.toPb();
     final Map<StorageRpc.Option, ?> optionsMap = optionMap(blob, options);
+    if (metadataCache != null) {
+      Blob cached = metadataCache.get(blob, optionsMap);
+      if (cached != null) {
+        return cached;
+      }
+    }
+    long stamp = metadataCache != null ? metadataCache.stamp(blob) : 0;
+    AccessRecorder recorder =
+        AccessRecorder.start(options(), Operation.GET, blob.bucket(), blob.name());
     try {
-      StorageObject storageObject = runWithRetries(new Callable<StorageObject>() {
+      StorageObject storageObject = run(options(), recorder, new Callable<StorageObject>() {
         @Override
         public StorageObject call() {
           return storageRpc.get(storedObject, optionsMap);
         }
-      }, options().retryParams(), EXCEPTION_HANDLER, options().clock());
-      return storageObject == null ? null : Blob.fromPb(this, storageObject);
+      });
+      recorder.succeeded(0);
+      Blob result = storageObject == null ? null : Blob.fromPb(this, storageObject);
+      if (metadataCache != null) {
+        metadataCache.put(blob, optionsMap, result, stamp);
+      }
+      return result;
     } catch (RetryHelperException e) {
       throw StorageException.translateAndThrow(e);
     }
@@ -246,14 +343,17 @@ final class StorageImpl extends BaseService<StorageOptions> implements Storage {
 
   private static Page<Bucket> listBuckets(final StorageOptions serviceOptions,
       final Map<StorageRpc.Option, ?> optionsMap) {
+    AccessRecorder recorder = AccessRecorder.start(serviceOptions, Operation.LIST, null, null);
     try {
-      Tuple<String, Iterable<com.google.api.services.storage.model.Bucket>> result = runWithRetries(
+      Tuple<String, Iterable<com.google.api.services.storage.model.Bucket>> result = run(
+          serviceOptions, recorder,
           new Callable<Tuple<String, Iterable<com.google.api.services.storage.model.Bucket>>>() {
             @Override
             public Tuple<String, Iterable<com.google.api.services.storage.model.Bucket>> call() {
               return serviceOptions.rpc().list(optionsMap);
             }
-          }, serviceOptions.retryParams(), EXCEPTION_HANDLER, serviceOptions.clock());
+          });
+      recorder.succeeded(0);
       String cursor = result.x();
       Iterable<Bucket> buckets =
           result.y() == null ? ImmutableList.<Bucket>of() : Iterables.transform(result.y(),
@@ -273,14 +373,17 @@ final class StorageImpl extends BaseService<StorageOptions> implements Storage {
 
   private static Page<Blob> listBlobs(final String bucket,
       final StorageOptions serviceOptions, final Map<StorageRpc.Option, ?> optionsMap) {
+    AccessRecorder recorder = AccessRecorder.start(serviceOptions, Operation.LIST, bucket,
+        (String) optionsMap.get(StorageRpc.Option.PREFIX));
     try {
-      Tuple<String, Iterable<StorageObject>> result = runWithRetries(
+      Tuple<String, Iterable<StorageObject>> result = run(serviceOptions, recorder,
           new Callable<Tuple<String, Iterable<StorageObject>>>() {
             @Override
             public Tuple<String, Iterable<StorageObject>> call() {
               return serviceOptions.rpc().list(bucket, optionsMap);
             }
-          }, serviceOptions.retryParams(), EXCEPTION_HANDLER, serviceOptions.clock());
+          });
+      recorder.succeeded(0);
       String cursor = result.x();
       Iterable<Blob> blobs =
           result.y() == null
@@ -304,16 +407,22 @@ final class StorageImpl extends BaseService<StorageOptions> implements Storage {
   public Bucket update(BucketInfo bucketInfo, BucketTargetOption... options) {
     final com.google.api.services.storage.model.Bucket bucketPb = bucketInfo.toPb();
     final Map<StorageRpc.Option, ?> optionsMap = optionMap(bucketInfo, options);
+    AccessRecorder recorder =
+        AccessRecorder.start(options(), Operation.UPDATE, bucketInfo.name(), null);
     try {
-      return Bucket.fromPb(this, runWithRetries(
+      com.google.api.services.storage.model.Bucket updated = run(options(), recorder,
           new Callable<com.google.api.services.storage.model.Bucket>() {
             @Override
             public com.google.api.services.storage.model.Bucket call() {
               return storageRpc.patch(bucketPb, optionsMap);
             }
-          }, options().retryParams(), EXCEPTION_HANDLER, options().clock()));
+          });
+      recorder.succeeded(0);
+      return Bucket.fromPb(this, updated);
     } catch (RetryHelperException e) {
       throw StorageException.translateAndThrow(e);
+    } finally {
+      invalidate(bucketInfo.name());
     }
   }
 
@@ -321,15 +430,21 @@ final class StorageImpl extends BaseService<StorageOptions> implements Storage {
   public Blob update(BlobInfo blobInfo, BlobTargetOption... options) {
     final StorageObject storageObject = blobInfo.toPb();
     final Map<StorageRpc.Option, ?> optionsMap = optionMap(blobInfo, options);
+    AccessRecorder recorder =
+        AccessRecorder.start(options(), Operation.UPDATE, blobInfo.bucket(), blobInfo.name());
     try {
-      return Blob.fromPb(this, runWithRetries(new Callable<StorageObject>() {
+      StorageObject updated = run(options(), recorder, new Callable<StorageObject>() {
         @Override
         public StorageObject call() {
           return storageRpc.patch(storageObject, optionsMap);
         }
-      }, options().retryParams(), EXCEPTION_HANDLER, options().clock()));
+      });
+      recorder.succeeded(0);
+      return Blob.fromPb(this, updated);
     } catch (RetryHelperException e) {
       throw StorageException.translateAndThrow(e);
+    } finally {
+      invalidate(blobInfo.blobId());
     }
   }
 
@@ -342,15 +457,20 @@ final class StorageImpl extends BaseService<StorageOptions> implements Storage {
   public boolean delete(String bucket, BucketSourceOption... options) {
     final com.google.api.services.storage.model.Bucket bucketPb = BucketInfo.of(bucket).toPb();
     final Map<StorageRpc.Option, ?> optionsMap = optionMap(options);
+    AccessRecorder recorder = AccessRecorder.start(options(), Operation.DELETE, bucket, null);
     try {
-      return runWithRetries(new Callable<Boolean>() {
+      boolean deleted = run(options(), recorder, new Callable<Boolean>() {
         @Override
         public Boolean call() {
           return storageRpc.delete(bucketPb, optionsMap);
         }
-      }, options().retryParams(), EXCEPTION_HANDLER, options().clock());
+      });
+      recorder.succeeded(0);
+      return deleted;
     } catch (RetryHelperException e) {
       throw StorageException.translateAndThrow(e);
+    } finally {
+      invalidate(bucket);
     }
   }
 
@@ -363,15 +483,21 @@ final class StorageImpl extends BaseService<StorageOptions> implements Storage {
   public boolean delete(BlobId blob, BlobSourceOption... options) {
     final StorageObject storageObject = blob.toPb();
     final Map<StorageRpc.Option, ?> optionsMap = optionMap(blob, options);
+    AccessRecorder recorder =
+        AccessRecorder.start(options(), Operation.DELETE, blob.bucket(), blob.name());
     try {
-      return runWithRetries(new Callable<Boolean>() {
+      boolean deleted = run(options(), recorder, new Callable<Boolean>() {
         @Override
         public Boolean call() {
           return storageRpc.delete(storageObject, optionsMap);
         }
-      }, options().retryParams(), EXCEPTION_HANDLER, options().clock());
+      });
+      recorder.succeeded(0);
+      return deleted;
     } catch (RetryHelperException e) {
       throw StorageException.translateAndThrow(e);
+    } finally {
+      invalidate(blob);
     }
   }
 
@@ -392,15 +518,21 @@ final class StorageImpl extends BaseService<StorageOptions> implements Storage {
     final StorageObject target = composeRequest.target().toPb();
     final Map<StorageRpc.Option, ?> targetOptions = optionMap(composeRequest.target().generation(),
         composeRequest.target().metageneration(), composeRequest.targetOptions());
+    AccessRecorder recorder = AccessRecorder.start(options(), Operation.COMPOSE,
+        composeRequest.target().bucket(), composeRequest.target().name());
     try {
-      return Blob.fromPb(this, runWithRetries(new Callable<StorageObject>() {
+      StorageObject composed = run(options(), recorder, new Callable<StorageObject>() {
         @Override
         public StorageObject call() {
           return storageRpc.compose(sources, target, targetOptions);
         }
-      }, options().retryParams(), EXCEPTION_HANDLER, options().clock()));
+      });
+      recorder.succeeded(0);
+      return Blob.fromPb(this, composed);
     } catch (RetryHelperException e) {
       throw StorageException.translateAndThrow(e);
+    } finally {
+      invalidate(composeRequest.target().blobId());
     }
   }
 
@@ -412,18 +544,23 @@ final class StorageImpl extends BaseService<StorageOptions> implements Storage {
     final StorageObject targetObject = copyRequest.target().toPb();
     final Map<StorageRpc.Option, ?> targetOptions = optionMap(copyRequest.target().generation(),
         copyRequest.target().metageneration(), copyRequest.targetOptions());
+    AccessRecorder recorder = AccessRecorder.start(options(), Operation.COPY,
+        copyRequest.target().bucket(), copyRequest.target().name());
     try {
-      RewriteResponse rewriteResponse = runWithRetries(new Callable<RewriteResponse>() {
+      RewriteResponse rewriteResponse = run(options(), recorder, new Callable<RewriteResponse>() {
         @Override
         public RewriteResponse call() {
           return storageRpc.openRewrite(new StorageRpc.RewriteRequest(source, sourceOptions,
               copyRequest.overrideInfo(), targetObject, targetOptions,
               copyRequest.megabytesCopiedPerChunk()));
         }
-      }, options().retryParams(), EXCEPTION_HANDLER, options().clock());
-      return new CopyWriter(options(), rewriteResponse);
+      });
+      recorder.succeeded(rewriteResponse.totalBytesRewritten);
+      return new CopyWriter(options(), rewriteResponse, metadataCache);
     } catch (RetryHelperException e) {
       throw StorageException.translateAndThrow(e);
+    } finally {
+      invalidate(copyRequest.target().blobId());
     }
   }
 
@@ -436,44 +573,60 @@ final class StorageImpl extends BaseService<StorageOptions> implements Storage {
   public byte[] readAllBytes(BlobId blob, BlobSourceOption... options) {
     final StorageObject storageObject = blob.toPb();
     final Map<StorageRpc.Option, ?> optionsMap = optionMap(blob, options);
+    AccessRecorder recorder =
+        AccessRecorder.start(options(), Operation.READ, blob.bucket(), blob.name());
     try {
-      return runWithRetries(new Callable<byte[]>() {
+      byte[] content = run(options(), recorder, new Callable<byte[]>() {
         @Override
         public byte[] call() {
           return storageRpc.load(storageObject, optionsMap);
         }
-      }, options().retryParams(), EXCEPTION_HANDLER, options().clock());
+      });
+      recorder.succeeded(content.length);
+      return content;
     } catch (RetryHelperException e) {
       throw StorageException.translateAndThrow(e);
     }
   }
 
+  @Override
+  public List<ByteBuffer> readRanges(BlobId blob, List<ByteRange> ranges,
+      BlobSourceOption... options) {
+    Map<StorageRpc.Option, ?> optionsMap = optionMap(blob, options);
+    return new RangeReader(options(), blob, optionsMap).read(ranges);
+  }
+
   @Override
   public StorageBatch batch() {
-    return new StorageBatch(this.options());
+    return new StorageBatch(this.options(), metadataCache);
   }
 
   @Override
   public ReadChannel reader(String bucket, String blob, BlobSourceOption... options) {
-    Map<StorageRpc.Option, ?> optionsMap = optionMap(options);
-    return new BlobReadChannel(options(), BlobId.of(bucket, blob), optionsMap);
+    Map<StorageRpc.Option, ?> optionsMap = optionMap(withoutDecompress(options));
+    return isDecompress(options)
+        ? new GzipReadChannel(options(), BlobId.of(bucket, blob), optionsMap)
+        : new BlobReadChannel(options(), BlobId.of(bucket, blob), optionsMap);
   }
 
   @Override
   public ReadChannel reader(BlobId blob, BlobSourceOption... options) {
-    Map<StorageRpc.Option, ?> optionsMap = optionMap(blob, options);
-    return new BlobReadChannel(options(), blob, optionsMap);
+    Map<StorageRpc.Option, ?> optionsMap = optionMap(blob, withoutDecompress(options));
+    return isDecompress(options)
+        ? new GzipReadChannel(options(), blob, optionsMap)
+        : new BlobReadChannel(options(), blob, optionsMap);
   }
 
   @Override
-  public BlobWriteChannel writer(BlobInfo blobInfo, BlobWriteOption... options) {
+  public WriteChannel writer(BlobInfo blobInfo, BlobWriteOption... options) {
     Tuple<BlobInfo, BlobTargetOption[]> targetOptions = BlobTargetOption.convert(blobInfo, options);
-    return writer(targetOptions.x(), targetOptions.y());
+    WriteChannel channel = writer(targetOptions.x(), targetOptions.y());
+    return BlobWriteOption.isGzip(options) ? new GzipWriteChannel(channel) : channel;
   }
 
   private BlobWriteChannel writer(BlobInfo blobInfo, BlobTargetOption... options) {
     final Map<StorageRpc.Option, ?> optionsMap = optionMap(blobInfo, options);
-    return new BlobWriteChannel(options(), blobInfo, optionsMap);
+    return new BlobWriteChannel(options(), blobInfo, optionsMap, metadataCache);
   }
 
   @Override
@@ -545,17 +698,20 @@ final class StorageImpl extends BaseService<StorageOptions> implements Storage {
   @Override
   public List<Blob> get(Iterable<BlobId> blobIds) {
     StorageBatch batch = batch();
+    // sub-batches may complete out of order, results are stored by request index
     final List<Blob> results = Lists.newArrayList();
     for (BlobId blob : blobIds) {
+      final int index = results.size();
+      results.add(null);
       batch.get(blob).notify(new BatchResult.Callback<Blob, StorageException>() {
         @Override
         public void success(Blob result) {
-          results.add(result);
+          results.set(index, result);
         }
 
         @Override
         public void error(StorageException exception) {
-          results.add(null);
+          results.set(index, null);
         }
       });
     }
@@ -571,17 +727,20 @@ final class StorageImpl extends BaseService<StorageOptions> implements Storage {
   @Override
   public List<Blob> update(Iterable<BlobInfo> blobInfos) {
     StorageBatch batch = batch();
+    // sub-batches may complete out of order, results are stored by request index
     final List<Blob> results = Lists.newArrayList();
     for (BlobInfo blobInfo : blobInfos) {
+      final int index = results.size();
+      results.add(null);
       batch.update(blobInfo).notify(new BatchResult.Callback<Blob, StorageException>() {
         @Override
         public void success(Blob result) {
-          results.add(result);
+          results.set(index, result);
         }
 
         @Override
         public void error(StorageException exception) {
-          results.add(null);
+          results.set(index, null);
         }
       });
     }
@@ -597,17 +756,20 @@ final class StorageImpl extends BaseService<StorageOptions> implements Storage {
   @Override
   public List<Boolean> delete(Iterable<BlobId> blobIds) {
     StorageBatch batch = batch();
+    // sub-batches may complete out of order, results are stored by request index
     final List<Boolean> results = Lists.newArrayList();
     for (BlobId blob : blobIds) {
+      final int index = results.size();
+      results.add(null);
       batch.delete(blob).notify(new BatchResult.Callback<Boolean, StorageException>() {
         @Override
         public void success(Boolean result) {
-          results.add(result);
+          results.set(index, result);
         }
 
         @Override
         public void error(StorageException exception) {
-          results.add(Boolean.FALSE);
+          results.set(index, Boolean.FALSE);
         }
       });
     }
@@ -615,6 +777,87 @@ final class StorageImpl extends BaseService<StorageOptions> implements Storage {
     return Collections.unmodifiableList(results);
   }
 
+  @Override
+  public Iterator<Blob> getAll(Iterable<BlobId> blobIds) {
+    return new BatchIterator<BlobId, Blob>(this, blobIds.iterator(),
+        options().batchParallelism()) {
+      @Override
+      StorageBatchResult<Blob> add(StorageBatch batch, BlobId blobId) {
+        return batch.get(blobId);
+      }
+
+      @Override
+      Blob failed(StorageException exception) {
+        return null;
+      }
+    };
+  }
+
+  @Override
+  public Iterator<Blob> updateAll(Iterable<BlobInfo> blobInfos) {
+    return new BatchIterator<BlobInfo, Blob>(this, blobInfos.iterator(),
+        options().batchParallelism()) {
+      @Override
+      StorageBatchResult<Blob> add(StorageBatch batch, BlobInfo blobInfo) {
+        return batch.update(blobInfo);
+      }
+
+      @Override
+      Blob failed(StorageException exception) {
+        return null;
+      }
+    };
+  }
+
+  @Override
+  public Iterator<Boolean> deleteAll(Iterable<BlobId> blobIds) {
+    return new BatchIterator<BlobId, Boolean>(this, blobIds.iterator(),
+        options().batchParallelism()) {
+      @Override
+      StorageBatchResult<Boolean> add(StorageBatch batch, BlobId blobId) {
+        return batch.delete(blobId);
+      }
+
+      @Override
+      Boolean failed(StorageException exception) {
+        return Boolean.FALSE;
+      }
+    };
+  }
+
+  @Override
+  public MetadataCacheStats metadataCacheStats() {
+    return metadataCache != null ? metadataCache.stats() : null;
+  }
+
+  /**
+   * Runs {@code callable} with retries, counting attempts in {@code recorder} and reporting the
+   * access if it fails. Successful accesses are reported by the caller, that knows the number of
+   * bytes transferred.
+   */
+  static <T> T run(StorageOptions options, AccessRecorder recorder,
+      Callable<T> callable) {
+    try {
+      return runWithRetries(recorder.count(callable), options.retryParams(), EXCEPTION_HANDLER,
+          options.clock());
+    } catch (RetryHelperException e) {
+      recorder.failed();
+      throw e;
+    }
+  }
+
+  private void invalidate(BlobId blobId) {
+    if (metadataCache != null) {
+      metadataCache.invalidate(blobId);
+    }
+  }
+
+  private void invalidate(String bucket) {
+    if (metadataCache != null) {
+      metadataCache.invalidate(bucket);
+    }
+  }
+
   private static <T> void addToOptionMap(StorageRpc.Option option, T defaultValue,
       Map<StorageRpc.Option, Object> map) {
     addToOptionMap(option, option, defaultValue, map);
@@ -648,6 +891,9 @@ final class StorageImpl extends BaseService<StorageOptions> implements Storage {
     if (Boolean.TRUE.equals(value)) {
       temp.put(DELIMITER, PATH_DELIMITER);
     }
+    // decompression is only supported by reader, that removes the option, see isDecompress
+    checkArgument(!temp.containsKey(DECOMPRESS),
+        "The decompress option is only supported by reader");
     if (useAsSource) {
       addToOptionMap(IF_GENERATION_MATCH, IF_SOURCE_GENERATION_MATCH, generation, temp);
       addToOptionMap(IF_GENERATION_NOT_MATCH, IF_SOURCE_GENERATION_NOT_MATCH, generation, temp);
@@ -663,6 +909,25 @@ final class StorageImpl extends BaseService<StorageOptions> implements Storage {
     return ImmutableMap.copyOf(temp);
   }
 
+  private static boolean isDecompress(Option... options) {
+    for (Option option : options) {
+      if (option.rpcOption() == DECOMPRESS) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static BlobSourceOption[] withoutDecompress(BlobSourceOption... options) {
+    List<BlobSourceOption> filtered = Lists.newArrayListWithCapacity(options.length);
+    for (BlobSourceOption option : options) {
+      if (option.rpcOption() != DECOMPRESS) {
+        filtered.add(option);
+      }
+    }
+    return filtered.toArray(new BlobSourceOption[filtered.size()]);
+  }
+
   private static Map<StorageRpc.Option, ?> optionMap(Option... options) {
     return optionMap(null, null, Arrays.asList(options));
   }
@@ -16,19 +16,33 @@
 
 package com.google.cloud.storage;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
 import com.google.cloud.HttpServiceOptions;
 import com.google.cloud.storage.spi.DefaultStorageRpc;
 import com.google.cloud.storage.spi.StorageRpc;
 import com.google.cloud.storage.spi.StorageRpcFactory;
 import com.google.common.collect.ImmutableSet;
 
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 public class StorageOptions extends HttpServiceOptions<Storage, StorageRpc, StorageOptions> {
 
   private static final long serialVersionUID = -7456495262640805964L;
   private static final String GCS_SCOPE = "https://www.googleapis.com/auth/devstorage.full_control";
   private static final Set<String> SCOPES = ImmutableSet.of(GCS_SCOPE);
+  private static final long DEFAULT_METADATA_CACHE_TTL_MILLIS = 60_000L;
+
+  private final long metadataCacheSize;
+  private final long metadataCacheTtlMillis;
+  private final String contentCacheDirectory;
+  private final long contentCacheSize;
+  private final int batchParallelism;
+  // listeners are not serializable, they are not restored with deserialized options nor compared
+  private final transient AccessListener accessListener;
 
   public static class DefaultStorageFactory implements StorageFactory {
 
@@ -53,10 +67,105 @@ public class StorageOptions extends HttpServiceOptions<Storage, StorageRpc, Stor
   public static class Builder extends
       HttpServiceOptions.Builder<Storage, StorageRpc, StorageOptions, Builder> {
 
+    private long metadataCacheSize;
+    private long metadataCacheTtlMillis = DEFAULT_METADATA_CACHE_TTL_MILLIS;
+    private String contentCacheDirectory;
+    private long contentCacheSize;
+    private int batchParallelism = 1;
+    private AccessListener accessListener;
+
     private Builder() {}
 
     private Builder(StorageOptions options) {
       super(options);
+      metadataCacheSize = options.metadataCacheSize;
+      metadataCacheTtlMillis = options.metadataCacheTtlMillis;
+      contentCacheDirectory = options.contentCacheDirectory;
+      contentCacheSize = options.contentCacheSize;
+      batchParallelism = options.batchParallelism;
+      accessListener = options.accessListener;
+    }
+
+    /**
+     * Sets the maximum number of blob and bucket metadata entries cached by the client. Caching
+     * is used by {@link Storage#get(BlobId, Storage.BlobGetOption...)} and
+     * {@link Storage#get(String, Storage.BucketGetOption...)} and cached entries are invalidated
+     * by writes issued through the same service. Entries for blob identifiers with a generation
+     * never expire. If {@code 0} (the default) metadata caching is disabled.
+     *
+     * @return the builder
+     * @throws IllegalArgumentException if {@code metadataCacheSize} is negative
+     */
+    public Builder metadataCacheSize(long metadataCacheSize) {
+      checkArgument(metadataCacheSize >= 0, "Metadata cache size must be >= 0");
+      this.metadataCacheSize = metadataCacheSize;
+      return this;
+    }
+
+    /**
+     * Sets the time after which cached metadata for buckets and for the latest generation of
+     * blobs expire. Default value is 60 seconds.
+     *
+     * @return the builder
+     * @throws IllegalArgumentException if {@code duration} is not positive
+     */
+    public Builder metadataCacheTtl(long duration, TimeUnit unit) {
+      checkArgument(duration > 0, "Metadata cache TTL must be > 0");
+      this.metadataCacheTtlMillis = unit.toMillis(duration);
+      return this;
+    }
+
+    /**
+     * Enables a local disk cache for the content of blobs read with a generation. Blocks of blob
+     * data read through {@link Storage#reader(BlobId, Storage.BlobSourceOption...)} for a
+     * {@link BlobId} with a generation are stored in {@code directory} and served from there by
+     * later reads, also by processes that open the same directory later. Cached blocks are
+     * validated with their CRC32C checksum and least recently used blocks are deleted when the
+     * total size of the cache exceeds {@code maxBytes}. Content caching is disabled by default.
+     *
+     * <p>{@code maxBytes} is enforced per process, on the blocks that were in {@code directory}
+     * when the process opened it and the ones the process wrote since. Processes that use the same
+     * directory at the same time can together exceed it. Services of the same process that use the
+     * same directory share its cache, with the {@code maxBytes} of the first one that opened it.
+     *
+     * @param directory the local directory where blocks are stored, created if missing
+     * @param maxBytes the maximum size, in bytes, of the cached content
+     * @return the builder
+     * @throws IllegalArgumentException if {@code maxBytes} is not positive
+     */
+    public Builder contentCache(String directory, long maxBytes) {
+      checkArgument(maxBytes > 0, "Content cache size must be > 0");
+      this.contentCacheDirectory = checkNotNull(directory);
+      this.contentCacheSize = maxBytes;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of sub-batches of a {@link StorageBatch} that are executed
+     * concurrently. Requests in a batch are sent in sub-batches of at most 100 requests each.
+     * Default value is {@code 1}, sub-batches are executed sequentially.
+     *
+     * @return the builder
+     * @throws IllegalArgumentException if {@code batchParallelism} is not positive
+     */
+    public Builder batchParallelism(int batchParallelism) {
+      checkArgument(batchParallelism > 0, "Batch parallelism must be > 0");
+      this.batchParallelism = batchParallelism;
+      return this;
+    }
+
+    /**
+     * Sets the listener notified of the accesses made by the service and by its read and write
+     * channels: the bucket and blob accessed, the operation, the bytes transferred, the latency
+     * and the number of retries. By default no listener is notified. The listener is not
+     * serialized with the options.
+     *
+     * @return the builder
+     * @see PrefixAccessAggregator
+     */
+    public Builder accessListener(AccessListener accessListener) {
+      this.accessListener = accessListener;
+      return this;
     }
 
     @Override
@@ -67,6 +176,12 @@ public class StorageOptions extends HttpServiceOptions<Storage, StorageRpc, Stor
 
   private StorageOptions(Builder builder) {
     super(StorageFactory.class, StorageRpcFactory.class, builder);
+    metadataCacheSize = builder.metadataCacheSize;
+    metadataCacheTtlMillis = builder.metadataCacheTtlMillis;
+    contentCacheDirectory = builder.contentCacheDirectory;
+    contentCacheSize = builder.contentCacheSize;
+    batchParallelism = builder.batchParallelism;
+    accessListener = builder.accessListener;
   }
 
   @Override
@@ -84,6 +199,62 @@ public class StorageOptions extends HttpServiceOptions<Storage, StorageRpc, Stor
     return SCOPES;
   }
 
+  /**
+   * Returns the maximum number of metadata entries cached by the client, {@code 0} if metadata
+   * caching is disabled.
+   */
+  public long metadataCacheSize() {
+    return metadataCacheSize;
+  }
+
+  /**
+   * Returns the time in milliseconds after which cached metadata for buckets and for the latest
+   * generation of blobs expire.
+   */
+  public long metadataCacheTtlMillis() {
+    return metadataCacheTtlMillis;
+  }
+
+  /**
+   * Returns the local directory used to cache the content of blobs read with a generation,
+   * {@code null} if content caching is disabled.
+   */
+  public String contentCacheDirectory() {
+    return contentCacheDirectory;
+  }
+
+  /**
+   * Returns the maximum size, in bytes, of the local content cache, {@code 0} if content caching
+   * is disabled.
+   */
+  public long contentCacheSize() {
+    return contentCacheSize;
+  }
+
+  /**
+   * Returns the maximum number of sub-batches of a {@link StorageBatch} that are executed
+   * concurrently.
+   */
+  public int batchParallelism() {
+    return batchParallelism;
+  }
+
+  /**
+   * Returns the listener notified of accesses, {@code null} if none is registered.
+   */
+  public AccessListener accessListener() {
+    return accessListener;
+  }
+
+  /**
+   * Returns the local content cache, or {@code null} if content caching is disabled or the cache
+   * directory could not be opened.
+   */
+  BlobContentCache contentCache() {
+    return contentCacheDirectory != null
+        ? BlobContentCache.forDirectory(contentCacheDirectory, contentCacheSize) : null;
+  }
+
   /**
    * Returns a default {@code StorageOptions} instance.
    */
@@ -99,12 +270,22 @@ public class StorageOptions extends HttpServiceOptions<Storage, StorageRpc, Stor
 
   @Override
   public int hashCode() {
-    return baseHashCode();
+    return Objects.hash(baseHashCode(), metadataCacheSize, metadataCacheTtlMillis,
+        contentCacheDirectory, contentCacheSize, batchParallelism);
   }
 
   @Override
   public boolean equals(Object obj) {
-    return obj instanceof StorageOptions && baseEquals((StorageOptions) obj);
+    if (!(obj instanceof StorageOptions)) {
+      return false;
+    }
+    StorageOptions other = (StorageOptions) obj;
+    return baseEquals(other)
+        && metadataCacheSize == other.metadataCacheSize
+        && metadataCacheTtlMillis == other.metadataCacheTtlMillis
+        && Objects.equals(contentCacheDirectory, other.contentCacheDirectory)
+        && contentCacheSize == other.contentCacheSize
+        && batchParallelism == other.batchParallelism;
   }
 
   public static Builder builder() {
@@ -0,0 +1,633 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.storage;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.cloud.ReadChannel;
+import com.google.cloud.RetryHelper.RetryInterruptedException;
+import com.google.cloud.WriteChannel;
+import com.google.cloud.storage.Storage.BlobField;
+import com.google.cloud.storage.Storage.BlobListOption;
+import com.google.cloud.storage.Storage.BlobSourceOption;
+import com.google.cloud.storage.Storage.BlobWriteOption;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.BaseEncoding;
+import com.google.common.primitives.Ints;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * A utility to synchronize a local directory tree with the blobs under a prefix, in either
+ * direction. A file and a blob correspond if the blob's name is the prefix followed by the file's
+ * path relative to the directory, with {@code /} as separator. Only files that are missing or
+ * differ in the target are transferred: a file and a blob are equal if they have the same size
+ * and the same CRC32C checksum, as reported by {@link BlobInfo#crc32c()}. Uploads are validated by
+ * the service against the checksum of the local file and downloads are validated against the
+ * blob's checksum before replacing the local file. Nothing is deleted from the target.
+ *
+ * <p>Listing, hashing and transfers run as a pipeline: files or blobs are compared by
+ * {@link Builder#hashParallelism(int)} threads while the listing goes on, and the ones that
+ * differ are transferred by {@link Builder#parallelism(int)} threads. At most
+ * {@link Builder#maxPendingFiles(int)} files are queued in the pipeline at any time. Local files
+ * larger than 1 MiB are hashed through memory-mapped regions. Uploads walk the local directory in
+ * the order in which the service lists blob names and match files with blobs as both are listed,
+ * so that only the entries of the directories being walked are held in memory.
+ *
+ * <p>Example of uploading only the modified files of a directory:
+ * <pre> {@code
+ * StorageSync sync = StorageSync.builder(storage).parallelism(16).build();
+ * StorageSync.Result result = sync.upload(Paths.get("build/site"), "bucket", "site/");
+ * System.out.printf("Uploaded %d files, %d unchanged, %d failures%n",
+ *     result.transferredCount(), result.unchangedCount(), result.failedCount());
+ * }</pre>
+ */
+public final class StorageSync {
+
+  private static final int DEFAULT_PARALLELISM = 8;
+  private static final int DEFAULT_MAX_PENDING_FILES = 1000;
+  private static final int MAX_REPORTED_FAILURES = 1000;
+  private static final int TRANSFER_BUFFER_SIZE = 2 * 1024 * 1024;
+  private static final int HASH_BUFFER_SIZE = 64 * 1024;
+  private static final long MMAP_THRESHOLD = 1024 * 1024;
+  private static final long MMAP_REGION_SIZE = 64 * 1024 * 1024;
+
+  private final Storage storage;
+  private final int parallelism;
+  private final int hashParallelism;
+  private final int maxPendingFiles;
+
+  /**
+   * The outcome of a synchronization.
+   */
+  public static final class Result {
+
+    private final long transferredCount;
+    private final long unchangedCount;
+    private final long failedCount;
+    private final long bytesTransferred;
+    private final long elapsedMillis;
+    private final Map<String, Exception> failures;
+
+    Result(long transferredCount, long unchangedCount, long failedCount, long bytesTransferred,
+        long elapsedMillis, Map<String, Exception> failures) {
+      this.transferredCount = transferredCount;
+      this.unchangedCount = unchangedCount;
+      this.failedCount = failedCount;
+      this.bytesTransferred = bytesTransferred;
+      this.elapsedMillis = elapsedMillis;
+      this.failures = ImmutableMap.copyOf(failures);
+    }
+
+    /**
+     * Returns the number of files that were missing or different in the target and were
+     * transferred.
+     */
+    public long transferredCount() {
+      return transferredCount;
+    }
+
+    /**
+     * Returns the number of files that were already up to date in the target.
+     */
+    public long unchangedCount() {
+      return unchangedCount;
+    }
+
+    /**
+     * Returns the number of files whose comparison or transfer failed.
+     */
+    public long failedCount() {
+      return failedCount;
+    }
+
+    /**
+     * Returns the number of bytes transferred.
+     */
+    public long bytesTransferred() {
+      return bytesTransferred;
+    }
+
+    /**
+     * Returns the time taken by the synchronization, in milliseconds.
+     */
+    public long elapsedMillis() {
+      return elapsedMillis;
+    }
+
+    /**
+     * Returns the errors for the files whose comparison or transfer failed, keyed by the file's
+     * relative path. Errors are either {@link StorageException} or {@link IOException} objects. At
+     * most 1000 failures are reported.
+     */
+    public Map<String, Exception> failures() {
+      return failures;
+    }
+
+    @Override
+    public String toString() {
+      return MoreObjects.toStringHelper(this)
+          .add("transferredCount", transferredCount)
+          .add("unchangedCount", unchangedCount)
+          .add("failedCount", failedCount)
+          .add("bytesTransferred", bytesTransferred)
+          .add("elapsedMillis", elapsedMillis)
+          .toString();
+    }
+  }
+
+  /**
+   * Builder for {@code StorageSync}.
+   */
+  public static final class Builder {
+
+    private final Storage storage;
+    private int parallelism = DEFAULT_PARALLELISM;
+    private int hashParallelism = Runtime.getRuntime().availableProcessors();
+    private int maxPendingFiles = DEFAULT_MAX_PENDING_FILES;
+
+    private Builder(Storage storage) {
+      this.storage = checkNotNull(storage);
+    }
+
+    /**
+     * Sets the maximum number of concurrent transfers. Default value is 8.
+     *
+     * @return the builder
+     * @throws IllegalArgumentException if {@code parallelism} is not positive
+     */
+    public Builder parallelism(int parallelism) {
+      checkArgument(parallelism > 0, "Parallelism must be > 0");
+      this.parallelism = parallelism;
+      return this;
+    }
+
+    /**
+     * Sets the number of threads that compare files and blobs. Default value is the number of
+     * available processors.
+     *
+     * @return the builder
+     * @throws IllegalArgumentException if {@code hashParallelism} is not positive
+     */
+    public Builder hashParallelism(int hashParallelism) {
+      checkArgument(hashParallelism > 0, "Hash parallelism must be > 0");
+      this.hashParallelism = hashParallelism;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of listed files that are waiting to be compared or transferred.
+     * Listing is paused when the limit is reached. Default value is 1000.
+     *
+     * @return the builder
+     * @throws IllegalArgumentException if {@code maxPendingFiles} is not positive
+     */
+    public Builder maxPendingFiles(int maxPendingFiles) {
+      checkArgument(maxPendingFiles > 0, "Maximum pending files must be > 0");
+      this.maxPendingFiles = maxPendingFiles;
+      return this;
+    }
+
+    /**
+     * Creates a {@code StorageSync} object.
+     */
+    public StorageSync build() {
+      return new StorageSync(this);
+    }
+  }
+
+  private StorageSync(Builder builder) {
+    this.storage = builder.storage;
+    this.parallelism = builder.parallelism;
+    this.hashParallelism = builder.hashParallelism;
+    this.maxPendingFiles = builder.maxPendingFiles;
+  }
+
+  /**
+   * Returns a builder for {@code StorageSync} objects that use the provided service.
+   */
+  public static Builder builder(Storage storage) {
+    return new Builder(storage);
+  }
+
+  /**
+   * Uploads the regular files in {@code directory} and its subdirectories that are missing or
+   * differ under {@code prefix} in {@code bucket}. This method blocks until all the files are
+   * processed.
+   *
+   * @throws IOException upon failure to walk the local directory
+   * @throws StorageException upon failure to list the blobs
+   */
+  public Result upload(final Path directory, final String bucket, final String prefix)
+      throws IOException {
+    checkNotNull(bucket);
+    checkNotNull(prefix);
+    final Execution execution = new Execution();
+    try {
+      LocalWalker walker = new LocalWalker(directory);
+      PeekingIterator<Blob> blobs = Iterators.peekingIterator(storage.list(bucket,
+          BlobListOption.prefix(prefix), BlobListOption.fields(BlobField.SIZE, BlobField.CRC32C))
+          .iterateAll());
+      LocalFile next;
+      while ((next = walker.next()) != null) {
+        final LocalFile file = next;
+        String name = prefix + file.relativeName;
+        // blobs listed before the file have no local counterpart
+        while (blobs.hasNext() && ParallelBlobLister.compareNames(blobs.peek().name(), name) < 0) {
+          blobs.next();
+        }
+        final Blob remote = blobs.hasNext() && blobs.peek().name().equals(name)
+            ? blobs.next() : null;
+        execution.submit(new Callable<Boolean>() {
+          @Override
+          public Boolean call() throws Exception {
+            final String crc32c = crc32c(file.path);
+            if (remote != null && Objects.equals(remote.size(), file.size)
+                && crc32c.equals(remote.crc32c())) {
+              return false;
+            }
+            execution.transfer(file.relativeName, new Callable<Long>() {
+              @Override
+              public Long call() throws IOException {
+                return upload(file.path, BlobInfo.builder(bucket, prefix + file.relativeName)
+                    .crc32c(crc32c)
+                    .build());
+              }
+            });
+            return true;
+          }
+        }, file.relativeName);
+      }
+      return execution.await();
+    } finally {
+      execution.shutdown();
+    }
+  }
+
+  /**
+   * Downloads the blobs under {@code prefix} in {@code bucket} that are missing or differ in
+   * {@code directory}, creating subdirectories as needed. Blobs whose name ends with {@code /}
+   * and a blob named {@code prefix} itself are skipped. A downloaded blob is first written to a
+   * temporary file in the target directory, that replaces the target file once the checksum is
+   * validated. This method blocks until all the blobs are processed.
+   *
+   * @throws StorageException upon failure to list the blobs
+   */
+  public Result download(final String bucket, final String prefix, final Path directory) {
+    final Path root = directory.toAbsolutePath().normalize();
+    final Execution execution = new Execution();
+    try {
+      Iterator<Blob> blobs = storage.list(bucket, BlobListOption.prefix(prefix),
+          BlobListOption.fields(BlobField.SIZE, BlobField.CRC32C, BlobField.GENERATION))
+          .iterateAll();
+      while (blobs.hasNext()) {
+        final Blob blob = blobs.next();
+        if (blob.name().endsWith("/") || blob.name().length() == prefix.length()) {
+          // directory placeholders and the prefix itself do not map to files
+          continue;
+        }
+        final String relativeName = blob.name().substring(prefix.length());
+        final Path file = root.resolve(relativeName.replace("/", root.getFileSystem()
+            .getSeparator())).normalize();
+        if (!file.startsWith(root) || file.equals(root)) {
+          execution.fail(relativeName, new IOException("Blob name " + blob.name()
+              + " does not map to a file in " + root));
+          continue;
+        }
+        execution.submit(new Callable<Boolean>() {
+          @Override
+          public Boolean call() throws Exception {
+            if (Files.isRegularFile(file) && Objects.equals(Files.size(file), blob.size())
+                && crc32c(file).equals(blob.crc32c())) {
+              return false;
+            }
+            execution.transfer(relativeName, new Callable<Long>() {
+              @Override
+              public Long call() throws IOException {
+                return download(blob, file);
+              }
+            });
+            return true;
+          }
+        }, relativeName);
+      }
+      return execution.await();
+    } finally {
+      execution.shutdown();
+    }
+  }
+
+  private long upload(Path file, BlobInfo blobInfo) throws IOException {
+    long transferred = 0;
+    try (FileChannel input = FileChannel.open(file, StandardOpenOption.READ);
+        WriteChannel output = storage.writer(blobInfo, BlobWriteOption.crc32cMatch())) {
+      ByteBuffer buffer = ByteBuffer.allocate(TRANSFER_BUFFER_SIZE);
+      while (input.read(buffer) >= 0) {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+          transferred += output.write(buffer);
+        }
+        buffer.clear();
+      }
+    }
+    return transferred;
+  }
+
+  private long download(Blob blob, Path file) throws IOException {
+    Files.createDirectories(file.getParent());
+    Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+    long transferred = 0;
+    try {
+      Hasher hasher = Hashing.crc32c().newHasher();
+      BlobId blobId = BlobId.of(blob.bucket(), blob.name(), blob.generation());
+      try (ReadChannel input = storage.reader(blobId, BlobSourceOption.generationMatch());
+          FileChannel output = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+        input.chunkSize(TRANSFER_BUFFER_SIZE);
+        ByteBuffer buffer = ByteBuffer.allocate(TRANSFER_BUFFER_SIZE);
+        while (input.read(buffer) >= 0) {
+          buffer.flip();
+          hasher.putBytes(buffer.array(), 0, buffer.limit());
+          while (buffer.hasRemaining()) {
+            transferred += output.write(buffer);
+          }
+          buffer.clear();
+        }
+      }
+      String crc32c = encode(hasher);
+      if (blob.crc32c() != null && !crc32c.equals(blob.crc32c())) {
+        throw new IOException("Checksum mismatch for blob " + blob.name() + ", expected "
+            + blob.crc32c() + " got " + crc32c);
+      }
+      Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+    return transferred;
+  }
+
+  /**
+   * Returns the base64-encoded, big-endian CRC32C checksum of the file's content, in the format
+   * of {@link BlobInfo#crc32c()}. Files larger than 1 MiB are read through memory-mapped regions.
+   */
+  @VisibleForTesting
+  static String crc32c(Path file) throws IOException {
+    Hasher hasher = Hashing.crc32c().newHasher();
+    byte[] chunk = new byte[HASH_BUFFER_SIZE];
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size < MMAP_THRESHOLD) {
+        ByteBuffer buffer = ByteBuffer.wrap(chunk);
+        while (channel.read(buffer) >= 0) {
+          hasher.putBytes(chunk, 0, buffer.position());
+          buffer.clear();
+        }
+      } else {
+        for (long position = 0; position < size; position += MMAP_REGION_SIZE) {
+          MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position,
+              Math.min(MMAP_REGION_SIZE, size - position));
+          while (region.hasRemaining()) {
+            int length = Math.min(chunk.length, region.remaining());
+            region.get(chunk, 0, length);
+            hasher.putBytes(chunk, 0, length);
+          }
+        }
+      }
+    }
+    return encode(hasher);
+  }
+
+  private static String encode(Hasher hasher) {
+    return BaseEncoding.base64().encode(Ints.toByteArray(hasher.hash().asInt()));
+  }
+
+  /**
+   * A regular file or a directory found by {@link LocalWalker}. The relative name of a directory
+   * ends with {@code /}.
+   */
+  private static final class LocalFile {
+
+    private final Path path;
+    private final String relativeName;
+    private final long size;
+    private final boolean directory;
+
+    LocalFile(Path path, String relativeName, long size, boolean directory) {
+      this.path = path;
+      this.relativeName = relativeName;
+      this.size = size;
+      this.directory = directory;
+    }
+  }
+
+  /**
+   * Walks the regular files of a directory tree in the order of their relative names, as compared
+   * by {@link ParallelBlobLister#compareNames(String, String)}. Directories are sorted among the
+   * other entries by their name followed by {@code /}, so that a depth-first walk returns the
+   * files in the order in which the service lists the corresponding blobs. Only the entries of
+   * the directories on the path to the current file are held in memory. Symbolic links are not
+   * followed.
+   */
+  private static final class LocalWalker {
+
+    private static final Comparator<LocalFile> ORDER = new Comparator<LocalFile>() {
+      @Override
+      public int compare(LocalFile first, LocalFile second) {
+        return ParallelBlobLister.compareNames(first.relativeName, second.relativeName);
+      }
+    };
+
+    private final Deque<Iterator<LocalFile>> stack = new ArrayDeque<>();
+
+    LocalWalker(Path directory) throws IOException {
+      stack.push(list(directory, ""));
+    }
+
+    /**
+     * Returns the next regular file, or {@code null} if all the files were returned.
+     */
+    LocalFile next() throws IOException {
+      while (!stack.isEmpty()) {
+        Iterator<LocalFile> entries = stack.peek();
+        if (!entries.hasNext()) {
+          stack.pop();
+          continue;
+        }
+        LocalFile entry = entries.next();
+        if (!entry.directory) {
+          return entry;
+        }
+        stack.push(list(entry.path, entry.relativeName));
+      }
+      return null;
+    }
+
+    private static Iterator<LocalFile> list(Path directory, String relativeName)
+        throws IOException {
+      List<LocalFile> entries = new ArrayList<>();
+      try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+        for (Path path : stream) {
+          BasicFileAttributes attrs =
+              Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+          String name = relativeName + path.getFileName().toString();
+          if (attrs.isDirectory()) {
+            entries.add(new LocalFile(path, name + "/", 0, true));
+          } else if (attrs.isRegularFile()) {
+            entries.add(new LocalFile(path, name, attrs.size(), false));
+          }
+        }
+      }
+      Collections.sort(entries, ORDER);
+      return entries.iterator();
+    }
+  }
+
+  /**
+   * The state of a running synchronization.
+   */
+  private final class Execution {
+
+    private final long startMillis = System.currentTimeMillis();
+    private final ExecutorService hashExecutor;
+    private final ExecutorService transferExecutor;
+    private final Semaphore permits = new Semaphore(maxPendingFiles);
+    private final Map<String, Exception> failures = new LinkedHashMap<>();
+    private long transferredCount;
+    private long unchangedCount;
+    private long failedCount;
+    private long bytesTransferred;
+
+    Execution() {
+      hashExecutor = Executors.newFixedThreadPool(hashParallelism, new ThreadFactoryBuilder()
+          .setDaemon(true)
+          .setNameFormat("gcloud-storage-sync-hash-%d")
+          .build());
+      transferExecutor = Executors.newFixedThreadPool(parallelism, new ThreadFactoryBuilder()
+          .setDaemon(true)
+          .setNameFormat("gcloud-storage-sync-transfer-%d")
+          .build());
+    }
+
+    /**
+     * Submits the comparison of a file, that returns {@code true} if the file was handed over
+     * to {@link #transfer}.
+     */
+    void submit(final Callable<Boolean> comparison, final String relativeName) {
+      acquire(1);
+      hashExecutor.execute(new Runnable() {
+        @Override
+        public void run() {
+          boolean transferring = false;
+          try {
+            transferring = comparison.call();
+            if (!transferring) {
+              unchanged();
+            }
+          } catch (Exception ex) {
+            fail(relativeName, ex);
+          } finally {
+            if (!transferring) {
+              permits.release();
+            }
+          }
+        }
+      });
+    }
+
+    void transfer(final String relativeName, final Callable<Long> transfer) {
+      transferExecutor.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            transferred(transfer.call());
+          } catch (Exception ex) {
+            fail(relativeName, ex);
+          } finally {
+            permits.release();
+          }
+        }
+      });
+    }
+
+    synchronized void unchanged() {
+      unchangedCount++;
+    }
+
+    synchronized void transferred(long bytes) {
+      transferredCount++;
+      bytesTransferred += bytes;
+    }
+
+    synchronized void fail(String relativeName, Exception exception) {
+      failedCount++;
+      if (failures.size() < MAX_REPORTED_FAILURES) {
+        failures.put(relativeName, exception);
+      }
+    }
+
+    Result await() {
+      acquire(maxPendingFiles);
+      synchronized (this) {
+        return new Result(transferredCount, unchangedCount, failedCount, bytesTransferred,
+            System.currentTimeMillis() - startMillis, failures);
+      }
+    }
+
+    void shutdown() {
+      hashExecutor.shutdownNow();
+      transferExecutor.shutdownNow();
+    }
+
+    private void acquire(int count) {
+      try {
+        permits.acquire(count);
+      } catch (InterruptedException ex) {
+        RetryInterruptedException.propagate();
+      }
+    }
+  }
+}
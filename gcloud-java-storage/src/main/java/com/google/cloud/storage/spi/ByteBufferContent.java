@@ -0,0 +1,67 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage.spi;
+
+import com.google.api.client.http.AbstractHttpContent;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * HTTP content backed by the remaining bytes of a {@link ByteBuffer}. The buffer's position is not
+ * modified, so the content can be written again if the request is retried. Content of direct and
+ * memory-mapped buffers is copied to the output stream through a small transfer array, so that
+ * large buffers are never copied to the heap.
+ */
+final class ByteBufferContent extends AbstractHttpContent {
+
+  private static final int TRANSFER_SIZE = 64 * 1024;
+
+  private final ByteBuffer buffer;
+
+  ByteBufferContent(ByteBuffer buffer) {
+    super((String) null);
+    this.buffer = buffer.duplicate();
+  }
+
+  @Override
+  public long getLength() {
+    return buffer.remaining();
+  }
+
+  @Override
+  public boolean retrySupported() {
+    return true;
+  }
+
+  @Override
+  public void writeTo(OutputStream out) throws IOException {
+    ByteBuffer source = buffer.duplicate();
+    if (source.hasArray()) {
+      out.write(source.array(), source.arrayOffset() + source.position(), source.remaining());
+    } else {
+      byte[] transfer = new byte[Math.min(TRANSFER_SIZE, Math.max(source.remaining(), 1))];
+      while (source.hasRemaining()) {
+        int length = Math.min(transfer.length, source.remaining());
+        source.get(transfer, 0, length);
+        out.write(transfer, 0, length);
+      }
+    }
+    out.flush();
+  }
+}
@@ -42,6 +42,7 @@ import com.google.api.client.googleapis.batch.json.JsonBatchCallback;
 import com.google.api.client.googleapis.json.GoogleJsonError;
 import com.google.api.client.http.ByteArrayContent;
 import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpContent;
 import com.google.api.client.http.HttpHeaders;
 import com.google.api.client.http.HttpRequest;
 import com.google.api.client.http.HttpRequestFactory;
@@ -56,27 +57,41 @@ import com.google.api.client.json.jackson.JacksonFactory;
 import com.google.api.services.storage.Storage;
 import com.google.api.services.storage.Storage.Objects.Get;
 import com.google.api.services.storage.Storage.Objects.Insert;
+import com.google.api.services.storage.StorageRequest;
 import com.google.api.services.storage.model.Bucket;
 import com.google.api.services.storage.model.Buckets;
 import com.google.api.services.storage.model.ComposeRequest;
 import com.google.api.services.storage.model.ComposeRequest.SourceObjects.ObjectPreconditions;
 import com.google.api.services.storage.model.Objects;
 import com.google.api.services.storage.model.StorageObject;
+import com.google.cloud.RetryHelper.RetryInterruptedException;
+import com.google.cloud.RetryParams;
 import com.google.cloud.storage.StorageException;
 import com.google.cloud.storage.StorageOptions;
 import com.google.common.base.Function;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class DefaultStorageRpc implements StorageRpc {
 
@@ -85,6 +100,12 @@ public class DefaultStorageRpc implements StorageRpc {
   private final Storage storage;
 
   private static final long MEGABYTE = 1024L * 1024L;
+  private static final ThreadFactory BATCH_THREAD_FACTORY = new ThreadFactoryBuilder()
+      .setDaemon(true)
+      .setNameFormat("gcloud-storage-batch-%d")
+      .build();
+  private static final ExecutorService BATCH_EXECUTOR =
+      Executors.newCachedThreadPool(BATCH_THREAD_FACTORY);
 
   public DefaultStorageRpc(StorageOptions options) {
     HttpTransport transport = options.httpTransportFactory().create();
@@ -105,25 +126,70 @@ public class DefaultStorageRpc implements StorageRpc {
     private static final int MAX_BATCH_SIZE = 100;
 
     private final Storage storage;
-    private final LinkedList<BatchRequest> batches;
-    private int currentBatchSize;
+    private final LinkedList<List<BatchEntry<?>>> batches;
+    // callbacks may be invoked by the threads executing different sub-batches, delivery is
+    // serialized so that callbacks need not be thread-safe
+    private final Object callbackLock = new Object();
 
     private DefaultRpcBatch(Storage storage) {
       this.storage = storage;
       batches = new LinkedList<>();
-      batches.add(storage.batch());
+      batches.add(new ArrayList<BatchEntry<?>>(MAX_BATCH_SIZE));
+    }
+
+    /**
+     * A request added to the batch. Requests are kept so that the ones that fail with a retryable
+     * error can be queued again in a new batch request.
+     */
+    private final class BatchEntry<T> {
+
+      private final StorageRequest<T> request;
+      private final RpcBatch.Callback<T> callback;
+      private volatile boolean completed;
+
+      BatchEntry(StorageRequest<T> request, RpcBatch.Callback<T> callback) {
+        this.request = request;
+        this.callback = callback;
+      }
+
+      void queue(BatchRequest batch, final List<BatchEntry<?>> failed, final boolean lastAttempt)
+          throws IOException {
+        request.queue(batch, new JsonBatchCallback<T>() {
+          @Override
+          public void onSuccess(T response, HttpHeaders httpHeaders) {
+            completed = true;
+            synchronized (callbackLock) {
+              callback.onSuccess(response);
+            }
+          }
+
+          @Override
+          public void onFailure(GoogleJsonError googleJsonError, HttpHeaders httpHeaders) {
+            if (!lastAttempt && translate(googleJsonError).retryable()) {
+              failed.add(BatchEntry.this);
+              return;
+            }
+            completed = true;
+            synchronized (callbackLock) {
+              callback.onFailure(googleJsonError);
+            }
+          }
+        });
+      }
+    }
+
+    private <T> void add(StorageRequest<T> request, RpcBatch.Callback<T> callback) {
+      if (batches.getLast().size() == MAX_BATCH_SIZE) {
+        batches.add(new ArrayList<BatchEntry<?>>(MAX_BATCH_SIZE));
+      }
+      batches.getLast().add(new BatchEntry<>(request, callback));
     }
 
     @Override
     public void addDelete(StorageObject storageObject, RpcBatch.Callback<Void> callback,
         Map<Option, ?> options) {
       try {
-        if (currentBatchSize == MAX_BATCH_SIZE) {
-          batches.add(storage.batch());
-          currentBatchSize = 0;
-        }
-        deleteCall(storageObject, options).queue(batches.getLast(), toJsonCallback(callback));
-        currentBatchSize++;
+        add(deleteCall(storageObject, options), callback);
       } catch (IOException ex) {
         throw translate(ex);
       }
@@ -133,12 +199,7 @@ public class DefaultStorageRpc implements StorageRpc {
     public void addPatch(StorageObject storageObject, RpcBatch.Callback<StorageObject> callback,
         Map<Option, ?> options) {
       try {
-        if (currentBatchSize == MAX_BATCH_SIZE) {
-          batches.add(storage.batch());
-          currentBatchSize = 0;
-        }
-        patchCall(storageObject, options).queue(batches.getLast(), toJsonCallback(callback));
-        currentBatchSize++;
+        add(patchCall(storageObject, options), callback);
       } catch (IOException ex) {
         throw translate(ex);
       }
@@ -148,42 +209,106 @@ public class DefaultStorageRpc implements StorageRpc {
     public void addGet(StorageObject storageObject, RpcBatch.Callback<StorageObject> callback,
         Map<Option, ?> options) {
       try {
-        if (currentBatchSize == MAX_BATCH_SIZE) {
-          batches.add(storage.batch());
-          currentBatchSize = 0;
-        }
-        getCall(storageObject, options).queue(batches.getLast(), toJsonCallback(callback));
-        currentBatchSize++;
+        add(getCall(storageObject, options), callback);
       } catch (IOException ex) {
         throw translate(ex);
       }
     }
 
+    /**
+     * Submits the batch. Sub-batches of at most {@code MAX_BATCH_SIZE} requests are executed
+     * concurrently, using the calling thread and up to {@link StorageOptions#batchParallelism()} - 1
+     * threads of an executor shared by all batches. Requests that fail with a retryable error are
+     * retried in a new sub-batch, according to the service's {@link RetryParams}.
+     */
     @Override
     public void submit() {
+      int parallelism = Math.min(options.batchParallelism(), batches.size());
+      if (parallelism <= 1) {
+        for (List<BatchEntry<?>> batch : batches) {
+          execute(batch);
+        }
+        return;
+      }
+      final Queue<List<BatchEntry<?>>> pending = new ConcurrentLinkedQueue<>(batches);
+      final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+      Runnable worker = new Runnable() {
+        @Override
+        public void run() {
+          List<BatchEntry<?>> batch;
+          while ((batch = pending.poll()) != null) {
+            try {
+              execute(batch);
+            } catch (RuntimeException ex) {
+              failure.compareAndSet(null, ex);
+            }
+          }
+        }
+      };
+      List<Future<?>> futures = new ArrayList<>(parallelism - 1);
       try {
-        for (BatchRequest batch : batches) {
-          batch.execute();
+        for (int i = 1; i < parallelism; i++) {
+          futures.add(BATCH_EXECUTOR.submit(worker));
+        }
+        worker.run();
+        for (Future<?> future : futures) {
+          Uninterruptibles.getUninterruptibly(future);
+        }
+      } catch (ExecutionException ex) {
+        failure.compareAndSet(null, new StorageException(StorageException.UNKNOWN_CODE,
+            ex.getMessage(), ex.getCause()));
+      } finally {
+        pending.clear();
+        for (Future<?> future : futures) {
+          future.cancel(true);
         }
-      } catch (IOException ex) {
-        throw translate(ex);
+      }
+      if (failure.get() != null) {
+        throw failure.get();
       }
     }
-  }
 
-  private static <T> JsonBatchCallback<T> toJsonCallback(final RpcBatch.Callback<T> callback) {
-    return new JsonBatchCallback<T>() {
-      @Override
-      public void onSuccess(T response, HttpHeaders httpHeaders) throws IOException {
-        callback.onSuccess(response);
+    private void execute(List<BatchEntry<?>> entries) {
+      RetryParams retryParams = options.retryParams();
+      List<BatchEntry<?>> pending = entries;
+      for (int attempt = 1; ; attempt++) {
+        boolean lastAttempt = attempt >= retryParams.retryMaxAttempts();
+        List<BatchEntry<?>> failed = new ArrayList<>();
+        try {
+          BatchRequest batch = storage.batch();
+          for (BatchEntry<?> entry : pending) {
+            entry.queue(batch, failed, lastAttempt);
+          }
+          batch.execute();
+        } catch (IOException ex) {
+          StorageException serviceException = translate(ex);
+          if (lastAttempt || !serviceException.retryable()) {
+            throw serviceException;
+          }
+          failed.clear();
+          for (BatchEntry<?> entry : pending) {
+            if (!entry.completed) {
+              failed.add(entry);
+            }
+          }
+        }
+        if (failed.isEmpty()) {
+          return;
+        }
+        pending = failed;
+        try {
+          Thread.sleep(retryDelayMillis(retryParams, attempt));
+        } catch (InterruptedException ex) {
+          RetryInterruptedException.propagate();
+        }
       }
+    }
+  }
 
-      @Override
-      public void onFailure(GoogleJsonError googleJsonError, HttpHeaders httpHeaders)
-          throws IOException {
-        callback.onFailure(googleJsonError);
-      }
-    };
+  private static long retryDelayMillis(RetryParams retryParams, int attemptsSoFar) {
+    double delay = Math.pow(retryParams.retryDelayBackoffFactor(), attemptsSoFar - 1)
+        * retryParams.initialRetryDelayMillis();
+    return (long) Math.min(retryParams.maxRetryDelayMillis(), delay);
   }
 
   private static StorageException translate(IOException exception) {
@@ -487,56 +612,102 @@ public class DefaultStorageRpc implements StorageRpc {
     }
   }
 
+  @Override
+  public InputStream openDecompressed(StorageObject from, Map<Option, ?> options) {
+    try {
+      Get req = storage.objects()
+          .get(from.getBucket(), from.getName())
+          .setGeneration(from.getGeneration())
+          .setIfMetagenerationMatch(IF_METAGENERATION_MATCH.getLong(options))
+          .setIfMetagenerationNotMatch(IF_METAGENERATION_NOT_MATCH.getLong(options))
+          .setIfGenerationMatch(IF_GENERATION_MATCH.getLong(options))
+          .setIfGenerationNotMatch(IF_GENERATION_NOT_MATCH.getLong(options));
+      // the service returns the stored gzip data and the HTTP client, which can not be told
+      // otherwise, decompresses responses with gzip content encoding as they are read
+      req.getRequestHeaders().setAcceptEncoding("gzip");
+      return req.executeMediaAsInputStream();
+    } catch (IOException ex) {
+      throw translate(ex);
+    }
+  }
+
   @Override
   public void write(String uploadId, byte[] toWrite, int toWriteOffset, long destOffset, int length,
       boolean last) {
+    if (length == 0 && !last) {
+      return;
+    }
     try {
-      if (length == 0 && !last) {
-        return;
-      }
-      GenericUrl url = new GenericUrl(uploadId);
-      HttpRequest httpRequest = storage.getRequestFactory().buildPutRequest(url,
-          new ByteArrayContent(null, toWrite, toWriteOffset, length));
-      long limit = destOffset + length;
-      StringBuilder range = new StringBuilder("bytes ");
-      if (length == 0) {
-        range.append('*');
-      } else {
-        range.append(destOffset).append('-').append(limit - 1);
-      }
-      range.append('/');
-      if (last) {
-        range.append(limit);
-      } else {
-        range.append('*');
-      }
-      httpRequest.getHeaders().setContentRange(range.toString());
-      int code;
-      String message;
-      IOException exception = null;
-      try {
-        HttpResponse response = httpRequest.execute();
-        code = response.getStatusCode();
-        message = response.getStatusMessage();
-      } catch (HttpResponseException ex) {
-        exception = ex;
-        code = ex.getStatusCode();
-        message = ex.getStatusMessage();
-      }
-      if (!last && code != 308 || last && !(code == 200 || code == 201)) {
-        if (exception != null) {
-          throw exception;
-        }
-        GoogleJsonError error = new GoogleJsonError();
-        error.setCode(code);
-        error.setMessage(message);
-        throw translate(error);
-      }
+      write(uploadId, new ByteArrayContent(null, toWrite, toWriteOffset, length), destOffset,
+          length, last);
     } catch (IOException ex) {
       throw translate(ex);
     }
   }
 
+  @Override
+  public StorageObject write(String uploadId, ByteBuffer toWrite, long destOffset, boolean last) {
+    int length = toWrite.remaining();
+    if (length == 0 && !last) {
+      return null;
+    }
+    try {
+      HttpResponse response =
+          write(uploadId, new ByteBufferContent(toWrite), destOffset, length, last);
+      return last ? response.parseAs(StorageObject.class) : null;
+    } catch (IOException ex) {
+      throw translate(ex);
+    }
+  }
+
+  /**
+   * Sends a chunk of a resumable upload. Returns the response to the last chunk, {@code null} for
+   * other chunks.
+   */
+  private HttpResponse write(String uploadId, HttpContent content, long destOffset, int length,
+      boolean last) throws IOException {
+    GenericUrl url = new GenericUrl(uploadId);
+    HttpRequest httpRequest = storage.getRequestFactory().buildPutRequest(url, content);
+    httpRequest.setParser(storage.getObjectParser());
+    long limit = destOffset + length;
+    StringBuilder range = new StringBuilder("bytes ");
+    if (length == 0) {
+      range.append('*');
+    } else {
+      range.append(destOffset).append('-').append(limit - 1);
+    }
+    range.append('/');
+    if (last) {
+      range.append(limit);
+    } else {
+      range.append('*');
+    }
+    httpRequest.getHeaders().setContentRange(range.toString());
+    int code;
+    String message;
+    HttpResponse response = null;
+    IOException exception = null;
+    try {
+      response = httpRequest.execute();
+      code = response.getStatusCode();
+      message = response.getStatusMessage();
+    } catch (HttpResponseException ex) {
+      exception = ex;
+      code = ex.getStatusCode();
+      message = ex.getStatusMessage();
+    }
+    if (!last && code != 308 || last && !(code == 200 || code == 201)) {
+      if (exception != null) {
+        throw exception;
+      }
+      GoogleJsonError error = new GoogleJsonError();
+      error.setCode(code);
+      error.setMessage(message);
+      throw translate(error);
+    }
+    return last ? response : null;
+  }
+
   @Override
   public String open(StorageObject object, Map<Option, ?> options) {
     try {
@@ -21,6 +21,7 @@ import com.google.api.services.storage.model.StorageObject;
 import com.google.cloud.storage.StorageException;
 
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.Map;
 import java.util.Objects;
 
@@ -43,7 +44,8 @@ public interface StorageRpc {
     PAGE_TOKEN("pageToken"),
     DELIMITER("delimiter"),
     VERSIONS("versions"),
-    FIELDS("fields");
+    FIELDS("fields"),
+    DECOMPRESS("decompress");
 
     private final String value;
 
@@ -283,6 +285,14 @@ public interface StorageRpc {
    */
   Tuple<String, byte[]> read(StorageObject from, Map<Option, ?> options, long position, int bytes);
 
+  /**
+   * Opens a stream on the whole content of a storage object, read in order with a single request.
+   * Content stored with gzip content encoding is returned decompressed.
+   *
+   * @throws StorageException upon failure to open the stream
+   */
+  InputStream openDecompressed(StorageObject from, Map<Option, ?> options);
+
   /**
    * Opens a resumable upload channel for a given storage object.
    *
@@ -298,6 +308,16 @@ public interface StorageRpc {
   void write(String uploadId, byte[] toWrite, int toWriteOffset, long destOffset, int length,
       boolean last);
 
+  /**
+   * Writes the remaining bytes of {@code toWrite} to a storage object at the provided location. The
+   * position of {@code toWrite} is not modified, so that the same buffer can be passed again if the
+   * request is retried. If {@code last} is {@code true} the upload is completed and the created
+   * storage object is returned, otherwise {@code null} is returned.
+   *
+   * @throws StorageException upon failure
+   */
+  StorageObject write(String uploadId, ByteBuffer toWrite, long destOffset, boolean last);
+
   /**
    * Sends a rewrite request to open a rewrite channel.
    *
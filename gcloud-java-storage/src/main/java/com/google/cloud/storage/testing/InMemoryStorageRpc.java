@@ -0,0 +1,974 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage.testing;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.json.GenericJson;
+import com.google.api.client.json.JsonFactory;
+import com.google.api.client.json.jackson.JacksonFactory;
+import com.google.api.client.util.Data;
+import com.google.api.client.util.DateTime;
+import com.google.api.services.storage.model.Bucket;
+import com.google.api.services.storage.model.StorageObject;
+import com.google.cloud.storage.StorageException;
+import com.google.cloud.storage.spi.RpcBatch;
+import com.google.cloud.storage.spi.StorageRpc;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.Hashing;
+import com.google.common.io.BaseEncoding;
+import com.google.common.io.ByteStreams;
+import com.google.common.primitives.Ints;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * A thread-safe, in-memory implementation of {@link StorageRpc} that can be used in tests in place
+ * of the Cloud Storage service. Use {@link LocalStorageHelper} to obtain {@code StorageOptions}
+ * backed by an instance of this class.
+ *
+ * <p>The implementation mimics the behavior of the service for the features used by the client:
+ * <ul>
+ *   <li>every write creates a new object generation, every metadata update increments the
+ *   object's metageneration; generation and metageneration preconditions fail with code
+ *   {@code 412}
+ *   <li>noncurrent generations are retained in buckets with versioning enabled
+ *   <li>lists support prefix, delimiter, versions and paging
+ *   <li>reads of ranges past the end of an object return no data
+ *   <li>content stored with gzip content encoding is decompressed when opened with
+ *   {@link #openDecompressed(StorageObject, Map)}
+ *   <li>resumable uploads accept chunks that overlap data already written, as retried chunks do
+ *   <li>compose and rewrite are supported, rewrites are completed in several calls when
+ *   {@link RewriteRequest#megabytesRewrittenPerCall} is set
+ *   <li>provided CRC32C and MD5 checksums are validated when objects are written
+ * </ul>
+ *
+ * <p>Access control and field selection are not supported: ACL options are ignored and complete
+ * resources are always returned.
+ *
+ * <p>Instances created with {@code implicitBuckets} set create buckets when they are first
+ * accessed, so that tests can use any bucket without creating it.
+ */
+public class InMemoryStorageRpc implements StorageRpc {
+
+  private static final long MEGABYTE = 1024L * 1024L;
+  private static final int PRECONDITION_FAILED = 412;
+  private static final int NOT_FOUND = 404;
+  private static final JsonFactory JSON_FACTORY = new JacksonFactory();
+
+  private final ConcurrentMap<String, BucketEntry> buckets = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, Upload> uploads = new ConcurrentHashMap<>();
+  private final AtomicLong generations = new AtomicLong(System.currentTimeMillis() * 1000);
+  private final AtomicLong uploadIds = new AtomicLong();
+  private final boolean implicitBuckets;
+
+  private static final class BucketEntry {
+
+    private final ConcurrentNavigableMap<String, ObjectEntry> objects =
+        new ConcurrentSkipListMap<>();
+    // object writes hold the read lock, bucket deletion holds the write lock
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile Bucket metadata;
+    private boolean deleted;
+
+    BucketEntry(Bucket metadata) {
+      this.metadata = metadata;
+    }
+
+    boolean versioned() {
+      Bucket.Versioning versioning = metadata.getVersioning();
+      return versioning != null && Boolean.TRUE.equals(versioning.getEnabled());
+    }
+  }
+
+  /**
+   * An immutable object generation. Metadata are never modified once a version is published.
+   */
+  private static final class Version {
+
+    private final StorageObject metadata;
+    private final byte[] content;
+
+    Version(StorageObject metadata, byte[] content) {
+      this.metadata = metadata;
+      this.content = content;
+    }
+
+    long generation() {
+      return metadata.getGeneration();
+    }
+
+    long metageneration() {
+      return metadata.getMetageneration();
+    }
+  }
+
+  /**
+   * The immutable set of generations of an object name. Entries are replaced atomically in the
+   * bucket's map, their identity is used to detect concurrent modifications.
+   */
+  private static final class ObjectEntry {
+
+    private final Version live;
+    private final ImmutableList<Version> noncurrent;
+
+    ObjectEntry(Version live, ImmutableList<Version> noncurrent) {
+      this.live = live;
+      this.noncurrent = noncurrent;
+    }
+
+    Version find(Long generation) {
+      if (generation == null || live != null && live.generation() == generation) {
+        return live;
+      }
+      for (Version version : noncurrent) {
+        if (version.generation() == generation) {
+          return version;
+        }
+      }
+      return null;
+    }
+
+    ObjectEntry replace(Version version, Version replacement) {
+      ObjectEntry updated;
+      if (version == live) {
+        updated = new ObjectEntry(replacement, noncurrent);
+      } else {
+        ImmutableList.Builder<Version> builder = ImmutableList.builder();
+        for (Version other : noncurrent) {
+          if (other != version) {
+            builder.add(other);
+          } else if (replacement != null) {
+            builder.add(replacement);
+          }
+        }
+        updated = new ObjectEntry(live, builder.build());
+      }
+      // names with no generations left are removed from the bucket
+      return updated.live == null && updated.noncurrent.isEmpty() ? null : updated;
+    }
+
+    ObjectEntry archiveLive(boolean versioned) {
+      if (live == null) {
+        return this;
+      }
+      if (!versioned) {
+        return noncurrent.isEmpty() ? null : new ObjectEntry(null, noncurrent);
+      }
+      return new ObjectEntry(null, ImmutableList.<Version>builder()
+          .addAll(noncurrent)
+          .add(new Version(live.metadata.clone().setTimeDeleted(now()), live.content))
+          .build());
+    }
+
+    List<Version> versions() {
+      List<Version> versions = new ArrayList<>(noncurrent);
+      if (live != null) {
+        versions.add(live);
+      }
+      return versions;
+    }
+  }
+
+  /**
+   * A function computing the new state of an object name from the current one. The function may
+   * be called more than once if the object is modified concurrently, it must return
+   * {@code current} if no change is needed.
+   */
+  private interface Mutation {
+
+    ObjectEntry apply(ObjectEntry current);
+  }
+
+  private static final class Upload {
+
+    private final StorageObject metadata;
+    private final Map<Option, ?> options;
+    private byte[] data = new byte[0];
+    private int size;
+
+    Upload(StorageObject metadata, Map<Option, ?> options) {
+      this.metadata = metadata;
+      this.options = options;
+    }
+  }
+
+  private final class InMemoryRpcBatch implements RpcBatch {
+
+    private final List<Runnable> requests = new ArrayList<>();
+
+    @Override
+    public void addDelete(final StorageObject storageObject, final Callback<Void> callback,
+        final Map<Option, ?> options) {
+      requests.add(new Runnable() {
+        @Override
+        public void run() {
+          boolean deleted;
+          try {
+            deleted = delete(storageObject, options);
+          } catch (StorageException ex) {
+            callback.onFailure(error(ex));
+            return;
+          }
+          if (deleted) {
+            callback.onSuccess(null);
+          } else {
+            callback.onFailure(error(new StorageException(NOT_FOUND, "Not Found")));
+          }
+        }
+      });
+    }
+
+    @Override
+    public void addPatch(final StorageObject storageObject,
+        final Callback<StorageObject> callback, final Map<Option, ?> options) {
+      requests.add(new Runnable() {
+        @Override
+        public void run() {
+          StorageObject patched;
+          try {
+            patched = patch(storageObject, options);
+          } catch (StorageException ex) {
+            callback.onFailure(error(ex));
+            return;
+          }
+          callback.onSuccess(patched);
+        }
+      });
+    }
+
+    @Override
+    public void addGet(final StorageObject storageObject, final Callback<StorageObject> callback,
+        final Map<Option, ?> options) {
+      requests.add(new Runnable() {
+        @Override
+        public void run() {
+          StorageObject object;
+          try {
+            object = get(storageObject, options);
+          } catch (StorageException ex) {
+            callback.onFailure(error(ex));
+            return;
+          }
+          if (object != null) {
+            callback.onSuccess(object);
+          } else {
+            callback.onFailure(error(new StorageException(NOT_FOUND, "Not Found")));
+          }
+        }
+      });
+    }
+
+    @Override
+    public void submit() {
+      for (Runnable request : requests) {
+        request.run();
+      }
+      requests.clear();
+    }
+
+    private GoogleJsonError error(StorageException exception) {
+      GoogleJsonError error = new GoogleJsonError();
+      error.setCode(exception.code());
+      error.setMessage(exception.getMessage());
+      return error;
+    }
+  }
+
+  /**
+   * Creates an empty in-memory storage. Buckets must be created before they are used.
+   */
+  public InMemoryStorageRpc() {
+    this(false);
+  }
+
+  /**
+   * Creates an empty in-memory storage. If {@code implicitBuckets} is {@code true} buckets are
+   * created when they are first accessed.
+   */
+  public InMemoryStorageRpc(boolean implicitBuckets) {
+    this.implicitBuckets = implicitBuckets;
+  }
+
+  /**
+   * Removes all buckets, objects and upload sessions.
+   */
+  public void reset() {
+    buckets.clear();
+    uploads.clear();
+  }
+
+  @Override
+  public Bucket create(Bucket bucket, Map<Option, ?> options) {
+    checkArgument(bucket.getName() != null, "Bucket name must be set");
+    BucketEntry entry = newBucket(bucket);
+    if (buckets.putIfAbsent(bucket.getName(), entry) != null) {
+      throw new StorageException(409, "Bucket " + bucket.getName() + " already exists");
+    }
+    return entry.metadata.clone();
+  }
+
+  private static BucketEntry newBucket(Bucket bucket) {
+    Bucket metadata = copy(bucket)
+        .setId(bucket.getName())
+        .setMetageneration(1L)
+        .setTimeCreated(now());
+    if (metadata.getLocation() == null) {
+      metadata.setLocation("US");
+    }
+    if (metadata.getStorageClass() == null) {
+      metadata.setStorageClass("STANDARD");
+    }
+    metadata.setEtag(etag(0L, 1L));
+    return new BucketEntry(metadata);
+  }
+
+  @Override
+  public StorageObject create(StorageObject object, InputStream content, Map<Option, ?> options) {
+    byte[] bytes;
+    try {
+      bytes = ByteStreams.toByteArray(content);
+    } catch (IOException ex) {
+      throw new StorageException(ex);
+    }
+    return write(object, bytes, null, options);
+  }
+
+  @Override
+  public Tuple<String, Iterable<Bucket>> list(Map<Option, ?> options) {
+    String prefix = firstNonNull((String) options.get(Option.PREFIX), "");
+    String pageToken = (String) options.get(Option.PAGE_TOKEN);
+    Long maxResults = getLong(options, Option.MAX_RESULTS);
+    List<String> names = new ArrayList<>(buckets.keySet());
+    Collections.sort(names);
+    List<Bucket> results = new ArrayList<>();
+    String nextPageToken = null;
+    for (String name : names) {
+      if (!name.startsWith(prefix) || pageToken != null && name.compareTo(pageToken) <= 0) {
+        continue;
+      }
+      BucketEntry entry = buckets.get(name);
+      if (entry == null) {
+        continue;
+      }
+      if (maxResults != null && results.size() == maxResults) {
+        nextPageToken = results.get(results.size() - 1).getName();
+        break;
+      }
+      results.add(entry.metadata.clone());
+    }
+    return Tuple.<String, Iterable<Bucket>>of(nextPageToken, results);
+  }
+
+  @Override
+  public Tuple<String, Iterable<StorageObject>> list(String bucket, Map<Option, ?> options) {
+    BucketEntry entry = bucket(bucket);
+    String prefix = firstNonNull((String) options.get(Option.PREFIX), "");
+    String delimiter = (String) options.get(Option.DELIMITER);
+    String pageToken = (String) options.get(Option.PAGE_TOKEN);
+    Long maxResults = getLong(options, Option.MAX_RESULTS);
+    boolean versions = Boolean.TRUE.equals(options.get(Option.VERSIONS));
+    NavigableMap<String, ObjectEntry> tail = pageToken != null
+        ? entry.objects.tailMap(pageToken, false) : entry.objects.tailMap(prefix, true);
+    List<StorageObject> results = new ArrayList<>();
+    String lastName = pageToken;
+    String nextPageToken = null;
+    int count = 0;
+    for (Map.Entry<String, ObjectEntry> object : tail.entrySet()) {
+      String name = object.getKey();
+      if (!name.startsWith(prefix)) {
+        break;
+      }
+      int index = delimiter != null ? name.indexOf(delimiter, prefix.length()) : -1;
+      if (index >= 0) {
+        String directory = name.substring(0, index + delimiter.length());
+        if (directory.equals(lastName)) {
+          continue;
+        }
+        if (maxResults != null && count == maxResults) {
+          nextPageToken = lastName;
+          break;
+        }
+        results.add(new StorageObject()
+            .set("isDirectory", true)
+            .setBucket(bucket)
+            .setName(directory)
+            .setSize(BigInteger.ZERO));
+        lastName = directory;
+        count++;
+        continue;
+      }
+      ObjectEntry objectEntry = object.getValue();
+      if (objectEntry.live == null && !versions) {
+        continue;
+      }
+      if (maxResults != null && count == maxResults) {
+        nextPageToken = lastName;
+        break;
+      }
+      List<Version> listed = versions ? objectEntry.versions() : ImmutableList.of(objectEntry.live);
+      for (Version version : listed) {
+        results.add(version.metadata.clone());
+      }
+      lastName = name;
+      count++;
+    }
+    return Tuple.<String, Iterable<StorageObject>>of(nextPageToken, results);
+  }
+
+  @Override
+  public Bucket get(Bucket bucket, Map<Option, ?> options) {
+    BucketEntry entry = implicitBuckets ? bucket(bucket.getName()) : buckets.get(bucket.getName());
+    if (entry == null) {
+      return null;
+    }
+    Bucket metadata = entry.metadata;
+    checkMetagenerationPreconditions(metadata.getMetageneration(), options);
+    return metadata.clone();
+  }
+
+  @Override
+  public StorageObject get(StorageObject object, Map<Option, ?> options) {
+    BucketEntry entry = buckets.get(object.getBucket());
+    if (entry == null) {
+      return null;
+    }
+    ObjectEntry objectEntry = entry.objects.get(object.getName());
+    Version version = objectEntry != null ? objectEntry.find(object.getGeneration()) : null;
+    if (version == null) {
+      return null;
+    }
+    checkPreconditions(version, options, false);
+    return version.metadata.clone();
+  }
+
+  @Override
+  public Bucket patch(Bucket bucket, Map<Option, ?> options) {
+    BucketEntry entry = bucket(bucket.getName());
+    synchronized (entry) {
+      Bucket current = entry.metadata;
+      checkMetagenerationPreconditions(current.getMetageneration(), options);
+      Bucket updated = current.clone();
+      for (Map.Entry<String, Object> field : copy(bucket).entrySet()) {
+        if (!"name".equals(field.getKey()) && !"id".equals(field.getKey())) {
+          updated.set(field.getKey(), Data.isNull(field.getValue()) ? null : field.getValue());
+        }
+      }
+      long metageneration = current.getMetageneration() + 1;
+      updated.setMetageneration(metageneration)
+          .setUpdated(now())
+          .setEtag(etag(0L, metageneration));
+      entry.metadata = updated;
+      return updated.clone();
+    }
+  }
+
+  @Override
+  public StorageObject patch(final StorageObject storageObject, final Map<Option, ?> options) {
+    BucketEntry entry = bucket(storageObject.getBucket());
+    final Version[] patched = new Version[1];
+    mutate(entry, storageObject.getName(), new Mutation() {
+      @Override
+      public ObjectEntry apply(ObjectEntry current) {
+        Version version = current != null ? current.find(storageObject.getGeneration()) : null;
+        if (version == null) {
+          throw new StorageException(NOT_FOUND, "No such object: " + storageObject.getName());
+        }
+        checkPreconditions(version, options, false);
+        patched[0] = new Version(merge(version.metadata, copy(storageObject)), version.content);
+        return current.replace(version, patched[0]);
+      }
+    });
+    return patched[0].metadata.clone();
+  }
+
+  @Override
+  public boolean delete(Bucket bucket, Map<Option, ?> options) {
+    BucketEntry entry = buckets.get(bucket.getName());
+    if (entry == null) {
+      return false;
+    }
+    entry.lock.writeLock().lock();
+    try {
+      if (entry.deleted) {
+        return false;
+      }
+      checkMetagenerationPreconditions(entry.metadata.getMetageneration(), options);
+      if (!entry.objects.isEmpty()) {
+        throw new StorageException(409, "Bucket " + bucket.getName() + " is not empty");
+      }
+      entry.deleted = true;
+      buckets.remove(bucket.getName(), entry);
+      return true;
+    } finally {
+      entry.lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public boolean delete(final StorageObject object, final Map<Option, ?> options) {
+    BucketEntry entry = buckets.get(object.getBucket());
+    if (entry == null) {
+      return false;
+    }
+    final boolean versioned = entry.versioned();
+    final boolean[] deleted = new boolean[1];
+    mutate(entry, object.getName(), new Mutation() {
+      @Override
+      public ObjectEntry apply(ObjectEntry current) {
+        Version version = current != null ? current.find(object.getGeneration()) : null;
+        deleted[0] = version != null;
+        if (version == null) {
+          return current;
+        }
+        checkPreconditions(version, options, false);
+        // deleting the live version without a generation makes it noncurrent, deleting a
+        // specific generation removes it permanently
+        return object.getGeneration() == null
+            ? current.archiveLive(versioned) : current.replace(version, null);
+      }
+    });
+    return deleted[0];
+  }
+
+  @Override
+  public RpcBatch createBatch() {
+    return new InMemoryRpcBatch();
+  }
+
+  @Override
+  public StorageObject compose(Iterable<StorageObject> sources, StorageObject target,
+      Map<Option, ?> targetOptions) {
+    BucketEntry entry = bucket(target.getBucket());
+    ByteArrayBuilder content = new ByteArrayBuilder();
+    int componentCount = 0;
+    for (StorageObject source : sources) {
+      Version version = find(entry, source.getName(), source.getGeneration());
+      content.append(version.content, 0, version.content.length);
+      Integer sourceComponents = version.metadata.getComponentCount();
+      componentCount += sourceComponents != null ? sourceComponents : 1;
+    }
+    return write(target, content.toByteArray(), componentCount, targetOptions);
+  }
+
+  @Override
+  public byte[] load(StorageObject storageObject, Map<Option, ?> options) {
+    Version version = find(bucket(storageObject.getBucket()), storageObject.getName(),
+        storageObject.getGeneration());
+    checkPreconditions(version, options, false);
+    return version.content.clone();
+  }
+
+  @Override
+  public Tuple<String, byte[]> read(StorageObject from, Map<Option, ?> options, long position,
+      int bytes) {
+    checkArgument(position >= 0, "Position should be non-negative, is %d", position);
+    Version version = find(bucket(from.getBucket()), from.getName(), from.getGeneration());
+    checkPreconditions(version, options, false);
+    if (position >= version.content.length) {
+      // the service responds with "416 Requested Range Not Satisfiable"
+      return Tuple.of(null, new byte[0]);
+    }
+    int end = (int) Math.min(version.content.length, position + bytes);
+    // the content of a generation never changes, its etag only depends on the generation
+    return Tuple.of(etag(version.generation(), 0L),
+        Arrays.copyOfRange(version.content, (int) position, end));
+  }
+
+  @Override
+  public InputStream openDecompressed(StorageObject from, Map<Option, ?> options) {
+    Version version = find(bucket(from.getBucket()), from.getName(), from.getGeneration());
+    checkPreconditions(version, options, false);
+    InputStream stream = new ByteArrayInputStream(version.content);
+    if ("gzip".equals(version.metadata.getContentEncoding())) {
+      try {
+        return new GZIPInputStream(stream);
+      } catch (IOException ex) {
+        throw new StorageException(ex);
+      }
+    }
+    return stream;
+  }
+
+  @Override
+  public String open(StorageObject object, Map<Option, ?> options) {
+    ObjectEntry current = bucket(object.getBucket()).objects.get(object.getName());
+    // like the service, check preconditions when the upload starts and again when it completes
+    checkPreconditions(current != null ? current.live : null, options, false);
+    String uploadId = "in-memory-upload-" + uploadIds.incrementAndGet();
+    uploads.put(uploadId, new Upload(copy(object), new HashMap<>(options)));
+    return uploadId;
+  }
+
+  @Override
+  public void write(String uploadId, byte[] toWrite, int toWriteOffset, long destOffset, int length,
+      boolean last) {
+    append(uploadId, toWrite, toWriteOffset, destOffset, length, last);
+  }
+
+  @Override
+  public StorageObject write(String uploadId, ByteBuffer toWrite, long destOffset, boolean last) {
+    byte[] bytes = new byte[toWrite.remaining()];
+    toWrite.duplicate().get(bytes);
+    return append(uploadId, bytes, 0, destOffset, bytes.length, last);
+  }
+
+  /**
+   * Appends a chunk to an upload session. Returns the created object if {@code last} is
+   * {@code true}, {@code null} otherwise.
+   */
+  private StorageObject append(String uploadId, byte[] toWrite, int toWriteOffset,
+      long destOffset, int length, boolean last) {
+    Upload upload = uploads.get(uploadId);
+    if (upload == null) {
+      throw new StorageException(NOT_FOUND, "No such upload session: " + uploadId);
+    }
+    byte[] content;
+    synchronized (upload) {
+      if (uploads.get(uploadId) != upload) {
+        throw new StorageException(NOT_FOUND, "No such upload session: " + uploadId);
+      }
+      if (destOffset > upload.size) {
+        throw new StorageException(400, "Invalid upload offset " + destOffset + ", "
+            + upload.size + " bytes were written");
+      }
+      // chunks overlapping data already written are retries, their data replaces the old one
+      int size = (int) destOffset + length;
+      if (size > upload.data.length) {
+        upload.data = Arrays.copyOf(upload.data, Math.max(size, 2 * upload.data.length));
+      }
+      System.arraycopy(toWrite, toWriteOffset, upload.data, (int) destOffset, length);
+      upload.size = size;
+      if (!last) {
+        return null;
+      }
+      uploads.remove(uploadId);
+      content = Arrays.copyOf(upload.data, upload.size);
+    }
+    return write(upload.metadata, content, null, upload.options);
+  }
+
+  @Override
+  public RewriteResponse openRewrite(RewriteRequest rewriteRequest) {
+    return rewrite(rewriteRequest, rewriteRequest.source.getGeneration(), 0);
+  }
+
+  @Override
+  public RewriteResponse continueRewrite(RewriteResponse previousResponse) {
+    String[] token = previousResponse.rewriteToken.split(":");
+    return rewrite(previousResponse.rewriteRequest, Long.parseLong(token[0]),
+        Long.parseLong(token[1]));
+  }
+
+  /**
+   * Advances a rewrite. The source generation is pinned by the first call and recorded in the
+   * rewrite token, together with the number of bytes rewritten so far.
+   */
+  private RewriteResponse rewrite(RewriteRequest request, Long generation, long bytesRewritten) {
+    Version source =
+        find(bucket(request.source.getBucket()), request.source.getName(), generation);
+    checkPreconditions(source, request.sourceOptions, true);
+    bucket(request.target.getBucket());
+    long size = source.content.length;
+    long remaining = size - bytesRewritten;
+    if (request.megabytesRewrittenPerCall != null
+        && remaining > request.megabytesRewrittenPerCall * MEGABYTE) {
+      long rewritten = bytesRewritten + request.megabytesRewrittenPerCall * MEGABYTE;
+      return new RewriteResponse(request, null, size, false,
+          source.generation() + ":" + rewritten, rewritten);
+    }
+    StorageObject target;
+    if (request.overrideInfo) {
+      target = copy(request.target);
+    } else {
+      target = source.metadata.clone()
+          .setBucket(request.target.getBucket())
+          .setName(request.target.getName());
+      target.setTimeDeleted(null);
+    }
+    StorageObject result = write(target, source.content, source.metadata.getComponentCount(),
+        request.targetOptions);
+    return new RewriteResponse(request, result, size, true, null, size);
+  }
+
+  private static boolean isSet(Object value) {
+    return value != null && !Data.isNull(value);
+  }
+
+  /**
+   * Stores {@code content} as a new generation of the object identified by {@code object}.
+   * Composite objects, for which {@code componentCount} is not {@code null}, have no MD5 hash.
+   */
+  private StorageObject write(StorageObject object, byte[] content, Integer componentCount,
+      final Map<Option, ?> options) {
+    String crc32c = BaseEncoding.base64().encode(
+        Ints.toByteArray(Hashing.crc32c().hashBytes(content).asInt()));
+    String md5 = BaseEncoding.base64().encode(Hashing.md5().hashBytes(content).asBytes());
+    // hashes cleared by the client are set to Data.NULL_STRING
+    if (isSet(object.getCrc32c()) && !object.getCrc32c().equals(crc32c)) {
+      throw new StorageException(400, "Provided CRC32C \"" + object.getCrc32c()
+          + "\" doesn't match calculated CRC32C \"" + crc32c + "\"");
+    }
+    if (isSet(object.getMd5Hash()) && !object.getMd5Hash().equals(md5)) {
+      throw new StorageException(400, "Provided MD5 hash \"" + object.getMd5Hash()
+          + "\" doesn't match calculated MD5 hash \"" + md5 + "\"");
+    }
+    checkArgument(object.getName() != null, "Object name must be set");
+    final StorageObject metadata = copy(object)
+        .setSize(BigInteger.valueOf(content.length))
+        .setCrc32c(crc32c)
+        .setMd5Hash(componentCount == null ? md5 : null)
+        .setComponentCount(componentCount)
+        .setMetageneration(1L);
+    if (metadata.getContentType() == null) {
+      metadata.setContentType("application/octet-stream");
+    }
+    final byte[] data = content;
+    BucketEntry entry = bucket(object.getBucket());
+    final boolean versioned = entry.versioned();
+    ObjectEntry updated = mutate(entry, object.getName(), new Mutation() {
+      @Override
+      public ObjectEntry apply(ObjectEntry current) {
+        checkPreconditions(current != null ? current.live : null, options, false);
+        long generation = generations.incrementAndGet();
+        DateTime now = now();
+        StorageObject stored = metadata.clone()
+            .setGeneration(generation)
+            .setId(metadata.getBucket() + "/" + metadata.getName() + "/" + generation)
+            .setEtag(etag(generation, 1L))
+            .setTimeCreated(now)
+            .setUpdated(now);
+        ObjectEntry archived = current != null ? current.archiveLive(versioned) : null;
+        return new ObjectEntry(new Version(stored, data),
+            archived != null ? archived.noncurrent : ImmutableList.<Version>of());
+      }
+    });
+    return updated.live.metadata.clone();
+  }
+
+  /**
+   * Applies {@code mutation} to the entry of object {@code name}, retrying if the entry is modified
+   * concurrently. Returns the new entry.
+   */
+  private static ObjectEntry mutate(BucketEntry bucket, String name, Mutation mutation) {
+    bucket.lock.readLock().lock();
+    try {
+      if (bucket.deleted) {
+        throw new StorageException(NOT_FOUND, "No such bucket: " + bucket.metadata.getName());
+      }
+      while (true) {
+        ObjectEntry current = bucket.objects.get(name);
+        ObjectEntry updated = mutation.apply(current);
+        if (updated == current) {
+          return current;
+        }
+        boolean swapped;
+        if (current == null) {
+          swapped = bucket.objects.putIfAbsent(name, updated) == null;
+        } else if (updated == null) {
+          swapped = bucket.objects.remove(name, current);
+        } else {
+          swapped = bucket.objects.replace(name, current, updated);
+        }
+        if (swapped) {
+          return updated;
+        }
+      }
+    } finally {
+      bucket.lock.readLock().unlock();
+    }
+  }
+
+  private BucketEntry bucket(String name) {
+    BucketEntry entry = buckets.get(name);
+    if (entry == null && implicitBuckets) {
+      BucketEntry created = newBucket(new Bucket().setName(name));
+      entry = buckets.putIfAbsent(name, created);
+      if (entry == null) {
+        entry = created;
+      }
+    }
+    if (entry == null) {
+      throw new StorageException(NOT_FOUND, "No such bucket: " + name);
+    }
+    return entry;
+  }
+
+  private static Version find(BucketEntry bucket, String name, Long generation) {
+    ObjectEntry entry = bucket.objects.get(name);
+    Version version = entry != null ? entry.find(generation) : null;
+    if (version == null) {
+      throw new StorageException(NOT_FOUND, "No such object: " + bucket.metadata.getName() + "/"
+          + name);
+    }
+    return version;
+  }
+
+  private static StorageObject merge(StorageObject current, StorageObject patch) {
+    StorageObject updated = current.clone();
+    for (Map.Entry<String, Object> field : patch.entrySet()) {
+      String key = field.getKey();
+      Object value = Data.isNull(field.getValue()) ? null : field.getValue();
+      switch (key) {
+        case "bucket":
+        case "name":
+        case "generation":
+        case "metageneration":
+        case "size":
+        case "md5Hash":
+        case "crc32c":
+        case "componentCount":
+        case "id":
+        case "etag":
+        case "timeCreated":
+        case "updated":
+          break;
+        case "metadata":
+          updated.setMetadata(mergeMetadata(current.getMetadata(), patch.getMetadata()));
+          break;
+        default:
+          updated.set(key, value);
+      }
+    }
+    long metageneration = current.getMetageneration() + 1;
+    return updated.setMetageneration(metageneration)
+        .setEtag(etag(current.getGeneration(), metageneration))
+        .setUpdated(now());
+  }
+
+  /**
+   * Returns a deep copy of {@code resource}, made by serializing it as the client does to send it
+   * to the service. Unlike {@code clone()} this supports resources holding list views.
+   */
+  private static <T extends GenericJson> T copy(T resource) {
+    try {
+      @SuppressWarnings("unchecked")
+      Class<T> type = (Class<T>) resource.getClass();
+      return JSON_FACTORY.fromString(JSON_FACTORY.toString(resource), type);
+    } catch (IOException ex) {
+      throw new StorageException(ex);
+    }
+  }
+
+  private static Map<String, String> mergeMetadata(Map<String, String> current,
+      Map<String, String> patch) {
+    if (patch == null || Data.isNull(patch)) {
+      return null;
+    }
+    Map<String, String> merged = current != null ? new HashMap<>(current)
+        : new HashMap<String, String>();
+    for (Map.Entry<String, String> entry : patch.entrySet()) {
+      if (entry.getValue() == null || Data.isNull(entry.getValue())) {
+        merged.remove(entry.getKey());
+      } else {
+        merged.put(entry.getKey(), entry.getValue());
+      }
+    }
+    return merged.isEmpty() ? null : merged;
+  }
+
+  private static void checkPreconditions(Version version, Map<Option, ?> options,
+      boolean source) {
+    Long generationMatch = getLong(options,
+        source ? Option.IF_SOURCE_GENERATION_MATCH : Option.IF_GENERATION_MATCH);
+    Long generationNotMatch = getLong(options,
+        source ? Option.IF_SOURCE_GENERATION_NOT_MATCH : Option.IF_GENERATION_NOT_MATCH);
+    Long metagenerationMatch = getLong(options,
+        source ? Option.IF_SOURCE_METAGENERATION_MATCH : Option.IF_METAGENERATION_MATCH);
+    Long metagenerationNotMatch = getLong(options,
+        source ? Option.IF_SOURCE_METAGENERATION_NOT_MATCH : Option.IF_METAGENERATION_NOT_MATCH);
+    // a generation of 0 matches objects that do not exist
+    long generation = version != null ? version.generation() : 0L;
+    if (generationMatch != null && generationMatch != generation
+        || generationNotMatch != null && generationNotMatch == generation) {
+      throw new StorageException(PRECONDITION_FAILED, "Precondition Failed");
+    }
+    if (metagenerationMatch != null
+        && (version == null || metagenerationMatch != version.metageneration())
+        || metagenerationNotMatch != null && version != null
+        && metagenerationNotMatch == version.metageneration()) {
+      throw new StorageException(PRECONDITION_FAILED, "Precondition Failed");
+    }
+  }
+
+  private static void checkMetagenerationPreconditions(long metageneration,
+      Map<Option, ?> options) {
+    Long metagenerationMatch = getLong(options, Option.IF_METAGENERATION_MATCH);
+    Long metagenerationNotMatch = getLong(options, Option.IF_METAGENERATION_NOT_MATCH);
+    if (metagenerationMatch != null && metagenerationMatch != metageneration
+        || metagenerationNotMatch != null && metagenerationNotMatch == metageneration) {
+      throw new StorageException(PRECONDITION_FAILED, "Precondition Failed");
+    }
+  }
+
+  private static Long getLong(Map<Option, ?> options, Option option) {
+    Number value = (Number) options.get(option);
+    return value != null ? value.longValue() : null;
+  }
+
+  private static String firstNonNull(String value, String defaultValue) {
+    return value != null ? value : defaultValue;
+  }
+
+  private static String etag(long generation, long metageneration) {
+    return BaseEncoding.base64().encode(
+        (Long.toHexString(generation) + ":" + metageneration).getBytes(UTF_8));
+  }
+
+  private static DateTime now() {
+    return new DateTime(System.currentTimeMillis());
+  }
+
+  private static final class ByteArrayBuilder {
+
+    private byte[] data = new byte[0];
+    private int size;
+
+    void append(byte[] bytes, int offset, int length) {
+      if (size + length > data.length) {
+        data = Arrays.copyOf(data, Math.max(size + length, 2 * data.length));
+      }
+      System.arraycopy(bytes, offset, data, size, length);
+      size += length;
+    }
+
+    byte[] toByteArray() {
+      return Arrays.copyOf(data, size);
+    }
+  }
+}
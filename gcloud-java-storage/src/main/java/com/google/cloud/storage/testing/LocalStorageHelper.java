@@ -0,0 +1,86 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage.testing;
+
+import com.google.cloud.RetryParams;
+import com.google.cloud.spi.ServiceRpcFactory;
+import com.google.cloud.storage.StorageOptions;
+import com.google.cloud.storage.spi.StorageRpc;
+
+/**
+ * Utility to create an in-memory storage configuration for testing. Storage options can be
+ * obtained via the {@link #options()} method. Returned options are backed by an
+ * {@link InMemoryStorageRpc} and do not retry failed requests.
+ */
+public class LocalStorageHelper {
+
+  private static final String PROJECT_ID = "in-memory-project";
+
+  private final InMemoryStorageRpc rpc;
+  private final StorageOptions options;
+
+  private LocalStorageHelper(final InMemoryStorageRpc rpc) {
+    this.rpc = rpc;
+    this.options = StorageOptions.builder()
+        .projectId(PROJECT_ID)
+        .retryParams(RetryParams.noRetries())
+        .serviceRpcFactory(new ServiceRpcFactory<StorageRpc, StorageOptions>() {
+          @Override
+          public StorageRpc create(StorageOptions options) {
+            return rpc;
+          }
+        })
+        .build();
+  }
+
+  /**
+   * Returns a {@link StorageOptions} object to be used for testing. All the services created from
+   * the returned options share the same in-memory storage.
+   */
+  public StorageOptions options() {
+    return options;
+  }
+
+  /**
+   * Returns the in-memory implementation of {@link StorageRpc} backing the helper's options.
+   */
+  public InMemoryStorageRpc rpc() {
+    return rpc;
+  }
+
+  /**
+   * Removes all buckets and objects from the in-memory storage.
+   */
+  public void reset() {
+    rpc.reset();
+  }
+
+  /**
+   * Creates a {@code LocalStorageHelper} backed by a new, empty in-memory storage.
+   */
+  public static LocalStorageHelper create() {
+    return new LocalStorageHelper(new InMemoryStorageRpc());
+  }
+
+  /**
+   * Creates a {@code LocalStorageHelper} backed by a new, empty in-memory storage that creates
+   * buckets when they are first accessed.
+   */
+  public static LocalStorageHelper createWithImplicitBuckets() {
+    return new LocalStorageHelper(new InMemoryStorageRpc(true));
+  }
+}
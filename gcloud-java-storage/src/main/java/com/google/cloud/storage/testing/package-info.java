@@ -32,6 +32,13 @@
  * RemoteStorageHelper.forceDelete(storage, bucket, 5, TimeUnit.SECONDS);
  * } </pre>
  *
+ * <p>Tests that do not need the actual service can use an in-memory storage instead:
+ * <pre> {@code
+ * LocalStorageHelper helper = LocalStorageHelper.create();
+ * Storage storage = helper.options().service();
+ * storage.create(BucketInfo.of("bucket"));
+ * } </pre>
+ *
  * @see <a href="https://github.com/GoogleCloudPlatform/gcloud-java/blob/master/TESTING.md#testing-code-that-uses-storage">
  *     gcloud-java tools for testing</a>
  */
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.cloud.storage.testing.LocalStorageHelper;
+import com.google.common.collect.AbstractIterator;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+public class BatchIteratorTest {
+
+  private static final String BUCKET = "bucket";
+  private static final int COUNT = 350;
+
+  private Storage storage;
+
+  @Before
+  public void setUp() {
+    storage = LocalStorageHelper.create().options().toBuilder()
+        .batchParallelism(3)
+        .build()
+        .service();
+    storage.create(BucketInfo.of(BUCKET));
+    for (int i = 0; i < COUNT; i += 2) {
+      storage.create(BlobInfo.builder(BUCKET, "blob-" + i).build(), "content".getBytes(UTF_8));
+    }
+  }
+
+  /**
+   * Returns the ids of {@code COUNT} blobs, counting how many were consumed.
+   */
+  private static final class BlobIds implements Iterable<BlobId> {
+
+    private int consumed;
+
+    @Override
+    public Iterator<BlobId> iterator() {
+      return new AbstractIterator<BlobId>() {
+        @Override
+        protected BlobId computeNext() {
+          return consumed < COUNT ? BlobId.of(BUCKET, "blob-" + consumed++) : endOfData();
+        }
+      };
+    }
+  }
+
+  @Test
+  public void testGetAll() {
+    BlobIds blobIds = new BlobIds();
+    Iterator<Blob> blobs = storage.getAll(blobIds);
+    assertEquals(0, blobIds.consumed);
+    for (int i = 0; i < COUNT; i++) {
+      assertTrue(blobs.hasNext());
+      Blob blob = blobs.next();
+      if (i % 2 == 0) {
+        assertEquals("blob-" + i, blob.name());
+      } else {
+        assertNull(blob);
+      }
+      // at most 3 batches are submitted ahead of the batch being consumed
+      assertTrue(blobIds.consumed <= (i / BatchIterator.BATCH_SIZE + 4) * BatchIterator.BATCH_SIZE);
+    }
+    assertFalse(blobs.hasNext());
+  }
+
+  @Test
+  public void testUpdateAll() {
+    List<BlobInfo> infos = new ArrayList<>();
+    for (int i = 0; i < COUNT; i++) {
+      infos.add(BlobInfo.builder(BUCKET, "blob-" + i).contentType("text/plain").build());
+    }
+    Iterator<Blob> blobs = storage.updateAll(infos);
+    for (int i = 0; i < COUNT; i++) {
+      Blob blob = blobs.next();
+      if (i % 2 == 0) {
+        assertEquals("text/plain", blob.contentType());
+      } else {
+        assertNull(blob);
+      }
+    }
+    assertFalse(blobs.hasNext());
+  }
+
+  @Test
+  public void testDeleteAll() {
+    Iterator<Boolean> results = storage.deleteAll(new BlobIds());
+    for (int i = 0; i < COUNT; i++) {
+      assertEquals(i % 2 == 0, results.next());
+    }
+    assertFalse(results.hasNext());
+    assertFalse(storage.list(BUCKET).values().iterator().hasNext());
+  }
+
+  @Test
+  public void testEmpty() {
+    assertFalse(storage.getAll(new ArrayList<BlobId>()).hasNext());
+  }
+}
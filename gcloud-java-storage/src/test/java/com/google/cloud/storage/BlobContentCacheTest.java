@@ -0,0 +1,100 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class BlobContentCacheTest {
+
+  private static final BlobId BLOB_ID = BlobId.of("b", "n", 42L);
+  private static final byte[] CONTENT = {0xD, 0xE, 0xA, 0xD, 0xB, 0xE, 0xE, 0xF};
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Path directory;
+
+  @Before
+  public void setUp() {
+    directory = folder.getRoot().toPath();
+  }
+
+  @Test
+  public void testPutAndGet() throws IOException {
+    BlobContentCache cache = new BlobContentCache(directory, 1024);
+    assertNull(cache.get(BLOB_ID, 0));
+    cache.put(BLOB_ID, 0, CONTENT, 4);
+    assertArrayEquals(new byte[] {0xD, 0xE, 0xA, 0xD}, toArray(cache.get(BLOB_ID, 0)));
+    assertNull(cache.get(BLOB_ID, 1));
+    assertNull(cache.get(BlobId.of("b", "n", 43L), 0));
+    assertEquals(4, cache.size());
+  }
+
+  @Test
+  public void testEviction() throws IOException {
+    BlobContentCache cache = new BlobContentCache(directory, 2 * CONTENT.length);
+    cache.put(BLOB_ID, 0, CONTENT, CONTENT.length);
+    cache.put(BLOB_ID, 1, CONTENT, CONTENT.length);
+    assertNotNull(cache.get(BLOB_ID, 0));
+    cache.put(BLOB_ID, 2, CONTENT, CONTENT.length);
+    assertNotNull(cache.get(BLOB_ID, 0));
+    assertNull(cache.get(BLOB_ID, 1));
+    assertNotNull(cache.get(BLOB_ID, 2));
+    assertEquals(2 * CONTENT.length, cache.size());
+  }
+
+  @Test
+  public void testReload() throws IOException {
+    new BlobContentCache(directory, 1024).put(BLOB_ID, 0, CONTENT, CONTENT.length);
+    BlobContentCache cache = new BlobContentCache(directory, 1024);
+    assertEquals(CONTENT.length, cache.size());
+    assertArrayEquals(CONTENT, toArray(cache.get(BLOB_ID, 0)));
+  }
+
+  @Test
+  public void testCorruptedBlock() throws IOException {
+    new BlobContentCache(directory, 1024).put(BLOB_ID, 0, CONTENT, CONTENT.length);
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+      for (Path file : stream) {
+        Files.write(file, new byte[CONTENT.length]);
+      }
+    }
+    BlobContentCache cache = new BlobContentCache(directory, 1024);
+    assertNull(cache.get(BLOB_ID, 0));
+    assertEquals(0, cache.size());
+  }
+
+  private static byte[] toArray(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.remaining()];
+    buffer.get(bytes);
+    return bytes;
+  }
+}
@@ -35,7 +35,9 @@ import com.google.common.collect.ImmutableMap;
 
 import org.junit.After;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
@@ -54,6 +56,9 @@ public class BlobReadChannelTest {
   private static final int CUSTOM_CHUNK_SIZE = 2 * 1024 * 1024;
   private static final Random RANDOM = new Random();
 
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
   private StorageOptions options;
   private StorageRpcFactory rpcFactoryMock;
   private StorageRpc storageRpcMock;
@@ -229,6 +234,106 @@ public class BlobReadChannelTest {
     assertEquals(state.toString(), secondState.toString());
   }
 
+  @Test
+  public void testReadWithContentCache() throws IOException {
+    StorageOptions cacheOptions = options.toBuilder()
+        .contentCache(folder.getRoot().getPath(), DEFAULT_CHUNK_SIZE)
+        .build();
+    byte[] result = randomByteArray(100);
+    expect(storageRpcMock.read(BLOB_ID.toPb(), EMPTY_RPC_OPTIONS, 0, DEFAULT_CHUNK_SIZE))
+        .andReturn(StorageRpc.Tuple.of("etag", result));
+    replay(storageRpcMock);
+    reader = new BlobReadChannel(cacheOptions, BLOB_ID, EMPTY_RPC_OPTIONS);
+    ByteBuffer firstReadBuffer = ByteBuffer.allocate(42);
+    assertEquals(42, reader.read(firstReadBuffer));
+    assertArrayEquals(Arrays.copyOf(result, 42), firstReadBuffer.array());
+    reader.close();
+    reader = new BlobReadChannel(cacheOptions, BLOB_ID, EMPTY_RPC_OPTIONS);
+    ByteBuffer secondReadBuffer = ByteBuffer.allocate(DEFAULT_CHUNK_SIZE);
+    assertEquals(result.length, reader.read(secondReadBuffer));
+    assertArrayEquals(result, Arrays.copyOf(secondReadBuffer.array(), result.length));
+    assertEquals(-1, reader.read(secondReadBuffer));
+  }
+
+  @Test
+  public void testPositionalRead() throws IOException {
+    reader = new BlobReadChannel(options, BLOB_ID, EMPTY_RPC_OPTIONS);
+    byte[] firstResult = randomByteArray(42);
+    byte[] secondResult = randomByteArray(10);
+    expect(storageRpcMock.read(BLOB_ID.toPb(), EMPTY_RPC_OPTIONS, 100, 42))
+        .andReturn(StorageRpc.Tuple.of("etag", firstResult));
+    expect(storageRpcMock.read(BLOB_ID.toPb(), EMPTY_RPC_OPTIONS, 1000, 42))
+        .andReturn(StorageRpc.Tuple.of("etag", secondResult));
+    expect(storageRpcMock.read(BLOB_ID.toPb(), EMPTY_RPC_OPTIONS, 2000, 42))
+        .andReturn(StorageRpc.Tuple.<String, byte[]>of(null, new byte[0]));
+    expect(storageRpcMock.read(BLOB_ID.toPb(), EMPTY_RPC_OPTIONS, 7, DEFAULT_CHUNK_SIZE))
+        .andReturn(StorageRpc.Tuple.of("etag", randomByteArray(DEFAULT_CHUNK_SIZE)));
+    replay(storageRpcMock);
+    reader.seek(7);
+    ByteBuffer readBuffer = ByteBuffer.allocate(42);
+    assertEquals(42, reader.read(readBuffer, 100));
+    assertArrayEquals(firstResult, readBuffer.array());
+    readBuffer.clear();
+    assertEquals(10, reader.read(readBuffer, 1000));
+    assertArrayEquals(secondResult, Arrays.copyOf(readBuffer.array(), 10));
+    readBuffer.clear();
+    assertEquals(-1, reader.read(readBuffer, 2000));
+    // positional reads do not move the channel's position
+    readBuffer.clear();
+    assertEquals(42, reader.read(readBuffer));
+  }
+
+  @Test
+  public void testPositionalReadGenerationChanged() throws IOException {
+    reader = new BlobReadChannel(options, BLOB_ID, EMPTY_RPC_OPTIONS);
+    expect(storageRpcMock.read(BLOB_ID.toPb(), EMPTY_RPC_OPTIONS, 0, 42))
+        .andReturn(StorageRpc.Tuple.of("etag1", randomByteArray(42)));
+    expect(storageRpcMock.read(BLOB_ID.toPb(), EMPTY_RPC_OPTIONS, 42, DEFAULT_CHUNK_SIZE))
+        .andReturn(StorageRpc.Tuple.of("etag2", randomByteArray(DEFAULT_CHUNK_SIZE)));
+    replay(storageRpcMock);
+    reader.read(ByteBuffer.allocate(42), 0);
+    reader.seek(42);
+    try {
+      reader.read(ByteBuffer.allocate(42));
+      fail("Expected ReadChannel read to throw StorageException");
+    } catch (StorageException ex) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testPositionalReadClosed() throws IOException {
+    replay(storageRpcMock);
+    reader = new BlobReadChannel(options, BLOB_ID, EMPTY_RPC_OPTIONS);
+    reader.close();
+    try {
+      reader.read(ByteBuffer.allocate(42), 0);
+      fail("Expected BlobReadChannel read to throw ClosedChannelException");
+    } catch (ClosedChannelException ex) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testPositionalReadWithContentCache() throws IOException {
+    StorageOptions cacheOptions = options.toBuilder()
+        .contentCache(folder.newFolder().getPath(), DEFAULT_CHUNK_SIZE)
+        .build();
+    byte[] result = randomByteArray(100);
+    expect(storageRpcMock.read(BLOB_ID.toPb(), EMPTY_RPC_OPTIONS, 0, DEFAULT_CHUNK_SIZE))
+        .andReturn(StorageRpc.Tuple.of("etag", result));
+    replay(storageRpcMock);
+    reader = new BlobReadChannel(cacheOptions, BLOB_ID, EMPTY_RPC_OPTIONS);
+    ByteBuffer readBuffer = ByteBuffer.allocate(42);
+    assertEquals(42, reader.read(readBuffer, 10));
+    assertArrayEquals(Arrays.copyOfRange(result, 10, 52), readBuffer.array());
+    readBuffer.clear();
+    assertEquals(20, reader.read(readBuffer, 80));
+    assertArrayEquals(Arrays.copyOfRange(result, 80, 100), Arrays.copyOf(readBuffer.array(), 20));
+    readBuffer.clear();
+    assertEquals(-1, reader.read(readBuffer, 100));
+  }
+
   private static byte[] randomByteArray(int size) {
     byte[] byteArray = new byte[size];
     RANDOM.nextBytes(byteArray);
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import com.google.cloud.PageImpl;
+import com.google.cloud.storage.BulkOperations.Checkpoint;
+import com.google.cloud.storage.BulkOperations.CheckpointListener;
+import com.google.cloud.storage.BulkOperations.OperationType;
+import com.google.cloud.storage.Storage.BlobListOption;
+import com.google.cloud.storage.Storage.CopyRequest;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import org.easymock.Capture;
+import org.easymock.CaptureType;
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class BulkOperationsTest {
+
+  private static final String BUCKET = "b";
+  private static final BlobId BLOB_ID1 = BlobId.of(BUCKET, "tmp/a");
+  private static final BlobId BLOB_ID2 = BlobId.of(BUCKET, "tmp/b");
+  private static final BlobId BLOB_ID3 = BlobId.of(BUCKET, "tmp/c");
+
+  private final List<Checkpoint> checkpoints = new ArrayList<>();
+  private final CheckpointListener listener = new CheckpointListener() {
+    @Override
+    public void checkpoint(Checkpoint checkpoint) {
+      checkpoints.add(checkpoint);
+    }
+  };
+  private Storage storage;
+  private Storage serviceMockReturnsOptions;
+  private StorageBatch batch;
+
+  @Before
+  public void setUp() {
+    storage = EasyMock.createMock(Storage.class);
+    serviceMockReturnsOptions = EasyMock.createMock(Storage.class);
+    EasyMock.expect(serviceMockReturnsOptions.options())
+        .andReturn(EasyMock.createMock(StorageOptions.class)).anyTimes();
+    EasyMock.replay(serviceMockReturnsOptions);
+    batch = EasyMock.createMock(StorageBatch.class);
+  }
+
+  @After
+  public void tearDown() {
+    EasyMock.verify(storage, batch);
+  }
+
+  private void expectList(String prefix, BlobId... blobIds) {
+    List<Blob> blobs = new ArrayList<>();
+    for (BlobId blobId : blobIds) {
+      blobs.add(new Blob(serviceMockReturnsOptions,
+          new BlobInfo.BuilderImpl(BlobInfo.builder(blobId).build())));
+    }
+    EasyMock.expect(storage.list(BUCKET, BlobListOption.prefix(prefix), BlobListOption.fields()))
+        .andReturn(new PageImpl<>(null, null, blobs));
+  }
+
+  private void expectDeletes(BlobId... blobIds) {
+    final List<StorageBatchResult<Boolean>> results = new ArrayList<>();
+    EasyMock.expect(storage.batch()).andReturn(batch);
+    for (BlobId blobId : blobIds) {
+      StorageBatchResult<Boolean> result = new StorageBatchResult<>();
+      results.add(result);
+      EasyMock.expect(batch.delete(blobId)).andReturn(result);
+    }
+    batch.submit();
+    EasyMock.expectLastCall().andAnswer(new IAnswer<Void>() {
+      @Override
+      public Void answer() {
+        for (int i = 0; i < results.size(); i++) {
+          if (i == 1) {
+            results.get(i).error(new StorageException(403, "Forbidden"));
+          } else {
+            results.get(i).success(i == 0);
+          }
+        }
+        return null;
+      }
+    });
+  }
+
+  @Test
+  public void testDeletePrefix() {
+    expectList("tmp/", BLOB_ID1, BLOB_ID2, BLOB_ID3);
+    expectDeletes(BLOB_ID1, BLOB_ID2, BLOB_ID3);
+    EasyMock.replay(storage, batch);
+    BulkOperations bulk = BulkOperations.builder(storage)
+        .parallelism(1)
+        .checkpointListener(listener)
+        .checkpointInterval(2)
+        .build();
+    BulkOperations.Result result = bulk.deletePrefix(BUCKET, "tmp/");
+    assertEquals(2, result.succeededCount());
+    assertEquals(1, result.failedCount());
+    assertEquals(1, result.failures().size());
+    assertEquals(403, result.failures().get(BLOB_ID2).code());
+    Checkpoint expected = new Checkpoint(OperationType.DELETE, BUCKET, "tmp/", null, null,
+        "tmp/c", 2, 1, ImmutableSet.of("tmp/b"));
+    assertEquals(expected, result.checkpoint());
+    assertEquals(2, checkpoints.size());
+    assertEquals("tmp/b", checkpoints.get(0).lastProcessedName());
+    assertSame(result.checkpoint(), checkpoints.get(1));
+  }
+
+  @Test
+  public void testResume() {
+    expectList("tmp/", BLOB_ID1, BLOB_ID2, BLOB_ID3);
+    expectDeletes(BLOB_ID3);
+    EasyMock.replay(storage, batch);
+    Checkpoint checkpoint = new Checkpoint(OperationType.DELETE, BUCKET, "tmp/", null, null,
+        "tmp/b", 2, 0, ImmutableSet.<String>of());
+    BulkOperations.Result result = BulkOperations.builder(storage).build().resume(checkpoint);
+    assertEquals(3, result.succeededCount());
+    assertEquals(0, result.failedCount());
+    assertEquals("tmp/c", result.checkpoint().lastProcessedName());
+  }
+
+  @Test
+  public void testResume_retriesFailedBlobs() {
+    expectList("tmp/", BLOB_ID1, BLOB_ID2, BLOB_ID3);
+    expectDeletes(BLOB_ID1, BLOB_ID3);
+    EasyMock.replay(storage, batch);
+    Checkpoint checkpoint = new Checkpoint(OperationType.DELETE, BUCKET, "tmp/", null, null,
+        "tmp/b", 1, 1, ImmutableSet.of("tmp/a"));
+    BulkOperations.Result result = BulkOperations.builder(storage).build().resume(checkpoint);
+    Checkpoint expected = new Checkpoint(OperationType.DELETE, BUCKET, "tmp/", null, null,
+        "tmp/c", 2, 1, ImmutableSet.of("tmp/c"));
+    assertEquals(expected, result.checkpoint());
+    assertEquals(ImmutableList.of(BLOB_ID3), ImmutableList.copyOf(result.failures().keySet()));
+  }
+
+  @Test
+  public void testCopyPrefix() {
+    expectList("tmp/", BLOB_ID1, BLOB_ID2);
+    CopyWriter writer = EasyMock.createMock(CopyWriter.class);
+    EasyMock.expect(writer.isDone()).andReturn(false);
+    writer.copyChunk();
+    EasyMock.expect(writer.isDone()).andReturn(true);
+    Capture<CopyRequest> requests = Capture.newInstance(CaptureType.ALL);
+    EasyMock.expect(storage.copy(EasyMock.capture(requests)))
+        .andReturn(writer)
+        .andThrow(new StorageException(404, "Not Found"));
+    EasyMock.replay(storage, batch, writer);
+    BulkOperations.Result result = BulkOperations.builder(storage)
+        .parallelism(1)
+        .maxOpsPerSecond(1000)
+        .build()
+        .copyPrefix(BUCKET, "tmp/", "t", "backup/");
+    assertEquals(1, result.succeededCount());
+    assertEquals(1, result.failedCount());
+    assertEquals(ImmutableList.of(BLOB_ID2), ImmutableList.copyOf(result.failures().keySet()));
+    assertEquals("tmp/b", result.checkpoint().lastProcessedName());
+    assertEquals(ImmutableSet.of("tmp/b"), result.checkpoint().failedNames());
+    assertEquals(BLOB_ID1, requests.getValues().get(0).source());
+    assertEquals(BlobId.of("t", "backup/a"), requests.getValues().get(0).target().blobId());
+    assertEquals(BLOB_ID2, requests.getValues().get(1).source());
+    assertEquals(BlobId.of("t", "backup/b"), requests.getValues().get(1).target().blobId());
+    EasyMock.verify(writer);
+  }
+
+  @Test
+  public void testEmptyPrefix() {
+    expectList("tmp/");
+    EasyMock.replay(storage, batch);
+    BulkOperations.Result result = BulkOperations.builder(storage)
+        .checkpointListener(listener)
+        .build()
+        .deletePrefix(BUCKET, "tmp/");
+    assertEquals(0, result.succeededCount());
+    assertNull(result.checkpoint().lastProcessedName());
+    assertEquals(0, checkpoints.size());
+  }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.cloud.RestorableState;
+import com.google.cloud.storage.Storage.CopyRequest;
+import com.google.common.collect.ImmutableList;
+
+import org.easymock.Capture;
+import org.easymock.EasyMock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+
+public class CopyManagerTest {
+
+  private static final BlobId SOURCE = BlobId.of("b", "n");
+  private static final BlobId TARGET = BlobId.of("b", "n-copy");
+
+  private Storage storage;
+  private Blob blob;
+  private CopyWriter writer;
+  private RestorableState<CopyWriter> state;
+  private CopyManager manager;
+  private final List<Long> progress = new CopyOnWriteArrayList<>();
+  private final CopyManager.ProgressListener listener = new CopyManager.ProgressListener() {
+    @Override
+    public void progress(CopyManager.CopyOperation operation) {
+      progress.add(operation.totalBytesCopied());
+    }
+  };
+
+  @Before
+  @SuppressWarnings("unchecked")
+  public void setUp() {
+    Storage serviceMockReturnsOptions = EasyMock.createMock(Storage.class);
+    EasyMock.expect(serviceMockReturnsOptions.options())
+        .andReturn(EasyMock.createMock(StorageOptions.class));
+    EasyMock.replay(serviceMockReturnsOptions);
+    blob = new Blob(serviceMockReturnsOptions,
+        new BlobInfo.BuilderImpl(BlobInfo.builder(TARGET).build()));
+    storage = EasyMock.createMock(Storage.class);
+    writer = EasyMock.createMock(CopyWriter.class);
+    state = EasyMock.createMock(RestorableState.class);
+  }
+
+  @After
+  public void tearDown() {
+    if (manager != null) {
+      manager.close();
+    }
+    EasyMock.verify(storage, writer, state);
+  }
+
+  private void expectTwoChunks() {
+    EasyMock.expect(writer.totalBytesCopied()).andReturn(10L).andReturn(20L);
+    EasyMock.expect(writer.blobSize()).andReturn(20L).times(2);
+    EasyMock.expect(writer.capture()).andReturn(state).times(2);
+    EasyMock.expect(writer.isDone()).andReturn(false).andReturn(true);
+    writer.copyChunk();
+  }
+
+  @Test
+  public void testCopy() throws Exception {
+    Capture<CopyRequest> request = Capture.newInstance();
+    EasyMock.expect(storage.copy(EasyMock.capture(request))).andReturn(writer);
+    expectTwoChunks();
+    EasyMock.expect(writer.result()).andReturn(blob);
+    EasyMock.replay(storage, writer, state);
+    manager = CopyManager.builder(storage).parallelism(2).megabytesCopiedPerChunk(4).build();
+    CopyManager.CopyOperation operation = manager.copy(CopyRequest.of(SOURCE, TARGET), listener);
+    assertSame(blob, operation.get());
+    assertEquals(SOURCE, operation.source());
+    assertEquals(20L, operation.totalBytesCopied());
+    assertEquals(20L, operation.blobSize());
+    assertSame(state, operation.capture());
+    assertEquals(ImmutableList.of(10L, 20L), progress);
+    assertEquals(SOURCE, request.getValue().source());
+    assertEquals(TARGET, request.getValue().target().blobId());
+    assertFalse(request.getValue().overrideInfo());
+    assertEquals(Long.valueOf(4), request.getValue().megabytesCopiedPerChunk());
+  }
+
+  @Test
+  public void testCopyPreservesTargetInfo() throws Exception {
+    BlobInfo target = BlobInfo.builder(TARGET).contentType("text/plain").build();
+    Capture<CopyRequest> request = Capture.newInstance();
+    EasyMock.expect(storage.copy(EasyMock.capture(request))).andReturn(writer);
+    EasyMock.expect(writer.totalBytesCopied()).andReturn(20L);
+    EasyMock.expect(writer.blobSize()).andReturn(20L);
+    EasyMock.expect(writer.capture()).andReturn(state);
+    EasyMock.expect(writer.isDone()).andReturn(true);
+    EasyMock.expect(writer.result()).andReturn(blob);
+    EasyMock.replay(storage, writer, state);
+    manager = CopyManager.builder(storage).megabytesCopiedPerChunk(4).build();
+    manager.copy(CopyRequest.builder()
+        .source(SOURCE)
+        .target(target, Storage.BlobTargetOption.doesNotExist())
+        .build()).get();
+    assertTrue(request.getValue().overrideInfo());
+    assertEquals(target, request.getValue().target());
+    assertEquals(ImmutableList.of(Storage.BlobTargetOption.doesNotExist()),
+        request.getValue().targetOptions());
+    assertEquals(Long.valueOf(4), request.getValue().megabytesCopiedPerChunk());
+  }
+
+  @Test
+  public void testCopyFailure() throws Exception {
+    StorageException exception = new StorageException(500, "error");
+    EasyMock.expect(storage.copy(EasyMock.anyObject(CopyRequest.class))).andThrow(exception);
+    EasyMock.replay(storage, writer, state);
+    manager = CopyManager.builder(storage).build();
+    CopyManager.CopyOperation operation = manager.copy(CopyRequest.of(SOURCE, TARGET), listener);
+    try {
+      operation.get();
+      fail("Expected copy failure");
+    } catch (ExecutionException ex) {
+      assertSame(exception, ex.getCause());
+    }
+    assertTrue(operation.isDone());
+    assertEquals(ImmutableList.of(0L), progress);
+  }
+
+  @Test
+  public void testResume() throws Exception {
+    EasyMock.expect(state.restore()).andReturn(writer);
+    EasyMock.expect(writer.source()).andReturn(SOURCE);
+    EasyMock.expect(writer.totalBytesCopied()).andReturn(10L).times(2);
+    EasyMock.expect(writer.blobSize()).andReturn(20L).times(2);
+    writer.copyChunk();
+    EasyMock.expect(writer.capture()).andReturn(state);
+    EasyMock.expect(writer.isDone()).andReturn(true);
+    EasyMock.expect(writer.result()).andReturn(blob);
+    EasyMock.replay(storage, writer, state);
+    manager = CopyManager.builder(storage).build();
+    CopyManager.CopyOperation operation = manager.resume(state, null);
+    assertSame(blob, operation.get());
+    assertEquals(SOURCE, operation.source());
+  }
+}
@@ -62,10 +62,13 @@ public class CopyRequestTest {
     Storage.CopyRequest copyRequest2 = Storage.CopyRequest.builder()
         .source(SOURCE_BUCKET_NAME, SOURCE_BLOB_NAME)
         .target(TARGET_BLOB_ID)
+        .targetOptions(BlobTargetOption.predefinedAcl(PUBLIC_READ))
         .build();
     assertEquals(SOURCE_BLOB_ID, copyRequest2.source());
     assertEquals(BlobInfo.builder(TARGET_BLOB_ID).build(), copyRequest2.target());
     assertFalse(copyRequest2.overrideInfo());
+    assertEquals(ImmutableList.of(BlobTargetOption.predefinedAcl(PUBLIC_READ)),
+        copyRequest2.targetOptions());
 
     Storage.CopyRequest copyRequest3 = Storage.CopyRequest.builder()
         .source(SOURCE_BLOB_ID)
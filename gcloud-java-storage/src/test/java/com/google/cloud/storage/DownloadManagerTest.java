@@ -0,0 +1,200 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import com.google.cloud.storage.AccessEvent.Operation;
+import com.google.cloud.storage.DownloadManager.Range;
+import com.google.cloud.storage.DownloadManager.State;
+import com.google.cloud.storage.testing.LocalStorageHelper;
+import com.google.common.hash.Hashing;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class DownloadManagerTest {
+
+  private static final String BUCKET = "bucket";
+  private static final int RANGE_SIZE = 1000;
+  private static final byte[] CONTENT = new byte[3500];
+
+  static {
+    new Random(42).nextBytes(CONTENT);
+  }
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final AtomicLong bytesRead = new AtomicLong();
+  private Storage storage;
+  private DownloadManager manager;
+  private Blob blob;
+  private Path target;
+  private Path stateFile;
+
+  @Before
+  public void setUp() throws IOException {
+    storage = LocalStorageHelper.create().options().toBuilder()
+        .accessListener(new AccessListener() {
+          @Override
+          public void accessed(AccessEvent event) {
+            if (event.operation() == Operation.READ) {
+              bytesRead.addAndGet(event.bytes());
+            }
+          }
+        })
+        .build()
+        .service();
+    storage.create(BucketInfo.of(BUCKET));
+    blob = storage.create(BlobInfo.builder(BUCKET, "blob").build(), CONTENT);
+    manager = DownloadManager.builder(storage).rangeSize(RANGE_SIZE).build();
+    target = temporaryFolder.newFolder().toPath().resolve("blob");
+    stateFile = DownloadManager.statePath(target);
+  }
+
+  private static int crc32c(byte[] content, int offset, int length) {
+    return Hashing.crc32c().hashBytes(content, offset, length).asInt();
+  }
+
+  /**
+   * Simulates a download interrupted after {@code ranges} ranges were checkpointed and some more
+   * bytes were written.
+   */
+  private void interrupt(int ranges) throws IOException {
+    State state = new State(blob.generation(), blob.etag(), blob.size(), new ArrayList<Range>());
+    for (int i = 0; i < ranges; i++) {
+      state.ranges.add(new Range(i * RANGE_SIZE, RANGE_SIZE,
+          crc32c(CONTENT, i * RANGE_SIZE, RANGE_SIZE)));
+    }
+    state.write(stateFile);
+    Files.write(target, Arrays.copyOf(CONTENT, ranges * RANGE_SIZE + RANGE_SIZE / 2));
+  }
+
+  @Test
+  public void testDownload() throws IOException {
+    Blob downloaded = manager.download(BlobId.of(BUCKET, "blob"), target);
+    assertEquals(blob.blobId(), downloaded.blobId());
+    assertArrayEquals(CONTENT, Files.readAllBytes(target));
+    assertFalse(Files.exists(stateFile));
+    assertEquals(CONTENT.length, bytesRead.get());
+  }
+
+  @Test
+  public void testDownloadEmptyBlob() throws IOException {
+    storage.create(BlobInfo.builder(BUCKET, "empty").build(), new byte[0]);
+    manager.download(BlobId.of(BUCKET, "empty"), target);
+    assertEquals(0, Files.size(target));
+    assertFalse(Files.exists(stateFile));
+  }
+
+  @Test
+  public void testDownloadMissingBlob() throws IOException {
+    try {
+      manager.download(BlobId.of(BUCKET, "missing"), target);
+      fail("StorageException expected");
+    } catch (StorageException ex) {
+      assertEquals(404, ex.code());
+    }
+  }
+
+  @Test
+  public void testResume() throws IOException {
+    interrupt(2);
+    manager.download(BlobId.of(BUCKET, "blob"), target);
+    assertArrayEquals(CONTENT, Files.readAllBytes(target));
+    assertFalse(Files.exists(stateFile));
+    assertEquals(CONTENT.length - 2 * RANGE_SIZE, bytesRead.get());
+  }
+
+  @Test
+  public void testResumeIgnoresPartialLine() throws IOException {
+    interrupt(2);
+    Files.write(stateFile, "range=2000:10".getBytes(UTF_8), StandardOpenOption.APPEND);
+    State state = State.read(stateFile);
+    assertEquals(2, state.ranges.size());
+    assertEquals(2 * RANGE_SIZE, state.position());
+    manager.download(BlobId.of(BUCKET, "blob"), target);
+    assertArrayEquals(CONTENT, Files.readAllBytes(target));
+    assertEquals(CONTENT.length - 2 * RANGE_SIZE, bytesRead.get());
+  }
+
+  @Test
+  public void testResumeFromLastVerifiedRange() throws IOException {
+    interrupt(3);
+    byte[] corrupted = Files.readAllBytes(target);
+    corrupted[RANGE_SIZE + 10] ^= 1;
+    Files.write(target, corrupted);
+    manager.download(BlobId.of(BUCKET, "blob"), target);
+    assertArrayEquals(CONTENT, Files.readAllBytes(target));
+    assertEquals(CONTENT.length - RANGE_SIZE, bytesRead.get());
+  }
+
+  @Test
+  public void testRestartIfGenerationChanged() throws IOException {
+    interrupt(2);
+    byte[] updated = Arrays.copyOf(CONTENT, 2500);
+    storage.create(BlobInfo.builder(BUCKET, "blob").build(), updated);
+    manager.download(BlobId.of(BUCKET, "blob"), target);
+    assertArrayEquals(updated, Files.readAllBytes(target));
+    assertEquals(updated.length, bytesRead.get());
+  }
+
+  @Test
+  public void testRestartIfEtagChanged() throws IOException {
+    interrupt(2);
+    State state = State.read(stateFile);
+    new State(state.generation, "stale-etag", state.size, state.ranges).write(stateFile);
+    manager.download(BlobId.of(BUCKET, "blob"), target);
+    assertArrayEquals(CONTENT, Files.readAllBytes(target));
+    assertFalse(Files.exists(stateFile));
+    assertEquals(CONTENT.length, bytesRead.get());
+  }
+
+  @Test
+  public void testStateReadInvalid() throws IOException {
+    assertNull(State.read(stateFile));
+    Files.write(stateFile, "not a state file\n".getBytes(UTF_8));
+    assertNull(State.read(stateFile));
+  }
+
+  @Test
+  public void testCrc32cCombine() {
+    int whole = crc32c(CONTENT, 0, CONTENT.length);
+    for (int split : new int[] {0, 1, 7, 1000, 3499, 3500}) {
+      int first = crc32c(CONTENT, 0, split);
+      int second = crc32c(CONTENT, split, CONTENT.length - split);
+      assertEquals(whole, DownloadManager.crc32cCombine(first, second, CONTENT.length - split));
+    }
+  }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.storage;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.cloud.ReadChannel;
+import com.google.cloud.RetryParams;
+import com.google.cloud.storage.spi.StorageRpc;
+import com.google.cloud.storage.spi.StorageRpcFactory;
+import com.google.common.collect.ImmutableMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+public class GzipReadChannelTest {
+
+  private static final BlobId BLOB_ID = BlobId.of("b", "n", 42L);
+  private static final Map<StorageRpc.Option, ?> EMPTY_RPC_OPTIONS = ImmutableMap.of();
+  private static final byte[] CONTENT =
+      GzipWriteChannelTest.randomCompressibleContent(1024 * 1024);
+
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
+  private StorageOptions options;
+  private StorageRpcFactory rpcFactoryMock;
+  private StorageRpc storageRpcMock;
+
+  @Before
+  public void setUp() {
+    rpcFactoryMock = createMock(StorageRpcFactory.class);
+    storageRpcMock = createMock(StorageRpc.class);
+    expect(rpcFactoryMock.create(anyObject(StorageOptions.class))).andReturn(storageRpcMock);
+    replay(rpcFactoryMock);
+    options = StorageOptions.builder()
+        .projectId("projectId")
+        .serviceRpcFactory(rpcFactoryMock)
+        .retryParams(RetryParams.noRetries())
+        .build();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    verify(rpcFactoryMock, storageRpcMock);
+  }
+
+  private static byte[] compress(byte[] content) throws IOException {
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    try (GZIPOutputStream output = new GZIPOutputStream(compressed)) {
+      output.write(content);
+    }
+    return compressed.toByteArray();
+  }
+
+  /**
+   * Returns the stream the service and the HTTP transport deliver for gzip-encoded content.
+   */
+  private static InputStream decompressed(byte[] compressed) throws IOException {
+    return new GZIPInputStream(new ByteArrayInputStream(compressed));
+  }
+
+  private static byte[] readFully(ReadChannel channel, ByteBuffer buffer) throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    while (channel.read(buffer) >= 0) {
+      buffer.flip();
+      byte[] bytes = new byte[buffer.remaining()];
+      buffer.get(bytes);
+      output.write(bytes);
+      buffer.clear();
+    }
+    return output.toByteArray();
+  }
+
+  @Test
+  public void testRead() throws IOException {
+    expect(storageRpcMock.openDecompressed(BLOB_ID.toPb(), EMPTY_RPC_OPTIONS))
+        .andReturn(decompressed(compress(CONTENT)));
+    replay(storageRpcMock);
+    GzipReadChannel channel = new GzipReadChannel(options, BLOB_ID, EMPTY_RPC_OPTIONS);
+    assertArrayEquals(CONTENT, readFully(channel, ByteBuffer.allocate(4096)));
+    assertEquals(-1, channel.read(ByteBuffer.allocate(1)));
+    channel.close();
+    assertFalse(channel.isOpen());
+  }
+
+  @Test
+  public void testReadDirectBuffer() throws IOException {
+    expect(storageRpcMock.openDecompressed(BLOB_ID.toPb(), EMPTY_RPC_OPTIONS))
+        .andReturn(decompressed(compress(CONTENT)));
+    replay(storageRpcMock);
+    GzipReadChannel channel = new GzipReadChannel(options, BLOB_ID, EMPTY_RPC_OPTIONS);
+    assertArrayEquals(CONTENT, readFully(channel, ByteBuffer.allocateDirect(100 * 1024)));
+  }
+
+  @Test
+  public void testReadConcatenatedMembers() throws IOException {
+    byte[] first = compress(Arrays.copyOf(CONTENT, 1000));
+    byte[] second = compress(Arrays.copyOfRange(CONTENT, 1000, CONTENT.length));
+    byte[] compressed = Arrays.copyOf(first, first.length + second.length);
+    System.arraycopy(second, 0, compressed, first.length, second.length);
+    expect(storageRpcMock.openDecompressed(BLOB_ID.toPb(), EMPTY_RPC_OPTIONS))
+        .andReturn(decompressed(compressed));
+    replay(storageRpcMock);
+    GzipReadChannel channel = new GzipReadChannel(options, BLOB_ID, EMPTY_RPC_OPTIONS);
+    assertArrayEquals(CONTENT, readFully(channel, ByteBuffer.allocate(4096)));
+  }
+
+  @Test
+  public void testReadEmpty() throws IOException {
+    expect(storageRpcMock.openDecompressed(BLOB_ID.toPb(), EMPTY_RPC_OPTIONS))
+        .andReturn(decompressed(compress(new byte[0])));
+    replay(storageRpcMock);
+    GzipReadChannel channel = new GzipReadChannel(options, BLOB_ID, EMPTY_RPC_OPTIONS);
+    assertEquals(-1, channel.read(ByteBuffer.allocate(42)));
+  }
+
+  @Test
+  public void testSeek() throws IOException {
+    byte[] compressed = compress(CONTENT);
+    expect(storageRpcMock.openDecompressed(BLOB_ID.toPb(), EMPTY_RPC_OPTIONS))
+        .andReturn(decompressed(compressed))
+        .andReturn(decompressed(compressed));
+    replay(storageRpcMock);
+    GzipReadChannel channel = new GzipReadChannel(options, BLOB_ID, EMPTY_RPC_OPTIONS);
+    ByteBuffer buffer = ByteBuffer.allocate(42);
+    channel.seek(500000);
+    assertEquals(42, channel.read(buffer));
+    assertArrayEquals(Arrays.copyOfRange(CONTENT, 500000, 500042), buffer.array());
+    buffer.clear();
+    channel.seek(10);
+    assertEquals(42, channel.read(buffer));
+    assertArrayEquals(Arrays.copyOfRange(CONTENT, 10, 52), buffer.array());
+    assertTrue(channel.isOpen());
+  }
+
+  @Test
+  public void testSeekBeforeRead_opensOnce() throws IOException {
+    expect(storageRpcMock.openDecompressed(BLOB_ID.toPb(), EMPTY_RPC_OPTIONS))
+        .andReturn(decompressed(compress(CONTENT)));
+    replay(storageRpcMock);
+    GzipReadChannel channel = new GzipReadChannel(options, BLOB_ID, EMPTY_RPC_OPTIONS);
+    channel.seek(0);
+    channel.seek(100);
+    ByteBuffer buffer = ByteBuffer.allocate(42);
+    assertEquals(42, channel.read(buffer));
+    assertArrayEquals(Arrays.copyOfRange(CONTENT, 100, 142), buffer.array());
+  }
+
+  @Test
+  public void testReadCorruptTrailer() throws IOException {
+    byte[] compressed = compress(CONTENT);
+    compressed[compressed.length - 5]++;
+    expect(storageRpcMock.openDecompressed(BLOB_ID.toPb(), EMPTY_RPC_OPTIONS))
+        .andReturn(decompressed(compressed));
+    replay(storageRpcMock);
+    GzipReadChannel channel = new GzipReadChannel(options, BLOB_ID, EMPTY_RPC_OPTIONS);
+    thrown.expect(ZipException.class);
+    readFully(channel, ByteBuffer.allocate(4096));
+  }
+
+  @Test
+  public void testOpenFails() throws IOException {
+    expect(storageRpcMock.openDecompressed(BLOB_ID.toPb(), EMPTY_RPC_OPTIONS))
+        .andThrow(new StorageException(404, "Not Found"));
+    replay(storageRpcMock);
+    GzipReadChannel channel = new GzipReadChannel(options, BLOB_ID, EMPTY_RPC_OPTIONS);
+    thrown.expect(StorageException.class);
+    channel.read(ByteBuffer.allocate(42));
+  }
+
+  @Test
+  public void testReadClosed() throws IOException {
+    replay(storageRpcMock);
+    GzipReadChannel channel = new GzipReadChannel(options, BLOB_ID, EMPTY_RPC_OPTIONS);
+    channel.close();
+    thrown.expect(ClosedChannelException.class);
+    channel.read(ByteBuffer.allocate(42));
+  }
+
+  @Test
+  public void testCapture() {
+    replay(storageRpcMock);
+    GzipReadChannel channel = new GzipReadChannel(options, BLOB_ID, EMPTY_RPC_OPTIONS);
+    thrown.expect(UnsupportedOperationException.class);
+    channel.capture();
+  }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.storage;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.cloud.RestorableState;
+import com.google.cloud.WriteChannel;
+import com.google.common.io.ByteStreams;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+public class GzipWriteChannelTest {
+
+  private static final byte[] CONTENT = randomCompressibleContent(1024 * 1024);
+
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
+  static byte[] randomCompressibleContent(int length) {
+    Random random = new Random(42);
+    byte[] content = new byte[length];
+    for (int i = 0; i < length; i++) {
+      content[i] = (byte) ('a' + random.nextInt(4));
+    }
+    return content;
+  }
+
+  static byte[] decompress(byte[] compressed) throws IOException {
+    return ByteStreams.toByteArray(new GZIPInputStream(new ByteArrayInputStream(compressed)));
+  }
+
+  /**
+   * A write channel that collects the written bytes in memory.
+   */
+  static class MemoryWriteChannel implements WriteChannel {
+
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    private boolean open = true;
+
+    @Override
+    public int write(ByteBuffer src) {
+      int length = src.remaining();
+      byte[] bytes = new byte[length];
+      src.get(bytes);
+      output.write(bytes, 0, length);
+      return length;
+    }
+
+    @Override
+    public boolean isOpen() {
+      return open;
+    }
+
+    @Override
+    public void close() {
+      open = false;
+    }
+
+    @Override
+    public void chunkSize(int chunkSize) {}
+
+    @Override
+    public RestorableState<WriteChannel> capture() {
+      throw new UnsupportedOperationException();
+    }
+
+    byte[] toByteArray() {
+      return output.toByteArray();
+    }
+  }
+
+  @Test
+  public void testWriteAndClose() throws IOException {
+    MemoryWriteChannel memory = new MemoryWriteChannel();
+    GzipWriteChannel channel = new GzipWriteChannel(memory);
+    for (int offset = 0; offset < CONTENT.length; offset += 1000) {
+      int length = Math.min(1000, CONTENT.length - offset);
+      assertEquals(length, channel.write(ByteBuffer.wrap(CONTENT, offset, length)));
+    }
+    assertTrue(channel.isOpen());
+    channel.close();
+    assertFalse(channel.isOpen());
+    assertFalse(memory.isOpen());
+    assertTrue(memory.toByteArray().length < CONTENT.length / 2);
+    assertArrayEquals(CONTENT, decompress(memory.toByteArray()));
+  }
+
+  @Test
+  public void testWriteDirectBuffer() throws IOException {
+    MemoryWriteChannel memory = new MemoryWriteChannel();
+    GzipWriteChannel channel = new GzipWriteChannel(memory);
+    ByteBuffer buffer = ByteBuffer.allocateDirect(CONTENT.length);
+    buffer.put(CONTENT);
+    buffer.flip();
+    assertEquals(CONTENT.length, channel.write(buffer));
+    assertFalse(buffer.hasRemaining());
+    channel.close();
+    assertArrayEquals(CONTENT, decompress(memory.toByteArray()));
+  }
+
+  @Test
+  public void testCloseEmpty() throws IOException {
+    MemoryWriteChannel memory = new MemoryWriteChannel();
+    GzipWriteChannel channel = new GzipWriteChannel(memory);
+    channel.close();
+    channel.close();
+    assertArrayEquals(new byte[0], decompress(memory.toByteArray()));
+  }
+
+  @Test
+  public void testWriteClosed() throws IOException {
+    GzipWriteChannel channel = new GzipWriteChannel(new MemoryWriteChannel());
+    channel.close();
+    thrown.expect(ClosedChannelException.class);
+    channel.write(ByteBuffer.wrap(CONTENT));
+  }
+
+  @Test
+  public void testCapture() {
+    GzipWriteChannel channel = new GzipWriteChannel(new MemoryWriteChannel());
+    thrown.expect(UnsupportedOperationException.class);
+    channel.capture();
+  }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import com.google.cloud.Clock;
+import com.google.cloud.storage.spi.StorageRpc;
+import com.google.common.collect.ImmutableMap;
+
+import org.easymock.EasyMock;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+
+public class MetadataCacheTest {
+
+  private static final Map<StorageRpc.Option, ?> EMPTY_RPC_OPTIONS = ImmutableMap.of();
+  private static final BlobId LATEST_ID = BlobId.of("b", "n");
+  private static final BlobId PINNED_ID = BlobId.of("b", "n", 42L);
+  private static final BlobInfo BLOB_INFO = BlobInfo.builder(PINNED_ID).metageneration(1L).build();
+  private static final BucketInfo BUCKET_INFO = BucketInfo.builder("b").metageneration(1L).build();
+  private static final long TTL_MILLIS = 1000L;
+
+  private final FakeClock clock = new FakeClock();
+  private Blob blob;
+  private Bucket bucket;
+  private MetadataCache cache;
+
+  private static class FakeClock extends Clock {
+
+    private long millis;
+
+    @Override
+    public long millis() {
+      return millis;
+    }
+  }
+
+  @Before
+  public void setUp() {
+    Storage storage = EasyMock.createNiceMock(Storage.class);
+    EasyMock.replay(storage);
+    blob = new Blob(storage, new BlobInfo.BuilderImpl(BLOB_INFO));
+    bucket = new Bucket(storage, new BucketInfo.BuilderImpl(BUCKET_INFO));
+    cache = new MetadataCache(10, TTL_MILLIS, clock);
+  }
+
+  @Test
+  public void testGetLatest() {
+    assertNull(cache.get(LATEST_ID, EMPTY_RPC_OPTIONS));
+    cache.put(LATEST_ID, EMPTY_RPC_OPTIONS, blob, cache.stamp(LATEST_ID));
+    assertSame(blob, cache.get(LATEST_ID, EMPTY_RPC_OPTIONS));
+    assertSame(blob, cache.get(PINNED_ID, EMPTY_RPC_OPTIONS));
+    MetadataCacheStats stats = cache.stats();
+    assertEquals(2, stats.hitCount());
+    assertEquals(1, stats.missCount());
+  }
+
+  @Test
+  public void testLatestExpires() {
+    cache.put(LATEST_ID, EMPTY_RPC_OPTIONS, blob, cache.stamp(LATEST_ID));
+    clock.millis = TTL_MILLIS;
+    assertNull(cache.get(LATEST_ID, EMPTY_RPC_OPTIONS));
+    assertSame(blob, cache.get(PINNED_ID, EMPTY_RPC_OPTIONS));
+  }
+
+  @Test
+  public void testPreconditions() {
+    cache.put(PINNED_ID, EMPTY_RPC_OPTIONS, blob, cache.stamp(PINNED_ID));
+    assertSame(blob, cache.get(PINNED_ID,
+        ImmutableMap.of(StorageRpc.Option.IF_GENERATION_MATCH, 42L)));
+    assertSame(blob, cache.get(PINNED_ID,
+        ImmutableMap.of(StorageRpc.Option.IF_METAGENERATION_NOT_MATCH, 2L)));
+    assertNull(cache.get(PINNED_ID,
+        ImmutableMap.of(StorageRpc.Option.IF_METAGENERATION_MATCH, 2L)));
+    assertNull(cache.get(PINNED_ID,
+        ImmutableMap.of(StorageRpc.Option.IF_GENERATION_NOT_MATCH, 42L)));
+    MetadataCacheStats stats = cache.stats();
+    assertEquals(2, stats.hitCount());
+    assertEquals(2, stats.missCount());
+  }
+
+  @Test
+  public void testFieldsAreNotCached() {
+    Map<StorageRpc.Option, ?> fields = ImmutableMap.of(StorageRpc.Option.FIELDS, "name");
+    cache.put(LATEST_ID, fields, blob, cache.stamp(LATEST_ID));
+    assertNull(cache.get(LATEST_ID, EMPTY_RPC_OPTIONS));
+    cache.put(LATEST_ID, EMPTY_RPC_OPTIONS, blob, cache.stamp(LATEST_ID));
+    assertNull(cache.get(LATEST_ID, fields));
+  }
+
+  @Test
+  public void testInvalidate() {
+    cache.put(LATEST_ID, EMPTY_RPC_OPTIONS, blob, cache.stamp(LATEST_ID));
+    cache.invalidate(LATEST_ID);
+    assertNull(cache.get(LATEST_ID, EMPTY_RPC_OPTIONS));
+    assertNull(cache.get(PINNED_ID, EMPTY_RPC_OPTIONS));
+    cache.put(PINNED_ID, EMPTY_RPC_OPTIONS, blob, cache.stamp(PINNED_ID));
+    cache.invalidate(PINNED_ID);
+    assertNull(cache.get(PINNED_ID, EMPTY_RPC_OPTIONS));
+  }
+
+  @Test
+  public void testInvalidatedWhileLoading() {
+    long stamp = cache.stamp(LATEST_ID);
+    cache.invalidate(LATEST_ID);
+    cache.put(LATEST_ID, EMPTY_RPC_OPTIONS, blob, stamp);
+    assertNull(cache.get(LATEST_ID, EMPTY_RPC_OPTIONS));
+    assertNull(cache.get(PINNED_ID, EMPTY_RPC_OPTIONS));
+    stamp = cache.stamp("b");
+    cache.invalidate("b");
+    cache.put("b", EMPTY_RPC_OPTIONS, bucket, stamp);
+    assertNull(cache.get("b", EMPTY_RPC_OPTIONS));
+  }
+
+  @Test
+  public void testBucket() {
+    assertNull(cache.get("b", EMPTY_RPC_OPTIONS));
+    cache.put("b", EMPTY_RPC_OPTIONS, bucket, cache.stamp("b"));
+    assertSame(bucket, cache.get("b", EMPTY_RPC_OPTIONS));
+    assertNull(cache.get("b", ImmutableMap.of(StorageRpc.Option.IF_METAGENERATION_MATCH, 2L)));
+    cache.invalidate("b");
+    assertNull(cache.get("b", EMPTY_RPC_OPTIONS));
+    cache.put("b", EMPTY_RPC_OPTIONS, bucket, cache.stamp("b"));
+    clock.millis = TTL_MILLIS;
+    assertNull(cache.get("b", EMPTY_RPC_OPTIONS));
+  }
+}
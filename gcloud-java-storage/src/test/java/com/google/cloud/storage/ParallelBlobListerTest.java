@@ -0,0 +1,185 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.cloud.Page;
+import com.google.cloud.PageImpl;
+import com.google.cloud.storage.Storage.BlobListOption;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import org.easymock.EasyMock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class ParallelBlobListerTest {
+
+  private static final String BUCKET = "b";
+
+  private Storage storage;
+  private Storage serviceMockReturnsOptions;
+
+  @Before
+  public void setUp() {
+    storage = EasyMock.createMock(Storage.class);
+    serviceMockReturnsOptions = EasyMock.createMock(Storage.class);
+    EasyMock.expect(serviceMockReturnsOptions.options())
+        .andReturn(EasyMock.createMock(StorageOptions.class)).anyTimes();
+    EasyMock.replay(serviceMockReturnsOptions);
+  }
+
+  @After
+  public void tearDown() {
+    EasyMock.verify(storage);
+  }
+
+  private Blob blob(String name) {
+    return new Blob(serviceMockReturnsOptions,
+        new BlobInfo.BuilderImpl(BlobInfo.builder(BUCKET, name).build()));
+  }
+
+  private Blob directory(String name) {
+    return new Blob(serviceMockReturnsOptions, new BlobInfo.BuilderImpl(
+        BlobInfo.builder(BUCKET, name).isDirectory(true).build()));
+  }
+
+  private static Page<Blob> page(String cursor, Blob... blobs) {
+    return new PageImpl<>(null, cursor, ImmutableList.copyOf(blobs));
+  }
+
+  private void expectBucketListing() {
+    EasyMock.expect(storage.list(BUCKET, BlobListOption.currentDirectory()))
+        .andReturn(page("t1", blob("a.txt"), directory("a/")));
+    EasyMock.expect(storage.list(BUCKET, BlobListOption.currentDirectory(),
+        BlobListOption.pageToken("t1")))
+        .andReturn(page(null, blob("b"), directory("a/")));
+    EasyMock.expect(storage.list(BUCKET, BlobListOption.currentDirectory(),
+        BlobListOption.prefix("a/")))
+        .andReturn(page(null, blob("a/x"), blob("a/y")));
+    EasyMock.replay(storage);
+  }
+
+  private static List<String> names(ParallelBlobLister.Listing listing) {
+    List<String> names = new ArrayList<>();
+    while (listing.hasNext()) {
+      names.add(listing.next().name());
+    }
+    return names;
+  }
+
+  @Test
+  public void testOrdered() {
+    expectBucketListing();
+    ParallelBlobLister lister = ParallelBlobLister.builder(storage, BUCKET)
+        .parallelism(2)
+        .ordered(true)
+        .build();
+    try (ParallelBlobLister.Listing listing = lister.list()) {
+      assertEquals(ImmutableList.of("a.txt", "a/x", "a/y", "b"), names(listing));
+    }
+  }
+
+  @Test
+  public void testUnordered() {
+    expectBucketListing();
+    ParallelBlobLister lister = ParallelBlobLister.builder(storage, BUCKET)
+        .parallelism(2)
+        .build();
+    try (ParallelBlobLister.Listing listing = lister.list()) {
+      List<String> names = names(listing);
+      Set<String> uniqueNames = new HashSet<>(names);
+      assertEquals(names.size(), uniqueNames.size());
+      assertEquals(ImmutableSet.of("a.txt", "a/x", "a/y", "b"), uniqueNames);
+    }
+  }
+
+  @Test
+  public void testPrefixAndOptions() {
+    EasyMock.expect(storage.list(BUCKET, BlobListOption.currentDirectory(),
+        BlobListOption.prefix("a/"), BlobListOption.versions(true)))
+        .andReturn(page(null, blob("a/x")));
+    EasyMock.replay(storage);
+    ParallelBlobLister lister = ParallelBlobLister.builder(storage, BUCKET)
+        .prefix("a/")
+        .options(BlobListOption.versions(true))
+        .ordered(true)
+        .build();
+    try (ParallelBlobLister.Listing listing = lister.list()) {
+      assertEquals(ImmutableList.of("a/x"), names(listing));
+    }
+  }
+
+  @Test
+  public void testFailure() {
+    StorageException exception = new StorageException(500, "error");
+    EasyMock.expect(storage.list(BUCKET, BlobListOption.currentDirectory()))
+        .andThrow(exception);
+    EasyMock.replay(storage);
+    ParallelBlobLister.Listing listing = ParallelBlobLister.builder(storage, BUCKET).build().list();
+    try {
+      listing.hasNext();
+      fail("Should fail with the list exception");
+    } catch (StorageException ex) {
+      assertSame(exception, ex);
+    }
+  }
+
+  @Test
+  public void testClose() {
+    EasyMock.expect(storage.list(BUCKET, BlobListOption.currentDirectory()))
+        .andReturn(page(null, blob("a"), blob("b")));
+    EasyMock.replay(storage);
+    ParallelBlobLister.Listing listing =
+        ParallelBlobLister.builder(storage, BUCKET).ordered(true).build().list();
+    assertTrue(listing.hasNext());
+    assertEquals("a", listing.next().name());
+    listing.close();
+    assertFalse(listing.hasNext());
+  }
+
+  @Test
+  public void testInvalidOptions() {
+    try {
+      ParallelBlobLister.builder(storage, BUCKET).options(BlobListOption.prefix("a/"));
+      fail("Prefix should be set with the builder");
+    } catch (IllegalArgumentException ex) {
+      // expected
+    }
+    EasyMock.replay(storage);
+  }
+
+  @Test
+  public void testCompareNames() {
+    assertTrue(ParallelBlobLister.compareNames("a.txt", "a/") < 0);
+    assertTrue(ParallelBlobLister.compareNames("a", "a/") < 0);
+    assertTrue(ParallelBlobLister.compareNames("\uffff", "\ud83d\ude00") < 0);
+    assertEquals(0, ParallelBlobLister.compareNames("a/b", "a/b"));
+    EasyMock.replay(storage);
+  }
+}
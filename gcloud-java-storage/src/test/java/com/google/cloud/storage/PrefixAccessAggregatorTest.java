@@ -0,0 +1,190 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.cloud.Clock;
+import com.google.cloud.storage.AccessEvent.Operation;
+import com.google.cloud.storage.PrefixAccessAggregator.Metric;
+import com.google.cloud.storage.PrefixAccessAggregator.PrefixStats;
+import com.google.cloud.storage.testing.LocalStorageHelper;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class PrefixAccessAggregatorTest {
+
+  private static final String BUCKET = "bucket";
+
+  private final FakeClock clock = new FakeClock();
+  private PrefixAccessAggregator aggregator;
+
+  private static class FakeClock extends Clock {
+
+    private long millis;
+
+    @Override
+    public long millis() {
+      return millis;
+    }
+  }
+
+  @Before
+  public void setUp() {
+    aggregator = PrefixAccessAggregator.builder()
+        .window(10, TimeUnit.SECONDS)
+        .windowSlots(10)
+        .clock(clock)
+        .build();
+  }
+
+  private static AccessEvent event(String name, long bytes) {
+    return new AccessEvent(Operation.READ, BUCKET, name, bytes, 1000, 0, false);
+  }
+
+  @Test
+  public void testPrefix() {
+    assertEquals("", aggregator.prefix(null));
+    assertEquals("", aggregator.prefix("blob"));
+    assertEquals("dir/", aggregator.prefix("dir/blob"));
+    assertEquals("dir/", aggregator.prefix("dir/subdir/blob"));
+    PrefixAccessAggregator deeper = PrefixAccessAggregator.builder()
+        .prefixDepth(2)
+        .delimiter("::")
+        .build();
+    assertEquals("a::b::", deeper.prefix("a::b::c::d"));
+    assertEquals("a::", deeper.prefix("a::b"));
+  }
+
+  @Test
+  public void testTop() {
+    aggregator.accessed(event("a/1", 10));
+    aggregator.accessed(event("a/2", 10));
+    aggregator.accessed(event("a/3", 10));
+    aggregator.accessed(event("b/1", 100));
+    aggregator.accessed(new AccessEvent(Operation.GET, BUCKET, "c/1", 0, 3000, 2, true));
+    List<PrefixStats> byOperations = aggregator.top(2, Metric.OPERATIONS);
+    assertEquals(2, byOperations.size());
+    assertEquals("a/", byOperations.get(0).prefix());
+    assertEquals(3, byOperations.get(0).operations());
+    assertEquals(30, byOperations.get(0).bytes());
+    assertEquals(1000, byOperations.get(0).meanLatency(TimeUnit.NANOSECONDS));
+    List<PrefixStats> byBytes = aggregator.top(10, Metric.BYTES);
+    assertEquals(3, byBytes.size());
+    assertEquals("b/", byBytes.get(0).prefix());
+    assertEquals(BUCKET, byBytes.get(0).bucket());
+    PrefixStats failed = byBytes.get(2);
+    assertEquals("c/", failed.prefix());
+    assertEquals(2, failed.retries());
+    assertEquals(1, failed.failures());
+    assertEquals(3000, failed.meanLatency(TimeUnit.NANOSECONDS));
+  }
+
+  @Test
+  public void testWindowSlides() {
+    aggregator.accessed(event("a/1", 10));
+    clock.millis = 5000;
+    aggregator.accessed(event("a/1", 10));
+    aggregator.accessed(event("b/1", 10));
+    assertEquals(2, aggregator.top(1, Metric.OPERATIONS).get(0).operations());
+    clock.millis = 10500;
+    List<PrefixStats> stats = aggregator.top(10, Metric.OPERATIONS);
+    assertEquals(2, stats.size());
+    assertEquals(1, stats.get(0).operations());
+    assertEquals(1, stats.get(1).operations());
+    clock.millis = 15500;
+    assertTrue(aggregator.top(10, Metric.OPERATIONS).isEmpty());
+    // the slot is reused for a later epoch
+    aggregator.accessed(event("c/1", 10));
+    stats = aggregator.top(10, Metric.OPERATIONS);
+    assertEquals(1, stats.size());
+    assertEquals("c/", stats.get(0).prefix());
+  }
+
+  @Test
+  public void testConcurrentAccesses() throws InterruptedException {
+    final int threads = 8;
+    final int accesses = 10000;
+    final CountDownLatch start = new CountDownLatch(1);
+    List<Thread> workers = new ArrayList<>();
+    for (int i = 0; i < threads; i++) {
+      Thread worker = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+          } catch (InterruptedException ex) {
+            throw new RuntimeException(ex);
+          }
+          for (int j = 0; j < accesses; j++) {
+            aggregator.accessed(event("dir/blob", 2));
+          }
+        }
+      });
+      worker.start();
+      workers.add(worker);
+    }
+    start.countDown();
+    for (Thread worker : workers) {
+      worker.join();
+    }
+    PrefixStats stats = aggregator.top(1, Metric.BYTES).get(0);
+    assertEquals(threads * accesses, stats.operations());
+    assertEquals(2L * threads * accesses, stats.bytes());
+  }
+
+  @Test
+  public void testStorageReportsAccesses() {
+    final List<AccessEvent> events = Collections.synchronizedList(new ArrayList<AccessEvent>());
+    Storage storage = LocalStorageHelper.create().options().toBuilder()
+        .accessListener(new AccessListener() {
+          @Override
+          public void accessed(AccessEvent event) {
+            events.add(event);
+          }
+        })
+        .build()
+        .service();
+    storage.create(BucketInfo.of(BUCKET));
+    storage.create(BlobInfo.builder(BUCKET, "dir/blob").build(), "content".getBytes(UTF_8));
+    storage.readAllBytes(BlobId.of(BUCKET, "dir/blob"));
+    storage.get(BlobId.of(BUCKET, "missing"));
+    assertEquals(4, events.size());
+    assertEquals(Operation.CREATE, events.get(0).operation());
+    assertEquals(BUCKET, events.get(0).bucket());
+    assertEquals(null, events.get(0).name());
+    assertEquals(Operation.CREATE, events.get(1).operation());
+    assertEquals("dir/blob", events.get(1).name());
+    assertEquals(7, events.get(1).bytes());
+    AccessEvent read = events.get(2);
+    assertEquals(Operation.READ, read.operation());
+    assertEquals(7, read.bytes());
+    assertEquals(0, read.retries());
+    assertFalse(read.failed());
+    assertEquals(Operation.GET, events.get(3).operation());
+  }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.storage;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import com.google.cloud.RetryParams;
+import com.google.cloud.storage.spi.StorageRpc;
+import com.google.cloud.storage.spi.StorageRpcFactory;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class RangeReaderTest {
+
+  private static final BlobId BLOB_ID = BlobId.of("b", "n");
+  private static final Map<StorageRpc.Option, ?> EMPTY_RPC_OPTIONS = ImmutableMap.of();
+  private static final byte[] CONTENT = new byte[1024 * 1024];
+
+  static {
+    new Random(42).nextBytes(CONTENT);
+  }
+
+  private StorageOptions options;
+  private StorageRpcFactory rpcFactoryMock;
+  private StorageRpc storageRpcMock;
+
+  @Before
+  public void setUp() {
+    rpcFactoryMock = createMock(StorageRpcFactory.class);
+    storageRpcMock = createMock(StorageRpc.class);
+  }
+
+  @After
+  public void tearDown() {
+    if (options != null) {
+      verify(rpcFactoryMock, storageRpcMock);
+    }
+  }
+
+  /**
+   * Replays the mocks and creates the options of the service used by the reader.
+   */
+  private void initializeOptions() {
+    expect(rpcFactoryMock.create(anyObject(StorageOptions.class))).andReturn(storageRpcMock);
+    replay(rpcFactoryMock, storageRpcMock);
+    options = StorageOptions.builder()
+        .projectId("projectId")
+        .serviceRpcFactory(rpcFactoryMock)
+        .retryParams(RetryParams.noRetries())
+        .build();
+  }
+
+  private void expectRead(long offset, int length, String etag) {
+    int end = (int) Math.min(CONTENT.length, offset + length);
+    expect(storageRpcMock.read(BLOB_ID.toPb(), EMPTY_RPC_OPTIONS, offset, length))
+        .andReturn(StorageRpc.Tuple.of(etag, Arrays.copyOfRange(CONTENT, (int) offset, end)));
+  }
+
+  private static byte[] bytes(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.remaining()];
+    buffer.duplicate().get(bytes);
+    return bytes;
+  }
+
+  @Test
+  public void testCoalesce() {
+    List<ByteRange> ranges = ImmutableList.of(
+        ByteRange.of(500000, 10),
+        ByteRange.of(0, 100),
+        ByteRange.of(50, 100),
+        ByteRange.of(100 + RangeReader.MAX_GAP, 10),
+        ByteRange.of(200 + 2 * RangeReader.MAX_GAP, 10),
+        ByteRange.of(400000, 0));
+    List<RangeReader.Request> requests = RangeReader.coalesce(ranges);
+    assertEquals(3, requests.size());
+    assertEquals(0, requests.get(0).offset);
+    assertEquals(110 + RangeReader.MAX_GAP, requests.get(0).length());
+    assertEquals(ImmutableList.of(1, 2, 3), requests.get(0).rangeIndexes);
+    assertEquals(200 + 2 * RangeReader.MAX_GAP, requests.get(1).offset);
+    assertEquals(ImmutableList.of(4), requests.get(1).rangeIndexes);
+    assertEquals(500000, requests.get(2).offset);
+    assertEquals(ImmutableList.of(0), requests.get(2).rangeIndexes);
+  }
+
+  @Test
+  public void testCoalesceMaxRequestSize() {
+    List<ByteRange> ranges = ImmutableList.of(
+        ByteRange.of(0, RangeReader.MAX_REQUEST_SIZE - 10),
+        ByteRange.of(RangeReader.MAX_REQUEST_SIZE - 5, 10));
+    assertEquals(2, RangeReader.coalesce(ranges).size());
+  }
+
+  @Test
+  public void testRead() {
+    expectRead(0, 300, "etag");
+    expectRead(600000, 100, "etag");
+    expectRead(CONTENT.length - 10, 20, "etag");
+    initializeOptions();
+    List<ByteRange> ranges = ImmutableList.of(
+        ByteRange.of(600000, 100),
+        ByteRange.of(200, 100),
+        ByteRange.of(0, 100),
+        ByteRange.of(CONTENT.length - 10, 20),
+        ByteRange.of(42, 0));
+    List<ByteBuffer> buffers = new RangeReader(options, BLOB_ID, EMPTY_RPC_OPTIONS).read(ranges);
+    assertEquals(ranges.size(), buffers.size());
+    assertArrayEquals(Arrays.copyOfRange(CONTENT, 600000, 600100), bytes(buffers.get(0)));
+    assertArrayEquals(Arrays.copyOfRange(CONTENT, 200, 300), bytes(buffers.get(1)));
+    assertArrayEquals(Arrays.copyOfRange(CONTENT, 0, 100), bytes(buffers.get(2)));
+    assertArrayEquals(Arrays.copyOfRange(CONTENT, CONTENT.length - 10, CONTENT.length),
+        bytes(buffers.get(3)));
+    assertEquals(0, buffers.get(4).remaining());
+  }
+
+  @Test
+  public void testReadBeyondEnd() {
+    expect(storageRpcMock.read(BLOB_ID.toPb(), EMPTY_RPC_OPTIONS, 2L * CONTENT.length, 10))
+        .andReturn(StorageRpc.Tuple.<String, byte[]>of(null, new byte[0]));
+    initializeOptions();
+    List<ByteBuffer> buffers = new RangeReader(options, BLOB_ID, EMPTY_RPC_OPTIONS)
+        .read(ImmutableList.of(ByteRange.of(2L * CONTENT.length, 10)));
+    assertEquals(0, buffers.get(0).remaining());
+  }
+
+  @Test
+  public void testReadEtagMismatch() {
+    expectRead(0, 100, "etag1");
+    expectRead(500000, 100, "etag2");
+    initializeOptions();
+    List<ByteRange> ranges = ImmutableList.of(ByteRange.of(0, 100), ByteRange.of(500000, 100));
+    try {
+      new RangeReader(options, BLOB_ID, EMPTY_RPC_OPTIONS).read(ranges);
+      fail("Expected StorageException");
+    } catch (StorageException ex) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testReadFailure() {
+    StorageException exception = new StorageException(404, "not found");
+    expect(storageRpcMock.read(BLOB_ID.toPb(), EMPTY_RPC_OPTIONS, 0, 100)).andThrow(exception);
+    initializeOptions();
+    try {
+      new RangeReader(options, BLOB_ID, EMPTY_RPC_OPTIONS)
+          .read(ImmutableList.of(ByteRange.of(0, 100)));
+      fail("Expected StorageException");
+    } catch (StorageException ex) {
+      assertEquals(404, ex.code());
+    }
+  }
+}
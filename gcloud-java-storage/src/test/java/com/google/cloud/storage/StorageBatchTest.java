@@ -17,7 +17,9 @@
 package com.google.cloud.storage;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -37,7 +39,11 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 public class StorageBatchTest {
 
@@ -67,6 +73,7 @@ public class StorageBatchTest {
     dnsRpcMock = EasyMock.createMock(StorageRpc.class);
     batchMock = EasyMock.createMock(RpcBatch.class);
     EasyMock.expect(optionsMock.rpc()).andReturn(dnsRpcMock);
+    EasyMock.expect(optionsMock.accessListener()).andReturn(null).anyTimes();
     EasyMock.expect(dnsRpcMock.createBatch()).andReturn(batchMock);
     EasyMock.replay(optionsMock, dnsRpcMock, batchMock, storage);
     dnsBatch = new StorageBatch(optionsMock);
@@ -160,6 +167,7 @@ public class StorageBatchTest {
     EasyMock.reset(storage, batchMock, optionsMock);
     EasyMock.expect(storage.options()).andReturn(optionsMock).times(2);
     EasyMock.expect(optionsMock.service()).andReturn(storage);
+    EasyMock.expect(optionsMock.accessListener()).andReturn(null);
     Capture<RpcBatch.Callback<StorageObject>> callback = Capture.newInstance();
     Capture<Map<StorageRpc.Option, Object>> capturedOptions = Capture.newInstance();
     batchMock.addPatch(EasyMock.eq(BLOB_INFO_COMPLETE.toPb()), EasyMock.capture(callback),
@@ -206,6 +214,7 @@ public class StorageBatchTest {
     EasyMock.reset(storage, batchMock, optionsMock);
     EasyMock.expect(storage.options()).andReturn(optionsMock).times(2);
     EasyMock.expect(optionsMock.service()).andReturn(storage);
+    EasyMock.expect(optionsMock.accessListener()).andReturn(null);
     Capture<RpcBatch.Callback<StorageObject>> callback = Capture.newInstance();
     Capture<Map<StorageRpc.Option, Object>> capturedOptions = Capture.newInstance();
     batchMock.addGet(EasyMock.eq(BLOB_INFO.toPb()), EasyMock.capture(callback),
@@ -221,4 +230,72 @@ public class StorageBatchTest {
     capturedCallback.onSuccess(BLOB_INFO.toPb());
     assertEquals(new Blob(storage, new Blob.BuilderImpl(BLOB_INFO)), batchResult.get());
   }
+
+  @Test
+  public void testReportsAccesses() {
+    final List<AccessEvent> events = new ArrayList<>();
+    StorageOptions options = EasyMock.createMock(StorageOptions.class);
+    EasyMock.expect(options.rpc()).andReturn(dnsRpcMock);
+    EasyMock.expect(options.accessListener()).andReturn(new AccessListener() {
+      @Override
+      public void accessed(AccessEvent event) {
+        events.add(event);
+      }
+    }).times(3);
+    EasyMock.reset(dnsRpcMock, batchMock);
+    EasyMock.expect(dnsRpcMock.createBatch()).andReturn(batchMock);
+    Capture<RpcBatch.Callback<Void>> deleteCallback = Capture.newInstance();
+    Capture<RpcBatch.Callback<StorageObject>> getCallback = Capture.newInstance();
+    Capture<RpcBatch.Callback<StorageObject>> updateCallback = Capture.newInstance();
+    batchMock.addDelete(EasyMock.eq(BLOB_INFO.toPb()), EasyMock.capture(deleteCallback),
+        EasyMock.eq(ImmutableMap.<StorageRpc.Option, Object>of()));
+    batchMock.addGet(EasyMock.eq(BLOB_INFO.toPb()), EasyMock.capture(getCallback),
+        EasyMock.eq(ImmutableMap.<StorageRpc.Option, Object>of()));
+    batchMock.addPatch(EasyMock.eq(BLOB_INFO.toPb()), EasyMock.capture(updateCallback),
+        EasyMock.eq(ImmutableMap.<StorageRpc.Option, Object>of()));
+    EasyMock.replay(options, dnsRpcMock, batchMock);
+    StorageBatch batch = new StorageBatch(options);
+    batch.delete(BLOB_ID);
+    batch.get(BLOB_ID);
+    batch.update(BLOB_INFO);
+    deleteCallback.getValue().onSuccess(null);
+    getCallback.getValue().onFailure(new GoogleJsonError().set("code", 404));
+    updateCallback.getValue().onFailure(GOOGLE_JSON_ERROR);
+    assertEquals(3, events.size());
+    assertEquals(AccessEvent.Operation.DELETE, events.get(0).operation());
+    assertEquals(BLOB_ID.bucket(), events.get(0).bucket());
+    assertEquals(BLOB_ID.name(), events.get(0).name());
+    assertFalse(events.get(0).failed());
+    assertEquals(AccessEvent.Operation.GET, events.get(1).operation());
+    assertFalse(events.get(1).failed());
+    assertEquals(AccessEvent.Operation.UPDATE, events.get(2).operation());
+    assertTrue(events.get(2).failed());
+    EasyMock.verify(options);
+  }
+
+  @Test
+  public void testSubmitAsync() throws Exception {
+    EasyMock.reset(batchMock);
+    batchMock.submit();
+    EasyMock.expectLastCall();
+    EasyMock.replay(batchMock);
+    Future<Void> future = dnsBatch.submitAsync();
+    assertNull(future.get());
+  }
+
+  @Test
+  public void testSubmitAsyncFailure() throws Exception {
+    EasyMock.reset(batchMock);
+    StorageException exception = new StorageException(500, "error");
+    batchMock.submit();
+    EasyMock.expectLastCall().andThrow(exception);
+    EasyMock.replay(batchMock);
+    Future<Void> future = dnsBatch.submitAsync();
+    try {
+      future.get();
+      fail("Should fail with the batch exception.");
+    } catch (ExecutionException ex) {
+      assertSame(exception, ex.getCause());
+    }
+  }
 }
@@ -42,6 +42,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
 import com.google.common.io.BaseEncoding;
+import com.google.common.io.ByteStreams;
 
 import org.easymock.Capture;
 import org.easymock.EasyMock;
@@ -53,11 +54,14 @@ import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URL;
 import java.net.URLDecoder;
 import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.security.InvalidKeyException;
 import java.security.KeyFactory;
 import java.security.NoSuchAlgorithmException;
@@ -69,9 +73,12 @@ import java.security.spec.EncodedKeySpec;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.PKCS8EncodedKeySpec;
 import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 public class StorageImplTest {
 
@@ -399,6 +406,58 @@ public class StorageImplTest {
     assertEquals(expectedBlob1, blob);
   }
 
+  @Test
+  public void testUpload() throws IOException {
+    Path file = Files.createTempFile("upload", ".bin");
+    try {
+      Files.write(file, BLOB_CONTENT);
+      BlobInfo infoWithoutHashes = BLOB_INFO1.toBuilder().md5(null).crc32c(null).build();
+      Capture<ByteBuffer> capturedBuffer = Capture.newInstance();
+      EasyMock.expect(storageRpcMock.open(infoWithoutHashes.toPb(), EMPTY_RPC_OPTIONS))
+          .andReturn("upload-id");
+      EasyMock.expect(storageRpcMock.write(EasyMock.eq("upload-id"),
+          EasyMock.capture(capturedBuffer), EasyMock.eq(0L), EasyMock.eq(true)))
+          .andReturn(BLOB_INFO1.toPb());
+      EasyMock.replay(storageRpcMock);
+      initializeService();
+      Blob blob = storage.upload(BLOB_INFO1, file);
+      assertEquals(expectedBlob1, blob);
+      ByteBuffer buffer = capturedBuffer.getValue();
+      assertTrue(buffer.isDirect());
+      byte[] uploaded = new byte[buffer.remaining()];
+      buffer.get(uploaded);
+      assertArrayEquals(BLOB_CONTENT, uploaded);
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  @Test
+  public void testUploadRetryResendsChunk() throws IOException {
+    Path file = Files.createTempFile("upload", ".bin");
+    try {
+      Files.write(file, BLOB_CONTENT);
+      BlobInfo infoWithoutHashes = BLOB_INFO1.toBuilder().md5(null).crc32c(null).build();
+      EasyMock.expect(storageRpcMock.open(infoWithoutHashes.toPb(), EMPTY_RPC_OPTIONS))
+          .andReturn("upload-id");
+      EasyMock.expect(storageRpcMock.write(EasyMock.eq("upload-id"),
+          EasyMock.<ByteBuffer>anyObject(), EasyMock.eq(0L), EasyMock.eq(true)))
+          .andThrow(new StorageException(500, "internalError"));
+      Capture<ByteBuffer> capturedBuffer = Capture.newInstance();
+      EasyMock.expect(storageRpcMock.write(EasyMock.eq("upload-id"),
+          EasyMock.capture(capturedBuffer), EasyMock.eq(0L), EasyMock.eq(true)))
+          .andReturn(BLOB_INFO1.toPb());
+      EasyMock.replay(storageRpcMock);
+      storage = options.toBuilder().retryParams(RetryParams.defaultInstance()).build().service();
+      initializeServiceDependentObjects();
+      Blob blob = storage.upload(BLOB_INFO1, file);
+      assertEquals(expectedBlob1, blob);
+      assertEquals(BLOB_CONTENT.length, capturedBuffer.getValue().remaining());
+    } finally {
+      Files.delete(file);
+    }
+  }
+
   @Test
   public void testGetBucket() {
     EasyMock.expect(storageRpcMock.get(BucketInfo.of(BUCKET_NAME1).toPb(), EMPTY_RPC_OPTIONS))
@@ -1062,6 +1121,83 @@ public class StorageImplTest {
     assertTrue(channel.isOpen());
   }
 
+  @Test
+  public void testWriterWithGzip() throws IOException {
+    BlobInfo info = BLOB_INFO1.toBuilder().md5(null).crc32c(null).contentEncoding("gzip").build();
+    EasyMock.expect(storageRpcMock.open(info.toPb(), EMPTY_RPC_OPTIONS)).andReturn("upload-id");
+    Capture<byte[]> bytes = Capture.newInstance();
+    Capture<Integer> length = Capture.newInstance();
+    storageRpcMock.write(EasyMock.eq("upload-id"), EasyMock.capture(bytes), EasyMock.eq(0),
+        EasyMock.eq(0L), EasyMock.captureInt(length), EasyMock.eq(true));
+    EasyMock.replay(storageRpcMock);
+    initializeService();
+    WriteChannel channel = storage.writer(BLOB_INFO1, Storage.BlobWriteOption.gzip());
+    channel.write(ByteBuffer.wrap(BLOB_CONTENT));
+    channel.close();
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    output.write(bytes.getValue(), 0, length.getValue());
+    assertArrayEquals(BLOB_CONTENT, ByteStreams.toByteArray(
+        new GZIPInputStream(new ByteArrayInputStream(output.toByteArray()))));
+  }
+
+  @Test
+  public void testWriterWithGzipAndHashMatch() {
+    EasyMock.replay(storageRpcMock);
+    initializeService();
+    thrown.expect(IllegalArgumentException.class);
+    storage.writer(BLOB_INFO1, Storage.BlobWriteOption.gzip(), BLOB_WRITE_MD5_HASH);
+  }
+
+  @Test
+  public void testReaderWithDecompress() throws IOException {
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    try (GZIPOutputStream output = new GZIPOutputStream(compressed)) {
+      output.write(BLOB_CONTENT);
+    }
+    EasyMock.expect(storageRpcMock.openDecompressed(BlobId.of(BUCKET_NAME1, BLOB_NAME1).toPb(),
+        EMPTY_RPC_OPTIONS))
+        .andReturn(new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray())));
+    EasyMock.replay(storageRpcMock);
+    initializeService();
+    ReadChannel channel =
+        storage.reader(BUCKET_NAME1, BLOB_NAME1, Storage.BlobSourceOption.decompress());
+    ByteBuffer buffer = ByteBuffer.allocate(42);
+    assertEquals(BLOB_CONTENT.length, channel.read(buffer));
+    assertArrayEquals(BLOB_CONTENT, Arrays.copyOf(buffer.array(), BLOB_CONTENT.length));
+    assertEquals(-1, channel.read(buffer));
+  }
+
+  @Test
+  public void testReadAllBytesWithDecompress() {
+    EasyMock.replay(storageRpcMock);
+    initializeService();
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("The decompress option is only supported by reader");
+    storage.readAllBytes(BUCKET_NAME1, BLOB_NAME1, Storage.BlobSourceOption.decompress());
+  }
+
+  @Test
+  public void testDeleteWithDecompress() {
+    EasyMock.replay(storageRpcMock);
+    initializeService();
+    thrown.expect(IllegalArgumentException.class);
+    storage.delete(BUCKET_NAME1, BLOB_NAME1, Storage.BlobSourceOption.decompress());
+  }
+
+  @Test
+  public void testReadRanges() {
+    byte[] content = {1, 2, 3, 4, 5, 6, 7, 8};
+    EasyMock.expect(storageRpcMock.read(BLOB_INFO1.blobId().toPb(), BLOB_SOURCE_OPTIONS, 2, 5))
+        .andReturn(StorageRpc.Tuple.of("etag", Arrays.copyOfRange(content, 2, 7)));
+    EasyMock.replay(storageRpcMock);
+    initializeService();
+    List<ByteBuffer> buffers = storage.readRanges(BLOB_INFO1.blobId(),
+        ImmutableList.of(ByteRange.of(5, 2), ByteRange.of(2, 2)),
+        BLOB_SOURCE_GENERATION_FROM_BLOB_ID, BLOB_SOURCE_METAGENERATION);
+    assertEquals(ByteBuffer.wrap(content, 5, 2), buffers.get(0));
+    assertEquals(ByteBuffer.wrap(content, 2, 2), buffers.get(1));
+  }
+
   @Test
   public void testSignUrl() throws NoSuchAlgorithmException, InvalidKeyException,
       SignatureException, UnsupportedEncodingException {
@@ -1297,6 +1433,104 @@ public class StorageImplTest {
     assertEquals(expectedBlob1, readBlob);
   }
 
+  @Test
+  public void testGetBlobWithMetadataCache() {
+    EasyMock.expect(
+        storageRpcMock.get(BlobId.of(BUCKET_NAME1, BLOB_NAME1).toPb(), EMPTY_RPC_OPTIONS))
+        .andReturn(BLOB_INFO1.toPb());
+    EasyMock.replay(storageRpcMock);
+    storage = options.toBuilder().metadataCacheSize(100).build().service();
+    initializeServiceDependentObjects();
+    assertEquals(expectedBlob1, storage.get(BUCKET_NAME1, BLOB_NAME1));
+    assertEquals(expectedBlob1, storage.get(BUCKET_NAME1, BLOB_NAME1));
+    assertEquals(expectedBlob1, storage.get(BLOB_INFO1.blobId()));
+    assertEquals(2, storage.metadataCacheStats().hitCount());
+  }
+
+  @Test
+  public void testGetBlobWithMetadataCacheAndFields() {
+    EasyMock.expect(storageRpcMock.get(BlobId.of(BUCKET_NAME1, BLOB_NAME1).toPb(),
+        ImmutableMap.of(StorageRpc.Option.FIELDS, BLOB_GET_EMPTY_FIELDS.value())))
+        .andReturn(BLOB_INFO1.toPb()).times(2);
+    EasyMock.replay(storageRpcMock);
+    storage = options.toBuilder().metadataCacheSize(100).build().service();
+    initializeServiceDependentObjects();
+    assertEquals(expectedBlob1, storage.get(BUCKET_NAME1, BLOB_NAME1, BLOB_GET_EMPTY_FIELDS));
+    assertEquals(expectedBlob1, storage.get(BUCKET_NAME1, BLOB_NAME1, BLOB_GET_EMPTY_FIELDS));
+  }
+
+  @Test
+  public void testGetBlobWithMetadataCacheInvalidatedByUpdate() {
+    BlobInfo updatedBlobInfo = BLOB_INFO1.toBuilder().contentType("some-content-type").build();
+    EasyMock.expect(
+        storageRpcMock.get(BlobId.of(BUCKET_NAME1, BLOB_NAME1).toPb(), EMPTY_RPC_OPTIONS))
+        .andReturn(BLOB_INFO1.toPb());
+    EasyMock.expect(storageRpcMock.patch(updatedBlobInfo.toPb(), EMPTY_RPC_OPTIONS))
+        .andReturn(updatedBlobInfo.toPb());
+    EasyMock.expect(
+        storageRpcMock.get(BlobId.of(BUCKET_NAME1, BLOB_NAME1).toPb(), EMPTY_RPC_OPTIONS))
+        .andReturn(updatedBlobInfo.toPb());
+    EasyMock.replay(storageRpcMock);
+    storage = options.toBuilder().metadataCacheSize(100).build().service();
+    initializeServiceDependentObjects();
+    assertEquals(expectedBlob1, storage.get(BUCKET_NAME1, BLOB_NAME1));
+    storage.update(updatedBlobInfo);
+    Blob expectedBlob = new Blob(storage, new BlobInfo.BuilderImpl(updatedBlobInfo));
+    assertEquals(expectedBlob, storage.get(BUCKET_NAME1, BLOB_NAME1));
+  }
+
+  @Test
+  public void testGetBlobWithMetadataCacheInvalidatedByWriterClose() throws IOException {
+    BlobInfo updatedBlobInfo = BLOB_INFO1.toBuilder().contentType("some-content-type").build();
+    EasyMock.expect(
+        storageRpcMock.get(BlobId.of(BUCKET_NAME1, BLOB_NAME1).toPb(), EMPTY_RPC_OPTIONS))
+        .andReturn(BLOB_INFO1.toPb());
+    BlobInfo infoWithoutHashes = BLOB_INFO1.toBuilder().md5(null).crc32c(null).build();
+    EasyMock.expect(storageRpcMock.open(infoWithoutHashes.toPb(), EMPTY_RPC_OPTIONS))
+        .andReturn("upload-id");
+    storageRpcMock.write(EasyMock.eq("upload-id"), EasyMock.<byte[]>anyObject(), EasyMock.eq(0),
+        EasyMock.eq(0L), EasyMock.eq(BLOB_CONTENT.length), EasyMock.eq(true));
+    EasyMock.expect(
+        storageRpcMock.get(BlobId.of(BUCKET_NAME1, BLOB_NAME1).toPb(), EMPTY_RPC_OPTIONS))
+        .andReturn(updatedBlobInfo.toPb());
+    EasyMock.replay(storageRpcMock);
+    storage = options.toBuilder().metadataCacheSize(100).build().service();
+    initializeServiceDependentObjects();
+    assertEquals(expectedBlob1, storage.get(BUCKET_NAME1, BLOB_NAME1));
+    WriteChannel channel = storage.writer(BLOB_INFO1);
+    channel.write(ByteBuffer.wrap(BLOB_CONTENT));
+    // the cache is only invalidated once the upload completes
+    assertEquals(expectedBlob1, storage.get(BUCKET_NAME1, BLOB_NAME1));
+    channel.close();
+    Blob expectedBlob = new Blob(storage, new BlobInfo.BuilderImpl(updatedBlobInfo));
+    assertEquals(expectedBlob, storage.get(BUCKET_NAME1, BLOB_NAME1));
+    EasyMock.verify(storageRpcMock);
+  }
+
+  @Test
+  public void testGetBucketWithMetadataCache() {
+    EasyMock.expect(storageRpcMock.get(BucketInfo.of(BUCKET_NAME1).toPb(), EMPTY_RPC_OPTIONS))
+        .andReturn(BUCKET_INFO1.toPb());
+    EasyMock.expect(storageRpcMock.delete(BucketInfo.of(BUCKET_NAME1).toPb(), EMPTY_RPC_OPTIONS))
+        .andReturn(true);
+    EasyMock.expect(storageRpcMock.get(BucketInfo.of(BUCKET_NAME1).toPb(), EMPTY_RPC_OPTIONS))
+        .andReturn(null);
+    EasyMock.replay(storageRpcMock);
+    storage = options.toBuilder().metadataCacheSize(100).build().service();
+    initializeServiceDependentObjects();
+    assertEquals(expectedBucket1, storage.get(BUCKET_NAME1));
+    assertEquals(expectedBucket1, storage.get(BUCKET_NAME1, BUCKET_GET_METAGENERATION));
+    assertTrue(storage.delete(BUCKET_NAME1));
+    assertNull(storage.get(BUCKET_NAME1));
+  }
+
+  @Test
+  public void testMetadataCacheStatsDisabled() {
+    EasyMock.replay(storageRpcMock);
+    initializeService();
+    assertNull(storage.metadataCacheStats());
+  }
+
   @Test
   public void testNonRetryableException() {
     BlobId blob = BlobId.of(BUCKET_NAME1, BLOB_NAME1);
@@ -0,0 +1,279 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.storage;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.cloud.PageImpl;
+import com.google.cloud.ReadChannel;
+import com.google.cloud.RestorableState;
+import com.google.cloud.WriteChannel;
+import com.google.cloud.storage.Storage.BlobField;
+import com.google.cloud.storage.Storage.BlobListOption;
+import com.google.cloud.storage.Storage.BlobSourceOption;
+import com.google.cloud.storage.Storage.BlobWriteOption;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hashing;
+import com.google.common.io.BaseEncoding;
+import com.google.common.primitives.Ints;
+
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class StorageSyncTest {
+
+  private static final String BUCKET = "b";
+  private static final String PREFIX = "site/";
+  private static final byte[] UNCHANGED = "unchanged".getBytes(UTF_8);
+  private static final byte[] CHANGED = "changed".getBytes(UTF_8);
+  private static final byte[] STALE = "stale!!".getBytes(UTF_8);
+  private static final byte[] MISSING = "missing".getBytes(UTF_8);
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  /**
+   * A read channel that returns in-memory bytes, at most {@code chunkSize} at a time.
+   */
+  static class MemoryReadChannel implements ReadChannel {
+
+    private final byte[] content;
+    private int position;
+    private int chunkSize = 1000;
+    private boolean open = true;
+
+    MemoryReadChannel(byte[] content) {
+      this.content = content;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) {
+      if (position >= content.length) {
+        return -1;
+      }
+      int length = Math.min(Math.min(chunkSize, dst.remaining()), content.length - position);
+      dst.put(content, position, length);
+      position += length;
+      return length;
+    }
+
+    @Override
+    public boolean isOpen() {
+      return open;
+    }
+
+    @Override
+    public void close() {
+      open = false;
+    }
+
+    @Override
+    public void seek(long position) {
+      this.position = (int) position;
+    }
+
+    @Override
+    public void chunkSize(int chunkSize) {
+      this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public RestorableState<ReadChannel> capture() {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  private Storage storage;
+  private Storage serviceMockReturnsOptions;
+  private Path directory;
+
+  @Before
+  public void setUp() throws IOException {
+    storage = EasyMock.createMock(Storage.class);
+    serviceMockReturnsOptions = EasyMock.createMock(Storage.class);
+    EasyMock.expect(serviceMockReturnsOptions.options())
+        .andReturn(EasyMock.createMock(StorageOptions.class)).anyTimes();
+    EasyMock.replay(serviceMockReturnsOptions);
+    directory = temporaryFolder.newFolder().toPath();
+  }
+
+  @After
+  public void tearDown() {
+    EasyMock.verify(storage);
+  }
+
+  private static String crc32c(byte[] content) {
+    return BaseEncoding.base64().encode(
+        Ints.toByteArray(Hashing.crc32c().hashBytes(content).asInt()));
+  }
+
+  private Blob blob(String name, byte[] content) {
+    BlobInfo info = BlobInfo.builder(BlobId.of(BUCKET, PREFIX + name, 42L))
+        .size((long) content.length)
+        .crc32c(crc32c(content))
+        .build();
+    return new Blob(serviceMockReturnsOptions, new BlobInfo.BuilderImpl(info));
+  }
+
+  private Path write(String relativePath, byte[] content) throws IOException {
+    Path file = directory.resolve(relativePath);
+    Files.createDirectories(file.getParent());
+    return Files.write(file, content);
+  }
+
+  @Test
+  public void testCrc32c() throws IOException {
+    EasyMock.replay(storage);
+    assertEquals(crc32c(CHANGED), StorageSync.crc32c(write("small", CHANGED)));
+    byte[] large = GzipWriteChannelTest.randomCompressibleContent(3 * 1024 * 1024 + 17);
+    assertEquals(crc32c(large), StorageSync.crc32c(write("large", large)));
+    assertEquals(crc32c(new byte[0]), StorageSync.crc32c(write("empty", new byte[0])));
+  }
+
+  @Test
+  public void testUpload() throws IOException {
+    write("a.txt", UNCHANGED);
+    write("dir/b.txt", CHANGED);
+    write("c.txt", MISSING);
+    EasyMock.expect(storage.list(BUCKET, BlobListOption.prefix(PREFIX),
+        BlobListOption.fields(BlobField.SIZE, BlobField.CRC32C)))
+        .andReturn(new PageImpl<>(null, null,
+            ImmutableList.of(blob("a.txt", UNCHANGED), blob("dir/b.txt", STALE))));
+    final Map<String, GzipWriteChannelTest.MemoryWriteChannel> uploads =
+        new ConcurrentHashMap<>();
+    final Map<String, String> checksums = new ConcurrentHashMap<>();
+    EasyMock.expect(storage.writer(EasyMock.anyObject(BlobInfo.class),
+        EasyMock.eq(BlobWriteOption.crc32cMatch())))
+        .andAnswer(new IAnswer<WriteChannel>() {
+          @Override
+          public WriteChannel answer() {
+            BlobInfo info = (BlobInfo) EasyMock.getCurrentArguments()[0];
+            GzipWriteChannelTest.MemoryWriteChannel channel =
+                new GzipWriteChannelTest.MemoryWriteChannel();
+            uploads.put(info.name(), channel);
+            checksums.put(info.name(), info.crc32c());
+            return channel;
+          }
+        }).times(2);
+    EasyMock.replay(storage);
+    StorageSync sync = StorageSync.builder(storage)
+        .parallelism(2)
+        .hashParallelism(2)
+        .maxPendingFiles(1)
+        .build();
+    StorageSync.Result result = sync.upload(directory, BUCKET, PREFIX);
+    assertEquals(2, result.transferredCount());
+    assertEquals(1, result.unchangedCount());
+    assertEquals(0, result.failedCount());
+    assertEquals(CHANGED.length + MISSING.length, result.bytesTransferred());
+    assertEquals(ImmutableSet.of(PREFIX + "dir/b.txt", PREFIX + "c.txt"), uploads.keySet());
+    assertArrayEquals(CHANGED, uploads.get(PREFIX + "dir/b.txt").toByteArray());
+    assertArrayEquals(MISSING, uploads.get(PREFIX + "c.txt").toByteArray());
+    assertEquals(crc32c(CHANGED), checksums.get(PREFIX + "dir/b.txt"));
+    assertEquals(crc32c(MISSING), checksums.get(PREFIX + "c.txt"));
+  }
+
+  @Test
+  public void testUploadMatchesBlobsInListingOrder() throws IOException {
+    // '-' < '.' < '/', so the blob listing returns a-b.txt, a.txt and a/x.txt in this order
+    write("a/x.txt", UNCHANGED);
+    write("a.txt", UNCHANGED);
+    write("a-b.txt", UNCHANGED);
+    EasyMock.expect(storage.list(BUCKET, BlobListOption.prefix(PREFIX),
+        BlobListOption.fields(BlobField.SIZE, BlobField.CRC32C)))
+        .andReturn(new PageImpl<>(null, null, ImmutableList.of(blob("0.txt", STALE),
+            blob("a-b.txt", UNCHANGED), blob("a.txt", UNCHANGED), blob("a/x.txt", UNCHANGED),
+            blob("z.txt", STALE))));
+    EasyMock.replay(storage);
+    StorageSync sync = StorageSync.builder(storage).parallelism(2).hashParallelism(2).build();
+    StorageSync.Result result = sync.upload(directory, BUCKET, PREFIX);
+    assertEquals(0, result.transferredCount());
+    assertEquals(3, result.unchangedCount());
+    assertEquals(0, result.failedCount());
+  }
+
+  @Test
+  public void testDownload() throws IOException {
+    write("a.txt", UNCHANGED);
+    write("dir/b.txt", STALE);
+    Blob directoryPlaceholder = new Blob(serviceMockReturnsOptions,
+        new BlobInfo.BuilderImpl(BlobInfo.builder(BUCKET, PREFIX + "dir/").build()));
+    EasyMock.expect(storage.list(BUCKET, BlobListOption.prefix(PREFIX),
+        BlobListOption.fields(BlobField.SIZE, BlobField.CRC32C, BlobField.GENERATION)))
+        .andReturn(new PageImpl<>(null, null, ImmutableList.of(blob("", MISSING),
+            blob("a.txt", UNCHANGED), directoryPlaceholder, blob("dir/b.txt", CHANGED),
+            blob("new/c.txt", MISSING), blob("../escape", MISSING))));
+    EasyMock.expect(storage.reader(BlobId.of(BUCKET, PREFIX + "dir/b.txt", 42L),
+        BlobSourceOption.generationMatch()))
+        .andReturn(new MemoryReadChannel(CHANGED));
+    EasyMock.expect(storage.reader(BlobId.of(BUCKET, PREFIX + "new/c.txt", 42L),
+        BlobSourceOption.generationMatch()))
+        .andReturn(new MemoryReadChannel(MISSING));
+    EasyMock.replay(storage);
+    StorageSync sync = StorageSync.builder(storage).parallelism(2).hashParallelism(2).build();
+    StorageSync.Result result = sync.download(BUCKET, PREFIX, directory);
+    assertEquals(2, result.transferredCount());
+    assertEquals(1, result.unchangedCount());
+    assertEquals(1, result.failedCount());
+    assertTrue(result.failures().get("../escape") instanceof IOException);
+    assertArrayEquals(UNCHANGED, Files.readAllBytes(directory.resolve("a.txt")));
+    assertArrayEquals(CHANGED, Files.readAllBytes(directory.resolve("dir/b.txt")));
+    assertArrayEquals(MISSING, Files.readAllBytes(directory.resolve("new/c.txt")));
+    assertEquals(ImmutableSet.of("b.txt"), fileNames(directory.resolve("dir")));
+  }
+
+  @Test
+  public void testDownloadChecksumMismatch() throws IOException {
+    EasyMock.expect(storage.list(BUCKET, BlobListOption.prefix(PREFIX),
+        BlobListOption.fields(BlobField.SIZE, BlobField.CRC32C, BlobField.GENERATION)))
+        .andReturn(new PageImpl<>(null, null, ImmutableList.of(blob("a.txt", CHANGED))));
+    ReadChannel corrupted = new MemoryReadChannel(STALE);
+    EasyMock.expect(storage.reader(BlobId.of(BUCKET, PREFIX + "a.txt", 42L),
+        BlobSourceOption.generationMatch()))
+        .andReturn(corrupted);
+    EasyMock.replay(storage);
+    StorageSync.Result result = StorageSync.builder(storage).build()
+        .download(BUCKET, PREFIX, directory);
+    assertEquals(0, result.transferredCount());
+    assertEquals(1, result.failedCount());
+    assertTrue(result.failures().get("a.txt") instanceof IOException);
+    assertEquals(ImmutableSet.of(), fileNames(directory));
+  }
+
+  private static ImmutableSet<String> fileNames(Path directory) throws IOException {
+    ImmutableSet.Builder<String> names = ImmutableSet.builder();
+    for (Path file : Files.newDirectoryStream(directory)) {
+      names.add(file.getFileName().toString());
+    }
+    return names.build();
+  }
+}
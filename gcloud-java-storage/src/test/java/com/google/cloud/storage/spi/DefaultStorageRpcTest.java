@@ -0,0 +1,356 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage.spi;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.LowLevelHttpRequest;
+import com.google.api.client.http.LowLevelHttpResponse;
+import com.google.api.client.testing.http.MockHttpTransport;
+import com.google.api.client.testing.http.MockLowLevelHttpRequest;
+import com.google.api.client.testing.http.MockLowLevelHttpResponse;
+import com.google.api.services.storage.model.StorageObject;
+import com.google.cloud.AuthCredentials;
+import com.google.cloud.HttpServiceOptions.HttpTransportFactory;
+import com.google.cloud.ReadChannel;
+import com.google.cloud.RetryParams;
+import com.google.cloud.WriteChannel;
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.BlobInfo;
+import com.google.cloud.storage.Storage;
+import com.google.cloud.storage.Storage.BlobSourceOption;
+import com.google.cloud.storage.Storage.BlobWriteOption;
+import com.google.cloud.storage.StorageOptions;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+public class DefaultStorageRpcTest {
+
+  private static final String BUCKET = "b";
+  private static final String BOUNDARY = "batch_boundary";
+  private static final String UPLOAD_URL = "https://www.googleapis.com/upload/session";
+  private static final Pattern REQUEST_LINE =
+      Pattern.compile("^(GET|PATCH|DELETE) \\S*/o/([^?/ \\r]+)\\S*\\r?$", Pattern.MULTILINE);
+  private static final RetryParams RETRY_PARAMS = RetryParams.builder()
+      .retryMinAttempts(1)
+      .retryMaxAttempts(3)
+      .initialRetryDelayMillis(1)
+      .maxRetryDelayMillis(1)
+      .build();
+
+  private FakeTransport transport;
+  private Map<String, Integer> results;
+
+  /**
+   * A transport that answers batch requests, one part per object. Objects are found unless
+   * statuses are queued for them with {@link #respond(String, Integer...)}.
+   */
+  private static class FakeTransport extends MockHttpTransport {
+
+    private final List<List<String>> batches = Collections.synchronizedList(
+        new ArrayList<List<String>>());
+    private final Map<String, Deque<Integer>> statuses = new HashMap<>();
+    private int ioExceptions;
+
+    synchronized void respond(String name, Integer... codes) {
+      statuses.put(name, new ArrayDeque<>(ImmutableList.copyOf(codes)));
+    }
+
+    synchronized void failNextRequests(int count) {
+      ioExceptions = count;
+    }
+
+    private synchronized int status(String name) {
+      Deque<Integer> codes = statuses.get(name);
+      if (codes == null || codes.isEmpty()) {
+        return 200;
+      }
+      return codes.size() == 1 ? codes.peek() : codes.poll();
+    }
+
+    private synchronized boolean failRequest() {
+      if (ioExceptions == 0) {
+        return false;
+      }
+      ioExceptions--;
+      return true;
+    }
+
+    @Override
+    public LowLevelHttpRequest buildRequest(String method, String url) {
+      return new MockLowLevelHttpRequest(url) {
+        @Override
+        public LowLevelHttpResponse execute() throws IOException {
+          if (failRequest()) {
+            throw new SocketTimeoutException("timed out");
+          }
+          Matcher matcher = REQUEST_LINE.matcher(getContentAsString());
+          List<String> names = new ArrayList<>();
+          StringBuilder content = new StringBuilder();
+          int part = 0;
+          while (matcher.find()) {
+            String name = matcher.group(2);
+            names.add(name);
+            content.append("--").append(BOUNDARY).append("\r\n")
+                .append("Content-Type: application/http\r\n")
+                .append("Content-ID: <response-").append(++part).append(">\r\n\r\n")
+                .append(part(matcher.group(1), name, status(name)));
+          }
+          content.append("--").append(BOUNDARY).append("--\r\n");
+          batches.add(names);
+          return new MockLowLevelHttpResponse()
+              .setContentType("multipart/mixed; boundary=" + BOUNDARY)
+              .setContent(content.toString());
+        }
+      };
+    }
+
+    private static String part(String method, String name, int code) {
+      String body;
+      if (code != 200) {
+        body = "{\"error\":{\"code\":" + code + ",\"message\":\"error\",\"errors\":"
+            + "[{\"reason\":\"error\",\"message\":\"error\"}]}}";
+      } else if ("DELETE".equals(method)) {
+        code = 204;
+        body = "";
+      } else {
+        body = "{\"bucket\":\"" + BUCKET + "\",\"name\":\"" + name + "\"}";
+      }
+      return "HTTP/1.1 " + code + " Status\r\n"
+          + "Content-Type: application/json; charset=UTF-8\r\n"
+          + "Content-Length: " + body.length() + "\r\n\r\n"
+          + body + "\r\n";
+    }
+  }
+
+  /**
+   * A transport that stores the content of a single object written with a resumable upload and
+   * serves it as the service does, with gzip content encoding if the object was written with it.
+   */
+  private static class ObjectTransport extends MockHttpTransport {
+
+    private String metadata;
+    private byte[] content;
+    private int mediaReads;
+
+    @Override
+    public LowLevelHttpRequest buildRequest(final String method, final String url) {
+      return new MockLowLevelHttpRequest(url) {
+        @Override
+        public LowLevelHttpResponse execute() throws IOException {
+          MockLowLevelHttpResponse response = new MockLowLevelHttpResponse();
+          if ("POST".equals(method) && url.contains("uploadType=resumable")) {
+            metadata = getContentAsString();
+            return response.addHeader("Location", UPLOAD_URL);
+          } else if ("PUT".equals(method) && url.equals(UPLOAD_URL)) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            getStreamingContent().writeTo(output);
+            content = output.toByteArray();
+            return response.setContentType("application/json; charset=UTF-8")
+                .setContent("{\"bucket\":\"" + BUCKET + "\",\"name\":\"n\"}");
+          } else if ("GET".equals(method) && url.contains("alt=media") && content != null) {
+            mediaReads++;
+            if (metadata.contains("\"contentEncoding\":\"gzip\"")) {
+              response.setContentEncoding("gzip");
+            }
+            return response.setContent(new ByteArrayInputStream(content));
+          }
+          return response.setStatusCode(404);
+        }
+      };
+    }
+  }
+
+  @Before
+  public void setUp() {
+    transport = new FakeTransport();
+    results = new ConcurrentHashMap<>();
+  }
+
+  private static StorageOptions options(final HttpTransport transport, int batchParallelism,
+      RetryParams retryParams) {
+    return StorageOptions.builder()
+        .projectId("projectId")
+        .authCredentials(AuthCredentials.noAuth())
+        .httpTransportFactory(new HttpTransportFactory() {
+          @Override
+          public HttpTransport create() {
+            return transport;
+          }
+        })
+        .batchParallelism(batchParallelism)
+        .retryParams(retryParams)
+        .build();
+  }
+
+  private RpcBatch createBatch(int batchParallelism, RetryParams retryParams) {
+    return new DefaultStorageRpc(options(transport, batchParallelism, retryParams)).createBatch();
+  }
+
+  private <T> RpcBatch.Callback<T> callback(final String name) {
+    return new RpcBatch.Callback<T>() {
+      @Override
+      public void onSuccess(T response) {
+        results.put(name, 200);
+      }
+
+      @Override
+      public void onFailure(GoogleJsonError googleJsonError) {
+        results.put(name, googleJsonError.getCode());
+      }
+    };
+  }
+
+  private void addGet(RpcBatch batch, String name) {
+    batch.addGet(new StorageObject().setBucket(BUCKET).setName(name),
+        this.<StorageObject>callback(name), ImmutableMap.<StorageRpc.Option, Object>of());
+  }
+
+  @Test
+  public void testSubmit_splitsIntoSubBatches() {
+    RpcBatch batch = createBatch(4, RETRY_PARAMS);
+    for (int i = 0; i < 250; i++) {
+      addGet(batch, "n" + i);
+    }
+    batch.submit();
+    List<Integer> sizes = new ArrayList<>();
+    for (List<String> names : transport.batches) {
+      sizes.add(names.size());
+    }
+    Collections.sort(sizes);
+    assertEquals(ImmutableList.of(50, 100, 100), sizes);
+    assertEquals(250, results.size());
+    for (int i = 0; i < 250; i++) {
+      assertEquals(Integer.valueOf(200), results.get("n" + i));
+    }
+  }
+
+  @Test
+  public void testSubmit_partialFailure() {
+    transport.respond("missing", 404);
+    RpcBatch batch = createBatch(1, RETRY_PARAMS);
+    addGet(batch, "a");
+    addGet(batch, "missing");
+    batch.addDelete(new StorageObject().setBucket(BUCKET).setName("c"),
+        this.<Void>callback("c"), ImmutableMap.<StorageRpc.Option, Object>of());
+    batch.submit();
+    assertEquals(ImmutableList.of(ImmutableList.of("a", "missing", "c")), transport.batches);
+    assertEquals(ImmutableMap.of("a", 200, "missing", 404, "c", 200), results);
+  }
+
+  @Test
+  public void testSubmit_retriesRetryableErrors() {
+    transport.respond("flaky", 503, 200);
+    RpcBatch batch = createBatch(1, RETRY_PARAMS);
+    addGet(batch, "a");
+    addGet(batch, "flaky");
+    addGet(batch, "c");
+    batch.submit();
+    assertEquals(ImmutableList.of(ImmutableList.of("a", "flaky", "c"), ImmutableList.of("flaky")),
+        transport.batches);
+    assertEquals(ImmutableMap.of("a", 200, "flaky", 200, "c", 200), results);
+  }
+
+  @Test
+  public void testSubmit_retryableErrorOnLastAttempt_reportsFailure() {
+    transport.respond("flaky", 503);
+    RpcBatch batch = createBatch(1, RETRY_PARAMS);
+    addGet(batch, "a");
+    addGet(batch, "flaky");
+    batch.submit();
+    assertEquals(ImmutableList.of(ImmutableList.of("a", "flaky"), ImmutableList.of("flaky"),
+        ImmutableList.of("flaky")), transport.batches);
+    assertEquals(ImmutableMap.of("a", 200, "flaky", 503), results);
+  }
+
+  @Test
+  public void testSubmit_retriesSubBatchesIndependently() {
+    transport.respond("n150", 503, 200);
+    RpcBatch batch = createBatch(2, RETRY_PARAMS);
+    for (int i = 0; i < 200; i++) {
+      addGet(batch, "n" + i);
+    }
+    batch.submit();
+    assertEquals(3, transport.batches.size());
+    assertTrue(transport.batches.contains(ImmutableList.of("n150")));
+    assertEquals(200, results.size());
+    assertEquals(Integer.valueOf(200), results.get("n150"));
+  }
+
+  @Test
+  public void testSubmit_requestTimeout_retriesWholeBatch() {
+    transport.failNextRequests(1);
+    RpcBatch batch = createBatch(1, RETRY_PARAMS);
+    addGet(batch, "a");
+    addGet(batch, "b");
+    batch.submit();
+    assertEquals(ImmutableList.of(ImmutableList.of("a", "b")), transport.batches);
+    assertEquals(ImmutableMap.of("a", 200, "b", 200), results);
+  }
+
+  @Test
+  public void testWriteGzipAndReadDecompressed() throws IOException {
+    ObjectTransport objectTransport = new ObjectTransport();
+    Storage storage = options(objectTransport, 1, RETRY_PARAMS).service();
+    byte[] content = Strings.repeat("compressible content ", 10000).getBytes(UTF_8);
+    try (WriteChannel writer =
+        storage.writer(BlobInfo.builder(BUCKET, "n").build(), BlobWriteOption.gzip())) {
+      writer.write(ByteBuffer.wrap(content));
+    }
+    assertTrue(objectTransport.content.length < content.length);
+    assertArrayEquals(content, ByteStreams.toByteArray(
+        new GZIPInputStream(new ByteArrayInputStream(objectTransport.content))));
+    ByteBuffer buffer = ByteBuffer.allocate(content.length + 1);
+    try (ReadChannel reader =
+        storage.reader(BlobId.of(BUCKET, "n"), BlobSourceOption.decompress())) {
+      while (reader.read(buffer) >= 0) {
+        // read until the end of the blob
+      }
+    }
+    assertEquals(content.length, buffer.position());
+    assertArrayEquals(content, Arrays.copyOf(buffer.array(), content.length));
+    assertEquals(1, objectTransport.mediaReads);
+  }
+}
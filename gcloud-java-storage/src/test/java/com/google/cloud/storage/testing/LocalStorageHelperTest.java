@@ -0,0 +1,295 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage.testing;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.cloud.Page;
+import com.google.cloud.ReadChannel;
+import com.google.cloud.WriteChannel;
+import com.google.cloud.storage.Acl;
+import com.google.cloud.storage.Acl.User;
+import com.google.cloud.storage.Blob;
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.BlobInfo;
+import com.google.cloud.storage.BucketInfo;
+import com.google.cloud.storage.CopyWriter;
+import com.google.cloud.storage.Storage;
+import com.google.cloud.storage.Storage.BlobListOption;
+import com.google.cloud.storage.Storage.BlobSourceOption;
+import com.google.cloud.storage.Storage.BlobTargetOption;
+import com.google.cloud.storage.Storage.BlobWriteOption;
+import com.google.cloud.storage.Storage.ComposeRequest;
+import com.google.cloud.storage.Storage.CopyRequest;
+import com.google.cloud.storage.StorageException;
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class LocalStorageHelperTest {
+
+  private static final String BUCKET = "bucket";
+  private static final byte[] CONTENT = "Hello, World!".getBytes(UTF_8);
+
+  private LocalStorageHelper helper;
+  private Storage storage;
+
+  @Before
+  public void setUp() {
+    helper = LocalStorageHelper.create();
+    storage = helper.options().service();
+    storage.create(BucketInfo.of(BUCKET));
+  }
+
+  @Test
+  public void testCreateAndRead() {
+    Blob blob = storage.create(BlobInfo.builder(BUCKET, "blob").build(), CONTENT);
+    assertEquals(Long.valueOf(CONTENT.length), blob.size());
+    assertEquals(Long.valueOf(1L), blob.metageneration());
+    assertEquals(blob.generation(), storage.get(BlobId.of(BUCKET, "blob")).generation());
+    assertArrayEquals(CONTENT, storage.readAllBytes(BlobId.of(BUCKET, "blob")));
+    assertNull(storage.get(BlobId.of(BUCKET, "missing")));
+    assertNull(storage.get(BlobId.of("missing", "blob")));
+  }
+
+  @Test
+  public void testGenerations() {
+    BlobInfo info = BlobInfo.builder(BUCKET, "blob").build();
+    Blob first = storage.create(info, CONTENT, BlobTargetOption.doesNotExist());
+    try {
+      storage.create(info, CONTENT, BlobTargetOption.doesNotExist());
+      fail("Expected StorageException");
+    } catch (StorageException ex) {
+      assertEquals(412, ex.code());
+    }
+    Blob second = storage.create(first, new byte[] {1, 2, 3}, BlobTargetOption.generationMatch());
+    assertTrue(second.generation() > first.generation());
+    try {
+      storage.create(first, CONTENT, BlobTargetOption.generationMatch());
+      fail("Expected StorageException");
+    } catch (StorageException ex) {
+      assertEquals(412, ex.code());
+    }
+    Blob updated = storage.update(second.toBuilder().contentType("text/plain").build());
+    assertEquals(Long.valueOf(2L), updated.metageneration());
+    assertEquals(second.generation(), updated.generation());
+    assertEquals("text/plain", updated.contentType());
+    assertNotEquals(second.etag(), updated.etag());
+  }
+
+  @Test
+  public void testVersioning() {
+    storage.create(BucketInfo.builder("versioned").versioningEnabled(true).build());
+    BlobInfo info = BlobInfo.builder("versioned", "blob").build();
+    Blob first = storage.create(info, CONTENT);
+    Blob second = storage.create(info, new byte[] {1, 2, 3});
+    assertArrayEquals(CONTENT, storage.readAllBytes(first.blobId()));
+    assertTrue(storage.delete(BlobId.of("versioned", "blob")));
+    assertNull(storage.get(BlobId.of("versioned", "blob")));
+    Page<Blob> page = storage.list("versioned", BlobListOption.versions(true));
+    assertEquals(2, ImmutableList.copyOf(page.values()).size());
+    assertTrue(storage.delete(first.blobId()));
+    assertTrue(storage.delete(second.blobId()));
+    assertFalse(storage.list("versioned", BlobListOption.versions(true)).values().iterator()
+        .hasNext());
+    assertTrue(storage.delete("versioned"));
+  }
+
+  @Test
+  public void testList() {
+    for (String name : ImmutableList.of("a", "b", "dir/c", "dir/d", "dir/sub/e", "f")) {
+      storage.create(BlobInfo.builder(BUCKET, name).build(), CONTENT);
+    }
+    List<String> names = new ArrayList<>();
+    Page<Blob> page = storage.list(BUCKET, BlobListOption.pageSize(2));
+    while (page != null) {
+      for (Blob blob : page.values()) {
+        names.add(blob.name());
+      }
+      page = page.nextPage();
+    }
+    assertEquals(ImmutableList.of("a", "b", "dir/c", "dir/d", "dir/sub/e", "f"), names);
+    names.clear();
+    page = storage.list(BUCKET, BlobListOption.currentDirectory(), BlobListOption.pageSize(2));
+    while (page != null) {
+      for (Blob blob : page.values()) {
+        names.add(blob.name());
+      }
+      page = page.nextPage();
+    }
+    assertEquals(ImmutableList.of("a", "b", "dir/", "f"), names);
+    names.clear();
+    for (Blob blob : storage.list(BUCKET, BlobListOption.prefix("dir/"),
+        BlobListOption.currentDirectory()).values()) {
+      names.add(blob.name());
+    }
+    assertEquals(ImmutableList.of("dir/c", "dir/d", "dir/sub/"), names);
+  }
+
+  @Test
+  public void testReadAndWriteChannels() throws IOException {
+    byte[] content = new byte[5 * 1024 * 1024 + 17];
+    new Random(42).nextBytes(content);
+    try (WriteChannel writer = storage.writer(BlobInfo.builder(BUCKET, "large").build(),
+        BlobWriteOption.doesNotExist())) {
+      writer.chunkSize(256 * 1024);
+      ByteBuffer buffer = ByteBuffer.wrap(content);
+      while (buffer.hasRemaining()) {
+        writer.write(buffer);
+      }
+    }
+    ByteBuffer read = ByteBuffer.allocate(content.length);
+    try (ReadChannel reader = storage.reader(BlobId.of(BUCKET, "large"))) {
+      reader.chunkSize(1024 * 1024);
+      while (read.hasRemaining() && reader.read(read) >= 0) {
+        // read until the end of the blob
+      }
+    }
+    assertArrayEquals(content, read.array());
+  }
+
+  @Test
+  public void testUpload() throws IOException {
+    byte[] content = new byte[1024 * 1024 + 17];
+    new Random(42).nextBytes(content);
+    Path file = Files.createTempFile("upload", ".bin");
+    try {
+      Files.write(file, content);
+      Blob blob = storage.upload(BlobInfo.builder(BUCKET, "uploaded").build(), file,
+          BlobWriteOption.doesNotExist());
+      assertEquals(Long.valueOf(content.length), blob.size());
+      assertArrayEquals(content, storage.readAllBytes(blob.blobId()));
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  @Test
+  public void testComposeAndCopy() {
+    storage.create(BlobInfo.builder(BUCKET, "first").build(), CONTENT);
+    storage.create(BlobInfo.builder(BUCKET, "second").build(), CONTENT);
+    Blob composed = storage.compose(ComposeRequest.of(BUCKET, ImmutableList.of("first", "second"),
+        "composed"));
+    assertEquals(Integer.valueOf(2), composed.componentCount());
+    byte[] expected = new byte[2 * CONTENT.length];
+    System.arraycopy(CONTENT, 0, expected, 0, CONTENT.length);
+    System.arraycopy(CONTENT, 0, expected, CONTENT.length, CONTENT.length);
+    assertArrayEquals(expected, storage.readAllBytes(composed.blobId()));
+    byte[] content = new byte[3 * 1024 * 1024];
+    new Random(42).nextBytes(content);
+    Blob source = storage.create(BlobInfo.builder(BUCKET, "source").build(), content);
+    CopyWriter writer = storage.copy(CopyRequest.builder()
+        .source(source.blobId())
+        .sourceOptions(BlobSourceOption.generationMatch(source.generation()))
+        .target(BlobId.of(BUCKET, "target"))
+        .megabytesCopiedPerChunk(1L)
+        .build());
+    int chunks = 1;
+    while (!writer.isDone()) {
+      writer.copyChunk();
+      chunks++;
+    }
+    assertEquals(3, chunks);
+    assertEquals(source.crc32c(), writer.result().crc32c());
+    assertArrayEquals(content, storage.readAllBytes(BlobId.of(BUCKET, "target")));
+  }
+
+  @Test
+  public void testConcurrentCreates() throws Exception {
+    final AtomicInteger failures = new AtomicInteger();
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    List<Future<Void>> futures = new ArrayList<>();
+    for (int i = 0; i < 32; i++) {
+      futures.add(executor.submit(new Callable<Void>() {
+        @Override
+        public Void call() {
+          try {
+            storage.create(BlobInfo.builder(BUCKET, "blob").build(), CONTENT,
+                BlobTargetOption.doesNotExist());
+          } catch (StorageException ex) {
+            failures.incrementAndGet();
+          }
+          return null;
+        }
+      }));
+    }
+    for (Future<Void> future : futures) {
+      future.get();
+    }
+    executor.shutdown();
+    assertEquals(31, failures.get());
+  }
+
+  @Test
+  public void testDeleteNonEmptyBucket() {
+    storage.create(BlobInfo.builder(BUCKET, "blob").build(), CONTENT);
+    try {
+      storage.delete(BUCKET);
+      fail("Expected StorageException");
+    } catch (StorageException ex) {
+      assertEquals(409, ex.code());
+    }
+    assertTrue(storage.delete(BlobId.of(BUCKET, "blob")));
+    assertFalse(storage.delete(BlobId.of(BUCKET, "blob")));
+    assertTrue(storage.delete(BUCKET));
+    helper.reset();
+    assertFalse(storage.list().values().iterator().hasNext());
+  }
+
+  @Test
+  public void testImplicitBuckets() {
+    Storage implicit = LocalStorageHelper.createWithImplicitBuckets().options().service();
+    implicit.create(BlobInfo.builder("other", "blob").acl(ImmutableList.of(
+        Acl.of(User.ofAllUsers(), Acl.Role.READER))).build(), CONTENT);
+    assertEquals("other", implicit.get("other").name());
+    assertArrayEquals(CONTENT, implicit.readAllBytes(BlobId.of("other", "blob")));
+    assertEquals(1, implicit.get(BlobId.of("other", "blob")).acl().size());
+    assertNull(storage.get("other"));
+  }
+
+  @Test
+  public void testWriterChecksPreconditionsWhenOpened() {
+    storage.create(BlobInfo.builder(BUCKET, "blob").build(), CONTENT);
+    try {
+      storage.writer(BlobInfo.builder(BUCKET, "blob").build(), BlobWriteOption.doesNotExist());
+      fail("Expected StorageException");
+    } catch (StorageException ex) {
+      assertEquals(412, ex.code());
+    }
+  }
+}